@@ -20,6 +20,8 @@ import javax.management.MBeanParameterInfo;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
+import com.j256.simplejmx.common.JmxPaging;
+
 /**
  * Command-line client that can be used to support interactive or batch-file JMX operations.
  * 
@@ -34,6 +36,7 @@ public class CommandLineJmxClient {
 
 	private static final String HELP_COMMAND = "help";
 	private static final String DEFAULT_PROMPT = "Jmx: ";
+	private static final int PAGE_SIZE = 1000;
 
 	private JmxClient jmxClient;
 
@@ -374,6 +377,12 @@ public class CommandLineJmxClient {
 
 		try {
 			long start = System.currentTimeMillis();
+			if (jmxClient.getAttributeInfo(currentName, parts[2]) == null
+					&& jmxClient.getAttributeInfo(currentName, parts[2] + JmxPaging.SIZE_SUFFIX) != null) {
+				// paged attribute so we stream it instead of getting it whole
+				displayPages("get", parts[2], jmxClient.pageAttribute(currentName, parts[2], PAGE_SIZE), start);
+				return;
+			}
 			Object value = jmxClient.getAttribute(currentName, parts[2]);
 			displayValue("get", parts[2], value, System.currentTimeMillis() - start);
 		} catch (Exception e) {
@@ -543,6 +552,10 @@ public class CommandLineJmxClient {
 		try {
 			long start = System.currentTimeMillis();
 			Object value = jmxClient.invokeOperation(currentName, oper, args);
+			if (isPagedOperation(currentName, oper) && value instanceof Long) {
+				displayPages(command, oper, jmxClient.pageCursor(currentName, (Long) value, PAGE_SIZE), start);
+				return;
+			}
 			displayValue(command, oper, value, System.currentTimeMillis() - start);
 		} catch (Exception e) {
 			System.out.println("Error.  Problems invoking operation " + oper + ":");
@@ -565,6 +578,27 @@ public class CommandLineJmxClient {
 		}
 	}
 
+	private boolean isPagedOperation(ObjectName currentName, String oper) throws JMException {
+		MBeanOperationInfo info = jmxClient.getOperationInfo(currentName, oper);
+		return (info != null && "true".equals(info.getDescriptor().getFieldValue(JmxPaging.PAGED_DESCRIPTOR_FIELD)));
+	}
+
+	/**
+	 * Display the elements as the pages come in so we never have the whole value in memory.
+	 */
+	private void displayPages(String action, String what, JmxPageIterator iterator, long start) {
+		String sizeString = (iterator.getSize() < 0 ? "an unknown number of" : Long.toString(iterator.getSize()));
+		System.out.println("  " + action + " '" + what + "' is paged with " + sizeString + " elements:");
+		long elementC = 0;
+		while (iterator.hasNext()) {
+			// recurse to get any sub-arrays such as map entries
+			displayValue(iterator.next(), "    ", "[" + elementC + "]");
+			elementC++;
+		}
+		System.out.println("  END of " + elementC + " '" + what + "' elements in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+
 	private void displayValue(String action, String what, Object value, long millis) {
 		displayValue(value, "  ", action + " '" + what + "' in " + millis + "ms");
 	}
@@ -3,15 +3,23 @@ package com.j256.simplejmx.client;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
+import javax.management.Descriptor;
+import javax.management.InstanceNotFoundException;
 import javax.management.JMException;
+import javax.management.JMRuntimeException;
 import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
 import javax.management.MBeanInfo;
 import javax.management.MBeanOperationInfo;
 import javax.management.MBeanParameterInfo;
@@ -21,6 +29,9 @@ import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
+import com.j256.simplejmx.common.JmxPaging;
+import com.j256.simplejmx.common.JmxQuantileSummary;
+import com.j256.simplejmx.common.JmxStringInvocation;
 import com.j256.simplejmx.common.ObjectNameUtil;
 
 /**
@@ -31,11 +42,26 @@ import com.j256.simplejmx.common.ObjectNameUtil;
  */
 public class JmxClient {
 
+	private static final String[] STRING_INVOCATION_SIGNATURE =
+			new String[] { String.class.getName(), String[].class.getName() };
+	/** so a client of many beans that do not take the string invocation does not use up the memory */
+	private static final int MAX_NO_STRING_INVOCATION = 1000;
+
 	private JMXConnector jmxConnector;
 	private JMXServiceURL serviceUrl;
 	private MBeanServerConnection mbeanConn;
-	private MBeanAttributeInfo[] attributes;
-	private MBeanOperationInfo[] operations;
+	/** MBeanInfo of the last bean whose attributes or operations were looked up */
+	private volatile BeanInfo lastBeanInfo;
+	/** beans that do not take {@link JmxStringInvocation} in access order so the least recently used are dropped */
+	private final Map<ObjectName, Boolean> noStringInvocation = Collections.synchronizedMap(
+			new LinkedHashMap<ObjectName, Boolean>(16, 0.75F, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ObjectName, Boolean> eldest) {
+					return size() > MAX_NO_STRING_INVOCATION;
+				}
+			});
 
 	/**
 	 * Connect the client to a JMX server using the full JMX URL format. The URL should look something like:
@@ -281,6 +307,31 @@ public class JmxClient {
 		}
 	}
 
+	/**
+	 * Return the summary of a quantile sketch from its byte[] attribute such as <tt>latency.sketch</tt>.
+	 */
+	public JmxQuantileSummary getQuantileSketch(ObjectName name, String attributeName) throws Exception {
+		Object value = getAttribute(name, attributeName);
+		if (!(value instanceof byte[])) {
+			throw new IllegalArgumentException("Attribute " + attributeName + " of " + name
+					+ " is not a quantile sketch: " + value);
+		}
+		return JmxQuantileSummary.fromBytes((byte[]) value);
+	}
+
+	/**
+	 * Return the merge of the quantile sketches of the same bean on a number of servers. The quantiles of the result
+	 * are those of all of the values that were recorded on the servers within the accuracy of the sketches.
+	 */
+	public static JmxQuantileSummary mergeQuantileSketches(Iterable<JmxClient> clients, ObjectName name,
+			String attributeName) throws Exception {
+		List<JmxQuantileSummary> summaries = new ArrayList<JmxQuantileSummary>();
+		for (JmxClient client : clients) {
+			summaries.add(client.getQuantileSketch(name, attributeName));
+		}
+		return JmxQuantileSummary.merge(summaries);
+	}
+
 	/**
 	 * Get multiple attributes at once from the server.
 	 */
@@ -354,11 +405,27 @@ public class JmxClient {
 	}
 
 	/**
-	 * Invoke a JMX method as an array of parameter strings.
+	 * Invoke a JMX method as an array of parameter strings. The strings are sent with {@link JmxStringInvocation} so
+	 * they are converted on the server in one round trip. If the bean does not take it then the parameter types are
+	 * looked up from the MBeanInfo and the strings are converted here. Those beans are remembered so later calls go
+	 * straight to the lookup.
 	 * 
 	 * @return The value returned by the method or null if none.
 	 */
 	public Object invokeOperation(ObjectName name, String operName, String... paramStrings) throws Exception {
+		checkClientConnected();
+		if (!noStringInvocation.containsKey(name)) {
+			try {
+				return mbeanConn.invoke(name, JmxStringInvocation.OPERATION_NAME,
+						new Object[] { operName, paramStrings }, STRING_INVOCATION_SIGNATURE);
+			} catch (InstanceNotFoundException e) {
+				throw e;
+			} catch (JMException e) {
+				stringInvocationFailed(name, e);
+			} catch (JMRuntimeException e) {
+				stringInvocationFailed(name, e);
+			}
+		}
 		String[] paramTypes = lookupParamTypes(name, operName, paramStrings);
 		Object[] paramObjs;
 		if (paramStrings.length == 0) {
@@ -400,6 +467,36 @@ public class JmxClient {
 		return invokeOperation(objectName, operName, paramTypes, params);
 	}
 
+	/**
+	 * Return an iterator which gets the elements of a paged attribute from the server a page at a time. See
+	 * {@link JmxPaging}.
+	 */
+	public JmxPageIterator pageAttribute(ObjectName name, String attributeName, int pageSize) throws Exception {
+		checkClientConnected();
+		long cursorId =
+				(Long) mbeanConn.invoke(name, JmxPaging.OPEN_CURSOR_OPERATION, new Object[] { attributeName },
+						new String[] { String.class.getName() });
+		return new JmxPageIterator(mbeanConn, name, cursorId, pageSize);
+	}
+
+	/**
+	 * Invoke a paged operation and return an iterator which gets its result from the server a page at a time. See
+	 * {@link JmxPaging}.
+	 */
+	public JmxPageIterator pageOperation(ObjectName name, String operName, int pageSize, Object... params)
+			throws Exception {
+		long cursorId = (Long) invokeOperation(name, operName, params);
+		return pageCursor(name, cursorId, pageSize);
+	}
+
+	/**
+	 * Return an iterator over a cursor that was returned by a paged operation.
+	 */
+	public JmxPageIterator pageCursor(ObjectName name, long cursorId, int pageSize) throws JMException {
+		checkClientConnected();
+		return new JmxPageIterator(mbeanConn, name, cursorId, pageSize);
+	}
+
 	private Object invokeOperation(ObjectName objectName, String operName, String[] paramTypes, Object[] params)
 			throws Exception {
 		if (params != null && params.length == 0) {
@@ -410,13 +507,7 @@ public class JmxClient {
 
 	private String[] lookupParamTypes(ObjectName objectName, String operName, Object[] params) throws JMException {
 		checkClientConnected();
-		if (operations == null) {
-			try {
-				operations = mbeanConn.getMBeanInfo(objectName).getOperations();
-			} catch (Exception e) {
-				throw createJmException("Cannot get attribute info from " + objectName, e);
-			}
-		}
+		MBeanOperationInfo[] operations = getBeanInfo(objectName).getOperations();
 		String[] paramTypes = new String[params.length];
 		for (int i = 0; i < params.length; i++) {
 			paramTypes[i] = params[i].getClass().toString();
@@ -453,6 +544,25 @@ public class JmxClient {
 		}
 	}
 
+	/**
+	 * The string invocation failed. If the MBeanInfo says that the bean takes it then the exception is from the
+	 * operation and is thrown, otherwise the bean is remembered so we convert the strings ourselves. Beans can answer
+	 * an unknown operation with almost any exception so we don't go by its type.
+	 */
+	private void stringInvocationFailed(ObjectName name, Exception e) throws Exception {
+		Descriptor descriptor = getBeanInfo(name).getDescriptor();
+		if (descriptor == null || !"true".equals(descriptor.getFieldValue(JmxStringInvocation.DESCRIPTOR_FIELD))) {
+			noStringInvocation.put(name, Boolean.TRUE);
+			return;
+		}
+		if (e instanceof MBeanException
+				&& ((MBeanException) e).getTargetException() instanceof IllegalArgumentException) {
+			// unknown operation or bad argument, same as if we had looked up the types ourselves
+			throw (IllegalArgumentException) ((MBeanException) e).getTargetException();
+		}
+		throw e;
+	}
+
 	private void checkClientConnected() {
 		if (mbeanConn == null) {
 			throw new IllegalArgumentException("JmxClient is not connected");
@@ -460,14 +570,7 @@ public class JmxClient {
 	}
 
 	private MBeanAttributeInfo getAttrInfo(ObjectName objectName, String attrName) throws JMException {
-		if (attributes == null) {
-			try {
-				attributes = mbeanConn.getMBeanInfo(objectName).getAttributes();
-			} catch (Exception e) {
-				throw createJmException("Cannot get attribute info from " + objectName, e);
-			}
-		}
-		for (MBeanAttributeInfo info : attributes) {
+		for (MBeanAttributeInfo info : getBeanInfo(objectName).getAttributes()) {
 			if (info.getName().equals(attrName)) {
 				return info;
 			}
@@ -475,6 +578,23 @@ public class JmxClient {
 		return null;
 	}
 
+	/**
+	 * Return the MBeanInfo of the bean which is remembered until a different bean is looked up so repeated calls to the
+	 * same bean only get it once.
+	 */
+	private MBeanInfo getBeanInfo(ObjectName objectName) throws JMException {
+		BeanInfo beanInfo = lastBeanInfo;
+		if (beanInfo == null || !beanInfo.name.equals(objectName)) {
+			try {
+				beanInfo = new BeanInfo(objectName, mbeanConn.getMBeanInfo(objectName));
+			} catch (Exception e) {
+				throw createJmException("Problems getting bean information from " + objectName, e);
+			}
+			lastBeanInfo = beanInfo;
+		}
+		return beanInfo.info;
+	}
+
 	private Object stringToObject(String string, String typeString) throws IllegalArgumentException {
 		if (typeString.equals("boolean") || typeString.equals("java.lang.Boolean")) {
 			return Boolean.parseBoolean(string);
@@ -533,4 +653,17 @@ public class JmxClient {
 		jmException.initCause(e);
 		return jmException;
 	}
+
+	/**
+	 * MBeanInfo of a bean along with its name.
+	 */
+	private static class BeanInfo {
+		final ObjectName name;
+		final MBeanInfo info;
+
+		public BeanInfo(ObjectName name, MBeanInfo info) {
+			this.name = name;
+			this.info = info;
+		}
+	}
 }
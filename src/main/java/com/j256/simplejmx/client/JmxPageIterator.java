@@ -0,0 +1,123 @@
+package com.j256.simplejmx.client;
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import com.j256.simplejmx.common.JmxPaging;
+
+/**
+ * Iterator over the elements of a cursor on the server which gets the elements a page at a time so the whole result is
+ * never in memory. Primitive elements are boxed and the entries of a Map are 2 element arrays of the key and value. See
+ * {@link JmxPaging}.
+ *
+ * <p>
+ * If there is a problem getting the next page then {@link #hasNext()} or {@link #next()} throw an
+ * IllegalStateException with the JMX exception as the cause.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class JmxPageIterator implements Iterator<Object> {
+
+	private static final String[] NEXT_PAGE_SIGNATURE = new String[] { long.class.getName(), int.class.getName() };
+	private static final String[] CURSOR_ID_SIGNATURE = new String[] { long.class.getName() };
+
+	private final MBeanServerConnection mbeanConn;
+	private final ObjectName objectName;
+	private final long cursorId;
+	private final int pageSize;
+	private final long size;
+	private Object page;
+	private int pageIndex;
+	private boolean lastPage;
+
+	JmxPageIterator(MBeanServerConnection mbeanConn, ObjectName objectName, long cursorId, int pageSize)
+			throws JMException {
+		this.mbeanConn = mbeanConn;
+		this.objectName = objectName;
+		this.cursorId = cursorId;
+		this.pageSize = Math.max(1, Math.min(pageSize, JmxPaging.MAX_PAGE_SIZE));
+		try {
+			this.size = (Long) mbeanConn.invoke(objectName, JmxPaging.CURSOR_SIZE_OPERATION, new Object[] { cursorId },
+					CURSOR_ID_SIGNATURE);
+		} catch (Exception e) {
+			throw createJmException("Problems getting the size of cursor " + cursorId + " from " + objectName, e);
+		}
+	}
+
+	/**
+	 * Return the number of elements on the server or -1 if it is not known.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public boolean hasNext() {
+		while (page == null || pageIndex >= Array.getLength(page)) {
+			if (lastPage) {
+				return false;
+			}
+			fetchPage();
+		}
+		return true;
+	}
+
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return Array.get(page, pageIndex++);
+	}
+
+	/**
+	 * Not supported.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("Cannot remove elements from a JMX cursor");
+	}
+
+	/**
+	 * Close the cursor on the server if the iteration is stopped before the end. Cursors that are not closed are closed
+	 * by the server after they are idle for a while.
+	 */
+	public void close() throws JMException {
+		if (lastPage) {
+			return;
+		}
+		lastPage = true;
+		page = null;
+		try {
+			mbeanConn.invoke(objectName, JmxPaging.CLOSE_CURSOR_OPERATION, new Object[] { cursorId },
+					CURSOR_ID_SIGNATURE);
+		} catch (Exception e) {
+			throw createJmException("Problems closing cursor " + cursorId + " on " + objectName, e);
+		}
+	}
+
+	private void fetchPage() {
+		try {
+			page = mbeanConn.invoke(objectName, JmxPaging.NEXT_PAGE_OPERATION, new Object[] { cursorId, pageSize },
+					NEXT_PAGE_SIGNATURE);
+		} catch (Exception e) {
+			lastPage = true;
+			throw new IllegalStateException("Problems getting the next page of cursor " + cursorId + " from "
+					+ objectName, e);
+		}
+		pageIndex = 0;
+		// the server closes the cursor after a short page
+		if (Array.getLength(page) < pageSize) {
+			lastPage = true;
+		}
+	}
+
+	private JMException createJmException(String message, Exception e) {
+		JMException jmException = new JMException(message);
+		jmException.initCause(e);
+		return jmException;
+	}
+}
@@ -39,4 +39,23 @@ public @interface JmxAttributeField {
 	 * Set to true if the field can be written by JMX. Default is false.
 	 */
 	public boolean isWritable() default false;
+
+	/**
+	 * Units of the value such as "ms" or "bytes" which are published in the <tt>units</tt> field of the attribute's
+	 * descriptor. Default is none.
+	 */
+	public String unit() default "";
+
+	/**
+	 * Kind of metric that the value is which is published in the <tt>metricType</tt> field of the attribute's
+	 * descriptor so scrapers can find the counters and gauges without guessing. Default is
+	 * {@link JmxMetricKind#UNKNOWN} which publishes nothing.
+	 */
+	public JmxMetricKind metricKind() default JmxMetricKind.UNKNOWN;
+
+	/**
+	 * Set to true if reading the field is expensive so scrapers should poll it less often or not at all. This is
+	 * published in the <tt>expensive</tt> field of the attribute's descriptor. Default is false.
+	 */
+	public boolean expensive() default false;
 }
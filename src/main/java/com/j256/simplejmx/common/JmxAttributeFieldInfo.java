@@ -11,12 +11,28 @@ public class JmxAttributeFieldInfo {
 	public final boolean isReadible;
 	public final boolean isWritable;
 	public final String description;
+	public final String unit;
+	public final JmxMetricKind metricKind;
+	public final boolean expensive;
 
 	public JmxAttributeFieldInfo(String name, boolean isReadible, boolean isWritable, String description) {
+		this(name, isReadible, isWritable, description, null, JmxMetricKind.UNKNOWN, false);
+	}
+
+	/**
+	 * @see JmxAttributeField#unit()
+	 * @see JmxAttributeField#metricKind()
+	 * @see JmxAttributeField#expensive()
+	 */
+	public JmxAttributeFieldInfo(String name, boolean isReadible, boolean isWritable, String description,
+			String unit, JmxMetricKind metricKind, boolean expensive) {
 		this.name = name;
 		this.isReadible = isReadible;
 		this.isWritable = isWritable;
 		this.description = description;
+		this.unit = unit;
+		this.metricKind = metricKind;
+		this.expensive = expensive;
 	}
 
 	public JmxAttributeFieldInfo(String name, JmxAttributeField jmxAttribute) {
@@ -24,6 +40,9 @@ public class JmxAttributeFieldInfo {
 		this.isReadible = jmxAttribute.isReadible();
 		this.isWritable = jmxAttribute.isWritable();
 		this.description = jmxAttribute.description();
+		this.unit = jmxAttribute.unit();
+		this.metricKind = jmxAttribute.metricKind();
+		this.expensive = jmxAttribute.expensive();
 	}
 
 	public String getName() {
@@ -41,4 +60,16 @@ public class JmxAttributeFieldInfo {
 	public String getDescription() {
 		return description;
 	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public JmxMetricKind getMetricKind() {
+		return metricKind;
+	}
+
+	public boolean isExpensive() {
+		return expensive;
+	}
 }
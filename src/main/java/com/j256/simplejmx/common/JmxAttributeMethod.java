@@ -40,4 +40,50 @@ public @interface JmxAttributeMethod {
 	 * Description of the attribute for jconsole. Default is something like: "someField attribute".
 	 */
 	public String description() default "";
+
+	/**
+	 * If this is set to a value greater than 0 then the value returned by the getter is cached for this number of
+	 * milliseconds. This is useful for getters that do expensive work when they are polled by a number of monitoring
+	 * systems. Only one of the concurrent requests that miss the cache calls the getter. Setting the attribute through
+	 * JMX clears the cache. Default is 0 which means no caching.
+	 */
+	public long cacheMillis() default 0;
+
+	/**
+	 * If this is set to a value greater than 0 then the getter is called on a separate bounded thread-pool and the JMX
+	 * request waits at most this number of milliseconds for it. If the getter takes longer, the last value that it
+	 * returned is served instead and the <tt>xxx.stale</tt> attribute is set to true. The <tt>xxx.ageMillis</tt>
+	 * attribute gives the age of the value. If the getter fails or times out 3 times in a row then it is not called
+	 * for 10 times this number of milliseconds. Default is 0 which means the getter is called on the JMX thread with no
+	 * limit.
+	 */
+	public long timeoutMillis() default 0;
+
+	/**
+	 * If this is set to true then the getter, which must return an array, a Map, or an Iterable, is not published as
+	 * one value that is sent whole to the client. Instead the number of elements is published as the
+	 * <tt>xxx.size</tt> attribute and the elements are read a page at a time through a cursor. See
+	 * {@link JmxPaging}. Paged attributes cannot have a setter. Default is false.
+	 */
+	public boolean paged() default false;
+
+	/**
+	 * Units of the value such as "ms" or "bytes" which are published in the <tt>units</tt> field of the attribute's
+	 * descriptor. It can be on either the getter or the setter. Default is none.
+	 */
+	public String unit() default "";
+
+	/**
+	 * Kind of metric that the value is which is published in the <tt>metricType</tt> field of the attribute's
+	 * descriptor so scrapers can find the counters and gauges without guessing. It can be on either the getter or the
+	 * setter. Default is {@link JmxMetricKind#UNKNOWN} which publishes nothing.
+	 */
+	public JmxMetricKind metricKind() default JmxMetricKind.UNKNOWN;
+
+	/**
+	 * Set to true if the getter is expensive so scrapers should poll it less often or not at all. This is published in
+	 * the <tt>expensive</tt> field of the attribute's descriptor. It can be on either the getter or the setter. Default
+	 * is false.
+	 */
+	public boolean expensive() default false;
 }
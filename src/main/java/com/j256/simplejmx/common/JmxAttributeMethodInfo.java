@@ -9,15 +9,47 @@ public class JmxAttributeMethodInfo {
 
 	public String methodName;
 	public String description;
+	public long cacheMillis;
+	public long timeoutMillis;
+	public boolean paged;
+	public String unit;
+	public JmxMetricKind metricKind = JmxMetricKind.UNKNOWN;
+	public boolean expensive;
 
 	public JmxAttributeMethodInfo(String methodName, String description) {
 		this.methodName = methodName;
 		this.description = description;
 	}
 
+	/**
+	 * @see JmxAttributeMethod#cacheMillis()
+	 */
+	public JmxAttributeMethodInfo(String methodName, String description, long cacheMillis) {
+		this.methodName = methodName;
+		this.description = description;
+		this.cacheMillis = cacheMillis;
+	}
+
+	/**
+	 * @see JmxAttributeMethod#cacheMillis()
+	 * @see JmxAttributeMethod#timeoutMillis()
+	 */
+	public JmxAttributeMethodInfo(String methodName, String description, long cacheMillis, long timeoutMillis) {
+		this.methodName = methodName;
+		this.description = description;
+		this.cacheMillis = cacheMillis;
+		this.timeoutMillis = timeoutMillis;
+	}
+
 	public JmxAttributeMethodInfo(String methodName, JmxAttributeMethod jmxAttribute) {
 		this.methodName = methodName;
 		this.description = jmxAttribute.description();
+		this.cacheMillis = jmxAttribute.cacheMillis();
+		this.timeoutMillis = jmxAttribute.timeoutMillis();
+		this.paged = jmxAttribute.paged();
+		this.unit = jmxAttribute.unit();
+		this.metricKind = jmxAttribute.metricKind();
+		this.expensive = jmxAttribute.expensive();
 	}
 
 	public String getMethodName() {
@@ -27,4 +59,40 @@ public class JmxAttributeMethodInfo {
 	public String getDescription() {
 		return description;
 	}
+
+	public long getCacheMillis() {
+		return cacheMillis;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @see JmxAttributeMethod#paged()
+	 */
+	public boolean isPaged() {
+		return paged;
+	}
+
+	/**
+	 * @see JmxAttributeMethod#unit()
+	 */
+	public String getUnit() {
+		return unit;
+	}
+
+	/**
+	 * @see JmxAttributeMethod#metricKind()
+	 */
+	public JmxMetricKind getMetricKind() {
+		return metricKind;
+	}
+
+	/**
+	 * @see JmxAttributeMethod#expensive()
+	 */
+	public boolean isExpensive() {
+		return expensive;
+	}
 }
@@ -0,0 +1,30 @@
+package com.j256.simplejmx.common;
+
+import java.util.Map;
+
+/**
+ * Implemented by a bean whose attributes are related, such as hits, misses, and total, so that a JMX client which asks
+ * for several of them at once with getAttributes gets values from the same instant. The bean is asked once for all of
+ * the values instead of once per attribute and it should read them under the lock that it updates them with.
+ * 
+ * <pre>
+ * public synchronized Map&lt;String, Object&gt; snapshotJmxAttributes(String[] attributeNames) {
+ *    Map&lt;String, Object&gt; values = new HashMap&lt;String, Object&gt;();
+ *    values.put("hits", hits);
+ *    values.put("misses", misses);
+ *    values.put("total", hits + misses);
+ *    return values;
+ * }
+ * </pre>
+ * 
+ * @author graywatson
+ */
+public interface JmxAttributeSnapshot {
+
+	/**
+	 * Return the current values of the attributes with the names. The attributes that are not in the returned map are
+	 * read one at a time as usual. The values are used in place of the getters and fields so attribute caching and
+	 * latency budgets do not apply to them.
+	 */
+	public Map<String, Object> snapshotJmxAttributes(String[] attributeNames);
+}
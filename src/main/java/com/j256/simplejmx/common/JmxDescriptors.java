@@ -0,0 +1,137 @@
+package com.j256.simplejmx.common;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import javax.management.Descriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+
+/**
+ * Names of the descriptor fields that the beans publish in their MBeanInfo along with the fingerprint of the MBeanInfo.
+ *
+ * <p>
+ * Each bean has a read-only {@link #FINGERPRINT_ATTRIBUTE} attribute which is a hash of the contents of its MBeanInfo.
+ * It only changes if the metadata changes, and all beans of the same class have the same fingerprint, so scrapers can
+ * read this one attribute and only call getMBeanInfo when they see a fingerprint that they have not seen before.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class JmxDescriptors {
+
+	/** standard descriptor field with the units of the attribute, see {@link JmxAttributeField#unit()} */
+	public static final String UNITS_FIELD = "units";
+	/** standard descriptor field with the {@link JmxMetricKind} of the attribute */
+	public static final String METRIC_TYPE_FIELD = "metricType";
+	/** descriptor field which is set to "true" on attributes that are expensive to get */
+	public static final String EXPENSIVE_FIELD = "expensive";
+	/** name of the attribute which returns the fingerprint of the MBeanInfo as a hex string */
+	public static final String FINGERPRINT_ATTRIBUTE = "mbeanInfo.fingerprint";
+	/** description of the fingerprint attribute */
+	public static final String FINGERPRINT_DESCRIPTION =
+			"Fingerprint of the MBeanInfo which changes only when the metadata changes";
+
+	private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+	/** we only need enough of the digest to make collisions unlikely */
+	private static final int FINGERPRINT_BYTES = 8;
+
+	private JmxDescriptors() {
+		// only for constants
+	}
+
+	/**
+	 * Return the fingerprint of the information which is the same in every JVM as long as the names, types,
+	 * descriptions, and descriptors of the class, attributes, operations, and notifications are the same. The order of
+	 * the attributes and operations does not matter.
+	 */
+	public static String fingerprint(MBeanInfo info) {
+		StringBuilder sb = new StringBuilder(1024);
+		sb.append(info.getClassName()).append('\n');
+		sb.append(info.getDescription()).append('\n');
+		appendDescriptor(sb, info.getDescriptor());
+		TreeSet<String> lines = new TreeSet<String>();
+		for (MBeanAttributeInfo attribute : info.getAttributes()) {
+			StringBuilder line = new StringBuilder();
+			line.append("attribute ").append(attribute.getName()).append(' ').append(attribute.getType());
+			line.append(' ').append(attribute.isReadable()).append(' ').append(attribute.isWritable());
+			line.append(' ').append(attribute.isIs()).append(' ').append(attribute.getDescription());
+			appendDescriptor(line, attribute.getDescriptor());
+			lines.add(line.toString());
+		}
+		for (MBeanOperationInfo operation : info.getOperations()) {
+			StringBuilder line = new StringBuilder();
+			line.append("operation ").append(operation.getName()).append(' ').append(operation.getReturnType());
+			line.append(' ').append(operation.getImpact()).append(' ').append(operation.getDescription());
+			appendParameters(line, operation.getSignature());
+			appendDescriptor(line, operation.getDescriptor());
+			lines.add(line.toString());
+		}
+		for (MBeanConstructorInfo constructor : info.getConstructors()) {
+			StringBuilder line = new StringBuilder();
+			line.append("constructor ").append(constructor.getName()).append(' ').append(constructor.getDescription());
+			appendParameters(line, constructor.getSignature());
+			appendDescriptor(line, constructor.getDescriptor());
+			lines.add(line.toString());
+		}
+		for (MBeanNotificationInfo notification : info.getNotifications()) {
+			StringBuilder line = new StringBuilder();
+			line.append("notification ").append(notification.getName()).append(' ');
+			line.append(notification.getDescription()).append(' ');
+			line.append(Arrays.toString(notification.getNotifTypes()));
+			appendDescriptor(line, notification.getDescriptor());
+			lines.add(line.toString());
+		}
+		for (String line : lines) {
+			sb.append(line).append('\n');
+		}
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			// can't happen since every JVM has to support SHA-1
+			throw new IllegalStateException("SHA-1 digest is not supported", e);
+		} catch (UnsupportedEncodingException e) {
+			// can't happen since every JVM has to support UTF-8
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+		char[] chars = new char[FINGERPRINT_BYTES * 2];
+		for (int i = 0; i < FINGERPRINT_BYTES; i++) {
+			chars[i * 2] = HEX_CHARS[(digest[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX_CHARS[digest[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	private static void appendParameters(StringBuilder sb, MBeanParameterInfo[] parameters) {
+		for (MBeanParameterInfo parameter : parameters) {
+			sb.append(' ').append(parameter.getName()).append(':').append(parameter.getType()).append(':');
+			sb.append(parameter.getDescription());
+		}
+	}
+
+	private static void appendDescriptor(StringBuilder sb, Descriptor descriptor) {
+		if (descriptor == null) {
+			return;
+		}
+		String[] fieldNames = descriptor.getFieldNames();
+		// the field names of descriptors are case insensitive so we sort them that way
+		Arrays.sort(fieldNames, String.CASE_INSENSITIVE_ORDER);
+		for (String fieldName : fieldNames) {
+			Object value = descriptor.getFieldValue(fieldName);
+			sb.append(' ').append(fieldName).append('=');
+			if (value instanceof Object[]) {
+				sb.append(Arrays.deepToString((Object[]) value));
+			} else {
+				sb.append(value);
+			}
+		}
+	}
+}
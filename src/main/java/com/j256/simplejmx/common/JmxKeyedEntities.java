@@ -0,0 +1,18 @@
+package com.j256.simplejmx.common;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the field or the method with no arguments which returns the Map of entities of a class with the
+ * {@link JmxKeyedResource} annotation. The Map is read each time that the bean is used so it can be replaced. It
+ * should be safe to iterate over while it is being changed, like a ConcurrentMap.
+ * 
+ * @author graywatson
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface JmxKeyedEntities {
+}
@@ -0,0 +1,64 @@
+package com.j256.simplejmx.common;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.j256.simplejmx.server.JmxServer;
+
+/**
+ * This is used instead of {@link JmxResource} on a class which manages a Map of entities such as cache regions or
+ * partitions. When it is passed to {@link JmxServer#register(Object)}, a single bean is registered which exposes the
+ * attributes of all of the entities so the number of beans stays the same as the number of entities grows. The Map
+ * is given by the field or method of the class with the {@link JmxKeyedEntities} annotation and the attributes are the
+ * {@link JmxAttributeField} and {@link JmxAttributeMethod} ones of the entity class.
+ * 
+ * <p>
+ * The bean has an <tt>entities</tt> attribute which is TabularData with a row per entity, a paged <tt>rows</tt>
+ * attribute for large maps, and the operations <tt>lookupEntity(key)</tt>,
+ * <tt>readEntityAttribute(key, attributeName)</tt>, <tt>writeEntityAttribute(key, attributeName, value)</tt>, and
+ * <tt>topEntities(attributeName, count)</tt> which returns the rows with the largest values, largest first. The keys
+ * and written values are passed as strings and are converted to the types of the Map key and the attribute.
+ * </p>
+ * 
+ * <pre>
+ * &#64;JmxKeyedResource(domainName = "j256", beanName = "regions", keyName = "region")
+ * public class RegionManager {
+ *    &#64;JmxKeyedEntities
+ *    private final ConcurrentMap&lt;String, Region&gt; regions = ...;
+ * }
+ * </pre>
+ * 
+ * @author graywatson
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE })
+public @interface JmxKeyedResource {
+
+	/**
+	 * Domain name of the object which turns into the top-level folder inside of jconsole. This must be specified.
+	 */
+	public String domainName();
+
+	/**
+	 * Name of the JMX bean in the jconsole folder it is in. Default is the class name.
+	 */
+	public String beanName() default "";
+
+	/**
+	 * Optional array of strings which translate into sub-folders below the domain-name. See
+	 * {@link JmxResource#folderNames()}.
+	 */
+	public String[] folderNames() default {};
+
+	/**
+	 * Name of the key item of the rows. Default is "key".
+	 */
+	public String keyName() default "key";
+
+	/**
+	 * Class whose attributes are exposed. Default is the value type of the Map.
+	 */
+	public Class<?> entityClass() default Object.class;
+}
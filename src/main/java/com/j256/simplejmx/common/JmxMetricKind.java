@@ -0,0 +1,42 @@
+package com.j256.simplejmx.common;
+
+/**
+ * The kind of metric that a numeric attribute holds which is published in the <tt>metricType</tt> field of the
+ * attribute's descriptor so that scrapers know how to treat it. See {@link JmxAttributeField#metricKind()} and
+ * {@link JmxAttributeMethod#metricKind()}.
+ * 
+ * @author graywatson
+ */
+public enum JmxMetricKind {
+	/**
+	 * Not a metric or the kind is not known. No descriptor field is published.
+	 */
+	UNKNOWN(null),
+	/**
+	 * Value which only goes up such as the number of requests.
+	 */
+	COUNTER("counter"),
+	/**
+	 * Value which goes up and down such as the size of a queue.
+	 */
+	GAUGE("gauge"),
+	/**
+	 * Summary of a distribution of values such as a latency percentile.
+	 */
+	HISTOGRAM("histogram"),
+	// end
+	;
+
+	private final String descriptorValue;
+
+	private JmxMetricKind(String descriptorValue) {
+		this.descriptorValue = descriptorValue;
+	}
+
+	/**
+	 * Return the value of the metricType descriptor field or null if none.
+	 */
+	public String getDescriptorValue() {
+		return descriptorValue;
+	}
+}
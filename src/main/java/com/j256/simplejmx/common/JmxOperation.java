@@ -78,6 +78,53 @@ public @interface JmxOperation {
 	 */
 	public OperationAction operationAction() default OperationAction.UNKNOWN;
 
+	/**
+	 * If this is set to a value greater than 0 then the result of the operation is cached for this number of
+	 * milliseconds if it is called with the same parameters. Only one of the concurrent requests that miss the cache
+	 * calls the method. This is only allowed if the {@link #operationAction()} is {@link OperationAction#INFO} since
+	 * other operations change something. Default is 0 which means no caching.
+	 */
+	public long cacheMillis() default 0;
+
+	/**
+	 * If this is set to a value greater than 0 then at most this number of calls of the operation run at the same time
+	 * for each registered object. Other calls wait for up to {@link #maxWaitMillis()} and are then rejected with a
+	 * MBeanException. The number of calls that had to wait and that were rejected are published as the
+	 * <tt>xxx.queued</tt> and <tt>xxx.rejected</tt> attributes. Default is 0 which means no limit.
+	 */
+	public int maxConcurrent() default 0;
+
+	/**
+	 * Number of milliseconds that a call waits for one of the {@link #maxConcurrent()} slots before it is rejected.
+	 * Default is 0 which means that calls are rejected right away if the slots are taken.
+	 */
+	public long maxWaitMillis() default 0;
+
+	/**
+	 * If this is set to a value greater than 0 then the operation is run on a thread-pool of its own and the JMX request
+	 * waits at most this number of milliseconds for it. After that the operation thread is interrupted and the request
+	 * fails with a MBeanException. The number of calls that timed out is published as the <tt>xxx.timedOut</tt>
+	 * attribute. Default is 0 which means the operation is run on the JMX thread with no limit.
+	 */
+	public long timeoutMillis() default 0;
+
+	/**
+	 * If this is set to true then the operation is started as a job on a separate thread-pool and the JMX request
+	 * returns the long id of the job right away. The job can be polled with the <tt>jobStatus</tt>,
+	 * <tt>jobProgress</tt>, and <tt>jobResult</tt> operations that are added to the bean and interrupted with the
+	 * <tt>cancelJob</tt> operation. The method can report its progress with
+	 * {@link com.j256.simplejmx.server.JmxJobProgress}. This cannot be combined with {@link #cacheMillis()} or
+	 * {@link #timeoutMillis()}. Default is false.
+	 */
+	public boolean async() default false;
+
+	/**
+	 * If this is set to true then the result of the operation, which must be an array, a Map, or an Iterable, is not
+	 * sent whole to the client. Instead the JMX request returns the long id of a cursor and the elements are read a
+	 * page at a time. See {@link JmxPaging}. This cannot be combined with {@link #async()}. Default is false.
+	 */
+	public boolean paged() default false;
+
 	/**
 	 * @deprecated Should use the enumerated {@link #operationAction()}.
 	 */
@@ -16,6 +16,12 @@ public class JmxOperationInfo {
 	public String[] parameterDescriptions;
 	public OperationAction action;
 	public String description;
+	public long cacheMillis;
+	public int maxConcurrent;
+	public long maxWaitMillis;
+	public long timeoutMillis;
+	public boolean async;
+	public boolean paged;
 
 	public JmxOperationInfo(String methodName, String[] parameterNames, String[] parameterDescriptions,
 			OperationAction action, String description) {
@@ -26,6 +32,30 @@ public class JmxOperationInfo {
 		this.description = description;
 	}
 
+	/**
+	 * @see JmxOperation#cacheMillis()
+	 */
+	public JmxOperationInfo(String methodName, String[] parameterNames, String[] parameterDescriptions,
+			OperationAction action, String description, long cacheMillis) {
+		this(methodName, parameterNames, parameterDescriptions, action, description);
+		this.cacheMillis = cacheMillis;
+	}
+
+	/**
+	 * @see JmxOperation#cacheMillis()
+	 * @see JmxOperation#maxConcurrent()
+	 * @see JmxOperation#maxWaitMillis()
+	 * @see JmxOperation#timeoutMillis()
+	 */
+	public JmxOperationInfo(String methodName, String[] parameterNames, String[] parameterDescriptions,
+			OperationAction action, String description, long cacheMillis, int maxConcurrent, long maxWaitMillis,
+			long timeoutMillis) {
+		this(methodName, parameterNames, parameterDescriptions, action, description, cacheMillis);
+		this.maxConcurrent = maxConcurrent;
+		this.maxWaitMillis = maxWaitMillis;
+		this.timeoutMillis = timeoutMillis;
+	}
+
 	public JmxOperationInfo(String methodName, JmxOperation jmxOperation) {
 		this.methodName = methodName;
 		this.parameterNames = jmxOperation.parameterNames();
@@ -38,6 +68,12 @@ public class JmxOperationInfo {
 			this.action = OperationAction.fromActionValue(actionVal);
 		}
 		this.description = jmxOperation.description();
+		this.cacheMillis = jmxOperation.cacheMillis();
+		this.maxConcurrent = jmxOperation.maxConcurrent();
+		this.maxWaitMillis = jmxOperation.maxWaitMillis();
+		this.timeoutMillis = jmxOperation.timeoutMillis();
+		this.async = jmxOperation.async();
+		this.paged = jmxOperation.paged();
 	}
 
 	public String getMethodName() {
@@ -60,6 +96,36 @@ public class JmxOperationInfo {
 		return description;
 	}
 
+	public long getCacheMillis() {
+		return cacheMillis;
+	}
+
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @see JmxOperation#async()
+	 */
+	public boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * @see JmxOperation#paged()
+	 */
+	public boolean isPaged() {
+		return paged;
+	}
+
 	/**
 	 * An enumerated version of the constants from {@link MBeanOperationInfo}.
 	 */
@@ -0,0 +1,37 @@
+package com.j256.simplejmx.common;
+
+/**
+ * Names that are shared by the server and the client for paged attributes and operations. See
+ * {@link JmxAttributeMethod#paged()} and {@link JmxOperation#paged()}.
+ *
+ * <p>
+ * A paged attribute is not published as itself but as an <tt>xxx.size</tt> attribute which gives the number of
+ * elements. Its elements are read by opening a cursor with <tt>openCursor(attributeName)</tt>. A paged operation
+ * returns the id of a cursor instead of its result. The pages are read with <tt>nextPage(cursorId, limit)</tt> which
+ * returns an array with at most limit elements. Once a page has fewer than limit elements the cursor is closed. Map
+ * entries are returned as 2 element arrays of the key and value.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class JmxPaging {
+
+	/** openCursor(String attributeName) returns the long id of a cursor over the elements of a paged attribute */
+	public static final String OPEN_CURSOR_OPERATION = "openCursor";
+	/** nextPage(long cursorId, int limit) returns the next array of elements */
+	public static final String NEXT_PAGE_OPERATION = "nextPage";
+	/** cursorSize(long cursorId) returns the number of elements of the cursor or -1 if unknown */
+	public static final String CURSOR_SIZE_OPERATION = "cursorSize";
+	/** closeCursor(long cursorId) frees the cursor before it is finished */
+	public static final String CLOSE_CURSOR_OPERATION = "closeCursor";
+	/** suffix of the attribute which gives the number of elements of a paged attribute */
+	public static final String SIZE_SUFFIX = ".size";
+	/** descriptor field which is set to "true" on the paged operations */
+	public static final String PAGED_DESCRIPTOR_FIELD = "paged";
+	/** larger limits are reduced to this */
+	public static final int MAX_PAGE_SIZE = 10000;
+
+	private JmxPaging() {
+		// only for constants
+	}
+}
@@ -0,0 +1,376 @@
+package com.j256.simplejmx.common;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Values of a relative-error quantile sketch like DDSketch at one point in time. The values are counted in buckets
+ * whose bounds go up by a factor of gamma = (1 + accuracy) / (1 - accuracy) so any quantile is within the relative
+ * accuracy of the real one. Since the buckets of sketches with the same accuracy line up, they can be merged by adding
+ * their counts which gives the quantiles of all of their values. This is what makes percentiles of a fleet of JVMs
+ * possible which cannot be had by averaging their own percentiles.
+ *
+ * <p>
+ * The summary of a JmxQuantileSketch field is published as a byte[] attribute in the compact form from
+ * {@link #toBytes()}. Only the buckets that have values are written with the deltas of their indexes and their counts
+ * as variable length numbers so it is typically a few hundred bytes. See
+ * {@link com.j256.simplejmx.client.JmxClient#mergeQuantileSketches(Iterable, javax.management.ObjectName, String)}.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class JmxQuantileSummary {
+
+	private static final int FORMAT_VERSION = 1;
+	/** so corrupt or hostile sketches don't use up the memory when they are merged */
+	private static final int MAX_BUCKET_SPAN = 1 << 20;
+	private static final int[] NO_INDEXES = new int[0];
+	private static final long[] NO_COUNTS = new long[0];
+
+	private final double relativeAccuracy;
+	private final double logGamma;
+	private final long zeroCount;
+	/** sorted indexes of the buckets that have values */
+	private final int[] indexes;
+	private final long[] counts;
+	private final long count;
+	private final double min;
+	private final double max;
+
+	/**
+	 * @param relativeAccuracy
+	 *            Relative accuracy of the sketch such as 0.01 for 1%.
+	 * @param zeroCount
+	 *            Number of values that were 0 or less.
+	 * @param indexes
+	 *            Sorted indexes of the buckets that have values. Bucket i holds the values in (gamma^(i-1), gamma^i].
+	 * @param counts
+	 *            Number of values in each of the buckets.
+	 * @param min
+	 *            Smallest value or 0 if none.
+	 * @param max
+	 *            Largest value or 0 if none.
+	 */
+	public JmxQuantileSummary(double relativeAccuracy, long zeroCount, int[] indexes, long[] counts, double min,
+			double max) {
+		if (!(relativeAccuracy > 0.0 && relativeAccuracy < 1.0)) {
+			throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+		}
+		if (indexes.length != counts.length) {
+			throw new IllegalArgumentException("Number of indexes " + indexes.length + " does not match counts "
+					+ counts.length);
+		}
+		if (zeroCount < 0) {
+			throw new IllegalArgumentException("Zero count must not be negative: " + zeroCount);
+		}
+		this.relativeAccuracy = relativeAccuracy;
+		this.logGamma = logGamma(relativeAccuracy);
+		this.zeroCount = zeroCount;
+		this.indexes = indexes;
+		this.counts = counts;
+		long total = zeroCount;
+		for (int i = 0; i < counts.length; i++) {
+			if (i > 0 && indexes[i] <= indexes[i - 1]) {
+				throw new IllegalArgumentException("Bucket indexes are not sorted: " + Arrays.toString(indexes));
+			}
+			if (counts[i] < 0) {
+				throw new IllegalArgumentException("Bucket count must not be negative: " + counts[i]);
+			}
+			total += counts[i];
+			if (total < 0) {
+				throw new IllegalArgumentException("Total of the bucket counts overflows");
+			}
+		}
+		if (indexes.length > 0) {
+			checkBucketSpan(indexes[0], indexes[indexes.length - 1]);
+		}
+		this.count = total;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Return the index of the bucket of a positive value for the relative accuracy.
+	 */
+	public static int bucketIndex(double value, double relativeAccuracy) {
+		return (int) Math.ceil(Math.log(value) / logGamma(relativeAccuracy));
+	}
+
+	/**
+	 * Read a summary from the form of {@link #toBytes()}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the bytes are not a summary.
+	 */
+	public static JmxQuantileSummary fromBytes(byte[] bytes) {
+		Reader reader = new Reader(bytes);
+		int version = (int) reader.readVarLong();
+		if (version != FORMAT_VERSION) {
+			throw new IllegalArgumentException("Unknown quantile sketch format version: " + version);
+		}
+		double relativeAccuracy = reader.readDouble();
+		long zeroCount = reader.readVarLong();
+		double min = reader.readDouble();
+		double max = reader.readDouble();
+		int bucketCount = (int) reader.readVarLong();
+		if (bucketCount < 0 || bucketCount > bytes.length) {
+			throw new IllegalArgumentException("Invalid number of buckets in quantile sketch: " + bucketCount);
+		}
+		int[] indexes = new int[bucketCount];
+		long[] counts = new long[bucketCount];
+		long index = 0;
+		for (int i = 0; i < bucketCount; i++) {
+			index += zigZagDecode(reader.readVarLong());
+			if (index < Integer.MIN_VALUE || index > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Invalid bucket index in quantile sketch: " + index);
+			}
+			indexes[i] = (int) index;
+			counts[i] = reader.readVarLong();
+		}
+		if (reader.offset != bytes.length) {
+			throw new IllegalArgumentException("Extra bytes at the end of the quantile sketch");
+		}
+		return new JmxQuantileSummary(relativeAccuracy, zeroCount, indexes, counts, min, max);
+	}
+
+	/**
+	 * Merge summaries with the same relative accuracy into one that has all of their values. This is linear in the
+	 * number of buckets.
+	 */
+	public static JmxQuantileSummary merge(List<JmxQuantileSummary> summaries) {
+		if (summaries.isEmpty()) {
+			throw new IllegalArgumentException("No quantile summaries to merge");
+		}
+		double relativeAccuracy = summaries.get(0).relativeAccuracy;
+		long zeroCount = 0;
+		int lowestIndex = Integer.MAX_VALUE;
+		int highestIndex = Integer.MIN_VALUE;
+		double min = Double.MAX_VALUE;
+		double max = 0.0;
+		for (JmxQuantileSummary summary : summaries) {
+			if (summary.relativeAccuracy != relativeAccuracy) {
+				throw new IllegalArgumentException("Cannot merge quantile sketch with accuracy "
+						+ summary.relativeAccuracy + " with " + relativeAccuracy);
+			}
+			zeroCount += summary.zeroCount;
+			if (summary.indexes.length > 0) {
+				lowestIndex = Math.min(lowestIndex, summary.indexes[0]);
+				highestIndex = Math.max(highestIndex, summary.indexes[summary.indexes.length - 1]);
+			}
+			if (summary.count > 0) {
+				min = Math.min(min, summary.min);
+				max = Math.max(max, summary.max);
+			}
+		}
+		if (lowestIndex > highestIndex) {
+			return new JmxQuantileSummary(relativeAccuracy, zeroCount, NO_INDEXES, NO_COUNTS, (zeroCount == 0 ? 0.0
+					: min), max);
+		}
+		// the indexes of the buckets are within a few thousand of each other so we add them up in an array
+		checkBucketSpan(lowestIndex, highestIndex);
+		long[] denseCounts = new long[highestIndex - lowestIndex + 1];
+		for (JmxQuantileSummary summary : summaries) {
+			for (int i = 0; i < summary.indexes.length; i++) {
+				denseCounts[summary.indexes[i] - lowestIndex] += summary.counts[i];
+			}
+		}
+		int bucketCount = 0;
+		for (long denseCount : denseCounts) {
+			if (denseCount != 0) {
+				bucketCount++;
+			}
+		}
+		int[] indexes = new int[bucketCount];
+		long[] counts = new long[bucketCount];
+		int bucket = 0;
+		for (int i = 0; i < denseCounts.length; i++) {
+			if (denseCounts[i] != 0) {
+				indexes[bucket] = lowestIndex + i;
+				counts[bucket] = denseCounts[i];
+				bucket++;
+			}
+		}
+		return new JmxQuantileSummary(relativeAccuracy, zeroCount, indexes, counts, min, max);
+	}
+
+	/**
+	 * Merge this summary with another one.
+	 */
+	public JmxQuantileSummary merge(JmxQuantileSummary other) {
+		List<JmxQuantileSummary> summaries = new ArrayList<JmxQuantileSummary>(2);
+		summaries.add(this);
+		summaries.add(other);
+		return merge(summaries);
+	}
+
+	/**
+	 * Return the summary in the compact form that is published as the sketch attribute.
+	 */
+	public byte[] toBytes() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(32 + indexes.length * 3);
+		writeVarLong(out, FORMAT_VERSION);
+		writeDouble(out, relativeAccuracy);
+		writeVarLong(out, zeroCount);
+		writeDouble(out, min);
+		writeDouble(out, max);
+		writeVarLong(out, indexes.length);
+		int previousIndex = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			writeVarLong(out, zigZagEncode(indexes[i] - previousIndex));
+			writeVarLong(out, counts[i]);
+			previousIndex = indexes[i];
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Return the value that the fraction of the values are at or below, within the relative accuracy, or 0 if there
+	 * are no values.
+	 *
+	 * @param quantile
+	 *            Fraction from 0 to 1 such as 0.99 for the 99th percentile.
+	 */
+	public double getValueAtQuantile(double quantile) {
+		if (quantile < 0.0 || quantile > 1.0) {
+			throw new IllegalArgumentException("Quantile must be from 0 to 1: " + quantile);
+		}
+		if (count == 0) {
+			return 0.0;
+		}
+		long rank = (long) (quantile * (count - 1));
+		if (rank < zeroCount) {
+			return 0.0;
+		}
+		long seen = zeroCount;
+		for (int i = 0; i < indexes.length; i++) {
+			seen += counts[i];
+			if (seen > rank) {
+				// the middle of the bucket in relative terms
+				double value = 2.0 * Math.exp(indexes[i] * logGamma) / (1.0 + Math.exp(logGamma));
+				return Math.max(min, Math.min(value, max));
+			}
+		}
+		return max;
+	}
+
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+
+	/**
+	 * Return the number of values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Return the number of values that were 0 or less.
+	 */
+	public long getZeroCount() {
+		return zeroCount;
+	}
+
+	/**
+	 * Return the smallest value or 0 if none.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Return the largest value or 0 if none.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Return the number of buckets that have values.
+	 */
+	public int getBucketCount() {
+		return indexes.length;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", p50=" + getValueAtQuantile(0.5) + ", p99=" + getValueAtQuantile(0.99);
+	}
+
+	private static double logGamma(double relativeAccuracy) {
+		return Math.log((1.0 + relativeAccuracy) / (1.0 - relativeAccuracy));
+	}
+
+	private static void checkBucketSpan(int lowestIndex, int highestIndex) {
+		long span = (long) highestIndex - lowestIndex + 1;
+		if (span > MAX_BUCKET_SPAN) {
+			throw new IllegalArgumentException("Bucket indexes from " + lowestIndex + " to " + highestIndex
+					+ " span more than " + MAX_BUCKET_SPAN + " buckets");
+		}
+	}
+
+	private static long zigZagEncode(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long zigZagDecode(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static void writeDouble(ByteArrayOutputStream out, double value) {
+		long bits = Double.doubleToLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			out.write((int) (bits >>> shift));
+		}
+	}
+
+	/**
+	 * Reads the numbers from the bytes.
+	 */
+	private static class Reader {
+
+		private final byte[] bytes;
+		int offset;
+
+		public Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		public long readVarLong() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Variable length number is too long in quantile sketch");
+		}
+
+		public double readDouble() {
+			long bits = 0;
+			for (int i = 0; i < 8; i++) {
+				bits = (bits << 8) | (readByte() & 0xFF);
+			}
+			return Double.longBitsToDouble(bits);
+		}
+
+		private byte readByte() {
+			if (offset >= bytes.length) {
+				throw new IllegalArgumentException("Quantile sketch is truncated at byte " + offset);
+			}
+			return bytes[offset++];
+		}
+	}
+}
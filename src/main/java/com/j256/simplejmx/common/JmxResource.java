@@ -72,4 +72,22 @@ public @interface JmxResource {
 	 * Description of the class for jconsole. Default is something like: "Information about class-name".
 	 */
 	public String description() default "";
+
+	/**
+	 * If this is set to true then the attribute values and operation results are converted to open types like MXBeans
+	 * do: classes with getters turn into CompositeData, Maps into TabularData, and Collections into arrays. Generic JMX
+	 * clients which do not have the classes of the values can then read them. The MBeanInfo gives the open type class
+	 * names and has "openType" and "originalType" descriptor fields. Operation parameters and the elements of paged
+	 * results are not converted. Attributes with CompositeData values cannot be writable. Default is false.
+	 */
+	public boolean openTypes() default false;
+
+	/**
+	 * Set to true if the class is an immutable snapshot of configuration which is registered inside of a
+	 * {@link com.j256.simplejmx.server.JmxConfig}. Setting attributes, including a whole batch with setAttributes, is
+	 * done on a copy of the current snapshot which is then published atomically so the application always reads a
+	 * consistent configuration with {@link com.j256.simplejmx.server.JmxConfig#get()}. The writable fields can be final
+	 * and the class needs a no-argument constructor, which can be private, so it can be copied. Default is false.
+	 */
+	public boolean configSnapshot() default false;
 }
@@ -0,0 +1,30 @@
+package com.j256.simplejmx.common;
+
+/**
+ * Names that are shared by the server and the client for invoking operations with string arguments in one round trip.
+ *
+ * <p>
+ * Without this, a client that only has strings, like the command line client, has to get the MBeanInfo to learn the
+ * parameter types, convert the strings, and then invoke. The beans that are registered with
+ * {@link com.j256.simplejmx.server.ReflectionMbean} instead take <tt>invokeWithStrings(operationName, arguments)</tt>
+ * and pick the overload of the operation with the same number of parameters whose types the strings convert to. The
+ * conversions are the same ones the client does: primitives and their wrappers, String, enums, and classes with a
+ * static valueOf(String) method or a String constructor. This operation is not listed in the MBeanInfo. Clients send
+ * it without asking first. If it fails, the descriptor of the MBeanInfo has {@link #DESCRIPTOR_FIELD} set to "true"
+ * when the bean takes it so the client can tell a failed operation from a bean that does not know the string
+ * invocation.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class JmxStringInvocation {
+
+	/** invokeWithStrings(String operationName, String[] arguments) returns the result of the operation */
+	public static final String OPERATION_NAME = "invokeWithStrings";
+	/** descriptor field of the MBeanInfo which is set to "true" if the bean takes the string invocation operation */
+	public static final String DESCRIPTOR_FIELD = "stringInvocation";
+
+	private JmxStringInvocation() {
+		// only for constants
+	}
+}
@@ -95,6 +95,20 @@ public class ObjectNameUtil {
 		return makeObjectName(domainName, beanName, null, folderNameStrings);
 	}
 
+	/**
+	 * Constructs an object-name from a domain-name, object-name, and folder-names.
+	 * 
+	 * @param domainName
+	 *            This is the top level folder name for the beans.
+	 * @param beanName
+	 *            This is the bean name in the lowest folder level.
+	 * @param folderNames
+	 *            These can be used to setup folders inside of the top folder. Can be null if none.
+	 */
+	public static ObjectName makeObjectName(String domainName, String beanName, JmxFolderName[] folderNames) {
+		return makeObjectName(domainName, beanName, folderNames, null);
+	}
+
 	/**
 	 * Constructs an object-name from a domain-name and object-name.
 	 * 
@@ -110,8 +124,8 @@ public class ObjectNameUtil {
 	}
 
 	/**
-	 * Constructs an object-name from an object that is detected either having the {@link JmxResource} annotation or
-	 * implementing {@link JmxSelfNaming}.
+	 * Constructs an object-name from an object that is detected either having the {@link JmxResource} or
+	 * {@link JmxKeyedResource} annotation or implementing {@link JmxSelfNaming}.
 	 * 
 	 * @param obj
 	 *            Object for which we are creating our ObjectName
@@ -121,6 +135,10 @@ public class ObjectNameUtil {
 		if (obj instanceof JmxSelfNaming) {
 			return makeObjectName(jmxResource, (JmxSelfNaming) obj);
 		} else {
+			JmxKeyedResource keyedResource = obj.getClass().getAnnotation(JmxKeyedResource.class);
+			if (jmxResource == null && keyedResource != null) {
+				return makeObjectName(keyedResource, obj);
+			}
 			if (jmxResource == null) {
 				throw new IllegalArgumentException(
 						"Registered class must either implement JmxSelfNaming or have JmxResource annotation");
@@ -129,6 +147,18 @@ public class ObjectNameUtil {
 		}
 	}
 
+	private static ObjectName makeObjectName(JmxKeyedResource keyedResource, Object obj) {
+		if (isEmpty(keyedResource.domainName())) {
+			throw new IllegalArgumentException(
+					"Could not create ObjectName because domain name not specified in @JmxKeyedResource");
+		}
+		String beanName = keyedResource.beanName();
+		if (isEmpty(beanName)) {
+			beanName = obj.getClass().getSimpleName();
+		}
+		return makeObjectName(keyedResource.domainName(), beanName, null, keyedResource.folderNames());
+	}
+
 	private static ObjectName makeObjectName(String domainName, String beanName, JmxFolderName[] folderNames,
 			String[] folderNameStrings) {
 		// j256:00=clients,name=Foo
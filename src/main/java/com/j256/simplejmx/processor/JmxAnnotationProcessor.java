@@ -0,0 +1,922 @@
+package com.j256.simplejmx.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import com.j256.simplejmx.common.JmxAttributeField;
+import com.j256.simplejmx.common.JmxAttributeFieldInfo;
+import com.j256.simplejmx.common.JmxAttributeMethod;
+import com.j256.simplejmx.common.JmxAttributeSnapshot;
+import com.j256.simplejmx.common.JmxDescriptors;
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.common.JmxOperation;
+import com.j256.simplejmx.common.JmxOperationInfo;
+import com.j256.simplejmx.common.JmxOperationInfo.OperationAction;
+import com.j256.simplejmx.common.JmxResource;
+import com.j256.simplejmx.server.JmxServer;
+import com.j256.simplejmx.server.JmxMetric;
+import com.j256.simplejmx.server.JmxTunable;
+import com.j256.simplejmx.server.ReflectionMbean;
+
+/**
+ * Annotation processor which checks the {@link JmxResource}, {@link JmxAttributeField}, {@link JmxAttributeMethod}, and
+ * {@link JmxOperation} annotations at compile time and generates a DynamicMBean adapter for each of the classes that
+ * use them. The naming rules that {@link ReflectionMbean} checks at registration time (the get/set/is prefixes, the
+ * arguments, and the return types) are reported as compile errors instead.
+ *
+ * <p>
+ * The adapter for <tt>com.foo.Bar</tt> is generated as <tt>com.foo.Bar$$JmxAdapter</tt>. It calls the getters, setters,
+ * fields, and operations directly so there is no reflection when the object is registered or when it is called.
+ * Private fields are accessed through method-handles which are resolved once when the adapter class is loaded.
+ * {@link JmxServer#register(Object)} uses the adapter if it finds it and falls back to {@link ReflectionMbean}
+ * otherwise. No adapter is generated for private classes, for classes with static attributes or operations, or for
+ * classes that use the cacheMillis, timeoutMillis, maxConcurrent, async, or paged settings.
+ * </p>
+ *
+ * <p>
+ * The processor is not registered as a service so it has to be turned on with the <tt>-processor</tt> javac argument
+ * or with the maven-compiler-plugin configuration:
+ *
+ * <pre>
+ * &lt;annotationProcessors&gt;
+ *    &lt;annotationProcessor&gt;com.j256.simplejmx.processor.JmxAnnotationProcessor&lt;/annotationProcessor&gt;
+ * &lt;/annotationProcessors&gt;
+ * </pre>
+ *
+ * </p>
+ *
+ * @author graywatson
+ */
+@SupportedAnnotationTypes({ "com.j256.simplejmx.common.JmxResource", "com.j256.simplejmx.common.JmxAttributeField",
+		"com.j256.simplejmx.common.JmxAttributeMethod", "com.j256.simplejmx.common.JmxOperation" })
+public class JmxAnnotationProcessor extends AbstractProcessor {
+
+	private final Set<String> generatedClasses = new HashSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Set<TypeElement> classes = new LinkedHashSet<TypeElement>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(JmxResource.class)) {
+			if (element.getKind() == ElementKind.CLASS) {
+				classes.add((TypeElement) element);
+			}
+		}
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() == ElementKind.FIELD || element.getKind() == ElementKind.METHOD) {
+					Element enclosing = element.getEnclosingElement();
+					if (enclosing.getKind() == ElementKind.CLASS) {
+						classes.add((TypeElement) enclosing);
+					}
+				}
+			}
+		}
+		for (TypeElement clazz : classes) {
+			if (clazz.getModifiers().contains(Modifier.ABSTRACT)) {
+				// we can't register an abstract class but we still check its members
+				discoverClass(clazz);
+				continue;
+			}
+			ClassInfo classInfo = discoverClass(clazz);
+			if (classInfo != null && generatedClasses.add(clazz.getQualifiedName().toString())) {
+				writeAdapter(classInfo);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check the annotations on the class and collect the attributes and operations. Returns null if there were errors
+	 * or if we cannot generate an adapter for the class.
+	 */
+	private ClassInfo discoverClass(TypeElement clazz) {
+		ClassInfo classInfo = new ClassInfo(clazz);
+		boolean ok = true;
+		boolean accessible = isAccessible(clazz);
+		JmxResource jmxResource = clazz.getAnnotation(JmxResource.class);
+		boolean configSnapshot = (jmxResource != null && jmxResource.configSnapshot());
+		if (configSnapshot || (jmxResource != null && jmxResource.openTypes())) {
+			classInfo.reflectionOnly = true;
+		}
+		// the adapters read the attributes one at a time
+		TypeElement snapshotType =
+				processingEnv.getElementUtils().getTypeElement(JmxAttributeSnapshot.class.getName());
+		if (snapshotType != null
+				&& processingEnv.getTypeUtils().isAssignable(clazz.asType(),
+						processingEnv.getTypeUtils().erasure(snapshotType.asType()))) {
+			classInfo.reflectionOnly = true;
+		}
+
+		for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(clazz))) {
+			JmxAttributeMethod attributeMethod = method.getAnnotation(JmxAttributeMethod.class);
+			JmxOperation operation = method.getAnnotation(JmxOperation.class);
+			if (attributeMethod == null && operation == null) {
+				continue;
+			}
+			if (!method.getModifiers().contains(Modifier.PUBLIC)) {
+				// like Class.getMethods(), we only pick up the public methods
+				continue;
+			}
+			if (method.getModifiers().contains(Modifier.STATIC)) {
+				accessible = false;
+			}
+			if (attributeMethod != null) {
+				ok &= discoverAttributeMethod(classInfo, method, attributeMethod);
+			}
+			if (operation != null) {
+				ok &= discoverOperation(classInfo, method, operation);
+			}
+		}
+
+		for (VariableElement field : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+			JmxAttributeField attributeField = field.getAnnotation(JmxAttributeField.class);
+			if (attributeField == null) {
+				continue;
+			}
+			JmxAttributeFieldInfo fieldInfo = new JmxAttributeFieldInfo(field.getSimpleName().toString(), attributeField);
+			boolean tunable =
+					processingEnv.getTypeUtils().erasure(field.asType()).toString().equals(JmxTunable.class.getName());
+			if (tunable) {
+				// the value of the tunable is set and not the field
+				classInfo.reflectionOnly = true;
+			}
+			if (isMetric(field)) {
+				// the field is exposed as a number of attributes
+				classInfo.reflectionOnly = true;
+			}
+			// config snapshots are copied before they are set so their fields can be final
+			if (fieldInfo.isWritable() && field.getModifiers().contains(Modifier.FINAL) && !configSnapshot
+					&& !tunable) {
+				error(field, "Field is marked as writable but it is final");
+				ok = false;
+			}
+			if (field.getModifiers().contains(Modifier.STATIC)) {
+				accessible = false;
+			}
+			classInfo.fields.add(new FieldInfo(field, fieldInfo));
+		}
+
+		if (!ok) {
+			return null;
+		}
+		for (MethodAttributeInfo methodInfo : classInfo.methodAttributes.values()) {
+			if (methodInfo.getter != null && methodInfo.setter != null
+					&& !processingEnv.getTypeUtils().isSameType(methodInfo.getter.getReturnType(),
+							methodInfo.setter.getParameters().get(0).asType())) {
+				warning(methodInfo.setter, "Setter type does not match the type returned by the getter");
+			}
+		}
+		if (!accessible) {
+			processingEnv.getMessager().printMessage(Kind.NOTE,
+					"Not generating a JMX adapter because the class is private or some of its JMX members are static. "
+							+ "The class will be exposed through reflection.", clazz);
+			return null;
+		}
+		if (classInfo.reflectionOnly) {
+			/*
+			 * caching, getter budgets, operation limits, jobs, cursors, open types, config snapshots, and tunables are
+			 * done by ReflectionMbean
+			 */
+			processingEnv.getMessager().printMessage(Kind.NOTE,
+					"Not generating a JMX adapter because the class uses open types, is a config snapshot, has "
+							+ "tunables, or some of the JMX members use caching, timeouts, limits, async, or paging. "
+							+ "The class will be exposed through reflection.", clazz);
+			return null;
+		}
+		return classInfo;
+	}
+
+	private boolean discoverAttributeMethod(ClassInfo classInfo, ExecutableElement method,
+			JmxAttributeMethod attributeMethod) {
+		String methodName = method.getSimpleName().toString();
+		TypeMirror returnType = method.getReturnType();
+		int paramCount = method.getParameters().size();
+		boolean isIs = methodName.startsWith("is");
+		if (isIs && !isBoolean(returnType)) {
+			error(method, "Method starts with 'is' but does not return a boolean or Boolean class");
+			return false;
+		}
+		boolean isGetter = (isIs || methodName.startsWith("get"));
+		if (!isGetter && !methodName.startsWith("set")) {
+			error(method, "Method is marked as an attribute but does not start with 'get' or 'set'");
+			return false;
+		}
+		if ((isIs && methodName.length() < 3) || (!isIs && methodName.length() < 4)) {
+			error(method, "Method has a name that is too short");
+			return false;
+		}
+		if (isGetter) {
+			if (paramCount != 0) {
+				error(method, "Method starts with 'get' but has arguments");
+				return false;
+			}
+			if (returnType.getKind() == TypeKind.VOID) {
+				error(method, "Method starts with 'get' but does not return anything");
+				return false;
+			}
+		} else {
+			if (paramCount != 1) {
+				error(method, "Method starts with 'set' but does not have 1 argument");
+				return false;
+			}
+			if (returnType.getKind() != TypeKind.VOID) {
+				error(method, "Method starts with 'set' but does not return void");
+				return false;
+			}
+			if (attributeMethod.cacheMillis() > 0 || attributeMethod.timeoutMillis() > 0 || attributeMethod.paged()) {
+				error(method,
+						"Method is a setter but cacheMillis, timeoutMillis, and paged are only allowed on getters");
+				return false;
+			}
+		}
+
+		String varName;
+		if (isIs) {
+			varName = Character.toLowerCase(methodName.charAt(2)) + methodName.substring(3);
+		} else {
+			varName = Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4);
+		}
+		MethodAttributeInfo methodInfo = classInfo.methodAttributes.get(varName);
+		if (methodInfo == null) {
+			methodInfo = new MethodAttributeInfo(varName, attributeMethod.description());
+			classInfo.methodAttributes.put(varName, methodInfo);
+		}
+		methodInfo.addMetricInfo(attributeMethod);
+		if (isGetter) {
+			methodInfo.getter = method;
+			if (attributeMethod.cacheMillis() > 0 || attributeMethod.timeoutMillis() > 0 || attributeMethod.paged()) {
+				classInfo.reflectionOnly = true;
+			}
+		} else {
+			methodInfo.setter = method;
+		}
+		return true;
+	}
+
+	private boolean discoverOperation(ClassInfo classInfo, ExecutableElement method, JmxOperation operation) {
+		String methodName = method.getSimpleName().toString();
+		if (methodName.startsWith("get") || methodName.startsWith("is") || methodName.startsWith("set")) {
+			error(method, "Operation method cannot start with 'get', 'is', or 'set'.  Did you use the wrong annotation?");
+			return false;
+		}
+		JmxOperationInfo operationInfo = new JmxOperationInfo(methodName, operation);
+		if (operationInfo.getCacheMillis() > 0) {
+			if (operationInfo.getAction() != OperationAction.INFO) {
+				error(method, "Operation has cacheMillis but its operationAction is not INFO");
+				return false;
+			}
+			classInfo.reflectionOnly = true;
+		}
+		if (operationInfo.getMaxWaitMillis() > 0 && operationInfo.getMaxConcurrent() <= 0) {
+			error(method, "Operation has maxWaitMillis but no maxConcurrent limit");
+			return false;
+		}
+		if (operationInfo.isAsync()
+				&& (operationInfo.getCacheMillis() > 0 || operationInfo.getTimeoutMillis() > 0 || operationInfo
+						.isPaged())) {
+			error(method, "Operation is async so it cannot have cacheMillis, timeoutMillis, or be paged");
+			return false;
+		}
+		if (operationInfo.getMaxConcurrent() > 0 || operationInfo.getTimeoutMillis() > 0 || operationInfo.isAsync()
+				|| operationInfo.isPaged()) {
+			classInfo.reflectionOnly = true;
+		}
+		classInfo.operations.add(new OperationInfo(method, operationInfo));
+		return true;
+	}
+
+	private void writeAdapter(ClassInfo classInfo) {
+		TypeElement clazz = classInfo.clazz;
+		String packageName = getPackage(clazz).getQualifiedName().toString();
+		String className = processingEnv.getElementUtils().getBinaryName(clazz).toString();
+		String adapterSimpleName = className.substring(packageName.length() == 0 ? 0 : packageName.length() + 1)
+				+ JmxServer.ADAPTER_CLASS_SUFFIX;
+		String delegateType = sourceType(clazz.asType());
+		JavaFileObject file;
+		try {
+			file = processingEnv.getFiler().createSourceFile(className + JmxServer.ADAPTER_CLASS_SUFFIX, clazz);
+		} catch (IOException e) {
+			error(clazz, "Could not create JMX adapter source file: " + e);
+			return;
+		}
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(file.openWriter());
+			writeAdapter(out, classInfo, packageName, className, adapterSimpleName, delegateType);
+		} catch (IOException e) {
+			error(clazz, "Could not write JMX adapter source file: " + e);
+		} finally {
+			if (out != null) {
+				out.close();
+			}
+		}
+	}
+
+	private void writeAdapter(PrintWriter out, ClassInfo classInfo, String packageName, String className,
+			String adapterName, String delegateType) {
+		TypeElement clazz = classInfo.clazz;
+		String classDescription = "Information about class " + className;
+		JmxResource jmxResource = clazz.getAnnotation(JmxResource.class);
+		if (jmxResource != null && !isEmpty(jmxResource.description())) {
+			classDescription = jmxResource.description();
+		}
+
+		if (packageName.length() > 0) {
+			out.println("package " + packageName + ";");
+			out.println();
+		}
+		out.println("/**");
+		out.println(" * JMX adapter for {@link " + clazz.getQualifiedName() + "}.");
+		out.println(" * Generated by " + JmxAnnotationProcessor.class.getName() + ". Do not edit.");
+		out.println(" */");
+		out.println("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+		out.println("public class " + adapterName + " implements javax.management.DynamicMBean {");
+		out.println();
+
+		// the static mbean info
+		out.println("\tprivate static final javax.management.MBeanInfo MBEAN_INFO = new javax.management.MBeanInfo(");
+		out.println("\t\t\t" + quote(className) + ", " + quote(classDescription) + ",");
+		out.println("\t\t\tnew javax.management.MBeanAttributeInfo[] {");
+		for (MethodAttributeInfo methodInfo : classInfo.methodAttributes.values()) {
+			String description = methodInfo.description;
+			if (isEmpty(description)) {
+				description = methodInfo.varName + " attribute";
+			}
+			TypeMirror type;
+			if (methodInfo.getter == null) {
+				type = methodInfo.setter.getParameters().get(0).asType();
+			} else {
+				type = methodInfo.getter.getReturnType();
+			}
+			boolean isIs = (methodInfo.getter != null && methodInfo.getter.getSimpleName().toString().startsWith("is"));
+			out.println("\t\t\t\t\tnew javax.management.MBeanAttributeInfo(" + quote(methodInfo.varName) + ", "
+					+ quote(runtimeType(type)) + ", " + quote(description) + ", " + (methodInfo.getter != null)
+					+ ", " + (methodInfo.setter != null) + ", " + isIs + ", "
+					+ descriptorSource(methodInfo.unit, methodInfo.metricKind, methodInfo.expensive) + "),");
+		}
+		for (FieldInfo fieldInfo : classInfo.fields) {
+			String name = fieldInfo.info.getName();
+			String description = fieldInfo.info.getDescription();
+			if (isEmpty(description)) {
+				description = name + " attribute";
+			}
+			TypeMirror type = fieldInfo.field.asType();
+			boolean isIs = (name.startsWith("is") && isBoolean(type));
+			out.println("\t\t\t\t\tnew javax.management.MBeanAttributeInfo(" + quote(name) + ", "
+					+ quote(runtimeType(type)) + ", " + quote(description) + ", " + fieldInfo.info.isReadible() + ", "
+					+ fieldInfo.info.isWritable() + ", " + isIs + ", "
+					+ descriptorSource(fieldInfo.info.getUnit(), fieldInfo.info.getMetricKind(),
+							fieldInfo.info.isExpensive()) + "),");
+		}
+		out.println("\t\t\t\t\tnew javax.management.MBeanAttributeInfo("
+				+ quote(JmxDescriptors.FINGERPRINT_ATTRIBUTE) + ", \"java.lang.String\", "
+				+ quote(JmxDescriptors.FINGERPRINT_DESCRIPTION) + ", true, false, false),");
+		out.println("\t\t\t}, null,");
+		out.println("\t\t\tnew javax.management.MBeanOperationInfo[] {");
+		for (OperationInfo operationInfo : classInfo.operations) {
+			writeOperationInfo(out, operationInfo);
+		}
+		out.println("\t\t\t}, null);");
+		int opC = 0;
+		for (OperationInfo operationInfo : classInfo.operations) {
+			out.print("\tprivate static final String[] SIGNATURE_" + opC++ + " = new String[] {");
+			for (VariableElement param : operationInfo.method.getParameters()) {
+				out.print(" " + quote(runtimeType(param.asType())) + ",");
+			}
+			out.println(" };");
+		}
+		out.println("\tprivate static final String FINGERPRINT = " + JmxDescriptors.class.getName()
+				+ ".fingerprint(MBEAN_INFO);");
+		writeFieldHandles(out, classInfo, delegateType);
+		out.println();
+		out.println("\tprivate final " + delegateType + " delegate;");
+		out.println();
+		out.println("\tpublic " + adapterName + "(" + delegateType + " delegate) {");
+		out.println("\t\tthis.delegate = delegate;");
+		out.println("\t}");
+		out.println();
+		out.println("\tpublic javax.management.MBeanInfo getMBeanInfo() {");
+		out.println("\t\treturn MBEAN_INFO;");
+		out.println("\t}");
+		out.println();
+
+		writeGetAttribute(out, classInfo, className);
+		writeSetAttribute(out, classInfo, className);
+		writeInvoke(out, classInfo, className);
+
+		out.println("\tpublic javax.management.AttributeList getAttributes(String[] attributeNames) {");
+		out.println("\t\tjavax.management.AttributeList returnList = "
+				+ "new javax.management.AttributeList(attributeNames.length);");
+		out.println("\t\tfor (String name : attributeNames) {");
+		out.println("\t\t\ttry {");
+		out.println("\t\t\t\treturnList.add(new javax.management.Attribute(name, getAttribute(name)));");
+		out.println("\t\t\t} catch (Exception e) {");
+		out.println("\t\t\t\treturnList.add(new javax.management.Attribute(name, "
+				+ "\"Getting attribute threw: \" + e.getMessage()));");
+		out.println("\t\t\t}");
+		out.println("\t\t}");
+		out.println("\t\treturn returnList;");
+		out.println("\t}");
+		out.println();
+		out.println("\tpublic javax.management.AttributeList setAttributes(javax.management.AttributeList attributes) {");
+		out.println("\t\tjavax.management.AttributeList returnList = "
+				+ "new javax.management.AttributeList(attributes.size());");
+		out.println("\t\tfor (javax.management.Attribute attribute : attributes.asList()) {");
+		out.println("\t\t\tString name = attribute.getName();");
+		out.println("\t\t\ttry {");
+		out.println("\t\t\t\tsetAttribute(attribute);");
+		out.println("\t\t\t\treturnList.add(new javax.management.Attribute(name, getAttribute(name)));");
+		out.println("\t\t\t} catch (Exception e) {");
+		out.println("\t\t\t\treturnList.add(new javax.management.Attribute(name, e.getMessage()));");
+		out.println("\t\t\t}");
+		out.println("\t\t}");
+		out.println("\t\treturn returnList;");
+		out.println("\t}");
+		out.println("}");
+	}
+
+	private void writeOperationInfo(PrintWriter out, OperationInfo operationInfo) {
+		ExecutableElement method = operationInfo.method;
+		String methodName = method.getSimpleName().toString();
+		String description = operationInfo.info.getDescription();
+		if (isEmpty(description)) {
+			description = methodName + " attribute";
+		}
+		out.println("\t\t\t\t\tnew javax.management.MBeanOperationInfo(" + quote(methodName) + ", "
+				+ quote(description) + ", new javax.management.MBeanParameterInfo[] {");
+		String[] parameterNames = operationInfo.info.getParameterNames();
+		String[] parameterDescriptions = operationInfo.info.getParameterDescriptions();
+		List<? extends VariableElement> params = method.getParameters();
+		for (int i = 0; i < params.size(); i++) {
+			String parameterName;
+			if (parameterNames == null || i >= parameterNames.length) {
+				parameterName = "p" + (i + 1);
+			} else {
+				parameterName = parameterNames[i];
+			}
+			String typeName = runtimeType(params.get(i).asType());
+			String parameterDescription;
+			if (parameterDescriptions == null || i >= parameterDescriptions.length) {
+				parameterDescription = "parameter #" + (i + 1) + " of type: " + typeName;
+			} else {
+				parameterDescription = parameterDescriptions[i];
+			}
+			out.println("\t\t\t\t\t\t\tnew javax.management.MBeanParameterInfo(" + quote(parameterName) + ", "
+					+ quote(typeName) + ", " + quote(parameterDescription) + "),");
+		}
+		out.println("\t\t\t\t\t}, " + quote(runtimeType(method.getReturnType())) + ", "
+				+ operationInfo.info.getAction().getActionValue() + "),");
+	}
+
+	private void writeGetAttribute(PrintWriter out, ClassInfo classInfo, String className) {
+		out.println("\tpublic Object getAttribute(String attributeName) throws "
+				+ "javax.management.AttributeNotFoundException, javax.management.ReflectionException {");
+		out.println("\t\ttry {");
+		out.println("\t\t\tswitch (attributeName) {");
+		Set<String> handled = new HashSet<String>();
+		for (MethodAttributeInfo methodInfo : classInfo.methodAttributes.values()) {
+			handled.add(methodInfo.varName);
+			if (methodInfo.getter != null) {
+				out.println("\t\t\t\tcase " + quote(methodInfo.varName) + ":");
+				out.println("\t\t\t\t\treturn delegate." + methodInfo.getter.getSimpleName() + "();");
+			}
+		}
+		for (FieldInfo fieldInfo : classInfo.fields) {
+			String name = fieldInfo.info.getName();
+			// like ReflectionMbean, the method attributes win over the fields
+			if (fieldInfo.info.isReadible() && handled.add(name)) {
+				out.println("\t\t\t\tcase " + quote(name) + ":");
+				if (fieldInfo.isPrivate()) {
+					out.println("\t\t\t\t\treturn (" + sourceType(fieldInfo.field.asType()) + ") GET_" + name
+							+ ".invokeExact(delegate);");
+				} else {
+					out.println("\t\t\t\t\treturn delegate." + name + ";");
+				}
+			}
+		}
+		out.println("\t\t\t\tcase " + quote(JmxDescriptors.FINGERPRINT_ATTRIBUTE) + ":");
+		out.println("\t\t\t\t\treturn FINGERPRINT;");
+		out.println("\t\t\t\tdefault:");
+		out.println("\t\t\t\t\tbreak;");
+		out.println("\t\t\t}");
+		writeCatch(out, "\"Invoking getter attribute \" + attributeName + \" on " + className + " threw exception\"");
+		out.println("\t\t}");
+		out.println("\t\tthrow new javax.management.AttributeNotFoundException(\"Unknown attribute \" + attributeName);");
+		out.println("\t}");
+		out.println();
+	}
+
+	private void writeSetAttribute(PrintWriter out, ClassInfo classInfo, String className) {
+		out.println("\tpublic void setAttribute(javax.management.Attribute attribute) throws "
+				+ "javax.management.AttributeNotFoundException, javax.management.ReflectionException {");
+		out.println("\t\tString attributeName = attribute.getName();");
+		out.println("\t\tObject value = attribute.getValue();");
+		out.println("\t\ttry {");
+		out.println("\t\t\tswitch (attributeName) {");
+		Set<String> handled = new HashSet<String>();
+		for (MethodAttributeInfo methodInfo : classInfo.methodAttributes.values()) {
+			handled.add(methodInfo.varName);
+			if (methodInfo.setter != null) {
+				TypeMirror type = methodInfo.setter.getParameters().get(0).asType();
+				out.println("\t\t\t\tcase " + quote(methodInfo.varName) + ":");
+				out.println("\t\t\t\t\tdelegate." + methodInfo.setter.getSimpleName() + "(" + castTo(type, "value")
+						+ ");");
+				out.println("\t\t\t\t\treturn;");
+			}
+		}
+		for (FieldInfo fieldInfo : classInfo.fields) {
+			String name = fieldInfo.info.getName();
+			if (fieldInfo.info.isWritable() && handled.add(name)) {
+				out.println("\t\t\t\tcase " + quote(name) + ":");
+				if (fieldInfo.isPrivate()) {
+					// invokeExact needs the exact field type so primitives are unboxed by hand
+					TypeMirror type = fieldInfo.field.asType();
+					String value = castTo(type, "value");
+					if (type.getKind().isPrimitive()) {
+						value = "(" + type + ") " + value;
+					}
+					out.println("\t\t\t\t\tSET_" + name + ".invokeExact(delegate, " + value + ");");
+				} else {
+					out.println("\t\t\t\t\tdelegate." + name + " = " + castTo(fieldInfo.field.asType(), "value") + ";");
+				}
+				out.println("\t\t\t\t\treturn;");
+			}
+		}
+		out.println("\t\t\t\tdefault:");
+		out.println("\t\t\t\t\tbreak;");
+		out.println("\t\t\t}");
+		writeCatch(out, "\"Invoking setter attribute \" + attributeName + \" on " + className + " threw exception\"");
+		out.println("\t\t}");
+		out.println("\t\tthrow new javax.management.AttributeNotFoundException(\"Unknown attribute \" + attributeName);");
+		out.println("\t}");
+		out.println();
+	}
+
+	private void writeInvoke(PrintWriter out, ClassInfo classInfo, String className) {
+		// group the overloads by name
+		Map<String, List<Integer>> nameMap = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < classInfo.operations.size(); i++) {
+			String name = classInfo.operations.get(i).method.getSimpleName().toString();
+			List<Integer> indexes = nameMap.get(name);
+			if (indexes == null) {
+				indexes = new ArrayList<Integer>();
+				nameMap.put(name, indexes);
+			}
+			indexes.add(i);
+		}
+		out.println("\tpublic Object invoke(String actionName, Object[] params, String[] signatureTypes) throws "
+				+ "javax.management.MBeanException, javax.management.ReflectionException {");
+		out.println("\t\tif (signatureTypes == null) {");
+		out.println("\t\t\tsignatureTypes = new String[0];");
+		out.println("\t\t}");
+		out.println("\t\ttry {");
+		out.println("\t\t\tswitch (actionName) {");
+		for (Map.Entry<String, List<Integer>> entry : nameMap.entrySet()) {
+			out.println("\t\t\t\tcase " + quote(entry.getKey()) + ":");
+			for (int index : entry.getValue()) {
+				ExecutableElement method = classInfo.operations.get(index).method;
+				out.println("\t\t\t\t\tif (java.util.Arrays.equals(signatureTypes, SIGNATURE_" + index + ")) {");
+				StringBuilder call = new StringBuilder();
+				call.append("delegate.").append(method.getSimpleName()).append('(');
+				List<? extends VariableElement> params = method.getParameters();
+				for (int i = 0; i < params.size(); i++) {
+					if (i > 0) {
+						call.append(", ");
+					}
+					call.append(castTo(params.get(i).asType(), "params[" + i + "]"));
+				}
+				call.append(')');
+				if (method.getReturnType().getKind() == TypeKind.VOID) {
+					out.println("\t\t\t\t\t\t" + call + ";");
+					out.println("\t\t\t\t\t\treturn null;");
+				} else {
+					out.println("\t\t\t\t\t\treturn " + call + ";");
+				}
+				out.println("\t\t\t\t\t}");
+			}
+			out.println("\t\t\t\t\tbreak;");
+		}
+		out.println("\t\t\t\tdefault:");
+		out.println("\t\t\t\t\tbreak;");
+		out.println("\t\t\t}");
+		writeCatch(out, "\"Invoking operation method \" + actionName + \" on " + className + " threw exception\"");
+		out.println("\t\t}");
+		out.println("\t\tthrow new javax.management.MBeanException(new IllegalArgumentException(\"Unknown action '\" "
+				+ "+ actionName + \"' with parameter types \" + java.util.Arrays.toString(signatureTypes)));");
+		out.println("\t}");
+		out.println();
+	}
+
+	/**
+	 * Private fields cannot be accessed directly so we resolve method-handles for them once when the adapter is loaded.
+	 */
+	private void writeFieldHandles(PrintWriter out, ClassInfo classInfo, String delegateType) {
+		for (FieldInfo fieldInfo : classInfo.fields) {
+			if (!fieldInfo.isPrivate()) {
+				continue;
+			}
+			String name = fieldInfo.info.getName();
+			out.println("\tprivate static final java.lang.invoke.MethodHandle GET_" + name + ";");
+			out.println("\tprivate static final java.lang.invoke.MethodHandle SET_" + name + ";");
+			out.println("\tstatic {");
+			out.println("\t\ttry {");
+			out.println("\t\t\tjava.lang.reflect.Field field = " + delegateType + ".class.getDeclaredField(" + quote(name)
+					+ ");");
+			out.println("\t\t\tfield.setAccessible(true);");
+			out.println("\t\t\tjava.lang.invoke.MethodHandles.Lookup lookup = java.lang.invoke.MethodHandles.lookup();");
+			out.println("\t\t\tGET_" + name + " = lookup.unreflectGetter(field);");
+			if (fieldInfo.info.isWritable()) {
+				out.println("\t\t\tSET_" + name + " = lookup.unreflectSetter(field);");
+			} else {
+				out.println("\t\t\tSET_" + name + " = null;");
+			}
+			out.println("\t\t} catch (Exception e) {");
+			out.println("\t\t\tthrow new ExceptionInInitializerError(e);");
+			out.println("\t\t}");
+			out.println("\t}");
+		}
+	}
+
+	private void writeCatch(PrintWriter out, String messageExpression) {
+		// method-handles throw Throwable so we catch everything but errors go through as is like in ReflectionMbean
+		out.println("\t\t} catch (Error e) {");
+		out.println("\t\t\tthrow e;");
+		out.println("\t\t} catch (Exception e) {");
+		out.println("\t\t\tthrow new javax.management.ReflectionException(e, " + messageExpression + ");");
+		out.println("\t\t} catch (Throwable t) {");
+		out.println("\t\t\tthrow new javax.management.ReflectionException(new RuntimeException(t), "
+				+ messageExpression + ");");
+	}
+
+	/**
+	 * Returns true if the class and all of its enclosing classes can be seen from a class in the same package.
+	 */
+	private boolean isAccessible(TypeElement clazz) {
+		for (Element element = clazz; element.getKind() != ElementKind.PACKAGE; element =
+				element.getEnclosingElement()) {
+			if (!(element instanceof TypeElement) || element.getModifiers().contains(Modifier.PRIVATE)) {
+				// private, local, or anonymous class
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private PackageElement getPackage(Element element) {
+		while (element.getKind() != ElementKind.PACKAGE) {
+			element = element.getEnclosingElement();
+		}
+		return (PackageElement) element;
+	}
+
+	/**
+	 * Return the type name as returned by Class.getName() which is what the JMX info objects use.
+	 */
+	private String runtimeType(TypeMirror type) {
+		type = processingEnv.getTypeUtils().erasure(type);
+		switch (type.getKind()) {
+			case VOID :
+				return "void";
+			case ARRAY :
+				return "[" + arrayComponentDescriptor(((ArrayType) type).getComponentType());
+			case DECLARED :
+				return processingEnv.getElementUtils()
+						.getBinaryName((TypeElement) processingEnv.getTypeUtils().asElement(type))
+						.toString();
+			default :
+				if (type.getKind().isPrimitive()) {
+					return type.getKind().name().toLowerCase();
+				}
+				return type.toString();
+		}
+	}
+
+	private String arrayComponentDescriptor(TypeMirror type) {
+		switch (type.getKind()) {
+			case BOOLEAN :
+				return "Z";
+			case BYTE :
+				return "B";
+			case CHAR :
+				return "C";
+			case SHORT :
+				return "S";
+			case INT :
+				return "I";
+			case LONG :
+				return "J";
+			case FLOAT :
+				return "F";
+			case DOUBLE :
+				return "D";
+			case ARRAY :
+				return "[" + arrayComponentDescriptor(((ArrayType) type).getComponentType());
+			default :
+				return "L" + runtimeType(type) + ";";
+		}
+	}
+
+	/**
+	 * Return the type as it would be written in the source.
+	 */
+	private String sourceType(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private String castTo(TypeMirror type, String expression) {
+		if (type.getKind().isPrimitive()) {
+			String boxed = processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type)
+					.getQualifiedName()
+					.toString();
+			return "(" + boxed + ") " + expression;
+		} else {
+			return "(" + sourceType(type) + ") " + expression;
+		}
+	}
+
+	private boolean isMetric(VariableElement field) {
+		TypeElement metricType = processingEnv.getElementUtils().getTypeElement(JmxMetric.class.getName());
+		return metricType != null && processingEnv.getTypeUtils().isAssignable(field.asType(), metricType.asType());
+	}
+
+	private boolean isBoolean(TypeMirror type) {
+		return type.getKind() == TypeKind.BOOLEAN || type.toString().equals(Boolean.class.getName());
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+	}
+
+	private void warning(Element element, String message) {
+		processingEnv.getMessager().printMessage(Kind.WARNING, message, element);
+	}
+
+	private static String quote(String str) {
+		StringBuilder sb = new StringBuilder(str.length() + 2);
+		sb.append('"');
+		for (char ch : str.toCharArray()) {
+			switch (ch) {
+				case '"' :
+					sb.append("\\\"");
+					break;
+				case '\\' :
+					sb.append("\\\\");
+					break;
+				case '\n' :
+					sb.append("\\n");
+					break;
+				case '\r' :
+					sb.append("\\r");
+					break;
+				case '\t' :
+					sb.append("\\t");
+					break;
+				default :
+					if (ch < ' ' || ch > '~') {
+						sb.append(String.format("\\u%04x", (int) ch));
+					} else {
+						sb.append(ch);
+					}
+					break;
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	private static boolean isEmpty(String string) {
+		return string == null || string.trim().length() == 0;
+	}
+
+	/**
+	 * Return the source of the descriptor with the units and metric information of an attribute or "null" if none.
+	 */
+	private static String descriptorSource(String unit, JmxMetricKind metricKind, boolean expensive) {
+		List<String> fieldNames = new ArrayList<String>();
+		List<String> fieldValues = new ArrayList<String>();
+		if (!isEmpty(unit)) {
+			fieldNames.add(JmxDescriptors.UNITS_FIELD);
+			fieldValues.add(unit);
+		}
+		if (metricKind.getDescriptorValue() != null) {
+			fieldNames.add(JmxDescriptors.METRIC_TYPE_FIELD);
+			fieldValues.add(metricKind.getDescriptorValue());
+		}
+		if (expensive) {
+			fieldNames.add(JmxDescriptors.EXPENSIVE_FIELD);
+			fieldValues.add("true");
+		}
+		if (fieldNames.isEmpty()) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("new javax.management.ImmutableDescriptor(new String[] {");
+		for (String fieldName : fieldNames) {
+			sb.append(' ').append(quote(fieldName)).append(',');
+		}
+		sb.append(" }, new Object[] {");
+		for (String fieldValue : fieldValues) {
+			sb.append(' ').append(quote(fieldValue)).append(',');
+		}
+		sb.append(" })");
+		return sb.toString();
+	}
+
+	/**
+	 * The attributes and operations that we found in a class.
+	 */
+	private static class ClassInfo {
+		final TypeElement clazz;
+		final Map<String, MethodAttributeInfo> methodAttributes = new LinkedHashMap<String, MethodAttributeInfo>();
+		final List<FieldInfo> fields = new ArrayList<FieldInfo>();
+		final List<OperationInfo> operations = new ArrayList<OperationInfo>();
+		/** set if the class uses features that only {@link ReflectionMbean} supports */
+		boolean reflectionOnly;
+
+		public ClassInfo(TypeElement clazz) {
+			this.clazz = clazz;
+		}
+	}
+
+	private static class MethodAttributeInfo {
+		final String varName;
+		final String description;
+		ExecutableElement getter;
+		ExecutableElement setter;
+		String unit;
+		JmxMetricKind metricKind = JmxMetricKind.UNKNOWN;
+		boolean expensive;
+
+		public MethodAttributeInfo(String varName, String description) {
+			this.varName = varName;
+			this.description = description;
+		}
+
+		/**
+		 * Like ReflectionMbean, the units and metric information can be on either the getter or the setter.
+		 */
+		public void addMetricInfo(JmxAttributeMethod attributeMethod) {
+			if (!isEmpty(attributeMethod.unit())) {
+				unit = attributeMethod.unit();
+			}
+			if (attributeMethod.metricKind() != JmxMetricKind.UNKNOWN) {
+				metricKind = attributeMethod.metricKind();
+			}
+			expensive |= attributeMethod.expensive();
+		}
+	}
+
+	private static class FieldInfo {
+		final VariableElement field;
+		final JmxAttributeFieldInfo info;
+
+		public FieldInfo(VariableElement field, JmxAttributeFieldInfo info) {
+			this.field = field;
+			this.info = info;
+		}
+
+		public boolean isPrivate() {
+			return field.getModifiers().contains(Modifier.PRIVATE);
+		}
+	}
+
+	private static class OperationInfo {
+		final ExecutableElement method;
+		final JmxOperationInfo info;
+
+		public OperationInfo(ExecutableElement method, JmxOperationInfo info) {
+			this.method = method;
+			this.info = info;
+		}
+	}
+}
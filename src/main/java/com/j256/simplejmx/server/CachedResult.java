@@ -0,0 +1,55 @@
+package com.j256.simplejmx.server;
+
+import java.util.Arrays;
+
+/**
+ * Holds the cached result of a getter or an INFO operation for a registered object. See
+ * {@link com.j256.simplejmx.common.JmxAttributeMethod#cacheMillis()}.
+ *
+ * <p>
+ * Reads of an unexpired result do not lock. Callers that miss the cache synchronize on this object and check again so
+ * only one of the concurrent callers does the refresh while the others wait for its result.
+ * </p>
+ *
+ * @author graywatson
+ */
+class CachedResult {
+
+	/** returned by {@link #lookup(Object[])} if there is no unexpired result */
+	static final Object MISS = new Object();
+
+	private volatile Entry entry;
+
+	/**
+	 * Return the cached result if it has not expired and it was produced with the same parameters, otherwise
+	 * {@link #MISS}.
+	 */
+	public Object lookup(Object[] params) {
+		Entry current = entry;
+		if (current != null && current.expiresNanos - System.nanoTime() > 0 && Arrays.equals(current.params, params)) {
+			return current.value;
+		} else {
+			return MISS;
+		}
+	}
+
+	public void store(Object[] params, Object value, long cacheNanos) {
+		entry = new Entry(params, value, System.nanoTime() + cacheNanos);
+	}
+
+	public void clear() {
+		entry = null;
+	}
+
+	private static class Entry {
+		final Object[] params;
+		final Object value;
+		final long expiresNanos;
+
+		public Entry(Object[] params, Object value, long expiresNanos) {
+			this.params = params;
+			this.value = value;
+			this.expiresNanos = expiresNanos;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.j256.simplejmx.server;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanException;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+
+import com.j256.simplejmx.common.JmxPaging;
+
+/**
+ * The open cursors over the results of the paged attributes and operations of a registered object. See
+ * {@link JmxPaging}.
+ *
+ * <p>
+ * Arrays are copied out a page at a time and primitive arrays stay primitive so a long[] is sent as long[] pages.
+ * Collections, Maps, and other Iterables are walked with their iterator which is kept between pages so the result is
+ * never copied whole. Concurrent collections should be used if the result can change while it is being paged. At
+ * most {@link #MAX_OPEN_CURSORS} cursors are kept, the least recently used one is closed if another one is opened, and
+ * cursors are closed if they are not used for {@link #IDLE_TIMEOUT_MILLIS}.
+ * </p>
+ *
+ * @author graywatson
+ */
+class CursorTable {
+
+	static final int MAX_OPEN_CURSORS = 16;
+	static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+	private static final String[] CURSOR_ID_SIGNATURE = new String[] { long.class.getName() };
+	private static final String[] NEXT_PAGE_SIGNATURE = new String[] { long.class.getName(), int.class.getName() };
+	private static final String[] OPEN_CURSOR_SIGNATURE = new String[] { String.class.getName() };
+	private static final Object[] EMPTY_PAGE = new Object[0];
+
+	private final AtomicLong nextId = new AtomicLong();
+	/** in access order so the eldest is the least recently used, guarded by this */
+	private final Map<Long, Cursor> cursors = new LinkedHashMap<Long, Cursor>(MAX_OPEN_CURSORS * 2, 0.75F, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Cursor> eldest) {
+			return size() > MAX_OPEN_CURSORS;
+		}
+	};
+
+	/**
+	 * Returns true if the class can be paged.
+	 */
+	public static boolean isPageable(Class<?> clazz) {
+		return clazz.isArray() || Iterable.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz);
+	}
+
+	/**
+	 * Return the number of elements in the result or -1 if it is an Iterable which is not a Collection.
+	 */
+	public static long sizeOf(Object result) {
+		if (result == null) {
+			return 0;
+		} else if (result.getClass().isArray()) {
+			return Array.getLength(result);
+		} else if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		} else if (result instanceof Map) {
+			return ((Map<?, ?>) result).size();
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Open a cursor over the result of a paged attribute or operation and return its id.
+	 */
+	public long open(Object result) {
+		Cursor cursor;
+		if (result == null) {
+			cursor = new Cursor(EMPTY_PAGE, null, 0);
+		} else if (result.getClass().isArray()) {
+			cursor = new Cursor(result, null, Array.getLength(result));
+		} else if (result instanceof Map) {
+			cursor = new Cursor(null, ((Map<?, ?>) result).entrySet().iterator(), sizeOf(result));
+		} else if (result instanceof Iterable) {
+			cursor = new Cursor(null, ((Iterable<?>) result).iterator(), sizeOf(result));
+		} else {
+			throw new IllegalArgumentException("Cannot page a result of " + result.getClass());
+		}
+		long id = nextId.incrementAndGet();
+		synchronized (this) {
+			closeIdleCursors();
+			cursors.put(id, cursor);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns true if the name and signature are of one of the cursor operations other than openCursor which has to be
+	 * handled by the caller since it needs the attribute value.
+	 */
+	public static boolean isCursorOperation(String operationName, String[] signatureTypes) {
+		if (JmxPaging.NEXT_PAGE_OPERATION.equals(operationName)) {
+			return Arrays.equals(NEXT_PAGE_SIGNATURE, signatureTypes);
+		} else if (JmxPaging.CURSOR_SIZE_OPERATION.equals(operationName)
+				|| JmxPaging.CLOSE_CURSOR_OPERATION.equals(operationName)) {
+			return Arrays.equals(CURSOR_ID_SIGNATURE, signatureTypes);
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns true if the name and signature are of the openCursor operation.
+	 */
+	public static boolean isOpenCursorOperation(String operationName, String[] signatureTypes) {
+		return JmxPaging.OPEN_CURSOR_OPERATION.equals(operationName)
+				&& Arrays.equals(OPEN_CURSOR_SIGNATURE, signatureTypes);
+	}
+
+	/**
+	 * Returns true if the name is the name of one of the cursor operations.
+	 */
+	public static boolean isCursorOperationName(String operationName) {
+		return JmxPaging.OPEN_CURSOR_OPERATION.equals(operationName)
+				|| JmxPaging.NEXT_PAGE_OPERATION.equals(operationName)
+				|| JmxPaging.CURSOR_SIZE_OPERATION.equals(operationName)
+				|| JmxPaging.CLOSE_CURSOR_OPERATION.equals(operationName);
+	}
+
+	/**
+	 * Call one of the cursor operations. The name and signature must have been checked with
+	 * {@link #isCursorOperation(String, String[])}.
+	 */
+	public Object invokeCursorOperation(String operationName, Object[] params) throws MBeanException {
+		if (params.length == 0 || !(params[0] instanceof Long)) {
+			throw new MBeanException(new IllegalArgumentException("Operation " + operationName
+					+ " takes a long cursor id"));
+		}
+		long id = (Long) params[0];
+		if (JmxPaging.CLOSE_CURSOR_OPERATION.equals(operationName)) {
+			synchronized (this) {
+				return (cursors.remove(id) != null);
+			}
+		}
+		Cursor cursor;
+		synchronized (this) {
+			closeIdleCursors();
+			cursor = cursors.get(id);
+		}
+		if (cursor == null) {
+			throw new MBeanException(new IllegalArgumentException("Unknown cursor id " + id
+					+ ", it may have been finished or closed because it was idle"));
+		}
+		if (JmxPaging.CURSOR_SIZE_OPERATION.equals(operationName)) {
+			return cursor.size;
+		}
+		if (params.length != 2 || !(params[1] instanceof Integer) || (Integer) params[1] <= 0) {
+			throw new MBeanException(new IllegalArgumentException("Operation " + operationName
+					+ " takes a long cursor id and a positive int limit"));
+		}
+		int limit = Math.min((Integer) params[1], JmxPaging.MAX_PAGE_SIZE);
+		Object page;
+		try {
+			page = cursor.nextPage(limit);
+		} catch (RuntimeException e) {
+			// probably a concurrent modification of the collection
+			closeCursor(id);
+			throw new MBeanException(e, "Getting the next page of cursor " + id + " threw exception");
+		}
+		if (Array.getLength(page) < limit) {
+			closeCursor(id);
+		}
+		return page;
+	}
+
+	/**
+	 * Return the information about the cursor operations for the MBeanInfo.
+	 */
+	public static MBeanOperationInfo[] buildOperationInfos() {
+		MBeanParameterInfo cursorIdInfo = new MBeanParameterInfo("cursorId", long.class.getName(), "id of the cursor");
+		return new MBeanOperationInfo[] {
+				new MBeanOperationInfo(JmxPaging.OPEN_CURSOR_OPERATION, "Open a cursor over a paged attribute",
+						new MBeanParameterInfo[] { new MBeanParameterInfo("attributeName", String.class.getName(),
+								"name of the paged attribute") }, long.class.getName(), MBeanOperationInfo.INFO),
+				new MBeanOperationInfo(JmxPaging.NEXT_PAGE_OPERATION,
+						"Next page of elements, the cursor is closed once a page is short",
+						new MBeanParameterInfo[] {
+								cursorIdInfo,
+								new MBeanParameterInfo("limit", int.class.getName(), "maximum number of elements, up to "
+										+ JmxPaging.MAX_PAGE_SIZE) }, Object.class.getName(), MBeanOperationInfo.INFO),
+				new MBeanOperationInfo(JmxPaging.CURSOR_SIZE_OPERATION,
+						"Number of elements of the cursor or -1 if unknown", new MBeanParameterInfo[] { cursorIdInfo },
+						long.class.getName(), MBeanOperationInfo.INFO),
+				new MBeanOperationInfo(JmxPaging.CLOSE_CURSOR_OPERATION, "Close the cursor before it is finished",
+						new MBeanParameterInfo[] { cursorIdInfo }, boolean.class.getName(), MBeanOperationInfo.ACTION), };
+	}
+
+	private synchronized void closeCursor(long id) {
+		cursors.remove(id);
+	}
+
+	private void closeIdleCursors() {
+		long now = System.currentTimeMillis();
+		Iterator<Cursor> iterator = cursors.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().lastUsedMillis > IDLE_TIMEOUT_MILLIS) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Position in the result of a paged attribute or operation.
+	 */
+	private static class Cursor {
+
+		/** null if we are walking an iterator */
+		private final Object array;
+		private final Iterator<?> iterator;
+		final long size;
+		private int position;
+		volatile long lastUsedMillis = System.currentTimeMillis();
+
+		public Cursor(Object array, Iterator<?> iterator, long size) {
+			this.array = array;
+			this.iterator = iterator;
+			this.size = size;
+		}
+
+		/**
+		 * Return the next page. Clients are not expected to page the same cursor from multiple threads but we
+		 * synchronize in case.
+		 */
+		public synchronized Object nextPage(int limit) {
+			lastUsedMillis = System.currentTimeMillis();
+			if (array != null) {
+				int length = Math.min(limit, Array.getLength(array) - position);
+				Object page = Array.newInstance(array.getClass().getComponentType(), length);
+				System.arraycopy(array, position, page, 0, length);
+				position += length;
+				return page;
+			}
+			Object[] page = new Object[limit];
+			int count = 0;
+			while (count < limit && iterator.hasNext()) {
+				Object element = iterator.next();
+				if (element instanceof Map.Entry) {
+					// the entries of most maps are not serializable
+					Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+					element = new Object[] { entry.getKey(), entry.getValue() };
+				}
+				page[count++] = element;
+			}
+			position += count;
+			if (count < limit) {
+				Object[] shortPage = new Object[count];
+				System.arraycopy(page, 0, shortPage, 0, count);
+				return shortPage;
+			} else {
+				return page;
+			}
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package com.j256.simplejmx.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+import com.j256.simplejmx.common.JmxDescriptors;
+
+/**
+ * Mbean whose attributes and operations are backed by the callbacks that were added to a {@link JmxBeanBuilder}. There
+ * is no reflection involved. Like {@link ReflectionMbean}, the MBeanInfo is built the first time it is inspected.
+ *
+ * @author graywatson
+ */
+class FunctionalMbean implements DynamicMBean, LazyMbeanInfo.FullInfoSource {
+
+	private static final Object[] NO_PARAMS = new Object[0];
+	private static final String[] NO_SIGNATURE = new String[0];
+
+	private final String description;
+	private final AttributeEntry[] attributes;
+	private final OperationEntry[] operations;
+	private final Map<String, AttributeEntry> attributeMap;
+	private final Map<String, OperationEntry[]> operationMap;
+	private final MBeanInfo mbeanInfo;
+	private volatile MBeanInfo fullMbeanInfo;
+	private volatile String fingerprint;
+
+	public FunctionalMbean(String description, List<AttributeEntry> attributeList, List<OperationEntry> operationList) {
+		this.description = description;
+		this.attributes = attributeList.toArray(new AttributeEntry[attributeList.size()]);
+		this.operations = operationList.toArray(new OperationEntry[operationList.size()]);
+		this.attributeMap = new HashMap<String, AttributeEntry>(attributes.length * 2);
+		for (AttributeEntry attribute : attributes) {
+			attributeMap.put(attribute.name, attribute);
+		}
+		this.operationMap = new HashMap<String, OperationEntry[]>(operations.length * 2);
+		for (OperationEntry operation : operations) {
+			OperationEntry[] entries = operationMap.get(operation.name);
+			if (entries == null) {
+				entries = new OperationEntry[] { operation };
+			} else {
+				entries = Arrays.copyOf(entries, entries.length + 1);
+				entries[entries.length - 1] = operation;
+			}
+			operationMap.put(operation.name, entries);
+		}
+		this.mbeanInfo = new LazyMbeanInfo(FunctionalMbean.class.getName(), this);
+	}
+
+	/**
+	 * @see DynamicMBean#getMBeanInfo()
+	 */
+	public MBeanInfo getMBeanInfo() {
+		return mbeanInfo;
+	}
+
+	public MBeanInfo getFullMbeanInfo() {
+		MBeanInfo info = fullMbeanInfo;
+		if (info == null) {
+			// building it twice in a race is harmless
+			info = buildMbeanInfo();
+			fullMbeanInfo = info;
+		}
+		return info;
+	}
+
+	/**
+	 * @see DynamicMBean#getAttribute(String)
+	 */
+	public Object getAttribute(String attributeName) throws AttributeNotFoundException, ReflectionException {
+		AttributeEntry attribute = attributeMap.get(attributeName);
+		if (attribute == null || attribute.getter == null) {
+			if (JmxDescriptors.FINGERPRINT_ATTRIBUTE.equals(attributeName)) {
+				return getFingerprint();
+			}
+			throw new AttributeNotFoundException("Unknown attribute " + attributeName);
+		}
+		try {
+			return attribute.getter.call();
+		} catch (Exception e) {
+			throw new ReflectionException(e, "Invoking getter for attribute " + attributeName + " threw exception");
+		}
+	}
+
+	/**
+	 * @see DynamicMBean#getAttributes(String[])
+	 */
+	public AttributeList getAttributes(String[] attributeNames) {
+		AttributeList returnList = new AttributeList(attributeNames.length);
+		for (String name : attributeNames) {
+			try {
+				returnList.add(new Attribute(name, getAttribute(name)));
+			} catch (Exception e) {
+				returnList.add(new Attribute(name, "Getting attribute threw: " + e.getMessage()));
+			}
+		}
+		return returnList;
+	}
+
+	/**
+	 * @see DynamicMBean#setAttribute(Attribute)
+	 */
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException, ReflectionException {
+		AttributeEntry entry = attributeMap.get(attribute.getName());
+		if (entry == null || entry.setter == null) {
+			throw new AttributeNotFoundException("Unknown attribute " + attribute.getName());
+		}
+		try {
+			entry.setValue(attribute.getValue());
+		} catch (Exception e) {
+			throw new ReflectionException(e, "Invoking setter for attribute " + attribute.getName()
+					+ " threw exception");
+		}
+	}
+
+	/**
+	 * @see DynamicMBean#setAttributes(AttributeList)
+	 */
+	public AttributeList setAttributes(AttributeList attributes) {
+		AttributeList returnList = new AttributeList(attributes.size());
+		for (Attribute attribute : attributes.asList()) {
+			String name = attribute.getName();
+			try {
+				setAttribute(attribute);
+				returnList.add(new Attribute(name, getAttribute(name)));
+			} catch (Exception e) {
+				returnList.add(new Attribute(name, e.getMessage()));
+			}
+		}
+		return returnList;
+	}
+
+	/**
+	 * @see DynamicMBean#invoke(String, Object[], String[])
+	 */
+	public Object invoke(String actionName, Object[] params, String[] signatureTypes) throws MBeanException,
+			ReflectionException {
+		if (signatureTypes == null) {
+			signatureTypes = NO_SIGNATURE;
+		}
+		OperationEntry operation = null;
+		OperationEntry[] entries = operationMap.get(actionName);
+		if (entries != null) {
+			for (OperationEntry entry : entries) {
+				if (Arrays.equals(entry.signatureTypes, signatureTypes)) {
+					operation = entry;
+					break;
+				}
+			}
+		}
+		if (operation == null) {
+			throw new MBeanException(new IllegalArgumentException("Unknown action '" + actionName
+					+ "' with parameter types " + Arrays.toString(signatureTypes)));
+		}
+		if (params == null) {
+			params = NO_PARAMS;
+		}
+		try {
+			return operation.handler.invoke(params);
+		} catch (Exception e) {
+			throw new ReflectionException(e, "Invoking operation " + actionName + " threw exception");
+		}
+	}
+
+	private String getFingerprint() {
+		String value = fingerprint;
+		if (value == null) {
+			value = JmxDescriptors.fingerprint(getFullMbeanInfo());
+			fingerprint = value;
+		}
+		return value;
+	}
+
+	private MBeanInfo buildMbeanInfo() {
+		MBeanAttributeInfo[] attributeInfos = new MBeanAttributeInfo[attributes.length + 1];
+		for (int i = 0; i < attributes.length; i++) {
+			AttributeEntry attribute = attributes[i];
+			String attributeDescription = attribute.description;
+			if (attributeDescription == null) {
+				attributeDescription = attribute.name + " attribute";
+			}
+			boolean isIs;
+			if (attribute.getter != null && attribute.name.startsWith("is")
+					&& (attribute.type == boolean.class || attribute.type == Boolean.class)) {
+				isIs = true;
+			} else {
+				isIs = false;
+			}
+			attributeInfos[i] =
+					new MBeanAttributeInfo(attribute.name, attribute.type.getName(), attributeDescription,
+							attribute.getter != null, attribute.setter != null, isIs);
+		}
+		attributeInfos[attributes.length] =
+				new MBeanAttributeInfo(JmxDescriptors.FINGERPRINT_ATTRIBUTE, String.class.getName(),
+						JmxDescriptors.FINGERPRINT_DESCRIPTION, true, false, false);
+		MBeanOperationInfo[] operationInfos = new MBeanOperationInfo[operations.length];
+		for (int i = 0; i < operations.length; i++) {
+			OperationEntry operation = operations[i];
+			String operationDescription = operation.description;
+			if (operationDescription == null) {
+				operationDescription = operation.name + " operation";
+			}
+			MBeanParameterInfo[] parameterInfos = new MBeanParameterInfo[operation.signatureTypes.length];
+			for (int j = 0; j < parameterInfos.length; j++) {
+				String typeName = operation.signatureTypes[j];
+				parameterInfos[j] =
+						new MBeanParameterInfo("p" + (j + 1), typeName, "parameter #" + (j + 1) + " of type: "
+								+ typeName);
+			}
+			operationInfos[i] =
+					new MBeanOperationInfo(operation.name, operationDescription, parameterInfos, operation.returnType,
+							operation.action);
+		}
+		return new MBeanInfo(FunctionalMbean.class.getName(), description, attributeInfos, null, operationInfos, null);
+	}
+
+	/**
+	 * Attribute that was added to the builder.
+	 */
+	static class AttributeEntry {
+
+		final String name;
+		final String description;
+		final Class<?> type;
+		final Callable<?> getter;
+		final JmxAttributeSetter<?> setter;
+
+		public AttributeEntry(String name, String description, Class<?> type, Callable<?> getter,
+				JmxAttributeSetter<?> setter) {
+			this.name = name;
+			this.description = description;
+			this.type = type;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@SuppressWarnings("unchecked")
+		void setValue(Object value) throws Exception {
+			// the types were checked by the builder's generics, a bad value from the client will throw here
+			((JmxAttributeSetter<Object>) setter).setValue(value);
+		}
+	}
+
+	/**
+	 * Operation that was added to the builder.
+	 */
+	static class OperationEntry {
+
+		final String name;
+		final String description;
+		final String returnType;
+		final String[] signatureTypes;
+		final int action;
+		final JmxOperationHandler handler;
+
+		public OperationEntry(String name, String description, String returnType, String[] signatureTypes, int action,
+				JmxOperationHandler handler) {
+			this.name = name;
+			this.description = description;
+			this.returnType = returnType;
+			this.signatureTypes = signatureTypes;
+			this.action = action;
+			this.handler = handler;
+		}
+	}
+}
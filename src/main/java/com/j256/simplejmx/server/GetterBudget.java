@@ -0,0 +1,177 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a getter of a registered object with a latency budget. See
+ * {@link com.j256.simplejmx.common.JmxAttributeMethod#timeoutMillis()}.
+ *
+ * <p>
+ * The getter is run on a daemon thread of this budget, which is reused from call to call and goes away when idle, and
+ * the caller waits for at most the timeout. If the getter does not finish in time then the last value it returned is
+ * served and is marked as stale. Only one call of the getter is outstanding at a time: callers that arrive while a call
+ * is running wait on that same call, or get the stale value right away if it is already over budget. Since each
+ * attribute has at most one thread, a getter that hangs never holds up the getters of other attributes or beans. After
+ * {@link #FAILURE_THRESHOLD} failures or timeouts in a row the getter is not called for a back-off period.
+ * </p>
+ *
+ * @author graywatson
+ */
+class GetterBudget {
+
+	static final int FAILURE_THRESHOLD = 3;
+	static final int BACKOFF_MULTIPLIER = 10;
+
+	private final long timeoutMillis;
+	/** one thread since only one call is outstanding, the queue holds a call while the last one's thread finishes */
+	private final ThreadPoolExecutor executor;
+
+	/** the outstanding call of the getter or null if none, guarded by this */
+	private GetterTask inFlight;
+	private Object lastValue;
+	private long lastValueMillis;
+	private boolean hasValue;
+	/** whether the last call of the getter failed or timed out so the last value is older than it */
+	private boolean lastCallFailed;
+	private int consecutiveFailures;
+	private long circuitOpenUntilMillis;
+
+	public GetterBudget(long timeoutMillis, String threadName) {
+		this.timeoutMillis = timeoutMillis;
+		this.executor = ServerExecutors.createExecutor(threadName, 1, 1);
+	}
+
+	/**
+	 * Get a value from the getter or the last value if the getter is slow, failing, or circuit-broken.
+	 */
+	public Object get(Callable<Object> getter) throws Exception {
+		GetterTask task;
+		synchronized (this) {
+			task = inFlight;
+			if (task == null) {
+				if (System.currentTimeMillis() < circuitOpenUntilMillis) {
+					return staleValue(new IllegalStateException("Getter is not called for "
+							+ (circuitOpenUntilMillis - System.currentTimeMillis()) + "ms after " + consecutiveFailures
+							+ " failures or timeouts in a row"));
+				}
+				task = new GetterTask(getter);
+				try {
+					executor.execute(task);
+				} catch (RejectedExecutionException e) {
+					return staleValue(e);
+				}
+				inFlight = task;
+			} else if (task.overBudget) {
+				// no use waiting on a call that is already late
+				return staleValue(new TimeoutException("Getter is still running after " + timeoutMillis + "ms"));
+			}
+		}
+		try {
+			return task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			synchronized (this) {
+				if (!task.overBudget) {
+					task.overBudget = true;
+					recordFailure();
+				}
+				return staleValue(new TimeoutException("Getter did not return within " + timeoutMillis + "ms"));
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a value that is read now would be stale because the getter is over budget, is failing, or is
+	 * circuit-broken. This is worked out from the state of the getter when it is called and not from what was served to
+	 * some other caller.
+	 */
+	public synchronized boolean isStale() {
+		return (inFlight != null && inFlight.overBudget) || lastCallFailed
+				|| System.currentTimeMillis() < circuitOpenUntilMillis;
+	}
+
+	/**
+	 * Returns the age in milliseconds of the last value that the getter returned or -1 if none.
+	 */
+	public synchronized long getAgeMillis() {
+		if (hasValue) {
+			return System.currentTimeMillis() - lastValueMillis;
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Return the last value or throw if there has never been one.
+	 */
+	private Object staleValue(Exception e) throws Exception {
+		if (!hasValue) {
+			throw e;
+		}
+		return lastValue;
+	}
+
+	private void recordFailure() {
+		lastCallFailed = true;
+		consecutiveFailures++;
+		if (consecutiveFailures >= FAILURE_THRESHOLD) {
+			circuitOpenUntilMillis = System.currentTimeMillis() + timeoutMillis * BACKOFF_MULTIPLIER;
+		}
+	}
+
+	/**
+	 * Call of the getter which records its result when it finishes even if nobody is waiting for it anymore. The result
+	 * is recorded before the waiting callers are woken up.
+	 */
+	private class GetterTask extends FutureTask<Object> {
+
+		/** set once the caller gave up on it, guarded by the budget */
+		boolean overBudget;
+
+		public GetterTask(Callable<Object> getter) {
+			super(getter);
+		}
+
+		@Override
+		protected void set(Object value) {
+			synchronized (GetterBudget.this) {
+				inFlight = null;
+				lastValue = value;
+				lastValueMillis = System.currentTimeMillis();
+				hasValue = true;
+				lastCallFailed = false;
+				if (!overBudget) {
+					consecutiveFailures = 0;
+				}
+			}
+			super.set(value);
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			synchronized (GetterBudget.this) {
+				inFlight = null;
+				if (overBudget) {
+					lastCallFailed = true;
+				} else {
+					recordFailure();
+				}
+			}
+			super.setException(t);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.j256.simplejmx.server;
+
+/**
+ * Called to set the value of an attribute that was registered with
+ * {@link JmxBeanBuilder#writableAttribute(String, Class, java.util.concurrent.Callable, JmxAttributeSetter)}.
+ * 
+ * @author graywatson
+ */
+public interface JmxAttributeSetter<T> {
+
+	/**
+	 * Set the attribute to the value passed in.
+	 */
+	public void setValue(T value) throws Exception;
+}
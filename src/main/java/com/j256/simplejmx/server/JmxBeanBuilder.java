@@ -0,0 +1,209 @@
+package com.j256.simplejmx.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+
+import com.j256.simplejmx.common.JmxFolderName;
+import com.j256.simplejmx.common.ObjectNameUtil;
+
+/**
+ * Builds a JMX bean out of getter, setter, and operation callbacks instead of an annotated class. This allows you to
+ * expose information from classes that you don't own or from anonymous classes (or lambdas) without any reflection.
+ * You get one of these from {@link JmxServer#register(String, String, JmxFolderName...)}:
+ *
+ * <pre>
+ * jmxServer.register(&quot;j256&quot;, &quot;cache&quot;)
+ * 		.attribute(&quot;hits&quot;, Long.class, hitsCallable)
+ * 		.writableAttribute(&quot;limit&quot;, Integer.class, limitCallable, limitSetter)
+ * 		.operation(&quot;reset&quot;, resetRunnable)
+ * 		.register();
+ * </pre>
+ *
+ * <p>
+ * Nothing is registered until {@link #register()} is called. A builder can be used to register one bean only.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class JmxBeanBuilder {
+
+	private final JmxServer jmxServer;
+	private final ObjectName objectName;
+	private String description;
+	private final List<FunctionalMbean.AttributeEntry> attributes = new ArrayList<FunctionalMbean.AttributeEntry>();
+	private final List<FunctionalMbean.OperationEntry> operations = new ArrayList<FunctionalMbean.OperationEntry>();
+
+	/**
+	 * Builder for a bean with the domain-name, bean-name, and optional folders which are turned into an
+	 * {@link ObjectName} with the {@link ObjectNameUtil}. If the jmx-server is null then the bean can only be created
+	 * with {@link #build()}.
+	 */
+	public JmxBeanBuilder(JmxServer jmxServer, String domainName, String beanName, JmxFolderName... folderNames) {
+		this.jmxServer = jmxServer;
+		this.objectName = ObjectNameUtil.makeObjectName(domainName, beanName, folderNames);
+	}
+
+	/**
+	 * Set the description of the bean. Default is based on the object-name.
+	 */
+	public JmxBeanBuilder description(String description) {
+		this.description = description;
+		return this;
+	}
+
+	/**
+	 * Add a read-only attribute whose value is returned by the getter. The type is shown as Object.
+	 */
+	public JmxBeanBuilder attribute(String name, Callable<?> getter) {
+		return attribute(name, Object.class, getter);
+	}
+
+	/**
+	 * Add a read-only attribute of a certain type whose value is returned by the getter.
+	 */
+	public <T> JmxBeanBuilder attribute(String name, Class<T> type, Callable<? extends T> getter) {
+		return attribute(name, null, type, getter);
+	}
+
+	/**
+	 * Add a read-only attribute with a description.
+	 */
+	public <T> JmxBeanBuilder attribute(String name, String description, Class<T> type, Callable<? extends T> getter) {
+		if (getter == null) {
+			throw new IllegalArgumentException("Getter for attribute '" + name + "' must not be null");
+		}
+		addAttribute(new FunctionalMbean.AttributeEntry(name, description, type, getter, null));
+		return this;
+	}
+
+	/**
+	 * Add an attribute that can be read with the getter and changed with the setter. The type is used by JMX clients to
+	 * convert the new value.
+	 */
+	public <T> JmxBeanBuilder writableAttribute(String name, Class<T> type, Callable<? extends T> getter,
+			JmxAttributeSetter<? super T> setter) {
+		return writableAttribute(name, null, type, getter, setter);
+	}
+
+	/**
+	 * Add a writable attribute with a description. The getter can be null if the attribute is write-only.
+	 */
+	public <T> JmxBeanBuilder writableAttribute(String name, String description, Class<T> type,
+			Callable<? extends T> getter, JmxAttributeSetter<? super T> setter) {
+		if (setter == null) {
+			throw new IllegalArgumentException("Setter for attribute '" + name + "' must not be null");
+		}
+		addAttribute(new FunctionalMbean.AttributeEntry(name, description, type, getter, setter));
+		return this;
+	}
+
+	/**
+	 * Add an operation with no parameters that runs the runnable.
+	 */
+	public JmxBeanBuilder operation(String name, final Runnable runnable) {
+		if (runnable == null) {
+			throw new IllegalArgumentException("Runnable for operation '" + name + "' must not be null");
+		}
+		return operation(name, null, void.class, null, new JmxOperationHandler() {
+			public Object invoke(Object[] params) {
+				runnable.run();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Add an operation with no parameters which returns the result of the callable.
+	 */
+	public JmxBeanBuilder operation(String name, Class<?> returnType, final Callable<?> callable) {
+		if (callable == null) {
+			throw new IllegalArgumentException("Callable for operation '" + name + "' must not be null");
+		}
+		return operation(name, null, returnType, null, new JmxOperationHandler() {
+			public Object invoke(Object[] params) throws Exception {
+				return callable.call();
+			}
+		});
+	}
+
+	/**
+	 * Add an operation with parameters. The parameter-types can be null if none.
+	 */
+	public JmxBeanBuilder operation(String name, Class<?> returnType, Class<?>[] parameterTypes,
+			JmxOperationHandler handler) {
+		return operation(name, null, returnType, parameterTypes, handler);
+	}
+
+	/**
+	 * Add an operation with a description and parameters. The parameter-types can be null if none.
+	 */
+	public JmxBeanBuilder operation(String name, String description, Class<?> returnType, Class<?>[] parameterTypes,
+			JmxOperationHandler handler) {
+		if (handler == null) {
+			throw new IllegalArgumentException("Handler for operation '" + name + "' must not be null");
+		}
+		if (returnType == null) {
+			returnType = void.class;
+		}
+		if (parameterTypes == null) {
+			parameterTypes = new Class<?>[0];
+		}
+		String[] signatureTypes = new String[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			signatureTypes[i] = parameterTypes[i].getName();
+		}
+		for (FunctionalMbean.OperationEntry operation : operations) {
+			if (operation.name.equals(name) && Arrays.equals(operation.signatureTypes, signatureTypes)) {
+				throw new IllegalArgumentException("Operation '" + name + "' with the same parameters already added");
+			}
+		}
+		operations.add(new FunctionalMbean.OperationEntry(name, description, returnType.getName(), signatureTypes,
+				MBeanOperationInfo.UNKNOWN, handler));
+		return this;
+	}
+
+	/**
+	 * Build the bean without registering it.
+	 */
+	public DynamicMBean build() {
+		if (description == null) {
+			description = "Information about " + objectName;
+		}
+		return new FunctionalMbean(description, attributes, operations);
+	}
+
+	/**
+	 * Build the bean and register it with the JmxServer. Returns the object-name that it was registered under which can
+	 * be used with {@link JmxServer#unregister(ObjectName)}.
+	 */
+	public ObjectName register() throws JMException {
+		if (jmxServer == null) {
+			throw new IllegalStateException("No JmxServer was specified so the bean can only be built");
+		}
+		jmxServer.register(objectName, build());
+		return objectName;
+	}
+
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	private void addAttribute(FunctionalMbean.AttributeEntry attribute) {
+		if (attribute.name == null || attribute.type == null) {
+			throw new IllegalArgumentException("Attribute name and type must not be null");
+		}
+		for (FunctionalMbean.AttributeEntry existing : attributes) {
+			if (existing.name.equals(attribute.name)) {
+				throw new IllegalArgumentException("Attribute '" + attribute.name + "' already added");
+			}
+		}
+		attributes.add(attribute);
+	}
+}
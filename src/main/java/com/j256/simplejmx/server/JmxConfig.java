@@ -0,0 +1,100 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.j256.simplejmx.common.JmxResource;
+
+/**
+ * Holds the current snapshot of a configuration bean whose class has {@link JmxResource#configSnapshot()} set. The
+ * holder is passed to {@link JmxServer#register(Object)} and the bean is named and described by the snapshot class.
+ * When attributes are set through JMX, a copy of the current snapshot is changed and then published as a whole so the
+ * application never sees half of a batch of changes. Reading the configuration is a single volatile load.
+ *
+ * <pre>
+ * &#64;JmxResource(domainName = "j256", configSnapshot = true)
+ * public class PoolSettings {
+ *    &#64;JmxAttributeField(isWritable = true)
+ *    private final int minSize;
+ *    &#64;JmxAttributeField(isWritable = true)
+ *    private final int maxSize;
+ *    public PoolSettings() {
+ *       this(1, 10);
+ *    }
+ *    ...
+ * }
+ *
+ * JmxConfig&lt;PoolSettings&gt; poolConfig = new JmxConfig&lt;PoolSettings&gt;(new PoolSettings());
+ * jmxServer.register(poolConfig);
+ * ...
+ * PoolSettings settings = poolConfig.get();
+ * </pre>
+ *
+ * <p>
+ * Operations and getters are called on the current snapshot so they should not change it. Final fields should not be
+ * initialized with constants in their declarations because the compiler copies the constants into the code that reads
+ * them.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class JmxConfig<T> {
+
+	private final Class<?> snapshotClass;
+	private final AtomicReference<T> current;
+
+	public JmxConfig(T snapshot) {
+		this.snapshotClass = snapshot.getClass();
+		JmxResource jmxResource = snapshotClass.getAnnotation(JmxResource.class);
+		if (jmxResource == null || !jmxResource.configSnapshot()) {
+			throw new IllegalArgumentException("Class " + snapshotClass
+					+ " must have a @JmxResource annotation with configSnapshot set to true");
+		}
+		this.current = new AtomicReference<T>(snapshot);
+	}
+
+	/**
+	 * Return the current snapshot of the configuration.
+	 */
+	public T get() {
+		return current.get();
+	}
+
+	/**
+	 * Publish a new snapshot of the configuration. It must be of the same class as the first snapshot.
+	 */
+	public void set(T snapshot) {
+		checkClass(snapshot);
+		current.set(snapshot);
+	}
+
+	/**
+	 * Publish a new snapshot of the configuration only if the current snapshot is the expected one. Returns false if
+	 * another snapshot was published in the meantime.
+	 */
+	public boolean compareAndSet(T expected, T snapshot) {
+		checkClass(snapshot);
+		return current.compareAndSet(expected, snapshot);
+	}
+
+	/**
+	 * Return the class of the snapshots.
+	 */
+	public Class<?> getSnapshotClass() {
+		return snapshotClass;
+	}
+
+	/**
+	 * Used by {@link ReflectionMbean} which only knows that the copy is of the snapshot class.
+	 */
+	@SuppressWarnings("unchecked")
+	boolean publish(Object expected, Object snapshot) {
+		return current.compareAndSet((T) expected, (T) snapshot);
+	}
+
+	private void checkClass(T snapshot) {
+		// the copies are made with the metadata of the snapshot class
+		if (snapshot.getClass() != snapshotClass) {
+			throw new IllegalArgumentException("Snapshot " + snapshot + " is not of " + snapshotClass);
+		}
+	}
+}
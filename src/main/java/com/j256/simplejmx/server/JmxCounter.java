@@ -0,0 +1,58 @@
+package com.j256.simplejmx.server;
+
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.server.MetricAttribute.UnitKind;
+
+/**
+ * Count of events such as the number of requests that a lot of threads add to at the same time. The count is striped
+ * over a number of cache lines like Java 8's LongAdder so the threads do not fight over one hot line like they do with
+ * an AtomicLong. It is exposed as the attribute <tt>name.count</tt>.
+ *
+ * <pre>
+ * &#64;JmxAttributeField(description = "Requests that were handled")
+ * private final JmxCounter requests = new JmxCounter();
+ * ...
+ * requests.increment();
+ * </pre>
+ *
+ * @author graywatson
+ */
+public final class JmxCounter extends JmxMetric {
+
+	static final MetricAttribute[] ATTRIBUTES = new MetricAttribute[] { //
+			new MetricAttribute("count", long.class, "count", JmxMetricKind.COUNTER, UnitKind.FIELD), //
+			};
+
+	private final StripedLong count = new StripedLong();
+
+	/**
+	 * Add 1 to the count.
+	 */
+	public void increment() {
+		count.add(1);
+	}
+
+	/**
+	 * Add to the count.
+	 */
+	public void add(long delta) {
+		count.add(delta);
+	}
+
+	/**
+	 * Return the count. This adds up the stripes so it is slower than adding to it.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	Object readAttribute(int index) {
+		return count.sum();
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(count.sum());
+	}
+}
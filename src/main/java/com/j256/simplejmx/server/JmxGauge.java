@@ -0,0 +1,72 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.server.MetricAttribute.UnitKind;
+
+/**
+ * Value that goes up and down such as the size of a queue. Setting it is a volatile write which does not contend with
+ * the other writers. It is exposed as the attribute <tt>name.value</tt>. If a lot of threads add to a value at the
+ * same time then a {@link JmxCounter} is faster.
+ *
+ * <pre>
+ * &#64;JmxAttributeField(description = "Entries in the queue")
+ * private final JmxGauge queueSize = new JmxGauge();
+ * ...
+ * queueSize.set(queue.size());
+ * </pre>
+ *
+ * @author graywatson
+ */
+public final class JmxGauge extends JmxMetric {
+
+	static final MetricAttribute[] ATTRIBUTES = new MetricAttribute[] { //
+			new MetricAttribute("value", long.class, "value", JmxMetricKind.GAUGE, UnitKind.FIELD), //
+			};
+
+	/** saves having an AtomicLong object per gauge */
+	private static final AtomicLongFieldUpdater<JmxGauge> VALUE_UPDATER =
+			AtomicLongFieldUpdater.newUpdater(JmxGauge.class, "value");
+
+	private volatile long value;
+
+	public JmxGauge() {
+		// for spring
+	}
+
+	public JmxGauge(long value) {
+		this.value = value;
+	}
+
+	/**
+	 * Set the value.
+	 */
+	public void set(long value) {
+		this.value = value;
+	}
+
+	/**
+	 * Add to the value which can be negative.
+	 */
+	public void add(long delta) {
+		VALUE_UPDATER.getAndAdd(this, delta);
+	}
+
+	/**
+	 * Return the value.
+	 */
+	public long get() {
+		return value;
+	}
+
+	@Override
+	Object readAttribute(int index) {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+}
@@ -0,0 +1,396 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.server.MetricAttribute.UnitKind;
+
+/**
+ * Distribution of values such as request latencies. It is exposed as the attributes <tt>name.count</tt>,
+ * <tt>name.min</tt>, <tt>name.max</tt>, <tt>name.mean</tt>, <tt>name.p50</tt>, <tt>name.p90</tt>, <tt>name.p99</tt>,
+ * and <tt>name.p999</tt>.
+ *
+ * <p>
+ * The values are counted in log-linear buckets like HdrHistogram: every power of 2 is split into the same number of
+ * linear buckets so the percentiles are within the significant digits of the real ones. The memory is fixed by the
+ * highest value and the digits. Recording increments a bucket with an atomic add so it does not lock or allocate.
+ * </p>
+ *
+ * <p>
+ * There are 2 sets of buckets. The recording threads add to the active one while a snapshot swaps them and drains the
+ * other one. A thread that got the active buckets right before a swap may add its value after they were drained, so the
+ * value stays in them until they are drained again two snapshots later, and its count, sum, min, and max can land in
+ * different snapshots. A value is never lost or counted twice. The attributes that are read within a second of each
+ * other come from the same snapshot so one scrape sees consistent values. In reset-on-read mode each snapshot only has
+ * the values since the one before it so a scraper sees the distribution of each of its intervals. Otherwise the values
+ * add up since the histogram was created.
+ * </p>
+ *
+ * <pre>
+ * &#64;JmxAttributeField(description = "Latency of the requests", unit = "us")
+ * private final JmxHistogram latency = new JmxHistogram(TimeUnit.MINUTES.toMicros(1));
+ * ...
+ * latency.record(elapsedMicros);
+ * </pre>
+ *
+ * @author graywatson
+ */
+public final class JmxHistogram extends JmxMetric {
+
+	static final MetricAttribute[] ATTRIBUTES = new MetricAttribute[] { //
+			new MetricAttribute("count", long.class, "number of values", JmxMetricKind.HISTOGRAM, UnitKind.NONE), //
+			new MetricAttribute("min", long.class, "smallest value", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("max", long.class, "largest value", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("mean", double.class, "mean of the values", JmxMetricKind.HISTOGRAM,
+					UnitKind.FIELD), //
+			new MetricAttribute("p50", long.class, "50th percentile", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("p90", long.class, "90th percentile", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("p99", long.class, "99th percentile", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("p999", long.class, "99.9th percentile", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			};
+	private static final double[] ATTRIBUTE_PERCENTILES = new double[] { 50.0, 90.0, 99.0, 99.9 };
+	private static final int FIRST_PERCENTILE_INDEX = 4;
+
+	private static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+	/** attributes read within this of each other come from the same snapshot */
+	static final long SNAPSHOT_REUSE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final long highestValue;
+	private final boolean resetOnRead;
+	/** values below this each have their own bucket */
+	private final int linearCount;
+	private final int linearBits;
+	private final int bucketCount;
+	private volatile Buckets active;
+	/** the rest of the fields are guarded by this */
+	private Buckets spare;
+	/** sums of the drained buckets unless we are reset-on-read */
+	private final long[] totalCounts;
+	private long totalSum;
+	private long totalMin = Long.MAX_VALUE;
+	private long totalMax;
+	private Snapshot lastSnapshot;
+	private long lastSnapshotNanos;
+
+	/**
+	 * Histogram with 2 significant digits which adds up the values since it was created.
+	 *
+	 * @param highestValue
+	 *            Highest value that is tracked. Higher values are counted in the last bucket.
+	 */
+	public JmxHistogram(long highestValue) {
+		this(highestValue, DEFAULT_SIGNIFICANT_DIGITS, false);
+	}
+
+	/**
+	 * @param highestValue
+	 *            Highest value that is tracked. Higher values are counted in the last bucket.
+	 * @param significantDigits
+	 *            Number of significant digits of the percentiles from 1 to 3. Each one costs about 10 times the
+	 *            memory.
+	 * @param resetOnRead
+	 *            Set to true to have each snapshot only have the values since the one before it.
+	 */
+	public JmxHistogram(long highestValue, int significantDigits, boolean resetOnRead) {
+		if (highestValue < 1) {
+			throw new IllegalArgumentException("Highest value must be at least 1: " + highestValue);
+		}
+		if (significantDigits < 1 || significantDigits > 3) {
+			throw new IllegalArgumentException("Significant digits must be from 1 to 3: " + significantDigits);
+		}
+		this.highestValue = highestValue;
+		this.resetOnRead = resetOnRead;
+		// the width of the linear buckets has to be less than 1 unit of the digits relative to the value
+		long singleUnitLimit = 2 * (long) Math.pow(10, significantDigits);
+		this.linearBits = 64 - Long.numberOfLeadingZeros(singleUnitLimit - 1);
+		this.linearCount = 1 << linearBits;
+		int highestShift = highestBit(highestValue) - (linearBits - 1);
+		if (highestShift <= 0) {
+			this.bucketCount = (int) Math.min(highestValue + 1, linearCount);
+		} else {
+			this.bucketCount = linearCount + highestShift * (linearCount / 2);
+		}
+		this.active = new Buckets(bucketCount);
+		this.spare = new Buckets(bucketCount);
+		if (resetOnRead) {
+			this.totalCounts = null;
+		} else {
+			this.totalCounts = new long[bucketCount];
+		}
+	}
+
+	/**
+	 * Record a value. Negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		Buckets buckets = active;
+		buckets.counts.getAndIncrement(bucketIndex(value));
+		buckets.sum.add(value);
+		AtomicLong max = buckets.max;
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+		AtomicLong min = buckets.min;
+		current = min.get();
+		while (value < current && !min.compareAndSet(current, value)) {
+			current = min.get();
+		}
+	}
+
+	/**
+	 * Record the nanoseconds since the start which was from {@link System#nanoTime()}.
+	 */
+	public void recordNanosSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Take a snapshot of the values now. In reset-on-read mode this starts a new interval which the JMX attributes
+	 * share with the caller.
+	 */
+	public synchronized Snapshot takeSnapshot() {
+		Snapshot snapshot = drain();
+		lastSnapshot = snapshot;
+		lastSnapshotNanos = System.nanoTime();
+		return snapshot;
+	}
+
+	/**
+	 * Return the highest value that is tracked.
+	 */
+	public long getHighestValue() {
+		return highestValue;
+	}
+
+	/**
+	 * Return whether each snapshot only has the values since the one before it.
+	 */
+	public boolean isResetOnRead() {
+		return resetOnRead;
+	}
+
+	@Override
+	Object readAttribute(int index) {
+		Snapshot snapshot = snapshot(System.nanoTime());
+		switch (index) {
+			case 0 :
+				return snapshot.getCount();
+			case 1 :
+				return snapshot.getMin();
+			case 2 :
+				return snapshot.getMax();
+			case 3 :
+				return snapshot.getMean();
+			default :
+				return snapshot.getValueAtPercentile(ATTRIBUTE_PERCENTILES[index - FIRST_PERCENTILE_INDEX]);
+		}
+	}
+
+	/**
+	 * Return the last snapshot if it was taken within the reuse time else take a new one.
+	 */
+	synchronized Snapshot snapshot(long nowNanos) {
+		if (lastSnapshot == null || nowNanos - lastSnapshotNanos >= SNAPSHOT_REUSE_NANOS) {
+			lastSnapshot = drain();
+			lastSnapshotNanos = nowNanos;
+		}
+		return lastSnapshot;
+	}
+
+	/**
+	 * Swap the buckets and drain the ones that were active. This has to be called with the lock held.
+	 */
+	private Snapshot drain() {
+		Buckets drained = active;
+		active = spare;
+		spare = drained;
+		long[] counts = new long[bucketCount];
+		long count = 0;
+		for (int i = 0; i < bucketCount; i++) {
+			counts[i] = drained.counts.getAndSet(i, 0);
+			count += counts[i];
+		}
+		long sum = drained.sum.sumThenReset();
+		long min = drained.min.getAndSet(Long.MAX_VALUE);
+		long max = drained.max.getAndSet(0);
+		if (!resetOnRead) {
+			count = 0;
+			for (int i = 0; i < bucketCount; i++) {
+				totalCounts[i] += counts[i];
+				counts[i] = totalCounts[i];
+				count += counts[i];
+			}
+			totalSum += sum;
+			totalMin = Math.min(totalMin, min);
+			totalMax = Math.max(totalMax, max);
+			sum = totalSum;
+			min = totalMin;
+			max = totalMax;
+		}
+		if (count == 0) {
+			// the min and max can be from values whose buckets were drained after we read them
+			return new Snapshot(this, counts, 0, 0, 0, 0);
+		}
+		if (min > max) {
+			// a value's bucket was drained but its min or max were set after we read them so use the buckets
+			int first = 0;
+			while (counts[first] == 0) {
+				first++;
+			}
+			int last = bucketCount - 1;
+			while (counts[last] == 0) {
+				last--;
+			}
+			min = lowestValueInBucket(first);
+			max = highestValueInBucket(last);
+		}
+		return new Snapshot(this, counts, count, sum, min, max);
+	}
+
+	int bucketIndex(long value) {
+		if (value < linearCount) {
+			return (int) Math.min(value, bucketCount - 1);
+		}
+		int shift = highestBit(value) - (linearBits - 1);
+		int subBucket = (int) (value >>> shift);
+		int index = linearCount + (shift - 1) * (linearCount / 2) + (subBucket - linearCount / 2);
+		return Math.min(index, bucketCount - 1);
+	}
+
+	/**
+	 * Return the lowest value that is counted in the bucket.
+	 */
+	long lowestValueInBucket(int index) {
+		if (index < linearCount) {
+			return index;
+		}
+		int halfCount = linearCount / 2;
+		int shift = (index - linearCount) / halfCount + 1;
+		long subBucket = (index - linearCount) % halfCount + halfCount;
+		return subBucket << shift;
+	}
+
+	/**
+	 * Return the highest value that is counted in the bucket.
+	 */
+	long highestValueInBucket(int index) {
+		if (index < linearCount) {
+			return index;
+		}
+		int halfCount = linearCount / 2;
+		int shift = (index - linearCount) / halfCount + 1;
+		long subBucket = (index - linearCount) % halfCount + halfCount;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	private static int highestBit(long value) {
+		return 63 - Long.numberOfLeadingZeros(value);
+	}
+
+	@Override
+	public String toString() {
+		return "histogram up to " + highestValue;
+	}
+
+	/**
+	 * The values of a histogram at one point in time.
+	 */
+	public static class Snapshot {
+
+		private final JmxHistogram histogram;
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long min;
+		private final long max;
+
+		private Snapshot(JmxHistogram histogram, long[] counts, long count, long sum, long min, long max) {
+			this.histogram = histogram;
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.min = min;
+			this.max = max;
+		}
+
+		/**
+		 * Return the number of values.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Return the smallest value or 0 if none.
+		 */
+		public long getMin() {
+			return min;
+		}
+
+		/**
+		 * Return the largest value or 0 if none.
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Return the mean of the values or 0 if none.
+		 */
+		public double getMean() {
+			if (count == 0) {
+				return 0.0;
+			} else {
+				return (double) sum / count;
+			}
+		}
+
+		/**
+		 * Return the value that the percent of the values are at or below, within the significant digits of the
+		 * histogram, or 0 if there are no values.
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (percentile < 0.0 || percentile > 100.0) {
+				throw new IllegalArgumentException("Percentile must be from 0 to 100: " + percentile);
+			}
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					if (i == counts.length - 1) {
+						// the values above the highest one are in the last bucket too
+						return max;
+					}
+					long value = histogram.highestValueInBucket(i);
+					return Math.max(min, Math.min(value, max));
+				}
+			}
+			return max;
+		}
+	}
+
+	/**
+	 * One of the 2 sets of buckets.
+	 */
+	private static class Buckets {
+
+		final AtomicLongArray counts;
+		final StripedLong sum = new StripedLong();
+		final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+		final AtomicLong max = new AtomicLong();
+
+		public Buckets(int bucketCount) {
+			counts = new AtomicLongArray(bucketCount);
+		}
+	}
+}
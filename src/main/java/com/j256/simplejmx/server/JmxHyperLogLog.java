@@ -0,0 +1,315 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.common.JmxOperationInfo.OperationAction;
+import com.j256.simplejmx.server.MetricAttribute.UnitKind;
+
+/**
+ * Estimated number of distinct values such as the users or client addresses that were seen. It is a HyperLogLog
+ * sketch so it takes a fixed 2^precision bytes no matter how many values there are and the estimate is within about
+ * 1.04 / sqrt(2^precision) of the real number: 0.8% for the default precision of 14 which takes 16k. It is exposed as
+ * the attribute <tt>name.cardinality</tt> and the operation <tt>name.registers</tt> which returns the raw registers so
+ * the sketches of several JVMs can be merged with {@link #mergeRegisters(byte[]...)} and estimated with
+ * {@link #estimateRegisters(byte[])}.
+ *
+ * <p>
+ * The registers are packed 4 to an int and are raised with a compare-and-set so recording does not lock or allocate.
+ * Once the sketch has warmed up most values do not raise a register so they are only a read. With a window the
+ * estimate is of the values in the last window of time. The window is split into 4 slots that each have their own
+ * registers and the oldest one is cleared when a new slot starts so the estimate covers between 3/4 of the window and
+ * all of it.
+ * </p>
+ *
+ * <pre>
+ * &#64;JmxAttributeField(description = "Users in the last hour")
+ * private final JmxHyperLogLog users = new JmxHyperLogLog(14, TimeUnit.HOURS.toMillis(1));
+ * ...
+ * users.record(userId);
+ * </pre>
+ *
+ * @author graywatson
+ */
+public final class JmxHyperLogLog extends JmxMetric {
+
+	static final MetricAttribute[] ATTRIBUTES = new MetricAttribute[] { //
+			new MetricAttribute("cardinality", long.class, "estimated number of distinct values", JmxMetricKind.GAUGE,
+					UnitKind.NONE), //
+			};
+	static final MetricOperation[] OPERATIONS = new MetricOperation[] { //
+			new MetricOperation("registers", byte[].class, "raw registers of the sketch which are merged by taking "
+					+ "the max of each byte", OperationAction.INFO), //
+			};
+
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 16;
+	private static final int DEFAULT_PRECISION = 14;
+	private static final int WINDOW_SLOTS = 4;
+
+	private final int precision;
+	private final int registerCount;
+	/** 0 if there is no window */
+	private final long slotNanos;
+	private final long startNanos;
+	private final Slot[] slots;
+
+	/**
+	 * Sketch with the default precision of 14 which counts the values since it was created.
+	 */
+	public JmxHyperLogLog() {
+		this(DEFAULT_PRECISION, 0);
+	}
+
+	/**
+	 * @param precision
+	 *            Log 2 of the number of registers from {@link #MIN_PRECISION} to {@link #MAX_PRECISION}. Each one
+	 *            doubles the memory and takes the error down by sqrt(2).
+	 * @param windowMillis
+	 *            Length of the window of time that the values are counted in or 0 to count the values since the
+	 *            sketch was created. Each window takes 4 times the memory.
+	 */
+	public JmxHyperLogLog(int precision, long windowMillis) {
+		this(precision, windowMillis, System.nanoTime());
+	}
+
+	/**
+	 * For testing.
+	 */
+	JmxHyperLogLog(int precision, long windowMillis, long startNanos) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("Precision must be from " + MIN_PRECISION + " to " + MAX_PRECISION
+					+ ": " + precision);
+		}
+		if (windowMillis < 0) {
+			throw new IllegalArgumentException("Window cannot be negative: " + windowMillis);
+		}
+		this.precision = precision;
+		this.registerCount = 1 << precision;
+		this.slotNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis) / WINDOW_SLOTS;
+		if (windowMillis > 0 && slotNanos == 0) {
+			throw new IllegalArgumentException("Window is too short: " + windowMillis);
+		}
+		this.startNanos = startNanos;
+		this.slots = new Slot[slotNanos == 0 ? 1 : WINDOW_SLOTS];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = new Slot(registerCount, i);
+		}
+	}
+
+	/**
+	 * Record a value by its hash-code so values that are equal but have different hash-codes are counted twice. Only
+	 * the 32 bits of the hash-code are used so a huge number of values will be under-counted.
+	 */
+	public void record(Object value) {
+		recordHash(mix(value.hashCode()), slotNanos == 0 ? 0 : System.nanoTime());
+	}
+
+	/**
+	 * Record a value such as a user name by hashing all of its characters.
+	 */
+	public void record(CharSequence value) {
+		long hash = 0;
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash + value.charAt(i)) * 0x9E3779B97F4A7C15L;
+		}
+		recordHash(mix(hash + value.length()), slotNanos == 0 ? 0 : System.nanoTime());
+	}
+
+	/**
+	 * Record a numeric value such as a user id or an IPv4 address.
+	 */
+	public void record(long value) {
+		recordHash(mix(value), slotNanos == 0 ? 0 : System.nanoTime());
+	}
+
+	/**
+	 * Return the estimated number of distinct values.
+	 */
+	public long getCardinality() {
+		return estimateRegisters(getRegisters());
+	}
+
+	/**
+	 * Return the registers with one per byte. If there is a window then the slots of the window are merged.
+	 */
+	public byte[] getRegisters() {
+		return registers(slotNanos == 0 ? 0 : System.nanoTime());
+	}
+
+	/**
+	 * Return the log 2 of the number of registers.
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Merge the registers from a number of sketches which have the same precision by taking the max of each of them.
+	 * The result is the registers of a sketch that had recorded all of their values.
+	 */
+	public static byte[] mergeRegisters(byte[]... registersArray) {
+		if (registersArray.length == 0) {
+			throw new IllegalArgumentException("No registers to merge");
+		}
+		byte[] merged = new byte[registersArray[0].length];
+		for (byte[] registers : registersArray) {
+			if (registers.length != merged.length) {
+				throw new IllegalArgumentException("Cannot merge " + registers.length + " registers with "
+						+ merged.length + ", the precisions must be the same");
+			}
+			for (int i = 0; i < registers.length; i++) {
+				if (registers[i] > merged[i]) {
+					merged[i] = registers[i];
+				}
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Return the estimated number of distinct values from the registers of a sketch.
+	 */
+	public static long estimateRegisters(byte[] registers) {
+		int count = registers.length;
+		if (Integer.bitCount(count) != 1 || count < (1 << MIN_PRECISION) || count > (1 << MAX_PRECISION)) {
+			throw new IllegalArgumentException("Number of registers " + count + " is not a power of 2 from "
+					+ (1 << MIN_PRECISION) + " to " + (1 << MAX_PRECISION));
+		}
+		double sum = 0;
+		int zeroCount = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeroCount++;
+			}
+		}
+		double estimate = alpha(count) * count * count / sum;
+		if (estimate <= 2.5 * count && zeroCount > 0) {
+			// linear counting is better for the small numbers
+			estimate = count * Math.log((double) count / zeroCount);
+		}
+		return Math.round(estimate);
+	}
+
+	@Override
+	Object readAttribute(int index) {
+		return getCardinality();
+	}
+
+	@Override
+	Object invokeOperation(int index) {
+		return getRegisters();
+	}
+
+	void recordHash(long hash, long nowNanos) {
+		Slot slot = slots[0];
+		if (slotNanos > 0) {
+			long epoch = (nowNanos - startNanos) / slotNanos;
+			slot = slots[(int) (epoch % WINDOW_SLOTS)];
+			if (slot.epoch != epoch) {
+				slot = rotate(slot, epoch);
+			}
+		}
+		int index = (int) (hash >>> (64 - precision));
+		// the guard bit keeps the rank within 64 - precision + 1
+		int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+		AtomicIntegerArray registers = slot.registers;
+		int word = index >>> 2;
+		int shift = (index & 3) << 3;
+		int current = registers.get(word);
+		while (((current >>> shift) & 0xFF) < rank) {
+			int updated = (current & ~(0xFF << shift)) | (rank << shift);
+			if (registers.compareAndSet(word, current, updated)) {
+				break;
+			}
+			current = registers.get(word);
+		}
+	}
+
+	byte[] registers(long nowNanos) {
+		long epoch = 0;
+		if (slotNanos > 0) {
+			epoch = (nowNanos - startNanos) / slotNanos;
+		}
+		byte[] merged = new byte[registerCount];
+		for (Slot slot : slots) {
+			long slotEpoch = slot.epoch;
+			// slots that were not used in the window are stale
+			if (slotEpoch > epoch || slotEpoch <= epoch - slots.length) {
+				continue;
+			}
+			AtomicIntegerArray registers = slot.registers;
+			for (int word = 0; word < registers.length(); word++) {
+				int value = registers.get(word);
+				for (int i = 0; i < 4; i++) {
+					byte register = (byte) (value >>> (i << 3));
+					int index = (word << 2) + i;
+					if (register > merged[index]) {
+						merged[index] = register;
+					}
+				}
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Clear the slot for the new epoch unless another thread got there first.
+	 */
+	private synchronized Slot rotate(Slot slot, long epoch) {
+		if (slot.epoch < epoch) {
+			AtomicIntegerArray registers = slot.registers;
+			for (int i = 0; i < registers.length(); i++) {
+				registers.set(i, 0);
+			}
+			slot.epoch = epoch;
+		}
+		return slot;
+	}
+
+	/**
+	 * Finalizer of murmur3 which spreads the bits of the value over all of the bits of the hash.
+	 */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB9FE1A85EC53L;
+		return value ^ (value >>> 33);
+	}
+
+	private static double alpha(int count) {
+		switch (count) {
+			case 16 :
+				return 0.673;
+			case 32 :
+				return 0.697;
+			case 64 :
+				return 0.709;
+			default :
+				return 0.7213 / (1.0 + 1.079 / count);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(getCardinality());
+	}
+
+	/**
+	 * Registers of one slot of the window.
+	 */
+	private static class Slot {
+
+		final AtomicIntegerArray registers;
+		/** number of the slot since the start which is set after the registers are cleared */
+		volatile long epoch;
+
+		public Slot(int registerCount, long epoch) {
+			this.registers = new AtomicIntegerArray(registerCount / 4);
+			this.epoch = epoch;
+		}
+	}
+}
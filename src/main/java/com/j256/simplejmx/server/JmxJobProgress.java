@@ -0,0 +1,55 @@
+package com.j256.simplejmx.server;
+
+/**
+ * Used by the methods of {@link com.j256.simplejmx.common.JmxOperation#async()} operations to report how far along
+ * they are. The progress is returned by the <tt>jobProgress</tt> operation of the bean. Calls from threads that are not
+ * running a job are ignored.
+ *
+ * <pre>
+ * &#64;JmxOperation(async = true)
+ * public void rebuildIndex() {
+ *    for (int i = 0; i &lt; segments.length; i++) {
+ *       if (JmxJobProgress.isCancelled()) {
+ *          return;
+ *       }
+ *       ...
+ *       JmxJobProgress.report((i + 1) * 100 / segments.length);
+ *    }
+ * }
+ * </pre>
+ *
+ * @author graywatson
+ */
+public class JmxJobProgress {
+
+	private static final ThreadLocal<JobTable.Job> currentJob = new ThreadLocal<JobTable.Job>();
+
+	private JmxJobProgress() {
+		// only static methods
+	}
+
+	/**
+	 * Report the percentage of the work of the current job that is done.
+	 */
+	public static void report(int percentDone) {
+		JobTable.Job job = currentJob.get();
+		if (job != null) {
+			job.progress = percentDone;
+		}
+	}
+
+	/**
+	 * Returns true if the current job was cancelled. This is the same as checking the interrupted flag of the thread.
+	 */
+	public static boolean isCancelled() {
+		return Thread.currentThread().isInterrupted();
+	}
+
+	static void setCurrentJob(JobTable.Job job) {
+		if (job == null) {
+			currentJob.remove();
+		} else {
+			currentJob.set(job);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.TimeUnit;
+
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.server.MetricAttribute.UnitKind;
+
+/**
+ * Rate of events such as the requests per second. It keeps a striped count like {@link JmxCounter} and the 1, 5, and
+ * 15 minute exponentially weighted moving averages of the rate which are like the load averages of unix. It is
+ * exposed as the attributes <tt>name.count</tt>, <tt>name.meanRate</tt>, <tt>name.oneMinuteRate</tt>,
+ * <tt>name.fiveMinuteRate</tt>, and <tt>name.fifteenMinuteRate</tt>. The rates are per second.
+ *
+ * <p>
+ * Marking an event only adds to the count. The averages are brought up to date in 5 second ticks when they are read so
+ * there is no timer thread. The events since the last read are spread evenly over the ticks that have gone by.
+ * </p>
+ *
+ * <pre>
+ * &#64;JmxAttributeField(description = "Requests that were handled", unit = "requests")
+ * private final JmxMeter requests = new JmxMeter();
+ * ...
+ * requests.mark();
+ * </pre>
+ *
+ * @author graywatson
+ */
+public final class JmxMeter extends JmxMetric {
+
+	static final MetricAttribute[] ATTRIBUTES = new MetricAttribute[] { //
+			new MetricAttribute("count", long.class, "count", JmxMetricKind.COUNTER, UnitKind.FIELD), //
+			new MetricAttribute("meanRate", double.class, "mean rate since it was created", JmxMetricKind.GAUGE,
+					UnitKind.PER_SECOND), //
+			new MetricAttribute("oneMinuteRate", double.class, "1 minute moving average of the rate",
+					JmxMetricKind.GAUGE, UnitKind.PER_SECOND), //
+			new MetricAttribute("fiveMinuteRate", double.class, "5 minute moving average of the rate",
+					JmxMetricKind.GAUGE, UnitKind.PER_SECOND), //
+			new MetricAttribute("fifteenMinuteRate", double.class, "15 minute moving average of the rate",
+					JmxMetricKind.GAUGE, UnitKind.PER_SECOND), //
+			};
+
+	static final int COUNT_INDEX = 0;
+	static final int MEAN_RATE_INDEX = 1;
+	static final int ONE_MINUTE_INDEX = 2;
+	static final int FIVE_MINUTE_INDEX = 3;
+	static final int FIFTEEN_MINUTE_INDEX = 4;
+
+	static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+	private static final double TICK_SECONDS = 5.0;
+	/** how much of the rate of the last tick goes into each of the averages */
+	private static final double ONE_MINUTE_ALPHA = alpha(1);
+	private static final double FIVE_MINUTE_ALPHA = alpha(5);
+	private static final double FIFTEEN_MINUTE_ALPHA = alpha(15);
+
+	private final StripedLong count = new StripedLong();
+	private final long startNanos;
+	/** the rest of the fields are guarded by this */
+	private long lastTickNanos;
+	private long lastTickCount;
+	private boolean ticked;
+	private double oneMinuteRate;
+	private double fiveMinuteRate;
+	private double fifteenMinuteRate;
+
+	public JmxMeter() {
+		this(System.nanoTime());
+	}
+
+	/**
+	 * For testing.
+	 */
+	JmxMeter(long startNanos) {
+		this.startNanos = startNanos;
+		this.lastTickNanos = startNanos;
+	}
+
+	/**
+	 * Record an event.
+	 */
+	public void mark() {
+		count.add(1);
+	}
+
+	/**
+	 * Record a number of events.
+	 */
+	public void mark(long events) {
+		count.add(events);
+	}
+
+	/**
+	 * Return the number of events.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Return the events per second since the meter was created.
+	 */
+	public double getMeanRate() {
+		return meanRate(System.nanoTime());
+	}
+
+	/**
+	 * Return the 1 minute moving average of the events per second.
+	 */
+	public double getOneMinuteRate() {
+		return rate(ONE_MINUTE_INDEX, System.nanoTime());
+	}
+
+	/**
+	 * Return the 5 minute moving average of the events per second.
+	 */
+	public double getFiveMinuteRate() {
+		return rate(FIVE_MINUTE_INDEX, System.nanoTime());
+	}
+
+	/**
+	 * Return the 15 minute moving average of the events per second.
+	 */
+	public double getFifteenMinuteRate() {
+		return rate(FIFTEEN_MINUTE_INDEX, System.nanoTime());
+	}
+
+	@Override
+	Object readAttribute(int index) {
+		switch (index) {
+			case COUNT_INDEX :
+				return getCount();
+			case MEAN_RATE_INDEX :
+				return getMeanRate();
+			case ONE_MINUTE_INDEX :
+				return getOneMinuteRate();
+			case FIVE_MINUTE_INDEX :
+				return getFiveMinuteRate();
+			case FIFTEEN_MINUTE_INDEX :
+				return getFifteenMinuteRate();
+			default :
+				throw new IllegalArgumentException("Unknown meter attribute index: " + index);
+		}
+	}
+
+	double meanRate(long nowNanos) {
+		long elapsedNanos = nowNanos - startNanos;
+		if (elapsedNanos <= 0) {
+			return 0.0;
+		} else {
+			return count.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+	}
+
+	/**
+	 * Return one of the moving averages after bringing them up to the time.
+	 */
+	synchronized double rate(int index, long nowNanos) {
+		tick(nowNanos);
+		switch (index) {
+			case ONE_MINUTE_INDEX :
+				return oneMinuteRate;
+			case FIVE_MINUTE_INDEX :
+				return fiveMinuteRate;
+			case FIFTEEN_MINUTE_INDEX :
+				return fifteenMinuteRate;
+			default :
+				throw new IllegalArgumentException("Unknown meter rate index: " + index);
+		}
+	}
+
+	/**
+	 * Bring the averages up to the last tick before the time. This has to be called with the lock held.
+	 */
+	private void tick(long nowNanos) {
+		long ticks = (nowNanos - lastTickNanos) / TICK_NANOS;
+		if (ticks <= 0) {
+			return;
+		}
+		lastTickNanos += ticks * TICK_NANOS;
+		long currentCount = count.sum();
+		double rate = (currentCount - lastTickCount) / (ticks * TICK_SECONDS);
+		lastTickCount = currentCount;
+		if (ticked) {
+			oneMinuteRate = decay(oneMinuteRate, rate, ONE_MINUTE_ALPHA, ticks);
+			fiveMinuteRate = decay(fiveMinuteRate, rate, FIVE_MINUTE_ALPHA, ticks);
+			fifteenMinuteRate = decay(fifteenMinuteRate, rate, FIFTEEN_MINUTE_ALPHA, ticks);
+		} else {
+			// the first tick starts the averages off at the rate so they don't have to climb up from 0
+			oneMinuteRate = rate;
+			fiveMinuteRate = rate;
+			fifteenMinuteRate = rate;
+			ticked = true;
+		}
+	}
+
+	/**
+	 * Return the average after a number of ticks that each had the rate. Applying average += alpha * (rate - average)
+	 * that many times comes out to this so reading after a long time does not loop.
+	 */
+	private static double decay(double average, double rate, double alpha, long ticks) {
+		return rate + (average - rate) * Math.pow(1.0 - alpha, ticks);
+	}
+
+	private static double alpha(int minutes) {
+		return 1.0 - Math.exp(-TICK_SECONDS / TimeUnit.MINUTES.toSeconds(minutes));
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(count.sum());
+	}
+}
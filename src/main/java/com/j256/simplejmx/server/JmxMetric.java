@@ -0,0 +1,73 @@
+package com.j256.simplejmx.server;
+
+/**
+ * Base class of the metrics that are recorded by the application and are exposed through JMX. A field of one of the
+ * metric classes with a {@link com.j256.simplejmx.common.JmxAttributeField} annotation is exposed as a number of
+ * read-only attributes that are named by adding a suffix to the name of the field. For example a {@link JmxMeter}
+ * field named requests is exposed as requests.count, requests.oneMinuteRate, and the like. Some of the metrics also
+ * have operations such as hotKeys.reset. The units of the annotation are the units of the recorded values and the
+ * metricType descriptors are set for each attribute.
+ *
+ * <p>
+ * Recording a value is lock-free and does not allocate. The field has to be declared as the metric class and not as
+ * this class so the attributes can be found before there is an object.
+ * </p>
+ *
+ * @author graywatson
+ */
+public abstract class JmxMetric {
+
+	private static final MetricOperation[] NO_OPERATIONS = new MetricOperation[0];
+
+	/** only our metrics because the attributes are looked up by class */
+	JmxMetric() {
+	}
+
+	/**
+	 * Return the value of the attribute with the index into the attributes of the class.
+	 */
+	abstract Object readAttribute(int index);
+
+	/**
+	 * Invoke the operation with the index into the operations of the class and return its result.
+	 */
+	Object invokeOperation(int index) {
+		throw new IllegalArgumentException("Metric " + getClass().getSimpleName() + " has no operation " + index);
+	}
+
+	/**
+	 * Return the attributes of the metric class or null if it is not one of ours.
+	 */
+	static MetricAttribute[] attributesOf(Class<?> type) {
+		if (type == JmxCounter.class) {
+			return JmxCounter.ATTRIBUTES;
+		} else if (type == JmxGauge.class) {
+			return JmxGauge.ATTRIBUTES;
+		} else if (type == JmxMeter.class) {
+			return JmxMeter.ATTRIBUTES;
+		} else if (type == JmxHistogram.class) {
+			return JmxHistogram.ATTRIBUTES;
+		} else if (type == JmxTopK.class) {
+			return JmxTopK.ATTRIBUTES;
+		} else if (type == JmxHyperLogLog.class) {
+			return JmxHyperLogLog.ATTRIBUTES;
+		} else if (type == JmxQuantileSketch.class) {
+			return JmxQuantileSketch.ATTRIBUTES;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Return the operations of the metric class.
+	 */
+	static MetricOperation[] operationsOf(Class<?> type) {
+		if (type == JmxTopK.class) {
+			return JmxTopK.OPERATIONS;
+		} else if (type == JmxHyperLogLog.class) {
+			return JmxHyperLogLog.OPERATIONS;
+		} else {
+			return NO_OPERATIONS;
+		}
+	}
+}
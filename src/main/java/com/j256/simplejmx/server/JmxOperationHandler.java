@@ -0,0 +1,15 @@
+package com.j256.simplejmx.server;
+
+/**
+ * Called to run an operation that was registered with
+ * {@link JmxBeanBuilder#operation(String, Class, Class[], JmxOperationHandler)}.
+ * 
+ * @author graywatson
+ */
+public interface JmxOperationHandler {
+
+	/**
+	 * Run the operation with the parameters passed in by the JMX client and return the result or null if none.
+	 */
+	public Object invoke(Object[] params) throws Exception;
+}
@@ -0,0 +1,189 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.common.JmxQuantileSummary;
+import com.j256.simplejmx.server.MetricAttribute.UnitKind;
+
+/**
+ * Distribution of values such as latencies whose quantiles are within a relative accuracy of the real ones and which
+ * can be merged across JVMs. It is exposed as the attributes <tt>name.sketch</tt>, which is the compact byte[] form of
+ * {@link JmxQuantileSummary}, and <tt>name.count</tt>, <tt>name.min</tt>, <tt>name.max</tt>, <tt>name.p50</tt>,
+ * <tt>name.p90</tt>, <tt>name.p99</tt>, and <tt>name.p999</tt> for this JVM. The sketches of a fleet can be merged with
+ * {@link com.j256.simplejmx.client.JmxClient#mergeQuantileSketches(Iterable, javax.management.ObjectName, String)}.
+ *
+ * <p>
+ * The buckets go up by a factor of (1 + accuracy) / (1 - accuracy) and are a fixed array of atomic counters from the
+ * smallest to the largest value so recording is a log and an atomic add. Values outside of the range are counted in
+ * the first or last bucket and values of 0 or less are counted on their own.
+ * </p>
+ *
+ * <pre>
+ * &#64;JmxAttributeField(description = "Latency of the requests", unit = "ms")
+ * private final JmxQuantileSketch latency = new JmxQuantileSketch(0.01, 0.001, 60000);
+ * ...
+ * latency.record(elapsedMillis);
+ * </pre>
+ *
+ * @author graywatson
+ */
+public final class JmxQuantileSketch extends JmxMetric {
+
+	static final MetricAttribute[] ATTRIBUTES = new MetricAttribute[] { //
+			new MetricAttribute("sketch", byte[].class, "serialized sketch which is merged with others by the client",
+					JmxMetricKind.UNKNOWN, UnitKind.NONE), //
+			new MetricAttribute("count", long.class, "number of values", JmxMetricKind.HISTOGRAM, UnitKind.NONE), //
+			new MetricAttribute("min", double.class, "smallest value", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("max", double.class, "largest value", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("p50", double.class, "50th percentile", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("p90", double.class, "90th percentile", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("p99", double.class, "99th percentile", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			new MetricAttribute("p999", double.class, "99.9th percentile", JmxMetricKind.HISTOGRAM, UnitKind.FIELD), //
+			};
+	private static final double[] ATTRIBUTE_QUANTILES = new double[] { 0.5, 0.9, 0.99, 0.999 };
+	private static final int FIRST_QUANTILE_INDEX = 4;
+
+	private static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+	private static final double DEFAULT_MIN_VALUE = 1.0;
+	private static final double DEFAULT_MAX_VALUE = 1.0e12;
+	/** so a mistake in the range doesn't use up the memory */
+	private static final int MAX_BUCKETS = 1 << 16;
+
+	private final double relativeAccuracy;
+	private final double logGamma;
+	private final int lowestIndex;
+	private final AtomicLongArray buckets;
+	private final AtomicLong zeroCount = new AtomicLong();
+	/** bits of the doubles since there is no atomic double */
+	private final AtomicLong minBits = new AtomicLong(Double.doubleToLongBits(Double.MAX_VALUE));
+	private final AtomicLong maxBits = new AtomicLong(Double.doubleToLongBits(-Double.MAX_VALUE));
+
+	/**
+	 * Sketch with 1% accuracy for values from 1 to 10^12 which takes about 11k of memory.
+	 */
+	public JmxQuantileSketch() {
+		this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MIN_VALUE, DEFAULT_MAX_VALUE);
+	}
+
+	/**
+	 * @param relativeAccuracy
+	 *            How close the quantiles are to the real ones such as 0.01 for 1%. Sketches can only be merged if they
+	 *            have the same accuracy.
+	 * @param minValue
+	 *            Smallest positive value that has its own bucket.
+	 * @param maxValue
+	 *            Largest value that has its own bucket.
+	 */
+	public JmxQuantileSketch(double relativeAccuracy, double minValue, double maxValue) {
+		if (!(relativeAccuracy > 0.0 && relativeAccuracy < 1.0)) {
+			throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+		}
+		if (!(minValue > 0.0 && minValue < maxValue)) {
+			throw new IllegalArgumentException("Min value " + minValue + " must be positive and less than max value "
+					+ maxValue);
+		}
+		this.relativeAccuracy = relativeAccuracy;
+		this.logGamma = Math.log((1.0 + relativeAccuracy) / (1.0 - relativeAccuracy));
+		this.lowestIndex = JmxQuantileSummary.bucketIndex(minValue, relativeAccuracy);
+		int highestIndex = JmxQuantileSummary.bucketIndex(maxValue, relativeAccuracy);
+		long bucketCount = (long) highestIndex - lowestIndex + 1;
+		if (bucketCount > MAX_BUCKETS) {
+			throw new IllegalArgumentException("Range " + minValue + " to " + maxValue + " with accuracy "
+					+ relativeAccuracy + " needs too many buckets: " + bucketCount);
+		}
+		this.buckets = new AtomicLongArray((int) bucketCount);
+	}
+
+	/**
+	 * Record a value.
+	 */
+	public void record(double value) {
+		if (value > 0.0) {
+			int index = (int) Math.ceil(Math.log(value) / logGamma) - lowestIndex;
+			if (index < 0) {
+				index = 0;
+			} else if (index >= buckets.length()) {
+				index = buckets.length() - 1;
+			}
+			buckets.incrementAndGet(index);
+		} else {
+			zeroCount.incrementAndGet();
+		}
+		long bits = Double.doubleToLongBits(value);
+		long current = minBits.get();
+		while (value < Double.longBitsToDouble(current) && !minBits.compareAndSet(current, bits)) {
+			current = minBits.get();
+		}
+		current = maxBits.get();
+		while (value > Double.longBitsToDouble(current) && !maxBits.compareAndSet(current, bits)) {
+			current = maxBits.get();
+		}
+	}
+
+	/**
+	 * Record the nanoseconds since the start which came from {@link System#nanoTime()}.
+	 */
+	public void recordNanosSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Return the values of the sketch which can be serialized and merged with others.
+	 */
+	public JmxQuantileSummary getSummary() {
+		int bucketCount = 0;
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			if (counts[i] != 0) {
+				bucketCount++;
+			}
+		}
+		int[] summaryIndexes = new int[bucketCount];
+		long[] summaryCounts = new long[bucketCount];
+		int bucket = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				summaryIndexes[bucket] = lowestIndex + i;
+				summaryCounts[bucket] = counts[i];
+				bucket++;
+			}
+		}
+		double min = Double.longBitsToDouble(minBits.get());
+		double max = Double.longBitsToDouble(maxBits.get());
+		if (min > max) {
+			// no values yet
+			min = 0.0;
+			max = 0.0;
+		}
+		return new JmxQuantileSummary(relativeAccuracy, zeroCount.get(), summaryIndexes, summaryCounts, min, max);
+	}
+
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+
+	@Override
+	Object readAttribute(int index) {
+		JmxQuantileSummary summary = getSummary();
+		switch (index) {
+			case 0 :
+				return summary.toBytes();
+			case 1 :
+				return summary.getCount();
+			case 2 :
+				return summary.getMin();
+			case 3 :
+				return summary.getMax();
+			default :
+				return summary.getValueAtQuantile(ATTRIBUTE_QUANTILES[index - FIRST_QUANTILE_INDEX]);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getSummary().toString();
+	}
+}
@@ -2,12 +2,15 @@ package com.j256.simplejmx.server;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
 import java.rmi.NoSuchObjectException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
 
+import javax.management.DynamicMBean;
 import javax.management.JMException;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -17,6 +20,8 @@ import javax.management.remote.JMXServiceURL;
 
 import com.j256.simplejmx.common.JmxAttributeFieldInfo;
 import com.j256.simplejmx.common.JmxAttributeMethodInfo;
+import com.j256.simplejmx.common.JmxFolderName;
+import com.j256.simplejmx.common.JmxKeyedResource;
 import com.j256.simplejmx.common.JmxOperationInfo;
 import com.j256.simplejmx.common.JmxResource;
 import com.j256.simplejmx.common.JmxSelfNaming;
@@ -29,11 +34,43 @@ import com.j256.simplejmx.common.ObjectNameUtil;
  */
 public class JmxServer {
 
+	/**
+	 * Suffix of the name of the adapter classes that are generated by the
+	 * {@link com.j256.simplejmx.processor.JmxAnnotationProcessor}.
+	 */
+	public static final String ADAPTER_CLASS_SUFFIX = "$$JmxAdapter";
+
+	/**
+	 * Cache of the constructor of the generated adapter for a class or null if the class does not have one.
+	 */
+	private static final ClassValue<Constructor<?>> adapterConstructorCache = new ClassValue<Constructor<?>>() {
+		@Override
+		protected Constructor<?> computeValue(Class<?> clazz) {
+			try {
+				Class<?> adapterClass =
+						Class.forName(clazz.getName() + ADAPTER_CLASS_SUFFIX, true, clazz.getClassLoader());
+				if (DynamicMBean.class.isAssignableFrom(adapterClass)) {
+					return adapterClass.getConstructor(clazz);
+				}
+			} catch (ClassNotFoundException e) {
+				// no adapter was generated
+			} catch (NoSuchMethodException e) {
+				// not one of our adapters
+			}
+			return null;
+		}
+	};
+
 	private Registry rmiRegistry;
 	private int serverPort;
 	private int registryPort;
 	private JMXConnectorServer connector;
 	private MBeanServer mbeanServer;
+	/** null until a bean is registered weakly */
+	private WeakRegistrations weakRegistrations;
+	private final VirtualMbeanForwarder virtualForwarder = new VirtualMbeanForwarder();
+	/** whether the forwarder is on the connector which is only done once there are virtual beans */
+	private boolean virtualForwarderInstalled;
 
 	/**
 	 * Create a JMX server that will be set with the port using setters. Used with spring. You must at least specify the
@@ -63,6 +100,10 @@ public class JmxServer {
 		}
 		startRmiRegistry();
 		startJmxService();
+		// stop() stopped the reaper of the beans that are still registered
+		if (weakRegistrations != null && weakRegistrations.getLiveCount() > 0) {
+			weakRegistrations.startReaper();
+		}
 	}
 
 	/**
@@ -81,6 +122,9 @@ public class JmxServer {
 	 * on any issues.
 	 */
 	public synchronized void stopThrow() throws JMException {
+		if (weakRegistrations != null) {
+			weakRegistrations.stopReaper();
+		}
 		if (connector != null) {
 			try {
 				connector.stop();
@@ -88,6 +132,7 @@ public class JmxServer {
 				throw createJmException("Could not stop our Jmx connector server", e);
 			} finally {
 				connector = null;
+				virtualForwarderInstalled = false;
 			}
 		}
 		if (rmiRegistry != null) {
@@ -102,18 +147,96 @@ public class JmxServer {
 	}
 
 	/**
-	 * Register the object parameter for exposure with JMX. The object passed in must have a {@link JmxResource}
-	 * annotation or must implement {@link JmxSelfNaming}.
+	 * Register the object parameter for exposure with JMX. The object passed in must have a {@link JmxResource} or
+	 * {@link JmxKeyedResource} annotation or must implement {@link JmxSelfNaming}. If the class has an adapter that was
+	 * generated by the {@link com.j256.simplejmx.processor.JmxAnnotationProcessor} then it is used, otherwise the
+	 * object is exposed with a {@link ReflectionMbean}. A {@link JmxConfig} is registered with the name of its snapshot
+	 * class.
 	 */
 	public synchronized void register(Object obj) throws JMException {
-		ObjectName objectName = ObjectNameUtil.makeObjectName(obj);
-		ReflectionMbean mbean;
+		ObjectName objectName = makeObjectName(obj);
+		doRegister(objectName, buildMbean(obj));
+	}
+
+	/**
+	 * Register the object parameter like {@link #register(Object)} but the bean only holds the object weakly. Once the
+	 * object is garbage collected, calls to the bean fail and a reaper thread un-registers it. This is for per-session
+	 * and per-connection objects that might not be un-registered. The object is always exposed with a
+	 * {@link ReflectionMbean} since the generated adapters hold their object strongly.
+	 */
+	public synchronized void registerWeak(Object obj) throws JMException {
+		if (obj instanceof JmxConfig) {
+			throw new IllegalArgumentException("Config beans cannot be registered weakly");
+		}
+		ObjectName objectName = makeObjectName(obj);
+		if (weakRegistrations == null) {
+			weakRegistrations = new WeakRegistrations(this);
+		}
+		WeakRegistrations.Registration registration = weakRegistrations.create(obj, objectName);
+		DynamicMBean mbean;
 		try {
-			mbean = new ReflectionMbean(obj);
+			mbean = new ReflectionMbean(registration);
 		} catch (Exception e) {
 			throw createJmException("Could not build MBean object for: " + obj, e);
 		}
 		doRegister(objectName, mbean);
+		weakRegistrations.add(registration);
+	}
+
+	/**
+	 * Return the number of beans registered with {@link #registerWeak(Object)} that have not been un-registered or
+	 * reaped yet.
+	 */
+	public int getWeakLiveCount() {
+		WeakRegistrations registrations = getWeakRegistrations();
+		return (registrations == null ? 0 : registrations.getLiveCount());
+	}
+
+	/**
+	 * Return the number of beans registered with {@link #registerWeak(Object)} that were un-registered by the reaper
+	 * because their object was garbage collected.
+	 */
+	public long getWeakReapedCount() {
+		WeakRegistrations registrations = getWeakRegistrations();
+		return (registrations == null ? 0 : registrations.getReapedCount());
+	}
+
+	/**
+	 * Register a naming pattern whose beans are not registered with the MBeanServer. The pattern is the domain and
+	 * folders with any bean name. When a remote client uses a name that matches, the resolver is asked for the object
+	 * behind the bean name and it is exposed like the ones passed to {@link #register(Object)}. The beans that were
+	 * used are kept in a cache of the least recently used ones. This is for the beans of a large number of things such
+	 * as tenants which are rarely looked at.
+	 * 
+	 * <p>
+	 * The virtual beans are not returned by queries. Instead a directory bean named "virtualBeans" is registered in the
+	 * folders which pages through the names of the beans and has the cache statistics. The virtual beans are only seen
+	 * through the connector of this server and not by the local MBeanServer. The connector only forwards the calls of
+	 * its clients once the first pattern is registered so the clients that connected before that do not see them.
+	 * </p>
+	 * 
+	 * @param domainName
+	 *            This is the top level folder name for the beans.
+	 * @param resolver
+	 *            Returns the objects behind the bean names and lists the names.
+	 * @param maxCached
+	 *            Maximum number of beans that are kept in the cache.
+	 * @param folderNames
+	 *            Optional folders inside of the top folder.
+	 * @return The pattern of the bean names which can be passed to {@link #unregister(ObjectName)}.
+	 */
+	public synchronized ObjectName registerVirtual(String domainName, JmxVirtualResolver resolver, int maxCached,
+			JmxFolderName... folderNames) throws JMException {
+		VirtualBeans virtualBeans = new VirtualBeans(domainName, folderNames, resolver, maxCached);
+		virtualForwarder.add(virtualBeans);
+		try {
+			register(virtualBeans);
+		} catch (JMException e) {
+			virtualForwarder.remove(virtualBeans.getPattern());
+			throw e;
+		}
+		installVirtualForwarder();
+		return virtualBeans.getPattern();
 	}
 
 	/**
@@ -142,6 +265,28 @@ public class JmxServer {
 		doRegister(objectName, mbean);
 	}
 
+	/**
+	 * Start building a bean whose attributes and operations are backed by callbacks instead of an annotated object. The
+	 * bean is registered when {@link JmxBeanBuilder#register()} is called.
+	 * 
+	 * @param domainName
+	 *            This is the top level folder name for the beans.
+	 * @param beanName
+	 *            This is the bean name in the lowest folder level.
+	 * @param folderNames
+	 *            Optional folders inside of the top folder.
+	 */
+	public JmxBeanBuilder register(String domainName, String beanName, JmxFolderName... folderNames) {
+		return new JmxBeanBuilder(this, domainName, beanName, folderNames);
+	}
+
+	/**
+	 * Register a bean that you have built yourself or with {@link JmxBeanBuilder#build()} under an object-name.
+	 */
+	public synchronized void register(ObjectName objectName, DynamicMBean mbean) throws JMException {
+		doRegister(objectName, mbean);
+	}
+
 	/**
 	 * Same as {@link #unregisterThrow(Object)} except this ignores exceptions.
 	 */
@@ -169,15 +314,21 @@ public class JmxServer {
 	 * want it to be silent.
 	 */
 	public synchronized void unregisterThrow(Object obj) throws JMException {
-		ObjectName objectName = ObjectNameUtil.makeObjectName(obj);
-		mbeanServer.unregisterMBean(objectName);
+		unregisterThrow(makeObjectName(obj));
 	}
 
 	/**
 	 * Un-register the object name from JMX but this throws exceptions. Use the {@link #unregister(Object)} if you want
-	 * it to be silent.
+	 * it to be silent. If it is the pattern of virtual beans then the pattern and its directory bean are un-registered.
 	 */
 	public synchronized void unregisterThrow(ObjectName objName) throws JMException {
+		VirtualBeans virtualBeans = virtualForwarder.remove(objName);
+		if (virtualBeans != null) {
+			objName = ObjectNameUtil.makeObjectName(virtualBeans);
+		}
+		if (weakRegistrations != null) {
+			weakRegistrations.remove(objName);
+		}
 		mbeanServer.unregisterMBean(objName);
 	}
 
@@ -207,7 +358,60 @@ public class JmxServer {
 		this.serverPort = serverPort;
 	}
 
-	private void doRegister(ObjectName objectName, ReflectionMbean mbean) throws JMException {
+	/**
+	 * Called by the reaper with the names of the beans whose objects were garbage collected.
+	 */
+	synchronized void unregisterReaped(List<ObjectName> objectNames) {
+		if (mbeanServer == null) {
+			return;
+		}
+		for (ObjectName objectName : objectNames) {
+			try {
+				mbeanServer.unregisterMBean(objectName);
+			} catch (Exception e) {
+				// ignored, it may have been un-registered through the MBeanServer
+			}
+		}
+	}
+
+	/**
+	 * Build the mbean for an object with its generated adapter if it has one or a {@link ReflectionMbean}. The entities
+	 * of a {@link JmxKeyedResource} are wrapped.
+	 */
+	static DynamicMBean buildMbean(Object obj) throws JMException {
+		try {
+			if (obj.getClass().isAnnotationPresent(JmxKeyedResource.class)) {
+				return new ReflectionMbean(new KeyedEntities(obj));
+			}
+			Constructor<?> adapterConstructor = adapterConstructorCache.get(obj.getClass());
+			if (adapterConstructor == null) {
+				return new ReflectionMbean(obj);
+			} else {
+				return (DynamicMBean) adapterConstructor.newInstance(obj);
+			}
+		} catch (Exception e) {
+			JMException jmException = new JMException("Could not build MBean object for: " + obj);
+			jmException.initCause(e);
+			throw jmException;
+		}
+	}
+
+	private synchronized WeakRegistrations getWeakRegistrations() {
+		return weakRegistrations;
+	}
+
+	/**
+	 * Config beans are named by their current snapshot.
+	 */
+	private ObjectName makeObjectName(Object obj) {
+		if (obj instanceof JmxConfig) {
+			return ObjectNameUtil.makeObjectName(((JmxConfig<?>) obj).get());
+		} else {
+			return ObjectNameUtil.makeObjectName(obj);
+		}
+	}
+
+	private void doRegister(ObjectName objectName, DynamicMBean mbean) throws JMException {
 		try {
 			mbeanServer.registerMBean(mbean, objectName);
 		} catch (Exception e) {
@@ -237,23 +441,43 @@ public class JmxServer {
 			} catch (MalformedURLException e) {
 				throw createJmException("Malformed service url created " + urlString, e);
 			}
+			MBeanServer platformServer = ManagementFactory.getPlatformMBeanServer();
 			try {
-				connector =
-						JMXConnectorServerFactory.newJMXConnectorServer(url, null,
-								ManagementFactory.getPlatformMBeanServer());
+				connector = JMXConnectorServerFactory.newJMXConnectorServer(url, null, platformServer);
 			} catch (IOException e) {
 				throw createJmException("Could not make our Jmx connector server", e);
 			}
+			if (virtualForwarder.hasVirtualBeans()) {
+				installVirtualForwarder();
+			}
 			try {
 				connector.start();
 			} catch (IOException e) {
 				connector = null;
 				throw createJmException("Could not start our Jmx connector server", e);
 			}
-			mbeanServer = connector.getMBeanServer();
+			mbeanServer = platformServer;
+		}
+	}
+
+	/**
+	 * Put the forwarder on the connector so its clients can see the virtual beans. Until then the calls of the clients
+	 * go straight to the MBeanServer.
+	 */
+	private void installVirtualForwarder() {
+		if (connector != null && !virtualForwarderInstalled) {
+			connector.setMBeanServerForwarder(virtualForwarder.createForwarder());
+			virtualForwarderInstalled = true;
 		}
 	}
 
+	/**
+	 * For testing.
+	 */
+	synchronized boolean isVirtualForwarderInstalled() {
+		return virtualForwarderInstalled;
+	}
+
 	private JMException createJmException(String message, Exception e) {
 		JMException jmException = new JMException(message);
 		jmException.initCause(e);
@@ -0,0 +1,281 @@
+package com.j256.simplejmx.server;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.common.JmxOperationInfo.OperationAction;
+import com.j256.simplejmx.server.MetricAttribute.UnitKind;
+
+/**
+ * The most frequent keys such as the hottest tenants or URLs in a fixed amount of memory. It is exposed as the
+ * attributes <tt>name.top</tt>, which is a table of the rank, key, and count of the top keys, and <tt>name.total</tt>,
+ * and the operation <tt>name.reset</tt>.
+ *
+ * <p>
+ * The keys are counted in a count-min sketch which is a number of rows of atomic counters that each key hashes to one
+ * of. The count of a key is the smallest of its counters so it can be too high by the keys that collide with it but
+ * never too low. Next to the sketch is a small set of the candidate keys. Recording a key that is already a candidate
+ * is a few atomic adds and a map lookup. Only a key whose count climbs above the smallest candidate takes the lock to
+ * get into the set which after a warm up is rare.
+ * </p>
+ *
+ * <pre>
+ * &#64;JmxAttributeField(description = "Tenants with the most requests", unit = "requests")
+ * private final JmxTopK hotTenants = new JmxTopK(20);
+ * ...
+ * hotTenants.record(tenantId);
+ * </pre>
+ *
+ * @author graywatson
+ */
+public final class JmxTopK extends JmxMetric {
+
+	private static final String[] ITEM_NAMES = new String[] { "rank", "key", "count" };
+	private static final CompositeType ROW_TYPE;
+	static final TabularType TABLE_TYPE;
+
+	static {
+		try {
+			ROW_TYPE =
+					new CompositeType(JmxTopK.class.getName(), "Key and its count", ITEM_NAMES, new String[] {
+							"Rank from 1 for the most frequent", "The key", "Count of the key which may be too high" },
+							new OpenType<?>[] { SimpleType.INTEGER, SimpleType.STRING, SimpleType.LONG });
+			TABLE_TYPE =
+					new TabularType(JmxTopK.class.getName() + "Table", "Most frequent keys", ROW_TYPE,
+							new String[] { "rank" });
+		} catch (OpenDataException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	static final MetricAttribute[] ATTRIBUTES = new MetricAttribute[] { //
+			new MetricAttribute("top", TabularData.class, "most frequent keys", JmxMetricKind.UNKNOWN,
+					UnitKind.FIELD), //
+			new MetricAttribute("total", long.class, "count of all of the keys", JmxMetricKind.COUNTER,
+					UnitKind.FIELD), //
+			};
+	static final MetricOperation[] OPERATIONS = new MetricOperation[] { //
+			new MetricOperation("reset", void.class, "forget all of the keys", OperationAction.ACTION), //
+			};
+
+	private static final int DEFAULT_WIDTH = 2048;
+	private static final int DEFAULT_DEPTH = 4;
+	/** most frequent first */
+	private static final Comparator<Map.Entry<Object, Long>> ENTRY_COMPARATOR =
+			new Comparator<Map.Entry<Object, Long>>() {
+				public int compare(Map.Entry<Object, Long> entry1, Map.Entry<Object, Long> entry2) {
+					long count1 = entry1.getValue();
+					long count2 = entry2.getValue();
+					return (count1 > count2 ? -1 : (count1 == count2 ? 0 : 1));
+				}
+			};
+
+	private final int topCount;
+	/** we track more candidates than we show so the keys at the bottom of the top are less noisy */
+	private final int candidateCount;
+	private final int width;
+	private final int depth;
+	/** depth rows of width counters */
+	private final AtomicLongArray counters;
+	private final StripedLong total = new StripedLong();
+	/** the values are not used, keys are only added and removed with the lock held */
+	private final Map<Object, Boolean> candidates;
+	/** count that a key has to be above to become a candidate when the set is full */
+	private volatile long threshold;
+
+	/**
+	 * Show the top keys with the default sketch of 4 rows of 2048 counters which is 64k of memory.
+	 */
+	public JmxTopK(int topCount) {
+		this(topCount, DEFAULT_WIDTH, DEFAULT_DEPTH);
+	}
+
+	/**
+	 * @param topCount
+	 *            Number of keys that are shown.
+	 * @param width
+	 *            Number of counters in each row of the sketch which is rounded up to a power of 2. The counts are too
+	 *            high by about 3 / width of the total count.
+	 * @param depth
+	 *            Number of rows of the sketch. Each row makes it less likely that a count is that far off.
+	 */
+	public JmxTopK(int topCount, int width, int depth) {
+		if (topCount <= 0) {
+			throw new IllegalArgumentException("Top count must be positive: " + topCount);
+		}
+		if (width <= 0 || depth <= 0) {
+			throw new IllegalArgumentException("Width " + width + " and depth " + depth + " must be positive");
+		}
+		this.topCount = topCount;
+		this.candidateCount = topCount * 2;
+		int roundedWidth = 1;
+		while (roundedWidth < width) {
+			roundedWidth <<= 1;
+		}
+		this.width = roundedWidth;
+		this.depth = depth;
+		this.counters = new AtomicLongArray(roundedWidth * depth);
+		this.candidates = new ConcurrentHashMap<Object, Boolean>(candidateCount * 2);
+	}
+
+	/**
+	 * Record the key once.
+	 */
+	public void record(Object key) {
+		record(key, 1);
+	}
+
+	/**
+	 * Record the key with a count such as the bytes that it used.
+	 */
+	public void record(Object key, long count) {
+		int hash = key.hashCode();
+		// each row uses a different mix of the hash
+		int first = spread(hash);
+		int second = spread(hash * 0x9E3779B9) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			int column = (first + row * second) & (width - 1);
+			long value = counters.addAndGet(row * width + column, count);
+			if (value < estimate) {
+				estimate = value;
+			}
+		}
+		total.add(count);
+		if (estimate > threshold && !candidates.containsKey(key)) {
+			addCandidate(key);
+		}
+	}
+
+	/**
+	 * Return the top keys and their counts with the most frequent first.
+	 */
+	public List<Map.Entry<Object, Long>> getTop() {
+		List<Map.Entry<Object, Long>> entries = new ArrayList<Map.Entry<Object, Long>>(candidates.size());
+		for (Object key : candidates.keySet()) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<Object, Long>(key, estimate(key)));
+		}
+		Collections.sort(entries, ENTRY_COMPARATOR);
+		if (entries.size() > topCount) {
+			entries = entries.subList(0, topCount);
+		}
+		return entries;
+	}
+
+	/**
+	 * Return the count of the key which may be too high because of other keys.
+	 */
+	public long estimate(Object key) {
+		int hash = key.hashCode();
+		int first = spread(hash);
+		int second = spread(hash * 0x9E3779B9) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			int column = (first + row * second) & (width - 1);
+			estimate = Math.min(estimate, counters.get(row * width + column));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Return the count of all of the keys.
+	 */
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * Forget all of the keys. Keys that are recorded at the same time may be partly counted.
+	 */
+	public synchronized void reset() {
+		candidates.clear();
+		threshold = 0;
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 0);
+		}
+		total.sumThenReset();
+	}
+
+	@Override
+	Object readAttribute(int index) {
+		if (index == 0) {
+			return buildTable();
+		} else {
+			return total.sum();
+		}
+	}
+
+	@Override
+	Object invokeOperation(int index) {
+		reset();
+		return null;
+	}
+
+	private synchronized void addCandidate(Object key) {
+		if (candidates.containsKey(key)) {
+			return;
+		}
+		candidates.put(key, Boolean.TRUE);
+		if (candidates.size() <= candidateCount) {
+			return;
+		}
+		// drop the smallest and the next smallest becomes the threshold
+		Object smallestKey = null;
+		long smallest = Long.MAX_VALUE;
+		long nextSmallest = Long.MAX_VALUE;
+		for (Object candidate : candidates.keySet()) {
+			long estimate = estimate(candidate);
+			if (estimate < smallest) {
+				nextSmallest = smallest;
+				smallest = estimate;
+				smallestKey = candidate;
+			} else if (estimate < nextSmallest) {
+				nextSmallest = estimate;
+			}
+		}
+		candidates.remove(smallestKey);
+		threshold = nextSmallest;
+	}
+
+	private TabularData buildTable() {
+		TabularDataSupport table = new TabularDataSupport(TABLE_TYPE);
+		int rank = 1;
+		for (Map.Entry<Object, Long> entry : getTop()) {
+			try {
+				table.put(new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, new Object[] { rank++,
+						String.valueOf(entry.getKey()), entry.getValue() }));
+			} catch (OpenDataException e) {
+				// can't happen since the values match the types
+				throw new IllegalStateException("Could not build row for key " + entry.getKey(), e);
+			}
+		}
+		return table;
+	}
+
+	private static int spread(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		return hash ^ (hash >>> 13);
+	}
+
+	@Override
+	public String toString() {
+		return "top " + topCount + " of " + total.sum();
+	}
+}
@@ -0,0 +1,94 @@
+package com.j256.simplejmx.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+/**
+ * Value such as a feature flag or a threshold which is read a lot by the application and is changed through JMX. A
+ * field of this type with a {@link com.j256.simplejmx.common.JmxAttributeField} annotation is exposed as an attribute
+ * of the value type and setting it through JMX calls {@link #set(Object)}. The field itself can be final.
+ *
+ * <p>
+ * The value is also handed out through a {@link MutableCallSite}. If the {@link #invoker()} is stored in a static final
+ * field, the JIT treats the value as a constant until it is changed at which point the compiled code that depends on it
+ * is thrown away. This is the fastest way to read it. {@link #get()} costs a volatile read.
+ * </p>
+ *
+ * <pre>
+ * &#64;JmxAttributeField(isWritable = true)
+ * private static final JmxTunable&lt;Integer&gt; maxRetries = new JmxTunable&lt;Integer&gt;(int.class, 3);
+ * private static final MethodHandle MAX_RETRIES = maxRetries.invoker();
+ * ...
+ * int max = (int) MAX_RETRIES.invokeExact();
+ * </pre>
+ *
+ * @author graywatson
+ */
+public class JmxTunable<T> {
+
+	private final Class<T> type;
+	private final MutableCallSite callSite;
+	private final MethodHandle invoker;
+	private volatile T value;
+
+	/**
+	 * @param type
+	 *            Type of the value. If it is primitive then the invoker returns the primitive and the value cannot be
+	 *            null.
+	 * @param value
+	 *            Starting value.
+	 */
+	public JmxTunable(Class<T> type, T value) {
+		this.type = type;
+		this.callSite = new MutableCallSite(MethodType.methodType(type));
+		this.invoker = callSite.dynamicInvoker();
+		set(value);
+	}
+
+	/**
+	 * Return the current value.
+	 */
+	public T get() {
+		return value;
+	}
+
+	/**
+	 * Change the value. Code that was compiled with the old value as a constant is invalidated.
+	 */
+	public synchronized void set(T value) {
+		MethodHandle constant;
+		try {
+			constant = MethodHandles.constant(type, value);
+		} catch (ClassCastException e) {
+			throw new IllegalArgumentException("Value " + value + " is not of " + type, e);
+		} catch (NullPointerException e) {
+			throw new IllegalArgumentException("Value of primitive " + type + " cannot be null", e);
+		}
+		this.value = value;
+		callSite.setTarget(constant);
+		// make sure that other threads see the new target
+		MutableCallSite.syncAll(new MutableCallSite[] { callSite });
+	}
+
+	/**
+	 * Return a method-handle with no arguments that returns the value as the type of the tunable. This should be
+	 * stored in a static final field and called with invokeExact so the JIT can fold the value into the code.
+	 */
+	public MethodHandle invoker() {
+		return invoker;
+	}
+
+	/**
+	 * Return the type of the value.
+	 */
+	public Class<T> getType() {
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(value);
+	}
+}
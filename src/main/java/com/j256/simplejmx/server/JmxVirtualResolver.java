@@ -0,0 +1,25 @@
+package com.j256.simplejmx.server;
+
+/**
+ * Callback behind a naming pattern that was registered with
+ * {@link JmxServer#registerVirtual(String, JmxVirtualResolver, int, com.j256.simplejmx.common.JmxFolderName...)}. The
+ * beans of the pattern are not registered with the MBeanServer. The resolver is asked for the object behind a bean
+ * name only when a client uses that name.
+ *
+ * @author graywatson
+ */
+public interface JmxVirtualResolver {
+
+	/**
+	 * Return the object for the bean name or null if there is none. The object is exposed like the ones passed to
+	 * {@link JmxServer#register(Object)} but its name comes from the pattern. It can also be a
+	 * {@link javax.management.DynamicMBean} such as one from {@link JmxBeanBuilder#build()}.
+	 */
+	public Object resolve(String beanName) throws Exception;
+
+	/**
+	 * Return the names of the beans. Clients page through them so this should not build all of the names up front if
+	 * there are a lot of them.
+	 */
+	public Iterable<String> getBeanNames();
+}
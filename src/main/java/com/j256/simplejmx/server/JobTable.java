@@ -0,0 +1,247 @@
+package com.j256.simplejmx.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanException;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * The jobs that were started by the {@link com.j256.simplejmx.common.JmxOperation#async()} operations of a registered
+ * object along with the operations that are used to poll and cancel them. Jobs that are queued or running are always
+ * kept. Only the last {@link #MAX_FINISHED_JOBS} finished jobs are kept, the older ones are evicted.
+ *
+ * @author graywatson
+ */
+class JobTable {
+
+	static final int MAX_FINISHED_JOBS = 100;
+
+	static final String STATUS_OPERATION = "jobStatus";
+	static final String PROGRESS_OPERATION = "jobProgress";
+	static final String RESULT_OPERATION = "jobResult";
+	static final String CANCEL_OPERATION = "cancelJob";
+	private static final String[] JOB_OPERATION_NAMES = new String[] { STATUS_OPERATION, PROGRESS_OPERATION,
+			RESULT_OPERATION, CANCEL_OPERATION };
+	private static final String[] JOB_ID_SIGNATURE = new String[] { long.class.getName() };
+
+	private final Executor executor;
+	private final AtomicLong nextId = new AtomicLong();
+	private final Map<Long, Job> activeJobs = new ConcurrentHashMap<Long, Job>();
+	/** guarded by itself */
+	private final Map<Long, Job> finishedJobs = new LinkedHashMap<Long, Job>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Job> eldest) {
+			return size() > MAX_FINISHED_JOBS;
+		}
+	};
+
+	public JobTable(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Start the operation as a job and return its id.
+	 */
+	public long start(String operationName, Callable<Object> operation) throws MBeanException {
+		Job job = new Job(nextId.incrementAndGet(), operationName, operation);
+		activeJobs.put(job.id, job);
+		try {
+			executor.execute(job);
+		} catch (RejectedExecutionException e) {
+			activeJobs.remove(job.id);
+			throw new MBeanException(e, "Operation " + operationName
+					+ " was rejected because the job thread-pool is full");
+		}
+		return job.id;
+	}
+
+	/**
+	 * Returns true if the name and signature are of one of the job operations.
+	 */
+	public static boolean isJobOperation(String operationName, String[] signatureTypes) {
+		for (String name : JOB_OPERATION_NAMES) {
+			if (name.equals(operationName)) {
+				return signatureTypes.length == 1 && JOB_ID_SIGNATURE[0].equals(signatureTypes[0]);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the name is the name of one of the job operations.
+	 */
+	public static boolean isJobOperationName(String operationName) {
+		for (String name : JOB_OPERATION_NAMES) {
+			if (name.equals(operationName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Call one of the job operations. The name and signature must have been checked with
+	 * {@link #isJobOperation(String, String[])}.
+	 */
+	public Object invokeJobOperation(String operationName, Object[] params) throws MBeanException,
+			ReflectionException {
+		if (params.length != 1 || !(params[0] instanceof Long)) {
+			throw new MBeanException(new IllegalArgumentException("Operation " + operationName
+					+ " takes a single long job id"));
+		}
+		long id = (Long) params[0];
+		Job job = activeJobs.get(id);
+		if (job == null) {
+			synchronized (finishedJobs) {
+				job = finishedJobs.get(id);
+			}
+			if (job == null) {
+				throw new MBeanException(new IllegalArgumentException("Unknown job id " + id
+						+ ", it may have finished too long ago"));
+			}
+		}
+		if (STATUS_OPERATION.equals(operationName)) {
+			return job.getStatus();
+		} else if (PROGRESS_OPERATION.equals(operationName)) {
+			return job.getProgress();
+		} else if (RESULT_OPERATION.equals(operationName)) {
+			return job.getResult();
+		} else {
+			return job.cancel(true);
+		}
+	}
+
+	/**
+	 * Return the information about the job operations for the MBeanInfo.
+	 */
+	public static MBeanOperationInfo[] buildOperationInfos() {
+		return new MBeanOperationInfo[] {
+				buildOperationInfo(STATUS_OPERATION, "Status of the job: QUEUED, RUNNING, DONE, FAILED, or CANCELLED",
+						String.class, MBeanOperationInfo.INFO),
+				buildOperationInfo(PROGRESS_OPERATION, "Percentage of the job that is done or -1 if unknown",
+						int.class, MBeanOperationInfo.INFO),
+				buildOperationInfo(RESULT_OPERATION, "Result of the job which must be DONE", Object.class,
+						MBeanOperationInfo.INFO),
+				buildOperationInfo(CANCEL_OPERATION, "Cancel the job by interrupting it", boolean.class,
+						MBeanOperationInfo.ACTION), };
+	}
+
+	private static MBeanOperationInfo buildOperationInfo(String name, String description, Class<?> returnType,
+			int action) {
+		MBeanParameterInfo[] parameterInfos =
+				new MBeanParameterInfo[] { new MBeanParameterInfo("jobId", JOB_ID_SIGNATURE[0],
+						"id of the job returned by the async operation") };
+		return new MBeanOperationInfo(name, description, parameterInfos, returnType.getName(), action);
+	}
+
+	private void finished(Job job) {
+		// it is added to the finished jobs before it is removed so lookups always find it
+		synchronized (finishedJobs) {
+			finishedJobs.put(job.id, job);
+		}
+		activeJobs.remove(job.id);
+	}
+
+	/**
+	 * A started operation.
+	 */
+	class Job extends FutureTask<Object> {
+
+		final long id;
+		final String operationName;
+		volatile int progress = -1;
+		private volatile boolean started;
+
+		public Job(long id, String operationName, Callable<Object> operation) {
+			super(operation);
+			this.id = id;
+			this.operationName = operationName;
+		}
+
+		@Override
+		public void run() {
+			started = true;
+			JmxJobProgress.setCurrentJob(this);
+			try {
+				super.run();
+			} finally {
+				JmxJobProgress.setCurrentJob(null);
+			}
+		}
+
+		@Override
+		protected void done() {
+			finished(this);
+		}
+
+		String getStatus() {
+			if (isCancelled()) {
+				return "CANCELLED";
+			} else if (isDone()) {
+				return (getFailure() == null ? "DONE" : "FAILED");
+			} else if (started) {
+				return "RUNNING";
+			} else {
+				return "QUEUED";
+			}
+		}
+
+		int getProgress() {
+			if (isDone() && !isCancelled() && getFailure() == null) {
+				return 100;
+			} else {
+				return progress;
+			}
+		}
+
+		Object getResult() throws MBeanException, ReflectionException {
+			if (!isDone()) {
+				throw new MBeanException(new IllegalStateException("Job " + id + " is " + getStatus()));
+			}
+			try {
+				return get();
+			} catch (CancellationException e) {
+				throw new MBeanException(e, "Job " + id + " was cancelled");
+			} catch (ExecutionException e) {
+				throw createFailureException(e.getCause());
+			} catch (InterruptedException e) {
+				// can't happen since we are done
+				Thread.currentThread().interrupt();
+				throw new MBeanException(e);
+			}
+		}
+
+		private Throwable getFailure() {
+			try {
+				get();
+				return null;
+			} catch (ExecutionException e) {
+				return e.getCause();
+			} catch (Exception e) {
+				return e;
+			}
+		}
+
+		private ReflectionException createFailureException(Throwable cause) {
+			String message = "Job " + id + " of operation " + operationName + " threw exception";
+			if (cause instanceof Exception) {
+				return new ReflectionException((Exception) cause, message);
+			} else {
+				return new ReflectionException(new Exception(cause), message);
+			}
+		}
+	}
+}
@@ -0,0 +1,379 @@
+package com.j256.simplejmx.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import com.j256.simplejmx.common.JmxAttributeMethod;
+import com.j256.simplejmx.common.JmxKeyedEntities;
+import com.j256.simplejmx.common.JmxKeyedResource;
+import com.j256.simplejmx.common.JmxOperation;
+import com.j256.simplejmx.common.JmxResource;
+import com.j256.simplejmx.server.MbeanMetadata.AttributeAccessor;
+
+/**
+ * Wraps an object with the {@link JmxKeyedResource} annotation so its Map of entities is exposed by a single
+ * {@link ReflectionMbean}. Each entity is a row whose items are the key and the attributes of the entity class that
+ * can be converted to open types. The getters of the entities are called directly, without the caching and latency
+ * budgets that the entity class might specify.
+ *
+ * @author graywatson
+ */
+@JmxResource(description = "Attributes of a map of entities")
+class KeyedEntities {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType MAP_GETTER_TYPE = MethodType.methodType(Map.class, Object.class);
+
+	private final Object manager;
+	private final MethodHandle mapHandle;
+	private final StringArgumentConverter keyConverter;
+	private final MbeanMetadata entityMetadata;
+	private final String keyName;
+	private final String[] columnNames;
+	/** the key name and then the column names */
+	private final String[] itemNames;
+	private final AttributeAccessor[] columnAccessors;
+	private final OpenTypeConverter[] columnConverters;
+	private final CompositeType rowType;
+	private final TabularType tableType;
+
+	public KeyedEntities(Object manager) {
+		Class<?> clazz = manager.getClass();
+		JmxKeyedResource keyedResource = clazz.getAnnotation(JmxKeyedResource.class);
+		if (keyedResource == null) {
+			throw new IllegalArgumentException("Class " + clazz + " does not have a @JmxKeyedResource annotation");
+		}
+		this.manager = manager;
+		this.keyName = keyedResource.keyName();
+		Type mapType = null;
+		MethodHandle handle = null;
+		for (Class<?> current = clazz; current != Object.class; current = current.getSuperclass()) {
+			List<AccessibleObject> members = new ArrayList<AccessibleObject>();
+			for (Field field : current.getDeclaredFields()) {
+				members.add(field);
+			}
+			for (Method method : current.getDeclaredMethods()) {
+				members.add(method);
+			}
+			for (AccessibleObject member : members) {
+				if (!member.isAnnotationPresent(JmxKeyedEntities.class)) {
+					continue;
+				}
+				if (handle != null) {
+					throw new IllegalArgumentException("Class " + clazz
+							+ " has more than one member with the @JmxKeyedEntities annotation");
+				}
+				member.setAccessible(true);
+				try {
+					if (member instanceof Field) {
+						Field field = (Field) member;
+						mapType = field.getGenericType();
+						handle = LOOKUP.unreflectGetter(field);
+					} else {
+						Method method = (Method) member;
+						if (method.getParameterTypes().length != 0) {
+							throw new IllegalArgumentException("Method " + method
+									+ " with the @JmxKeyedEntities annotation cannot have arguments");
+						}
+						mapType = method.getGenericReturnType();
+						handle = LOOKUP.unreflect(method);
+					}
+				} catch (IllegalAccessException e) {
+					throw new IllegalArgumentException("Could not access " + member + " of " + clazz, e);
+				}
+				if (Modifier.isStatic(((Member) member).getModifiers())) {
+					handle = MethodHandles.dropArguments(handle, 0, Object.class);
+				}
+			}
+		}
+		if (handle == null) {
+			throw new IllegalArgumentException("Class " + clazz
+					+ " does not have a field or method with the @JmxKeyedEntities annotation");
+		}
+		if (!Map.class.isAssignableFrom(MbeanMetadata.rawClass(mapType))) {
+			throw new IllegalArgumentException("The @JmxKeyedEntities member of " + clazz + " is not a Map");
+		}
+		this.mapHandle = handle.asType(MAP_GETTER_TYPE);
+
+		Class<?> keyClass = Object.class;
+		Class<?> entityClass = keyedResource.entityClass();
+		if (mapType instanceof ParameterizedType) {
+			Type[] typeArguments = ((ParameterizedType) mapType).getActualTypeArguments();
+			if (typeArguments.length == 2) {
+				keyClass = MbeanMetadata.rawClass(typeArguments[0]);
+				if (entityClass == Object.class) {
+					entityClass = MbeanMetadata.rawClass(typeArguments[1]);
+				}
+			}
+		}
+		if (entityClass == Object.class) {
+			throw new IllegalArgumentException("The entity class of " + clazz
+					+ " is not known so it must be set with entityClass in @JmxKeyedResource");
+		}
+		this.keyConverter = StringArgumentConverter.forType(keyClass);
+		this.entityMetadata = MbeanMetadata.forClass(entityClass);
+
+		// sorted by name
+		Map<String, OpenTypeConverter> converterMap = new TreeMap<String, OpenTypeConverter>();
+		for (String name : entityMetadata.getAttributeNames()) {
+			AttributeAccessor accessor = entityMetadata.findAttribute(name);
+			if (accessor.getterHandle == null) {
+				continue;
+			}
+			if (name.equals(keyName)) {
+				throw new IllegalArgumentException("Attribute " + name + " of " + entityClass
+						+ " has the same name as the key");
+			}
+			try {
+				converterMap.put(name, OpenTypeConverter.forType(accessor.genericType));
+			} catch (IllegalArgumentException e) {
+				// it can still be read with readEntityAttribute
+			}
+		}
+		int columnCount = converterMap.size();
+		this.columnNames = converterMap.keySet().toArray(new String[columnCount]);
+		this.columnConverters = converterMap.values().toArray(new OpenTypeConverter[columnCount]);
+		this.columnAccessors = new AttributeAccessor[columnCount];
+		this.itemNames = new String[columnCount + 1];
+		OpenType<?>[] itemTypes = new OpenType<?>[columnCount + 1];
+		itemNames[0] = keyName;
+		itemTypes[0] = SimpleType.STRING;
+		for (int i = 0; i < columnCount; i++) {
+			columnAccessors[i] = entityMetadata.findAttribute(columnNames[i]);
+			itemNames[i + 1] = columnNames[i];
+			itemTypes[i + 1] = columnConverters[i].openType;
+		}
+		try {
+			this.rowType =
+					new CompositeType(entityClass.getName(), "Entity of " + clazz.getSimpleName(), itemNames,
+							itemNames, itemTypes);
+			this.tableType =
+					new TabularType(entityClass.getName() + "Table", "Entities of " + clazz.getSimpleName(), rowType,
+							new String[] { keyName });
+		} catch (OpenDataException e) {
+			throw new IllegalArgumentException("Could not build the open types of the entities of " + clazz, e);
+		}
+	}
+
+	@JmxAttributeMethod(description = "Row for each of the entities")
+	public TabularData getEntities() throws Exception {
+		TabularDataSupport table = new TabularDataSupport(tableType);
+		for (Map.Entry<?, ?> entry : getMap().entrySet()) {
+			table.put(toRow(entry.getKey(), entry.getValue()));
+		}
+		return table;
+	}
+
+	@JmxAttributeMethod(description = "Number of entities")
+	public int getEntityCount() throws Exception {
+		return getMap().size();
+	}
+
+	@JmxAttributeMethod(description = "Rows of the entities which are read a page at a time", paged = true)
+	public Iterable<CompositeData> getRows() throws Exception {
+		final Map<?, ?> map = getMap();
+		return new Iterable<CompositeData>() {
+			public Iterator<CompositeData> iterator() {
+				final Iterator<? extends Map.Entry<?, ?>> iterator = map.entrySet().iterator();
+				return new Iterator<CompositeData>() {
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					public CompositeData next() {
+						Map.Entry<?, ?> entry = iterator.next();
+						try {
+							return toRow(entry.getKey(), entry.getValue());
+						} catch (Exception e) {
+							throw new IllegalStateException("Could not read the entity " + entry.getKey(), e);
+						}
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	@JmxOperation(description = "Row of the entity with the key", parameterNames = { "key" })
+	public CompositeData lookupEntity(String key) throws Exception {
+		Object mapKey = keyConverter.convert(key);
+		return toRow(mapKey, findEntity(mapKey));
+	}
+
+	@JmxOperation(description = "Value of an attribute of the entity with the key", parameterNames = { "key",
+			"attributeName" })
+	public Object readEntityAttribute(String key, String attributeName) throws Exception {
+		AttributeAccessor accessor = findAccessor(attributeName);
+		Object value = getValue(accessor, findEntity(keyConverter.convert(key)));
+		OpenTypeConverter converter = findConverter(attributeName);
+		if (converter == null) {
+			return value;
+		} else {
+			return converter.toOpenValue(value);
+		}
+	}
+
+	@JmxOperation(description = "Set an attribute of the entity with the key, the value is converted from a string",
+			parameterNames = { "key", "attributeName", "value" })
+	public void writeEntityAttribute(String key, String attributeName, String value) throws Exception {
+		AttributeAccessor accessor = findAccessor(attributeName);
+		if (accessor.setterHandle == null) {
+			throw new IllegalArgumentException("Attribute " + attributeName + " of the entities is not writable");
+		}
+		Object entity = findEntity(keyConverter.convert(key));
+		Object converted = StringArgumentConverter.forType(accessor.type).convert(value);
+		try {
+			accessor.setterHandle.invokeExact(entity, converted);
+		} catch (Exception e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Setting " + attributeName + " of entity " + key + " failed", t);
+		}
+	}
+
+	@JmxOperation(description = "Rows of the entities with the largest values of the attribute, largest first",
+			parameterNames = { "attributeName", "count" })
+	public CompositeData[] topEntities(String attributeName, int count) throws Exception {
+		if (count <= 0) {
+			return new CompositeData[0];
+		}
+		AttributeAccessor accessor = findAccessor(attributeName);
+		// min-heap of the largest values so far so we only keep count of them
+		PriorityQueue<RankedEntity> heap = new PriorityQueue<RankedEntity>(count + 1, RankedEntity.COMPARATOR);
+		for (Map.Entry<?, ?> entry : getMap().entrySet()) {
+			Object value = getValue(accessor, entry.getValue());
+			if (value == null) {
+				continue;
+			}
+			if (!(value instanceof Comparable)) {
+				throw new IllegalArgumentException("Attribute " + attributeName + " of the entities is not comparable");
+			}
+			heap.add(new RankedEntity(value, entry.getKey(), entry.getValue()));
+			if (heap.size() > count) {
+				heap.poll();
+			}
+		}
+		CompositeData[] rows = new CompositeData[heap.size()];
+		for (int i = rows.length - 1; i >= 0; i--) {
+			RankedEntity ranked = heap.poll();
+			rows[i] = toRow(ranked.key, ranked.entity);
+		}
+		return rows;
+	}
+
+	private Map<?, ?> getMap() throws Exception {
+		Map<?, ?> map;
+		try {
+			map = (Map<?, ?>) mapHandle.invokeExact(manager);
+		} catch (Exception e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Getting the entities of " + manager + " failed", t);
+		}
+		if (map == null) {
+			throw new IllegalStateException("The entities of " + manager + " are null");
+		}
+		return map;
+	}
+
+	private Object findEntity(Object mapKey) throws Exception {
+		Object entity = getMap().get(mapKey);
+		if (entity == null) {
+			throw new IllegalArgumentException("No entity with " + keyName + " " + mapKey);
+		}
+		return entity;
+	}
+
+	private AttributeAccessor findAccessor(String attributeName) {
+		AttributeAccessor accessor = entityMetadata.findAttribute(attributeName);
+		if (accessor == null || accessor.getterHandle == null) {
+			throw new IllegalArgumentException("Unknown attribute " + attributeName + " of the entities");
+		}
+		return accessor;
+	}
+
+	private OpenTypeConverter findConverter(String attributeName) {
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equals(attributeName)) {
+				return columnConverters[i];
+			}
+		}
+		return null;
+	}
+
+	private CompositeData toRow(Object key, Object entity) throws Exception {
+		Object[] values = new Object[columnNames.length + 1];
+		values[0] = String.valueOf(key);
+		for (int i = 0; i < columnNames.length; i++) {
+			values[i + 1] = columnConverters[i].toOpenValue(getValue(columnAccessors[i], entity));
+		}
+		return new CompositeDataSupport(rowType, itemNames, values);
+	}
+
+	private static Object getValue(AttributeAccessor accessor, Object entity) throws Exception {
+		try {
+			return (Object) accessor.getterHandle.invokeExact(entity);
+		} catch (Exception e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Getting the attribute of entity " + entity + " failed", t);
+		}
+	}
+
+	/**
+	 * Entity and its value of the attribute that we are ranking by.
+	 */
+	private static class RankedEntity {
+
+		static final Comparator<RankedEntity> COMPARATOR = new Comparator<RankedEntity>() {
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public int compare(RankedEntity ranked1, RankedEntity ranked2) {
+				return ((Comparable) ranked1.value).compareTo(ranked2.value);
+			}
+		};
+
+		final Object value;
+		final Object key;
+		final Object entity;
+
+		public RankedEntity(Object value, Object key, Object entity) {
+			this.value = value;
+			this.key = key;
+			this.entity = entity;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.j256.simplejmx.server;
+
+import java.io.ObjectStreamException;
+
+import javax.management.Descriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * MBeanInfo whose attribute and operation information is built the first time it is asked for. The MBeanServer only
+ * looks at the class-name when a bean is registered so we can put off building the descriptions and parameter
+ * information until someone actually inspects the bean. When it is serialized to a remote client it is replaced by the
+ * fully built MBeanInfo.
+ *
+ * @author graywatson
+ */
+class LazyMbeanInfo extends MBeanInfo {
+
+	private static final long serialVersionUID = -6651340419183590052L;
+
+	private final transient FullInfoSource source;
+
+	public LazyMbeanInfo(String className, FullInfoSource source) {
+		super(className, null, null, null, null, null);
+		this.source = source;
+	}
+
+	@Override
+	public String getDescription() {
+		return source.getFullMbeanInfo().getDescription();
+	}
+
+	@Override
+	public MBeanAttributeInfo[] getAttributes() {
+		return source.getFullMbeanInfo().getAttributes();
+	}
+
+	@Override
+	public MBeanOperationInfo[] getOperations() {
+		return source.getFullMbeanInfo().getOperations();
+	}
+
+	@Override
+	public MBeanConstructorInfo[] getConstructors() {
+		return source.getFullMbeanInfo().getConstructors();
+	}
+
+	@Override
+	public MBeanNotificationInfo[] getNotifications() {
+		return source.getFullMbeanInfo().getNotifications();
+	}
+
+	@Override
+	public Descriptor getDescriptor() {
+		return source.getFullMbeanInfo().getDescriptor();
+	}
+
+	/**
+	 * Send the fully built information over the wire.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return source.getFullMbeanInfo();
+	}
+
+	/**
+	 * Where we get the fully built information from.
+	 */
+	interface FullInfoSource {
+		/**
+		 * Return the fully built information about the bean, building it the first time this is called.
+		 */
+		MBeanInfo getFullMbeanInfo();
+	}
+}
@@ -0,0 +1,1243 @@
+package com.j256.simplejmx.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Descriptor;
+import javax.management.ImmutableDescriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+
+import com.j256.simplejmx.common.JmxAttributeField;
+import com.j256.simplejmx.common.JmxAttributeFieldInfo;
+import com.j256.simplejmx.common.JmxAttributeMethod;
+import com.j256.simplejmx.common.JmxAttributeMethodInfo;
+import com.j256.simplejmx.common.JmxDescriptors;
+import com.j256.simplejmx.common.JmxMetricKind;
+import com.j256.simplejmx.common.JmxOperation;
+import com.j256.simplejmx.common.JmxOperationInfo;
+import com.j256.simplejmx.common.JmxOperationInfo.OperationAction;
+import com.j256.simplejmx.common.JmxPaging;
+import com.j256.simplejmx.common.JmxResource;
+import com.j256.simplejmx.common.JmxStringInvocation;
+
+/**
+ * Information about the attributes and operations of a class that are exposed by {@link ReflectionMbean}. Building it
+ * means scanning the methods, fields, and annotations of the class and resolving the method-handles so it is cached per
+ * class and shared by all of the mbeans that wrap objects of that class. Once built it is not changed.
+ * 
+ * <p>
+ * Only the accessors that are needed to get, set, and invoke are built up front. The {@link MBeanInfo} with all of its
+ * descriptions and parameter information is built the first time it is looked at since most registered beans are never
+ * inspected.
+ * </p>
+ * 
+ * @author graywatson
+ */
+class MbeanMetadata implements LazyMbeanInfo.FullInfoSource {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	/** getters are adapted to (Object delegate) returns Object */
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	/** setters are adapted to (Object delegate, Object value) returns void */
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	/** operations are adapted to (Object delegate, Object[] params) returns Object */
+	private static final MethodType OPERATION_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+	/** tells the clients that {@link ReflectionMbean} takes the string invocation operation */
+	private static final Descriptor STRING_INVOCATION_DESCRIPTOR =
+			new ImmutableDescriptor(JmxStringInvocation.DESCRIPTOR_FIELD + "=true");
+	/** gets the value of a {@link JmxTunable} field, (JmxTunable) returns Object */
+	private static final MethodHandle TUNABLE_GET_HANDLE;
+	/** sets the value of a {@link JmxTunable} field, (JmxTunable, Object) returns void */
+	private static final MethodHandle TUNABLE_SET_HANDLE;
+	/** reads one of the attributes of a {@link JmxMetric}, (JmxMetric, int) returns Object */
+	private static final MethodHandle METRIC_READ_HANDLE;
+	/** invokes one of the operations of a {@link JmxMetric}, (JmxMetric, int) returns Object */
+	private static final MethodHandle METRIC_INVOKE_HANDLE;
+	/** the same descriptor fields that the MXBeans use */
+	private static final String OPEN_TYPE_DESCRIPTOR_FIELD = "openType";
+	private static final String ORIGINAL_TYPE_DESCRIPTOR_FIELD = "originalType";
+
+	private static final ClassValue<MbeanMetadata> classMetadataCache = new ClassValue<MbeanMetadata>() {
+		@Override
+		protected MbeanMetadata computeValue(Class<?> clazz) {
+			return new MbeanMetadata(clazz, null, null, null);
+		}
+	};
+
+	static {
+		try {
+			TUNABLE_GET_HANDLE = LOOKUP.findVirtual(JmxTunable.class, "get", MethodType.methodType(Object.class));
+			TUNABLE_SET_HANDLE =
+					LOOKUP.findVirtual(JmxTunable.class, "set", MethodType.methodType(void.class, Object.class));
+			METRIC_READ_HANDLE =
+					LOOKUP.findVirtual(JmxMetric.class, "readAttribute", MethodType.methodType(Object.class, int.class));
+			METRIC_INVOKE_HANDLE =
+					LOOKUP.findVirtual(JmxMetric.class, "invokeOperation",
+							MethodType.methodType(Object.class, int.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final Class<?> clazz;
+	private final Map<String, AttributeMethodInfo> attributeMethodMap = new HashMap<String, AttributeMethodInfo>();
+	private final Map<String, AttributeFieldInfo> attributeFieldMap = new LinkedHashMap<String, AttributeFieldInfo>();
+	private final List<OperationMethodInfo> operationMethodInfos = new ArrayList<OperationMethodInfo>();
+	/** operations of the {@link JmxMetric} fields which have no methods */
+	private final List<MBeanOperationInfo> metricOperationInfos = new ArrayList<MBeanOperationInfo>();
+	private final Map<String, AttributeAccessor> attributeMap = new HashMap<String, AttributeAccessor>();
+	private final Map<String, OperationAccessor[]> operationMap = new HashMap<String, OperationAccessor[]>();
+	private final MBeanInfo mbeanInfo;
+	private volatile MBeanInfo fullMbeanInfo;
+	private volatile String fingerprint;
+	private int cacheCount;
+	/** timeouts of the getters that have a latency budget, by budget-index */
+	private final List<Long> budgetTimeouts = new ArrayList<Long>();
+	/** class and attribute names of the getters that have a latency budget, by budget-index */
+	private final List<String> budgetLabels = new ArrayList<String>();
+	/** operations with concurrency limits or timeouts, by limit-index */
+	private final List<JmxOperationInfo> limitedOperations = new ArrayList<JmxOperationInfo>();
+	private final Map<String, StatusAccessor> statusMap = new HashMap<String, StatusAccessor>();
+	private boolean hasAsyncOperations;
+	/** paged attributes which are not in the attribute-map, by paged-index */
+	private final List<AttributeAccessor> pagedAttributes = new ArrayList<AttributeAccessor>();
+	private final Map<String, AttributeAccessor> pagedAttributeMap = new HashMap<String, AttributeAccessor>();
+	private boolean hasPagedOperations;
+	/** whether the values are converted to open types, see {@link JmxResource#openTypes()} */
+	private final boolean openTypes;
+	/** null unless the class is a config snapshot, see {@link JmxResource#configSnapshot()} */
+	private final SnapshotCopier snapshotCopier;
+
+	/**
+	 * Return the metadata for a class that is configured using annotations. This is cached per class.
+	 */
+	public static MbeanMetadata forClass(Class<?> clazz) {
+		return classMetadataCache.get(clazz);
+	}
+
+	/**
+	 * Build metadata for a class using the user provided attribute and operation information. This is not cached.
+	 */
+	public MbeanMetadata(Class<?> clazz, JmxAttributeFieldInfo[] attributeFieldInfos,
+			JmxAttributeMethodInfo[] attributeMethodInfos, JmxOperationInfo[] operationInfos) {
+		this.clazz = clazz;
+		JmxResource jmxResource = clazz.getAnnotation(JmxResource.class);
+		this.openTypes = (jmxResource != null && jmxResource.openTypes());
+		if (jmxResource != null && jmxResource.configSnapshot()) {
+			this.snapshotCopier = new SnapshotCopier(clazz);
+		} else {
+			this.snapshotCopier = null;
+		}
+		discoverAccessors(attributeFieldInfos, attributeMethodInfos, operationInfos);
+		addStatus("", -1, StatusKind.FINGERPRINT);
+		this.mbeanInfo = new LazyMbeanInfo(clazz.getName(), this);
+	}
+
+	/**
+	 * Return the information about the bean. The attribute and operation information inside of it is built on demand.
+	 */
+	public MBeanInfo getMbeanInfo() {
+		return mbeanInfo;
+	}
+
+	public MBeanInfo getFullMbeanInfo() {
+		MBeanInfo info = fullMbeanInfo;
+		if (info == null) {
+			// building it twice in a race is harmless
+			info = buildMbeanInfo();
+			fullMbeanInfo = info;
+		}
+		return info;
+	}
+
+	/**
+	 * Return the fingerprint of the full MBeanInfo which is computed the first time it is asked for. See
+	 * {@link JmxDescriptors#fingerprint(MBeanInfo)}.
+	 */
+	public String getFingerprint() {
+		String value = fingerprint;
+		if (value == null) {
+			value = JmxDescriptors.fingerprint(getFullMbeanInfo());
+			fingerprint = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns true if the class is a config snapshot which has to be registered inside of a {@link JmxConfig}.
+	 */
+	public boolean isConfigSnapshot() {
+		return snapshotCopier != null;
+	}
+
+	/**
+	 * Return a copy of the config snapshot that the attributes can be set on before it is published.
+	 */
+	public Object copySnapshot(Object snapshot) throws Throwable {
+		return snapshotCopier.copy(snapshot);
+	}
+
+	/**
+	 * Return the number of getters and operations whose results are cached. Each mbean needs a cache slot for each of
+	 * them which is indexed by the cache-index of the accessors.
+	 */
+	public int getCacheCount() {
+		return cacheCount;
+	}
+
+	/**
+	 * Return the number of getters that have a latency budget. Each mbean needs a {@link GetterBudget} for each of
+	 * them which is indexed by the budget-index of the accessors.
+	 */
+	public int getBudgetCount() {
+		return budgetTimeouts.size();
+	}
+
+	/**
+	 * Return the timeout in milliseconds of the getter with the budget-index.
+	 */
+	public long getBudgetTimeoutMillis(int budgetIndex) {
+		return budgetTimeouts.get(budgetIndex);
+	}
+
+	/**
+	 * Return the class and attribute name of the getter with the budget-index which names the thread that calls it.
+	 */
+	public String getBudgetLabel(int budgetIndex) {
+		return budgetLabels.get(budgetIndex);
+	}
+
+	/**
+	 * Return the number of operations that have concurrency limits or timeouts. Each mbean needs a
+	 * {@link OperationLimiter} for each of them which is indexed by the limit-index of the accessors.
+	 */
+	public int getLimitCount() {
+		return limitedOperations.size();
+	}
+
+	/**
+	 * Return the information about the operation with the limit-index.
+	 */
+	public JmxOperationInfo getLimitedOperation(int limitIndex) {
+		return limitedOperations.get(limitIndex);
+	}
+
+	/**
+	 * Returns true if some of the operations are async so the mbeans need a {@link JobTable}.
+	 */
+	public boolean hasAsyncOperations() {
+		return hasAsyncOperations;
+	}
+
+	/**
+	 * Returns true if some of the attributes or operations are paged so the mbeans need a {@link CursorTable}.
+	 */
+	public boolean hasPagedMembers() {
+		return hasPagedOperations || !pagedAttributes.isEmpty();
+	}
+
+	/**
+	 * Return the accessor for the paged attribute name or null if none.
+	 */
+	public AttributeAccessor findPagedAttribute(String attributeName) {
+		return pagedAttributeMap.get(attributeName);
+	}
+
+	/**
+	 * Return the accessor for the paged attribute with the paged-index.
+	 */
+	public AttributeAccessor getPagedAttribute(int pagedIndex) {
+		return pagedAttributes.get(pagedIndex);
+	}
+
+	/**
+	 * Return the accessor for one of the read-only status attributes such as xxx.stale or xxx.rejected that go along
+	 * with getters that have a latency budget and with limited operations, or null if none.
+	 */
+	public StatusAccessor findStatus(String attributeName) {
+		return statusMap.get(attributeName);
+	}
+
+	/**
+	 * Return the names of the attributes that have accessors which does not include the paged and status ones.
+	 */
+	public Set<String> getAttributeNames() {
+		return Collections.unmodifiableSet(attributeMap.keySet());
+	}
+
+	/**
+	 * Return the accessor for the attribute name or null if none.
+	 */
+	public AttributeAccessor findAttribute(String attributeName) {
+		return attributeMap.get(attributeName);
+	}
+
+	/**
+	 * Find the operation with the name and the signature or null if none. Operations are few per name so we walk the
+	 * overloads.
+	 */
+	public OperationAccessor findOperation(String actionName, String[] signatureTypes) {
+		OperationAccessor[] accessors = operationMap.get(actionName);
+		if (accessors == null) {
+			return null;
+		}
+		for (OperationAccessor accessor : accessors) {
+			if (Arrays.equals(accessor.signatureTypes, signatureTypes)) {
+				return accessor;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the attributes and operations by using reflection and build the accessors that are used to call them.
+	 */
+	private void discoverAccessors(JmxAttributeFieldInfo[] attributeFieldInfos,
+			JmxAttributeMethodInfo[] attributeMethodInfos, JmxOperationInfo[] operationInfos) {
+		Map<String, JmxAttributeFieldInfo> attributeFieldInfoMap = null;
+		if (attributeFieldInfos != null) {
+			attributeFieldInfoMap = new HashMap<String, JmxAttributeFieldInfo>();
+			for (JmxAttributeFieldInfo info : attributeFieldInfos) {
+				attributeFieldInfoMap.put(info.getName(), info);
+			}
+		}
+		Map<String, JmxAttributeMethodInfo> attributeMethodInfoMap = null;
+		if (attributeMethodInfos != null) {
+			attributeMethodInfoMap = new HashMap<String, JmxAttributeMethodInfo>();
+			for (JmxAttributeMethodInfo info : attributeMethodInfos) {
+				attributeMethodInfoMap.put(info.getMethodName(), info);
+			}
+		}
+		Map<String, JmxOperationInfo> attributeOperationInfoMap = null;
+		if (operationInfos != null) {
+			attributeOperationInfoMap = new HashMap<String, JmxOperationInfo>();
+			for (JmxOperationInfo info : operationInfos) {
+				attributeOperationInfoMap.put(info.getMethodName(), info);
+			}
+		}
+
+		Method[] methods = clazz.getMethods();
+		discoverAttributeMethods(methods, attributeMethodInfoMap);
+		discoverAttributeFields(attributeFieldInfoMap);
+		discoverOperations(methods, attributeOperationInfoMap);
+		if (hasAsyncOperations) {
+			for (String operationName : operationMap.keySet()) {
+				if (JobTable.isJobOperationName(operationName)) {
+					throw new IllegalArgumentException("Operation " + operationName + " in " + clazz
+							+ " has the same name as one of the operations that are added for the async operations");
+				}
+			}
+		}
+
+		/*
+		 * The method attributes are looked up before the field attributes so we put them into the accessor map last so
+		 * that they win.
+		 */
+		for (AttributeFieldInfo fieldInfo : attributeFieldMap.values()) {
+			String fieldName = fieldInfo.name;
+			checkReversible(fieldName, fieldInfo.converter, fieldInfo.setterHandle);
+			attributeMap.put(fieldName, new AttributeAccessor(fieldInfo.getterHandle, fieldInfo.setterHandle,
+					"getter attribute on field " + fieldName, "setter attribute on field " + fieldName, -1, 0, -1,
+					runtimeConverter(fieldInfo.converter), fieldInfo.type, fieldInfo.genericType));
+		}
+		for (AttributeMethodInfo methodInfo : attributeMethodMap.values()) {
+			int cacheIndex = -1;
+			if (methodInfo.cacheMillis > 0 && methodInfo.getterMethod != null) {
+				cacheIndex = cacheCount++;
+			}
+			int budgetIndex = -1;
+			if (methodInfo.timeoutMillis > 0 && methodInfo.getterMethod != null) {
+				budgetIndex = budgetTimeouts.size();
+				budgetTimeouts.add(methodInfo.timeoutMillis);
+				budgetLabels.add(clazz.getSimpleName() + "." + methodInfo.varName);
+				addStatus(methodInfo.varName, budgetIndex, StatusKind.STALE);
+				addStatus(methodInfo.varName, budgetIndex, StatusKind.AGE_MILLIS);
+			}
+			checkReversible(methodInfo.varName, methodInfo.converter, methodInfo.setterHandle);
+			AttributeAccessor accessor =
+					new AttributeAccessor(methodInfo.getterHandle, methodInfo.setterHandle, "getter attribute method "
+							+ methodName(methodInfo.getterMethod), "setter attribute method "
+							+ methodName(methodInfo.setterMethod), cacheIndex,
+							TimeUnit.MILLISECONDS.toNanos(methodInfo.cacheMillis), budgetIndex,
+							runtimeConverter(methodInfo.converter), methodInfo.type, methodInfo.genericType);
+			if (methodInfo.paged) {
+				if (methodInfo.setterMethod != null) {
+					throw new IllegalArgumentException("Attribute " + methodInfo.varName + " in " + clazz
+							+ " is paged so it cannot have a setter");
+				}
+				if (!CursorTable.isPageable(methodInfo.type)) {
+					throw new IllegalArgumentException("Attribute " + methodInfo.varName + " in " + clazz
+							+ " is paged but it is not an array, Map, or Iterable");
+				}
+				// the whole value is never sent so it is not in the attribute-map
+				attributeMap.remove(methodInfo.varName);
+				addStatus(methodInfo.varName, pagedAttributes.size(), StatusKind.SIZE);
+				pagedAttributes.add(accessor);
+				pagedAttributeMap.put(methodInfo.varName, accessor);
+			} else {
+				attributeMap.put(methodInfo.varName, accessor);
+			}
+		}
+		if (hasPagedMembers()) {
+			for (String operationName : operationMap.keySet()) {
+				if (CursorTable.isCursorOperationName(operationName)) {
+					throw new IllegalArgumentException("Operation " + operationName + " in " + clazz
+							+ " has the same name as one of the operations that are added for the paged members");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build our JMX information object from the discovered attributes and operations.
+	 */
+	private MBeanInfo buildMbeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (AttributeMethodInfo methodInfo : attributeMethodMap.values()) {
+			if (methodInfo.paged) {
+				addStatusInfos(attributes, methodInfo.varName, StatusKind.SIZE);
+			} else {
+				attributes.add(new MBeanAttributeInfo(methodInfo.varName, typeName(methodInfo.type,
+						methodInfo.converter), methodInfo.description, (methodInfo.getterMethod != null),
+						(methodInfo.setterMethod != null), methodInfo.isIs(), buildDescriptor(methodInfo.genericType,
+								methodInfo.converter, methodInfo.unit, methodInfo.metricKind, methodInfo.expensive)));
+			}
+			if (methodInfo.timeoutMillis > 0 && methodInfo.getterMethod != null) {
+				addStatusInfos(attributes, methodInfo.varName, StatusKind.STALE, StatusKind.AGE_MILLIS);
+			}
+		}
+		for (AttributeFieldInfo fieldInfo : attributeFieldMap.values()) {
+			String description = fieldInfo.info.getDescription();
+			if (isEmpty(description)) {
+				description = fieldInfo.name + " attribute";
+			}
+			boolean isIs;
+			if (fieldInfo.name.startsWith("is")
+					&& (fieldInfo.type == boolean.class || fieldInfo.type == Boolean.class)) {
+				isIs = true;
+			} else {
+				isIs = false;
+			}
+			attributes.add(new MBeanAttributeInfo(fieldInfo.name, typeName(fieldInfo.type, fieldInfo.converter),
+					description, fieldInfo.info.isReadible(), fieldInfo.info.isWritable(), isIs, buildDescriptor(
+							fieldInfo.genericType, fieldInfo.converter, fieldInfo.info.getUnit(),
+							fieldInfo.info.getMetricKind(), fieldInfo.info.isExpensive())));
+		}
+
+		List<MBeanOperationInfo> operations = new ArrayList<MBeanOperationInfo>(operationMethodInfos.size());
+		for (OperationMethodInfo operationInfo : operationMethodInfos) {
+			Method method = operationInfo.method;
+			String description = operationInfo.info.getDescription();
+			if (isEmpty(description)) {
+				description = method.getName() + " attribute";
+			}
+			String returnType;
+			Descriptor descriptor = null;
+			if (operationInfo.info.isAsync()) {
+				// the job id
+				returnType = long.class.getName();
+			} else if (operationInfo.info.isPaged()) {
+				// the cursor id
+				returnType = long.class.getName();
+				descriptor = new ImmutableDescriptor(JmxPaging.PAGED_DESCRIPTOR_FIELD + "=true");
+			} else {
+				returnType = typeName(method.getReturnType(), operationInfo.converter);
+				descriptor =
+						buildDescriptor(method.getGenericReturnType(), operationInfo.converter, null,
+								JmxMetricKind.UNKNOWN, false);
+			}
+			operations.add(new MBeanOperationInfo(method.getName(), description, buildOperationParameterInfo(method,
+					operationInfo.info), returnType, operationInfo.info.getAction().getActionValue(), descriptor));
+			if (isLimited(operationInfo.info)) {
+				addStatusInfos(attributes, method.getName(), StatusKind.QUEUED, StatusKind.REJECTED,
+						StatusKind.TIMED_OUT);
+			}
+		}
+
+		operations.addAll(metricOperationInfos);
+
+		addStatusInfos(attributes, "", StatusKind.FINGERPRINT);
+
+		if (hasAsyncOperations) {
+			operations.addAll(Arrays.asList(JobTable.buildOperationInfos()));
+		}
+		if (hasPagedMembers()) {
+			operations.addAll(Arrays.asList(CursorTable.buildOperationInfos()));
+		}
+
+		return new MBeanInfo(clazz.getName(), getMbeanDescription(),
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+				operations.toArray(new MBeanOperationInfo[operations.size()]), null, STRING_INVOCATION_DESCRIPTOR);
+	}
+
+	private void addStatus(String name, int index, StatusKind kind) {
+		statusMap.put(name + kind.suffix, new StatusAccessor(index, kind));
+	}
+
+	private void addStatusInfos(List<MBeanAttributeInfo> attributes, String name, StatusKind... kinds) {
+		for (StatusKind kind : kinds) {
+			attributes.add(new MBeanAttributeInfo(name + kind.suffix, kind.type.getName(), kind.description + name,
+					true, false, false, buildDescriptor(kind.type, null, kind.unit, kind.metricKind, false)));
+		}
+	}
+
+	/**
+	 * Return the converter for the type if the values are converted to open types else null.
+	 */
+	private OpenTypeConverter openTypeConverter(Type type) {
+		if (openTypes) {
+			return OpenTypeConverter.forType(type);
+		} else {
+			return null;
+		}
+	}
+
+	private void checkReversible(String attributeName, OpenTypeConverter converter, MethodHandle setterHandle) {
+		if (converter != null && setterHandle != null && !converter.isReversible()) {
+			throw new IllegalArgumentException("Attribute " + attributeName + " in " + clazz
+					+ " is writable but its values cannot be converted back from " + converter.openType.getTypeName());
+		}
+	}
+
+	/**
+	 * The accessors only get the converter if it actually changes the values so the others pay nothing for it.
+	 */
+	private static OpenTypeConverter runtimeConverter(OpenTypeConverter converter) {
+		if (converter == null || converter.isIdentity()) {
+			return null;
+		} else {
+			return converter;
+		}
+	}
+
+	private static String typeName(Class<?> type, OpenTypeConverter converter) {
+		if (converter == null) {
+			return type.getName();
+		} else {
+			return converter.openType.getClassName();
+		}
+	}
+
+	/**
+	 * Build the descriptor with the open type, units, and metric information or return null if there is none.
+	 */
+	private static Descriptor buildDescriptor(Type type, OpenTypeConverter converter, String unit,
+			JmxMetricKind metricKind, boolean expensive) {
+		List<String> fieldNames = new ArrayList<String>();
+		List<Object> fieldValues = new ArrayList<Object>();
+		if (converter != null) {
+			fieldNames.add(OPEN_TYPE_DESCRIPTOR_FIELD);
+			fieldValues.add(converter.openType);
+			fieldNames.add(ORIGINAL_TYPE_DESCRIPTOR_FIELD);
+			fieldValues.add(type instanceof Class ? ((Class<?>) type).getName() : type.toString());
+		}
+		if (!isEmpty(unit)) {
+			fieldNames.add(JmxDescriptors.UNITS_FIELD);
+			fieldValues.add(unit);
+		}
+		if (metricKind != null && metricKind.getDescriptorValue() != null) {
+			fieldNames.add(JmxDescriptors.METRIC_TYPE_FIELD);
+			fieldValues.add(metricKind.getDescriptorValue());
+		}
+		if (expensive) {
+			fieldNames.add(JmxDescriptors.EXPENSIVE_FIELD);
+			fieldValues.add("true");
+		}
+		if (fieldNames.isEmpty()) {
+			return null;
+		}
+		return new ImmutableDescriptor(fieldNames.toArray(new String[fieldNames.size()]), fieldValues.toArray());
+	}
+
+	private static boolean isLimited(JmxOperationInfo operationInfo) {
+		return operationInfo.getMaxConcurrent() > 0 || operationInfo.getTimeoutMillis() > 0;
+	}
+
+	private String getMbeanDescription() {
+		JmxResource jmxResource = clazz.getAnnotation(JmxResource.class);
+		if (jmxResource == null || jmxResource.description() == null || jmxResource.description().length() == 0) {
+			return "Information about " + clazz;
+		} else {
+			return jmxResource.description();
+		}
+	}
+
+	/**
+	 * Return the overloads of the operation with the name or null if none.
+	 */
+	public OperationAccessor[] findOperations(String actionName) {
+		return operationMap.get(actionName);
+	}
+
+	/**
+	 * Find attribute methods from our object that will be exposed via JMX.
+	 */
+	private void discoverAttributeMethods(Method[] methods, Map<String, JmxAttributeMethodInfo> attributeMethodInfoMap) {
+		for (Method method : methods) {
+			JmxAttributeMethod jmxAttribute = method.getAnnotation(JmxAttributeMethod.class);
+			JmxAttributeMethodInfo attributeMethodInfo = null;
+			if (jmxAttribute == null) {
+				// skip it if no annotation
+				if (attributeMethodInfoMap != null) {
+					attributeMethodInfo = attributeMethodInfoMap.get(method.getName());
+				}
+				if (attributeMethodInfo == null) {
+					continue;
+				}
+			} else {
+				attributeMethodInfo = new JmxAttributeMethodInfo(method.getName(), jmxAttribute);
+				jmxAttribute = null;
+			}
+
+			String methodName = method.getName();
+			boolean isIs;
+			if (methodName.startsWith("is")) {
+				if (method.getReturnType() != boolean.class && method.getReturnType() != Boolean.class) {
+					throw new IllegalArgumentException("Method '" + method
+							+ "' starts with 'is' but does not return a boolean or Boolean class");
+				}
+				isIs = true;
+			} else {
+				isIs = false;
+			}
+			String varName = buildMethodSuffix(method, methodName, isIs);
+			AttributeMethodInfo methodInfo = attributeMethodMap.get(varName);
+			if (isIs || methodName.startsWith("get")) {
+				if (method.getParameterTypes().length != 0) {
+					throw new IllegalArgumentException("Method '" + method + "' starts with 'get' but has arguments");
+				}
+				if (method.getReturnType() == void.class) {
+					throw new IllegalArgumentException("Method '" + method
+							+ "' starts with 'get' but does not return anything");
+				}
+				if (methodInfo == null) {
+					methodInfo = new AttributeMethodInfo(varName, attributeMethodInfo.getDescription(), method, null);
+					attributeMethodMap.put(varName, methodInfo);
+				} else {
+					// setter must have already started our method-info, add the getter to it
+					methodInfo.getterMethod = method;
+				}
+				methodInfo.cacheMillis = attributeMethodInfo.getCacheMillis();
+				methodInfo.timeoutMillis = attributeMethodInfo.getTimeoutMillis();
+				methodInfo.paged = attributeMethodInfo.isPaged();
+				methodInfo.addMetricInfo(attributeMethodInfo);
+			} else if (methodName.startsWith("set")) {
+				if (method.getParameterTypes().length != 1) {
+					throw new IllegalArgumentException("Method '" + method
+							+ "' starts with 'set' but does not have 1 argument");
+				}
+				if (method.getReturnType() != void.class) {
+					throw new IllegalArgumentException("Method '" + method
+							+ "' starts with 'set' but does not return void");
+				}
+				if (attributeMethodInfo.getCacheMillis() > 0 || attributeMethodInfo.getTimeoutMillis() > 0
+						|| attributeMethodInfo.isPaged()) {
+					throw new IllegalArgumentException("Method '" + method
+							+ "' is a setter but cacheMillis, timeoutMillis, and paged are only allowed on getters");
+				}
+				if (methodInfo == null) {
+					methodInfo = new AttributeMethodInfo(varName, attributeMethodInfo.getDescription(), null, method);
+					attributeMethodMap.put(varName, methodInfo);
+				} else {
+					// getter must have already started our method-info, add the setter to it
+					methodInfo.setterMethod = method;
+				}
+				methodInfo.addMetricInfo(attributeMethodInfo);
+			} else {
+				throw new IllegalArgumentException("Method '" + method
+						+ "' is marked as an attribute but does not start with 'get' or 'set'");
+			}
+		}
+
+		/*
+		 * we have to go back and post process the attribute-method-map because the getter and setter methods change the
+		 * method-info multiple times.
+		 */
+		for (AttributeMethodInfo methodInfo : attributeMethodMap.values()) {
+			if (methodInfo.getterMethod != null) {
+				methodInfo.getterHandle = unreflectMethod(methodInfo.getterMethod).asType(GETTER_TYPE);
+			}
+			if (methodInfo.setterMethod != null) {
+				methodInfo.setterHandle = unreflectMethod(methodInfo.setterMethod).asType(SETTER_TYPE);
+			}
+			if (!methodInfo.paged) {
+				// the elements of paged attributes are sent as is
+				methodInfo.converter = openTypeConverter(methodInfo.genericType);
+			}
+		}
+	}
+
+	/**
+	 * Find attribute methods from our object that will be exposed via JMX.
+	 */
+	private void discoverAttributeFields(Map<String, JmxAttributeFieldInfo> attributeFieldInfoMap) {
+		Field[] fields = clazz.getDeclaredFields();
+		for (Field field : fields) {
+			JmxAttributeField attributeField = field.getAnnotation(JmxAttributeField.class);
+			JmxAttributeFieldInfo attributeFieldInfo = null;
+			if (attributeField == null) {
+				if (attributeFieldInfoMap != null) {
+					attributeFieldInfo = attributeFieldInfoMap.get(field.getName());
+				}
+				if (attributeFieldInfo == null) {
+					continue;
+				}
+			} else {
+				attributeFieldInfo = new JmxAttributeFieldInfo(field.getName(), attributeField);
+				attributeField = null;
+			}
+
+			if (!field.isAccessible()) {
+				field.setAccessible(true);
+			}
+			MethodHandle getterHandle = null;
+			MethodHandle setterHandle = null;
+			Class<?> type = field.getType();
+			Type genericType = field.getGenericType();
+			if (JmxMetric.class.isAssignableFrom(type)) {
+				discoverMetricField(field, attributeFieldInfo);
+				continue;
+			}
+			try {
+				if (type == JmxTunable.class) {
+					// the value of the tunable is the attribute and the field itself is only read
+					genericType = tunableValueType(genericType);
+					type = rawClass(genericType);
+					MethodHandle fieldGetter = unreflectGetter(field);
+					if (attributeFieldInfo.isReadible()) {
+						getterHandle = MethodHandles.filterReturnValue(fieldGetter, TUNABLE_GET_HANDLE);
+					}
+					if (attributeFieldInfo.isWritable()) {
+						setterHandle = MethodHandles.filterArguments(TUNABLE_SET_HANDLE, 0, fieldGetter);
+					}
+				} else {
+					if (attributeFieldInfo.isReadible()) {
+						getterHandle = unreflectGetter(field);
+					}
+					if (attributeFieldInfo.isWritable()) {
+						// config snapshots are copied before they are set so their fields can be final
+						if (Modifier.isFinal(field.getModifiers()) && snapshotCopier == null) {
+							throw new IllegalArgumentException("Field '" + field
+									+ "' is marked as writable but it is final");
+						}
+						setterHandle = LOOKUP.unreflectSetter(field);
+						if (Modifier.isStatic(field.getModifiers())) {
+							setterHandle = MethodHandles.dropArguments(setterHandle, 0, Object.class);
+						}
+					}
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Could not access field '" + field + "'", e);
+			}
+			if (getterHandle != null) {
+				getterHandle = getterHandle.asType(GETTER_TYPE);
+			}
+			if (setterHandle != null) {
+				setterHandle = setterHandle.asType(SETTER_TYPE);
+			}
+			attributeFieldMap.put(field.getName(), new AttributeFieldInfo(field.getName(), type, genericType,
+					attributeFieldInfo, getterHandle, setterHandle, openTypeConverter(genericType)));
+		}
+	}
+
+	/**
+	 * Add the read-only attributes and the operations that a {@link JmxMetric} field is exposed as.
+	 */
+	private void discoverMetricField(Field field, JmxAttributeFieldInfo fieldInfo) {
+		MetricAttribute[] metricAttributes = JmxMetric.attributesOf(field.getType());
+		if (metricAttributes == null) {
+			throw new IllegalArgumentException("Metric field '" + field
+					+ "' has to be declared as one of the metric classes such as JmxCounter");
+		}
+		if (fieldInfo.isWritable()) {
+			throw new IllegalArgumentException("Metric field '" + field + "' cannot be writable");
+		}
+		MethodHandle fieldGetter;
+		try {
+			fieldGetter = unreflectGetter(field).asType(MethodType.methodType(JmxMetric.class, Object.class));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Could not access field '" + field + "'", e);
+		}
+		String description = fieldInfo.getDescription();
+		if (isEmpty(description)) {
+			description = field.getName();
+		}
+		for (int i = 0; fieldInfo.isReadible() && i < metricAttributes.length; i++) {
+			MetricAttribute metricAttribute = metricAttributes[i];
+			String name = field.getName() + "." + metricAttribute.suffix;
+			MethodHandle getterHandle =
+					MethodHandles.filterReturnValue(fieldGetter,
+							MethodHandles.insertArguments(METRIC_READ_HANDLE, 1, i)).asType(GETTER_TYPE);
+			JmxAttributeFieldInfo attributeInfo =
+					new JmxAttributeFieldInfo(name, true, false, description + ", " + metricAttribute.description,
+							metricAttribute.unit(fieldInfo.getUnit()), metricAttribute.metricKind,
+							fieldInfo.isExpensive());
+			// the values are already open types
+			attributeFieldMap.put(name, new AttributeFieldInfo(name, metricAttribute.type, metricAttribute.type,
+					attributeInfo, getterHandle, null, null));
+		}
+		MetricOperation[] metricOperations = JmxMetric.operationsOf(field.getType());
+		for (int i = 0; i < metricOperations.length; i++) {
+			MetricOperation metricOperation = metricOperations[i];
+			String name = field.getName() + "." + metricOperation.suffix;
+			MethodHandle handle =
+					MethodHandles.filterReturnValue(fieldGetter,
+							MethodHandles.insertArguments(METRIC_INVOKE_HANDLE, 1, i));
+			handle = MethodHandles.dropArguments(handle, 1, Object[].class).asType(OPERATION_TYPE);
+			addOperation(new OperationAccessor(name, new Class<?>[0], new String[0], handle, -1, 0, -1, false,
+					false, null));
+			metricOperationInfos.add(new MBeanOperationInfo(name, description + ", " + metricOperation.description,
+					new MBeanParameterInfo[0], metricOperation.returnType.getName(),
+					metricOperation.action.getActionValue()));
+		}
+	}
+
+	/**
+	 * Find operation methods from our object that will be exposed via JMX.
+	 */
+	private void discoverOperations(Method[] methods, Map<String, JmxOperationInfo> attributeOperationInfoMap) {
+		for (Method method : methods) {
+			JmxOperation jmxOperation = method.getAnnotation(JmxOperation.class);
+			JmxOperationInfo operationInfo = null;
+			if (jmxOperation == null) {
+				if (attributeOperationInfoMap != null) {
+					operationInfo = attributeOperationInfoMap.get(method.getName());
+				}
+				if (operationInfo == null) {
+					continue;
+				}
+			} else {
+				operationInfo = new JmxOperationInfo(method.getName(), jmxOperation);
+				jmxOperation = null;
+			}
+			String methodName = method.getName();
+			if (methodName.startsWith("get") || methodName.startsWith("is") || methodName.startsWith("set")) {
+				throw new IllegalArgumentException("Operation method " + method
+						+ " cannot start with 'get', 'is', or 'set'.  Did you use the wrong annotation?");
+			}
+			Class<?>[] types = method.getParameterTypes();
+			String[] stringTypes = new String[types.length];
+			for (int i = 0; i < types.length; i++) {
+				stringTypes[i] = types[i].getName();
+			}
+			int cacheIndex = -1;
+			if (operationInfo.getCacheMillis() > 0) {
+				if (operationInfo.getAction() != OperationAction.INFO) {
+					throw new IllegalArgumentException("Operation method " + method
+							+ " has cacheMillis but its operationAction is not INFO");
+				}
+				cacheIndex = cacheCount++;
+			}
+			if (operationInfo.isAsync()) {
+				if (operationInfo.getCacheMillis() > 0 || operationInfo.getTimeoutMillis() > 0
+						|| operationInfo.isPaged()) {
+					throw new IllegalArgumentException("Operation method " + method
+							+ " is async so it cannot have cacheMillis, timeoutMillis, or be paged");
+				}
+				hasAsyncOperations = true;
+			}
+			if (operationInfo.isPaged()) {
+				if (!CursorTable.isPageable(method.getReturnType())) {
+					throw new IllegalArgumentException("Operation method " + method
+							+ " is paged but it does not return an array, Map, or Iterable");
+				}
+				hasPagedOperations = true;
+			}
+			if (operationInfo.getMaxWaitMillis() > 0 && operationInfo.getMaxConcurrent() <= 0) {
+				throw new IllegalArgumentException("Operation method " + method
+						+ " has maxWaitMillis but no maxConcurrent limit");
+			}
+			int limitIndex = -1;
+			if (isLimited(operationInfo)) {
+				if (statusMap.containsKey(methodName + StatusKind.QUEUED.suffix)) {
+					throw new IllegalArgumentException("Operation method " + method
+							+ " has limits but so does another operation with the same name");
+				}
+				limitIndex = limitedOperations.size();
+				limitedOperations.add(operationInfo);
+				addStatus(methodName, limitIndex, StatusKind.QUEUED);
+				addStatus(methodName, limitIndex, StatusKind.REJECTED);
+				addStatus(methodName, limitIndex, StatusKind.TIMED_OUT);
+			}
+			OpenTypeConverter converter = null;
+			if (!operationInfo.isPaged()) {
+				converter = openTypeConverter(method.getGenericReturnType());
+			}
+			MethodHandle handle =
+					unreflectMethod(method).asSpreader(Object[].class, types.length).asType(OPERATION_TYPE);
+			addOperation(new OperationAccessor(methodName, types, stringTypes, handle, cacheIndex,
+					TimeUnit.MILLISECONDS.toNanos(operationInfo.getCacheMillis()), limitIndex,
+					operationInfo.isAsync(), operationInfo.isPaged(), runtimeConverter(converter)));
+			operationMethodInfos.add(new OperationMethodInfo(method, operationInfo, converter));
+		}
+	}
+
+	private void addOperation(OperationAccessor accessor) {
+		OperationAccessor[] accessors = operationMap.get(accessor.methodName);
+		if (accessors == null) {
+			accessors = new OperationAccessor[] { accessor };
+		} else {
+			accessors = Arrays.copyOf(accessors, accessors.length + 1);
+			accessors[accessors.length - 1] = accessor;
+		}
+		operationMap.put(accessor.methodName, accessors);
+	}
+
+	/**
+	 * Build our parameter information for an operation.
+	 */
+	private MBeanParameterInfo[] buildOperationParameterInfo(Method method, JmxOperationInfo operationInfo) {
+		Class<?>[] types = method.getParameterTypes();
+		MBeanParameterInfo[] parameterInfos = new MBeanParameterInfo[types.length];
+		String[] parameterNames = operationInfo.getParameterNames();
+		String[] parameterDescriptions = operationInfo.getParameterDescriptions();
+		for (int i = 0; i < types.length; i++) {
+			String parameterName;
+			if (parameterNames == null || i >= parameterNames.length) {
+				parameterName = "p" + (i + 1);
+			} else {
+				parameterName = parameterNames[i];
+			}
+			String typeName = types[i].getName();
+			String description;
+			if (parameterDescriptions == null || i >= parameterDescriptions.length) {
+				description = "parameter #" + (i + 1) + " of type: " + typeName;
+			} else {
+				description = parameterDescriptions[i];
+			}
+			parameterInfos[i] = new MBeanParameterInfo(parameterName, typeName, description);
+		}
+		return parameterInfos;
+	}
+
+	private String buildMethodSuffix(Method method, String methodName, boolean isIs) {
+		if (isIs) {
+			if (methodName.length() < 3) {
+				throw new IllegalArgumentException("Method '" + methodName + "' has a name that is too short");
+			}
+			return Character.toLowerCase(methodName.charAt(2)) + methodName.substring(3);
+		} else {
+			if (methodName.length() < 4) {
+				throw new IllegalArgumentException("Method '" + methodName + "' has a name that is too short");
+			}
+			return Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4);
+		}
+	}
+
+	/**
+	 * Turn a method into a method-handle. We open up the accessibility on the method so that public methods on
+	 * non-public classes can still be called. Static methods ignore the delegate argument.
+	 */
+	private MethodHandle unreflectMethod(Method method) {
+		if (!method.isAccessible()) {
+			try {
+				method.setAccessible(true);
+			} catch (RuntimeException e) {
+				// ignored, the lookup below will use the normal access checks
+			}
+		}
+		MethodHandle handle;
+		try {
+			handle = LOOKUP.unreflect(method);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Could not access method '" + method + "'", e);
+		}
+		if (Modifier.isStatic(method.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		return handle;
+	}
+
+	/**
+	 * Return a handle that gets the field from the delegate. Static fields ignore the delegate argument.
+	 */
+	private static MethodHandle unreflectGetter(Field field) throws IllegalAccessException {
+		MethodHandle handle = LOOKUP.unreflectGetter(field);
+		if (Modifier.isStatic(field.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		return handle;
+	}
+
+	/**
+	 * Return the type of the values of a {@link JmxTunable} field from its type argument or Object if it has none.
+	 */
+	private static Type tunableValueType(Type fieldType) {
+		if (fieldType instanceof ParameterizedType) {
+			return ((ParameterizedType) fieldType).getActualTypeArguments()[0];
+		} else {
+			return Object.class;
+		}
+	}
+
+	static Class<?> rawClass(Type type) {
+		if (type instanceof Class) {
+			return (Class<?>) type;
+		} else if (type instanceof ParameterizedType) {
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		} else {
+			return Object.class;
+		}
+	}
+
+	private static boolean isEmpty(String string) {
+		return string == null || string.trim().length() == 0;
+	}
+
+	private static String methodName(Method method) {
+		if (method == null) {
+			return null;
+		} else {
+			return method.getName();
+		}
+	}
+
+	/**
+	 * Information about attribute methods.
+	 */
+	private static class AttributeMethodInfo {
+		final String varName;
+		final String description;
+		Method getterMethod;
+		Method setterMethod;
+		MethodHandle getterHandle;
+		MethodHandle setterHandle;
+		long cacheMillis;
+		long timeoutMillis;
+		boolean paged;
+		/** null if the values are not converted to open types */
+		OpenTypeConverter converter;
+		String unit;
+		JmxMetricKind metricKind = JmxMetricKind.UNKNOWN;
+		boolean expensive;
+		final Class<?> type;
+		final Type genericType;
+
+		public AttributeMethodInfo(String varName, String description, Method getterMethod, Method setterMethod) {
+			this.varName = varName;
+			if (description == null || description.length() == 0) {
+				this.description = varName + " attribute";
+			} else {
+				this.description = description;
+			}
+			this.getterMethod = getterMethod;
+			this.setterMethod = setterMethod;
+			if (getterMethod == null) {
+				type = setterMethod.getParameterTypes()[0];
+				genericType = setterMethod.getGenericParameterTypes()[0];
+			} else {
+				type = getterMethod.getReturnType();
+				genericType = getterMethod.getGenericReturnType();
+			}
+		}
+
+		/**
+		 * The units and metric information can be on either the getter or the setter.
+		 */
+		public void addMetricInfo(JmxAttributeMethodInfo info) {
+			if (!isEmpty(info.getUnit())) {
+				unit = info.getUnit();
+			}
+			if (info.getMetricKind() != null && info.getMetricKind() != JmxMetricKind.UNKNOWN) {
+				metricKind = info.getMetricKind();
+			}
+			expensive |= info.isExpensive();
+		}
+
+		public boolean isIs() {
+			if (getterMethod != null && getterMethod.getName().startsWith("is")
+					&& (type == boolean.class || type == Boolean.class)) {
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Information about attribute fields. A {@link JmxMetric} field has one of these for each of its attributes.
+	 */
+	private static class AttributeFieldInfo {
+
+		final String name;
+		/** type of the attribute which is the value type for {@link JmxTunable} fields */
+		final Class<?> type;
+		final Type genericType;
+		final JmxAttributeFieldInfo info;
+		final MethodHandle getterHandle;
+		final MethodHandle setterHandle;
+		/** null if the values are not converted to open types */
+		final OpenTypeConverter converter;
+
+		public AttributeFieldInfo(String name, Class<?> type, Type genericType, JmxAttributeFieldInfo info,
+				MethodHandle getterHandle, MethodHandle setterHandle, OpenTypeConverter converter) {
+			this.name = name;
+			this.type = type;
+			this.genericType = genericType;
+			this.info = info;
+			this.getterHandle = getterHandle;
+			this.setterHandle = setterHandle;
+			this.converter = converter;
+		}
+	}
+
+	/**
+	 * Information about operation methods which is used to build the MBeanInfo.
+	 */
+	private static class OperationMethodInfo {
+
+		final Method method;
+		final JmxOperationInfo info;
+		/** null if the results are not converted to open types */
+		final OpenTypeConverter converter;
+
+		public OperationMethodInfo(Method method, JmxOperationInfo info, OpenTypeConverter converter) {
+			this.method = method;
+			this.info = info;
+			this.converter = converter;
+		}
+	}
+
+	/**
+	 * What we need to get and set an attribute at runtime whether it is backed by methods or a field.
+	 */
+	static class AttributeAccessor {
+
+		final MethodHandle getterHandle;
+		final MethodHandle setterHandle;
+		final String getterLabel;
+		final String setterLabel;
+		/** index of the mbean's cache slot or -1 if the getter result is not cached */
+		final int cacheIndex;
+		final long cacheNanos;
+		/** index of the mbean's getter budget or -1 if the getter is called directly */
+		final int budgetIndex;
+		/** converts the values to and from open types or null if they are passed as is */
+		final OpenTypeConverter openConverter;
+		final Class<?> type;
+		final Type genericType;
+
+		public AttributeAccessor(MethodHandle getterHandle, MethodHandle setterHandle, String getterLabel,
+				String setterLabel, int cacheIndex, long cacheNanos, int budgetIndex, OpenTypeConverter openConverter,
+				Class<?> type, Type genericType) {
+			this.getterHandle = getterHandle;
+			this.setterHandle = setterHandle;
+			this.getterLabel = getterLabel;
+			this.setterLabel = setterLabel;
+			this.cacheIndex = cacheIndex;
+			this.cacheNanos = cacheNanos;
+			this.budgetIndex = budgetIndex;
+			this.openConverter = openConverter;
+			this.type = type;
+			this.genericType = genericType;
+		}
+	}
+
+	/**
+	 * The read-only status attributes which go along with getters that have a latency budget and with limited
+	 * operations. They are named by adding the suffix to the attribute or operation name.
+	 */
+	enum StatusKind {
+		STALE(".stale", boolean.class, "Whether a value read now is stale because the getter is slow or failing: ", null,
+				JmxMetricKind.UNKNOWN),
+		AGE_MILLIS(".ageMillis", long.class, "Age in millis of the last value returned by the getter: ", "ms",
+				JmxMetricKind.GAUGE),
+		QUEUED(".queued", long.class, "Number of calls that waited for a concurrency slot: ", null,
+				JmxMetricKind.COUNTER),
+		REJECTED(".rejected", long.class, "Number of calls that were rejected because of the limits: ", null,
+				JmxMetricKind.COUNTER),
+		TIMED_OUT(".timedOut", long.class, "Number of calls that were interrupted because of the timeout: ", null,
+				JmxMetricKind.COUNTER),
+		SIZE(JmxPaging.SIZE_SUFFIX, long.class, "Number of elements, they are read with openCursor: ", null,
+				JmxMetricKind.GAUGE),
+		/** this is for the whole bean so the suffix is the whole name */
+		FINGERPRINT(JmxDescriptors.FINGERPRINT_ATTRIBUTE, String.class, JmxDescriptors.FINGERPRINT_DESCRIPTION, null,
+				JmxMetricKind.UNKNOWN),
+		// end
+		;
+
+		final String suffix;
+		final Class<?> type;
+		final String description;
+		final String unit;
+		final JmxMetricKind metricKind;
+
+		private StatusKind(String suffix, Class<?> type, String description, String unit, JmxMetricKind metricKind) {
+			this.suffix = suffix;
+			this.type = type;
+			this.description = description;
+			this.unit = unit;
+			this.metricKind = metricKind;
+		}
+	}
+
+	/**
+	 * Reads one of the status attributes of a getter budget or an operation limiter.
+	 */
+	static class StatusAccessor {
+
+		/** budget-index, limit-index, or paged-index depending on the kind, not used by the fingerprint */
+		final int index;
+		final StatusKind kind;
+
+		public StatusAccessor(int index, StatusKind kind) {
+			this.index = index;
+			this.kind = kind;
+		}
+	}
+
+	/**
+	 * What we need to invoke an operation at runtime.
+	 */
+	static class OperationAccessor {
+
+		final String methodName;
+		final Class<?>[] parameterTypes;
+		final String[] signatureTypes;
+		final MethodHandle handle;
+		/** index of the mbean's cache slot or -1 if the result is not cached */
+		final int cacheIndex;
+		final long cacheNanos;
+		/** index of the mbean's operation limiter or -1 if the operation is called directly */
+		final int limitIndex;
+		/** whether the operation is started as a job */
+		final boolean async;
+		/** whether a cursor is returned instead of the result */
+		final boolean paged;
+		/** converts the result to an open type or null if it is returned as is */
+		final OpenTypeConverter openConverter;
+
+		public OperationAccessor(String methodName, Class<?>[] parameterTypes, String[] signatureTypes,
+				MethodHandle handle, int cacheIndex, long cacheNanos, int limitIndex, boolean async, boolean paged,
+				OpenTypeConverter openConverter) {
+			this.methodName = methodName;
+			this.parameterTypes = parameterTypes;
+			this.signatureTypes = signatureTypes;
+			this.handle = handle;
+			this.cacheIndex = cacheIndex;
+			this.cacheNanos = cacheNanos;
+			this.limitIndex = limitIndex;
+			this.async = async;
+			this.paged = paged;
+			this.openConverter = openConverter;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.j256.simplejmx.server;
+
+import com.j256.simplejmx.common.JmxMetricKind;
+
+/**
+ * One of the attributes that a {@link JmxMetric} field is exposed as. The attribute is named by adding the suffix to
+ * the name of the field such as requests.count.
+ *
+ * @author graywatson
+ */
+class MetricAttribute {
+
+	final String suffix;
+	final Class<?> type;
+	final String description;
+	final JmxMetricKind metricKind;
+	final UnitKind unitKind;
+
+	public MetricAttribute(String suffix, Class<?> type, String description, JmxMetricKind metricKind,
+			UnitKind unitKind) {
+		this.suffix = suffix;
+		this.type = type;
+		this.description = description;
+		this.metricKind = metricKind;
+		this.unitKind = unitKind;
+	}
+
+	/**
+	 * Return the unit of the attribute from the unit of the field which may be null.
+	 */
+	public String unit(String fieldUnit) {
+		switch (unitKind) {
+			case FIELD :
+				return fieldUnit;
+			case PER_SECOND :
+				if (fieldUnit == null || fieldUnit.length() == 0) {
+					return "1/s";
+				} else {
+					return fieldUnit + "/s";
+				}
+			default :
+				return null;
+		}
+	}
+
+	/**
+	 * How the unit of the attribute comes from the unit of the field.
+	 */
+	enum UnitKind {
+		/** the value is in the unit of the field */
+		FIELD,
+		/** the value is per second of the unit of the field */
+		PER_SECOND,
+		/** the value is a number of values such as the count of a histogram */
+		NONE,
+		// end
+		;
+	}
+}
@@ -0,0 +1,24 @@
+package com.j256.simplejmx.server;
+
+import com.j256.simplejmx.common.JmxOperationInfo.OperationAction;
+
+/**
+ * One of the operations without parameters that a {@link JmxMetric} field is exposed with. The operation is named by
+ * adding the suffix to the name of the field such as hotKeys.reset.
+ *
+ * @author graywatson
+ */
+class MetricOperation {
+
+	final String suffix;
+	final Class<?> returnType;
+	final String description;
+	final OperationAction action;
+
+	public MetricOperation(String suffix, Class<?> returnType, String description, OperationAction action) {
+		this.suffix = suffix;
+		this.returnType = returnType;
+		this.description = description;
+		this.action = action;
+	}
+}
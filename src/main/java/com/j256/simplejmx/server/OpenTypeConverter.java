@@ -0,0 +1,550 @@
+package com.j256.simplejmx.server;
+
+import java.beans.Introspector;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+/**
+ * Converts the values of a Java type to and from an open type so that generic JMX clients which do not have our classes
+ * can read them. These are close to the MXBean mapping rules:
+ *
+ * <ul>
+ * <li>Primitives, their wrappers, String, BigDecimal, BigInteger, Date, and ObjectName are passed as is.</li>
+ * <li>Enums are converted to their name.</li>
+ * <li>Arrays, Lists, Sets, and other Collections are converted to arrays of the converted elements.</li>
+ * <li>Maps are converted to TabularData with a row of "key" and "value" items for each entry.</li>
+ * <li>Other classes are converted to CompositeData with an item for each of their public getters.</li>
+ * </ul>
+ *
+ * <p>
+ * The converter of each class is built once and cached with the class so the conversion of a value only copies its
+ * parts. Generic types are not cached since they are only looked up when the metadata of a class is built which is
+ * itself cached.
+ * CompositeData cannot be converted back to a Java object so attributes of those types cannot be writable.
+ * </p>
+ *
+ * @author graywatson
+ */
+abstract class OpenTypeConverter {
+
+	private static final String[] MAP_ITEM_NAMES = new String[] { "key", "value" };
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final Map<Class<?>, SimpleType<?>> simpleTypeMap = new HashMap<Class<?>, SimpleType<?>>();
+	/** converters of the classes which don't keep the classes from being unloaded */
+	private static final ClassValue<OpenTypeConverter> converterCache = new ClassValue<OpenTypeConverter>() {
+		@Override
+		protected OpenTypeConverter computeValue(Class<?> clazz) {
+			return buildConverter(clazz, new HashSet<Type>());
+		}
+	};
+
+	static {
+		simpleTypeMap.put(void.class, SimpleType.VOID);
+		simpleTypeMap.put(Void.class, SimpleType.VOID);
+		simpleTypeMap.put(boolean.class, SimpleType.BOOLEAN);
+		simpleTypeMap.put(Boolean.class, SimpleType.BOOLEAN);
+		simpleTypeMap.put(byte.class, SimpleType.BYTE);
+		simpleTypeMap.put(Byte.class, SimpleType.BYTE);
+		simpleTypeMap.put(char.class, SimpleType.CHARACTER);
+		simpleTypeMap.put(Character.class, SimpleType.CHARACTER);
+		simpleTypeMap.put(short.class, SimpleType.SHORT);
+		simpleTypeMap.put(Short.class, SimpleType.SHORT);
+		simpleTypeMap.put(int.class, SimpleType.INTEGER);
+		simpleTypeMap.put(Integer.class, SimpleType.INTEGER);
+		simpleTypeMap.put(long.class, SimpleType.LONG);
+		simpleTypeMap.put(Long.class, SimpleType.LONG);
+		simpleTypeMap.put(float.class, SimpleType.FLOAT);
+		simpleTypeMap.put(Float.class, SimpleType.FLOAT);
+		simpleTypeMap.put(double.class, SimpleType.DOUBLE);
+		simpleTypeMap.put(Double.class, SimpleType.DOUBLE);
+		simpleTypeMap.put(String.class, SimpleType.STRING);
+		simpleTypeMap.put(BigDecimal.class, SimpleType.BIGDECIMAL);
+		simpleTypeMap.put(BigInteger.class, SimpleType.BIGINTEGER);
+		simpleTypeMap.put(Date.class, SimpleType.DATE);
+		simpleTypeMap.put(ObjectName.class, SimpleType.OBJECTNAME);
+	}
+
+	final OpenType<?> openType;
+
+	private OpenTypeConverter(OpenType<?> openType) {
+		this.openType = openType;
+	}
+
+	/**
+	 * Return the converter for the type which is built the first time it is asked for.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the type cannot be converted to an open type.
+	 */
+	public static OpenTypeConverter forType(Type type) {
+		if (type instanceof Class) {
+			return converterCache.get((Class<?>) type);
+		} else {
+			return buildConverter(type, new HashSet<Type>());
+		}
+	}
+
+	/**
+	 * Convert a value of our Java type to its open type.
+	 */
+	public abstract Object toOpenValue(Object value) throws OpenDataException;
+
+	/**
+	 * Convert a value of our open type back to the Java type. Must only be called if {@link #isReversible()}.
+	 */
+	public abstract Object fromOpenValue(Object openValue);
+
+	/**
+	 * Returns true if values are passed as is so no conversion is needed.
+	 */
+	public boolean isIdentity() {
+		return false;
+	}
+
+	/**
+	 * Returns true if open values can be converted back to the Java type.
+	 */
+	public boolean isReversible() {
+		return true;
+	}
+
+	/**
+	 * Build the converter of a type which is in one of the types that are being built. These are not looked up in the
+	 * cache since the cache of a class cannot be asked for while its converter is being built.
+	 */
+	private static OpenTypeConverter buildConverter(Type type, Set<Type> inProgress) {
+		if (!inProgress.add(type)) {
+			throw new IllegalArgumentException("Type " + type + " cannot be converted to an open type because it "
+					+ "refers to itself");
+		}
+		try {
+			return buildTypeConverter(type, inProgress);
+		} catch (OpenDataException e) {
+			throw new IllegalArgumentException("Type " + type + " cannot be converted to an open type", e);
+		} finally {
+			inProgress.remove(type);
+		}
+	}
+
+	private static OpenTypeConverter buildTypeConverter(Type type, Set<Type> inProgress) throws OpenDataException {
+		if (type instanceof ParameterizedType) {
+			ParameterizedType parameterizedType = (ParameterizedType) type;
+			Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+			Type[] typeArguments = parameterizedType.getActualTypeArguments();
+			if (Map.class.isAssignableFrom(rawType)) {
+				return new MapConverter(type, buildConverter(typeArguments[0], inProgress), buildConverter(
+						typeArguments[1], inProgress), SortedMap.class.isAssignableFrom(rawType));
+			} else if (Collection.class.isAssignableFrom(rawType)) {
+				return new CollectionConverter(rawType, buildConverter(typeArguments[0], inProgress));
+			} else {
+				throw new IllegalArgumentException("Generic type " + type + " cannot be converted to an open type");
+			}
+		}
+		if (!(type instanceof Class)) {
+			throw new IllegalArgumentException("Type " + type
+					+ " cannot be converted to an open type, only classes and generic collections and maps can");
+		}
+		Class<?> clazz = (Class<?>) type;
+		SimpleType<?> simpleType = simpleTypeMap.get(clazz);
+		if (simpleType != null) {
+			return new IdentityConverter(simpleType);
+		} else if (clazz.isEnum()) {
+			return new EnumConverter(clazz);
+		} else if (clazz.isArray()) {
+			Class<?> rootType = clazz;
+			while (rootType.isArray()) {
+				rootType = rootType.getComponentType();
+			}
+			if (rootType.isPrimitive()) {
+				return new IdentityConverter(ArrayType.getPrimitiveArrayType(clazz));
+			}
+			Class<?> componentType = clazz.getComponentType();
+			return new ArrayConverter(componentType, buildConverter(componentType, inProgress));
+		} else if (Map.class.isAssignableFrom(clazz) || Collection.class.isAssignableFrom(clazz)) {
+			throw new IllegalArgumentException("Raw type " + clazz
+					+ " cannot be converted to an open type, its element types must be specified");
+		} else {
+			return buildCompositeConverter(clazz, inProgress);
+		}
+	}
+
+	private static OpenTypeConverter buildCompositeConverter(Class<?> clazz, Set<Type> inProgress)
+			throws OpenDataException {
+		Map<String, Method> getterMap = new TreeMap<String, Method>();
+		for (Method method : clazz.getMethods()) {
+			if (Modifier.isStatic(method.getModifiers()) || method.getParameterTypes().length != 0
+					|| method.getDeclaringClass() == Object.class) {
+				continue;
+			}
+			String methodName = method.getName();
+			if (methodName.startsWith("get") && methodName.length() > 3 && method.getReturnType() != void.class) {
+				getterMap.put(Introspector.decapitalize(methodName.substring(3)), method);
+			} else if (methodName.startsWith("is") && methodName.length() > 2
+					&& method.getReturnType() == boolean.class) {
+				getterMap.put(Introspector.decapitalize(methodName.substring(2)), method);
+			}
+		}
+		if (getterMap.isEmpty()) {
+			throw new IllegalArgumentException("Type " + clazz
+					+ " cannot be converted to an open type because it has no public getters");
+		}
+		int itemCount = getterMap.size();
+		String[] itemNames = getterMap.keySet().toArray(new String[itemCount]);
+		OpenType<?>[] itemTypes = new OpenType<?>[itemCount];
+		OpenTypeConverter[] itemConverters = new OpenTypeConverter[itemCount];
+		MethodHandle[] getterHandles = new MethodHandle[itemCount];
+		for (int i = 0; i < itemCount; i++) {
+			Method getter = getterMap.get(itemNames[i]);
+			itemConverters[i] = buildConverter(getter.getGenericReturnType(), inProgress);
+			itemTypes[i] = itemConverters[i].openType;
+			getterHandles[i] = unreflectGetter(getter);
+		}
+		CompositeType compositeType =
+				new CompositeType(clazz.getName(), clazz.getName(), itemNames, itemNames, itemTypes);
+		return new CompositeConverter(compositeType, itemNames, getterHandles, itemConverters);
+	}
+
+	private static MethodHandle unreflectGetter(Method method) {
+		if (!method.isAccessible()) {
+			try {
+				method.setAccessible(true);
+			} catch (RuntimeException e) {
+				// ignored, the lookup below will use the normal access checks
+			}
+		}
+		try {
+			return MethodHandles.lookup().unreflect(method).asType(GETTER_TYPE);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Could not access getter method '" + method + "'", e);
+		}
+	}
+
+	private static Class<?> openClass(OpenType<?> openType) {
+		try {
+			return Class.forName(openType.getClassName());
+		} catch (ClassNotFoundException e) {
+			// can't happen since the open types are all JDK classes
+			throw new IllegalStateException("Could not load open class " + openType.getClassName(), e);
+		}
+	}
+
+	/**
+	 * Values that are already open types.
+	 */
+	private static class IdentityConverter extends OpenTypeConverter {
+
+		public IdentityConverter(OpenType<?> openType) {
+			super(openType);
+		}
+
+		@Override
+		public Object toOpenValue(Object value) {
+			return value;
+		}
+
+		@Override
+		public Object fromOpenValue(Object openValue) {
+			return openValue;
+		}
+
+		@Override
+		public boolean isIdentity() {
+			return true;
+		}
+	}
+
+	/**
+	 * Enums are converted to their names.
+	 */
+	private static class EnumConverter extends OpenTypeConverter {
+
+		private final Class<?> enumClass;
+
+		public EnumConverter(Class<?> enumClass) {
+			super(SimpleType.STRING);
+			this.enumClass = enumClass;
+		}
+
+		@Override
+		public Object toOpenValue(Object value) {
+			return (value == null ? null : ((Enum<?>) value).name());
+		}
+
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public Object fromOpenValue(Object openValue) {
+			return (openValue == null ? null : Enum.valueOf((Class) enumClass, (String) openValue));
+		}
+	}
+
+	/**
+	 * Arrays of non-primitive elements are converted element by element.
+	 */
+	private static class ArrayConverter extends OpenTypeConverter {
+
+		private final Class<?> componentClass;
+		private final Class<?> openComponentClass;
+		private final OpenTypeConverter componentConverter;
+
+		public ArrayConverter(Class<?> componentClass, OpenTypeConverter componentConverter) throws OpenDataException {
+			super(ArrayType.getArrayType(componentConverter.openType));
+			this.componentClass = componentClass;
+			this.openComponentClass = openClass(componentConverter.openType);
+			this.componentConverter = componentConverter;
+		}
+
+		@Override
+		public Object toOpenValue(Object value) throws OpenDataException {
+			if (value == null) {
+				return null;
+			}
+			Object[] array = (Object[]) value;
+			Object[] openArray = (Object[]) Array.newInstance(openComponentClass, array.length);
+			for (int i = 0; i < array.length; i++) {
+				openArray[i] = componentConverter.toOpenValue(array[i]);
+			}
+			return openArray;
+		}
+
+		@Override
+		public Object fromOpenValue(Object openValue) {
+			if (openValue == null) {
+				return null;
+			}
+			Object[] openArray = (Object[]) openValue;
+			Object[] array = (Object[]) Array.newInstance(componentClass, openArray.length);
+			for (int i = 0; i < openArray.length; i++) {
+				array[i] = componentConverter.fromOpenValue(openArray[i]);
+			}
+			return array;
+		}
+
+		@Override
+		public boolean isReversible() {
+			return componentConverter.isReversible();
+		}
+	}
+
+	/**
+	 * Collections are converted to arrays of their elements.
+	 */
+	private static class CollectionConverter extends OpenTypeConverter {
+
+		private final Class<?> collectionClass;
+		private final Class<?> openElementClass;
+		private final OpenTypeConverter elementConverter;
+
+		public CollectionConverter(Class<?> collectionClass, OpenTypeConverter elementConverter)
+				throws OpenDataException {
+			super(ArrayType.getArrayType(elementConverter.openType));
+			this.collectionClass = collectionClass;
+			this.openElementClass = openClass(elementConverter.openType);
+			this.elementConverter = elementConverter;
+		}
+
+		@Override
+		public Object toOpenValue(Object value) throws OpenDataException {
+			if (value == null) {
+				return null;
+			}
+			Collection<?> collection = (Collection<?>) value;
+			Object[] openArray = (Object[]) Array.newInstance(openElementClass, collection.size());
+			int count = 0;
+			for (Object element : collection) {
+				if (count >= openArray.length) {
+					// the collection grew while we were copying it
+					break;
+				}
+				openArray[count++] = elementConverter.toOpenValue(element);
+			}
+			if (count < openArray.length) {
+				Object[] shortArray = (Object[]) Array.newInstance(openElementClass, count);
+				System.arraycopy(openArray, 0, shortArray, 0, count);
+				openArray = shortArray;
+			}
+			return openArray;
+		}
+
+		@Override
+		public Object fromOpenValue(Object openValue) {
+			if (openValue == null) {
+				return null;
+			}
+			Object[] openArray = (Object[]) openValue;
+			Collection<Object> collection;
+			if (SortedSet.class.isAssignableFrom(collectionClass)) {
+				collection = new TreeSet<Object>();
+			} else if (Set.class.isAssignableFrom(collectionClass)) {
+				collection = new LinkedHashSet<Object>(openArray.length * 2);
+			} else {
+				collection = new ArrayList<Object>(openArray.length);
+			}
+			for (Object openElement : openArray) {
+				collection.add(elementConverter.fromOpenValue(openElement));
+			}
+			return collection;
+		}
+
+		@Override
+		public boolean isReversible() {
+			// we can only build the collection interfaces
+			return elementConverter.isReversible() && collectionClass.isInterface()
+					&& (collectionClass == Collection.class || collectionClass == List.class
+							|| collectionClass == Set.class || collectionClass == SortedSet.class);
+		}
+	}
+
+	/**
+	 * Maps are converted to tabular-data with a row of key and value for each entry.
+	 */
+	private static class MapConverter extends OpenTypeConverter {
+
+		private final CompositeType rowType;
+		private final OpenTypeConverter keyConverter;
+		private final OpenTypeConverter valueConverter;
+		private final boolean sorted;
+
+		public MapConverter(Type mapType, OpenTypeConverter keyConverter, OpenTypeConverter valueConverter,
+				boolean sorted) throws OpenDataException {
+			super(buildTabularType(mapType, keyConverter, valueConverter));
+			this.rowType = ((TabularType) openType).getRowType();
+			this.keyConverter = keyConverter;
+			this.valueConverter = valueConverter;
+			this.sorted = sorted;
+		}
+
+		@Override
+		public Object toOpenValue(Object value) throws OpenDataException {
+			if (value == null) {
+				return null;
+			}
+			Map<?, ?> map = (Map<?, ?>) value;
+			TabularDataSupport table = new TabularDataSupport((TabularType) openType, map.size() * 2, 0.75F);
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				table.put(new CompositeDataSupport(rowType, MAP_ITEM_NAMES, new Object[] {
+						keyConverter.toOpenValue(entry.getKey()), valueConverter.toOpenValue(entry.getValue()) }));
+			}
+			return table;
+		}
+
+		@Override
+		public Object fromOpenValue(Object openValue) {
+			if (openValue == null) {
+				return null;
+			}
+			TabularData table = (TabularData) openValue;
+			Map<Object, Object> map;
+			if (sorted) {
+				map = new TreeMap<Object, Object>();
+			} else {
+				map = new LinkedHashMap<Object, Object>(table.size() * 2);
+			}
+			for (Object row : table.values()) {
+				CompositeData data = (CompositeData) row;
+				map.put(keyConverter.fromOpenValue(data.get(MAP_ITEM_NAMES[0])),
+						valueConverter.fromOpenValue(data.get(MAP_ITEM_NAMES[1])));
+			}
+			return map;
+		}
+
+		@Override
+		public boolean isReversible() {
+			return keyConverter.isReversible() && valueConverter.isReversible();
+		}
+
+		private static TabularType buildTabularType(Type mapType, OpenTypeConverter keyConverter,
+				OpenTypeConverter valueConverter) throws OpenDataException {
+			String typeName = mapType.toString();
+			CompositeType rowType =
+					new CompositeType(typeName, typeName, MAP_ITEM_NAMES, MAP_ITEM_NAMES, new OpenType<?>[] {
+							keyConverter.openType, valueConverter.openType });
+			return new TabularType(typeName, typeName, rowType, new String[] { MAP_ITEM_NAMES[0] });
+		}
+	}
+
+	/**
+	 * Other classes are converted to composite-data with an item for each getter.
+	 */
+	private static class CompositeConverter extends OpenTypeConverter {
+
+		private final String[] itemNames;
+		private final MethodHandle[] getterHandles;
+		private final OpenTypeConverter[] itemConverters;
+
+		public CompositeConverter(CompositeType compositeType, String[] itemNames, MethodHandle[] getterHandles,
+				OpenTypeConverter[] itemConverters) {
+			super(compositeType);
+			this.itemNames = itemNames;
+			this.getterHandles = getterHandles;
+			this.itemConverters = itemConverters;
+		}
+
+		@Override
+		public Object toOpenValue(Object value) throws OpenDataException {
+			if (value == null) {
+				return null;
+			}
+			Object[] itemValues = new Object[itemNames.length];
+			for (int i = 0; i < itemNames.length; i++) {
+				Object itemValue;
+				try {
+					itemValue = (Object) getterHandles[i].invokeExact(value);
+				} catch (Error e) {
+					throw e;
+				} catch (Throwable t) {
+					OpenDataException openDataException =
+							new OpenDataException("Getting item " + itemNames[i] + " of " + value.getClass()
+									+ " threw exception");
+					openDataException.initCause(t);
+					throw openDataException;
+				}
+				itemValues[i] = itemConverters[i].toOpenValue(itemValue);
+			}
+			return new CompositeDataSupport((CompositeType) openType, itemNames, itemValues);
+		}
+
+		@Override
+		public Object fromOpenValue(Object openValue) {
+			throw new UnsupportedOperationException("Cannot convert composite-data back to " + openType.getTypeName());
+		}
+
+		@Override
+		public boolean isReversible() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.j256.simplejmx.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanException;
+
+import com.j256.simplejmx.common.JmxOperationInfo;
+
+/**
+ * Runs an operation of a registered object with a concurrency limit and/or a timeout. See
+ * {@link com.j256.simplejmx.common.JmxOperation#maxConcurrent()} and
+ * {@link com.j256.simplejmx.common.JmxOperation#timeoutMillis()}.
+ *
+ * <p>
+ * A call holds its concurrency slot until the operation method actually returns, even if the caller gave up on it
+ * because of the timeout, so an operation that ignores the interrupt still counts against the limit.
+ * </p>
+ *
+ * <p>
+ * Operations with a timeout run on a pool of this limiter with one thread per concurrency slot, or
+ * {@link #UNLIMITED_THREADS} if there is no limit, so operations that hang only use up the threads of their own
+ * operation and never hold up the operations of other beans.
+ * </p>
+ *
+ * @author graywatson
+ */
+class OperationLimiter {
+
+	static final int UNLIMITED_THREADS = 8;
+	private static final int UNLIMITED_QUEUE_SIZE = 64;
+
+	private final String operationName;
+	private final long maxWaitMillis;
+	private final long timeoutMillis;
+	/** null if there is no concurrency limit */
+	private final Semaphore slots;
+	/** null if there is no timeout */
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong queuedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong timedOutCount = new AtomicLong();
+
+	public OperationLimiter(JmxOperationInfo operationInfo, String threadName) {
+		this.operationName = operationInfo.getMethodName();
+		this.maxWaitMillis = operationInfo.getMaxWaitMillis();
+		this.timeoutMillis = operationInfo.getTimeoutMillis();
+		int maxConcurrent = operationInfo.getMaxConcurrent();
+		if (maxConcurrent > 0) {
+			this.slots = new Semaphore(maxConcurrent, true);
+		} else {
+			this.slots = null;
+		}
+		if (timeoutMillis <= 0) {
+			this.executor = null;
+		} else if (maxConcurrent > 0) {
+			// the slots bound the calls, the queue holds a call while a finished call's thread frees up
+			this.executor = ServerExecutors.createExecutor(threadName, maxConcurrent, maxConcurrent);
+		} else {
+			this.executor = ServerExecutors.createExecutor(threadName, UNLIMITED_THREADS, UNLIMITED_QUEUE_SIZE);
+		}
+	}
+
+	/**
+	 * Call the operation within the limits. Problems with the limits are thrown as MBeanExceptions. Anything that the
+	 * operation throws is wrapped in an InvocationTargetException.
+	 */
+	public Object invoke(Callable<Object> operation) throws MBeanException, InvocationTargetException {
+		acquireSlot();
+		if (timeoutMillis <= 0) {
+			try {
+				return operation.call();
+			} catch (Exception e) {
+				throw new InvocationTargetException(e);
+			} finally {
+				releaseSlot();
+			}
+		}
+
+		OperationTask task = new OperationTask(operation);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			releaseSlot();
+			rejectedCount.incrementAndGet();
+			throw new MBeanException(e, "Operation " + operationName
+					+ " was rejected because its thread-pool is full");
+		}
+		try {
+			return task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			timedOutCount.incrementAndGet();
+			task.cancel(true);
+			throw new MBeanException(e, "Operation " + operationName + " did not finish within " + timeoutMillis
+					+ "ms and was interrupted");
+		} catch (InterruptedException e) {
+			task.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new MBeanException(e, "Interrupted while waiting for operation " + operationName);
+		} catch (ExecutionException e) {
+			throw new InvocationTargetException(e.getCause());
+		}
+	}
+
+	public long getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public long getTimedOutCount() {
+		return timedOutCount.get();
+	}
+
+	private void acquireSlot() throws MBeanException {
+		if (slots == null || slots.tryAcquire()) {
+			return;
+		}
+		boolean acquired = false;
+		if (maxWaitMillis > 0) {
+			queuedCount.incrementAndGet();
+			try {
+				acquired = slots.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!acquired) {
+			rejectedCount.incrementAndGet();
+			throw new MBeanException(new RejectedExecutionException("Operation " + operationName
+					+ " already has the maximum number of calls running"), "Operation " + operationName
+					+ " was rejected by its concurrency limit");
+		}
+	}
+
+	private void releaseSlot() {
+		if (slots != null) {
+			slots.release();
+		}
+	}
+
+	/**
+	 * Operation call on the thread-pool which gives back its slot once the operation has returned. If the task is
+	 * cancelled before it starts then run() returns right away and the slot is given back then.
+	 */
+	private class OperationTask extends FutureTask<Object> {
+
+		public OperationTask(Callable<Object> operation) {
+			super(operation);
+		}
+
+		@Override
+		public void run() {
+			try {
+				super.run();
+			} finally {
+				releaseSlot();
+			}
+		}
+	}
+}
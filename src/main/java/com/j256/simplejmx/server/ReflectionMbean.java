@@ -1,62 +1,104 @@
 package com.j256.simplejmx.server;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.DynamicMBean;
-import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
 import javax.management.MBeanInfo;
 import javax.management.MBeanOperationInfo;
 import javax.management.MBeanParameterInfo;
 import javax.management.ReflectionException;
+import javax.management.openmbean.OpenDataException;
 
-import com.j256.simplejmx.common.JmxAttributeField;
 import com.j256.simplejmx.common.JmxAttributeFieldInfo;
-import com.j256.simplejmx.common.JmxAttributeMethod;
 import com.j256.simplejmx.common.JmxAttributeMethodInfo;
-import com.j256.simplejmx.common.JmxOperation;
+import com.j256.simplejmx.common.JmxAttributeSnapshot;
 import com.j256.simplejmx.common.JmxOperationInfo;
 import com.j256.simplejmx.common.JmxResource;
 import com.j256.simplejmx.common.JmxSelfNaming;
+import com.j256.simplejmx.common.JmxStringInvocation;
+import com.j256.simplejmx.server.MbeanMetadata.AttributeAccessor;
+import com.j256.simplejmx.server.MbeanMetadata.OperationAccessor;
+import com.j256.simplejmx.server.MbeanMetadata.StatusAccessor;
 
 /**
  * This wraps an object that has been registered in the server using {@link JmxServer#register(Object)}. We wrap the
  * object so we can expose its attributes and operations using annotations and reflection. This handles the JMX server
  * calls to attributes and operations by calling through the delegation object.
  * 
+ * <p>
+ * The getter, setter, and operation methods as well as the attribute fields are resolved once into method-handles so
+ * that each JMX call does not pay for the reflection access checks. Attribute names map straight to their accessors and
+ * operations are looked up by name and then matched against the signature so the JMX calls do not allocate lookup keys.
+ * For annotated classes this information is built once per class and shared by all of the mbeans that wrap objects of
+ * that class.
+ * </p>
+ * 
+ * <p>
+ * Getters and INFO operations that have a cacheMillis setting have their results cached per mbean. See
+ * {@link com.j256.simplejmx.common.JmxAttributeMethod#cacheMillis()}. Getters that have a timeoutMillis setting are
+ * run with a latency budget. See {@link com.j256.simplejmx.common.JmxAttributeMethod#timeoutMillis()}. Operations can
+ * have concurrency limits and timeouts. See {@link com.j256.simplejmx.common.JmxOperation#maxConcurrent()}. Async
+ * operations are started as jobs. See {@link com.j256.simplejmx.common.JmxOperation#async()}. Paged attributes and
+ * operations are read through cursors. See {@link com.j256.simplejmx.common.JmxPaging}. Values are converted to open
+ * types if the class asks for it. See {@link JmxResource#openTypes()}. Config beans are wrapped in a {@link JmxConfig}
+ * and their attributes are set on a copy of the current snapshot which is then published. See
+ * {@link JmxResource#configSnapshot()}. Beans that are registered with {@link JmxServer#registerWeak(Object)} only
+ * hold their delegate weakly and the calls fail once it has been garbage collected.
+ * </p>
+ * 
  * @author graywatson
  */
 public class ReflectionMbean implements DynamicMBean {
 
+	private static final Object[] NO_PARAMS = new Object[0];
+	private static final String[] NO_SIGNATURE = new String[0];
+	private static final String[] STRING_INVOCATION_SIGNATURE =
+			new String[] { String.class.getName(), String[].class.getName() };
+
+	/** null if the delegate is held weakly */
 	private final Object delegate;
-	private final Map<String, AttributeMethodInfo> attributeMethodMap = new HashMap<String, AttributeMethodInfo>();
-	private final Map<NameParams, Method> operationMethodMap = new HashMap<NameParams, Method>();
-	private final Map<String, AttributeFieldInfo> attributeFieldMap = new HashMap<String, AttributeFieldInfo>();
-	private final MBeanInfo mbeanInfo;
+	/** null unless the delegate is held weakly */
+	private final WeakReference<?> weakDelegate;
+	private final Class<?> delegateClass;
+	/** null if the delegate is not a config bean, otherwise the delegate */
+	private final JmxConfig<?> config;
+	/** whether getAttributes asks the delegate for all of the values at once, see {@link JmxAttributeSnapshot} */
+	private final boolean snapshotReads;
+	private final MbeanMetadata metadata;
+	/** null if none of the getters or operations are cached */
+	private final CachedResult[] cachedResults;
+	/** null if none of the getters have a timeout */
+	private final GetterBudget[] getterBudgets;
+	/** null if none of the operations have limits */
+	private final OperationLimiter[] operationLimiters;
+	/** null if none of the operations are async */
+	private final JobTable jobTable;
+	/** null if none of the attributes or operations are paged */
+	private final CursorTable cursorTable;
 
 	/**
 	 * Create a mbean associated with a delegate object that implements self-naming.
 	 */
 	public ReflectionMbean(JmxSelfNaming delegate) {
-		this.delegate = delegate;
-		this.mbeanInfo = buildMbeanInfo(null, null, null);
+		this(delegate, null, MbeanMetadata.forClass(delegate.getClass()));
 	}
 
 	/**
-	 * Create a mbean associated with a delegate object that must have a {@link JmxResource} annotation.
+	 * Create a mbean associated with a delegate object that must have a {@link JmxResource} annotation or a
+	 * {@link JmxConfig} whose snapshot class has one.
 	 */
 	public ReflectionMbean(Object delegate) {
-		this.delegate = delegate;
-		this.mbeanInfo = buildMbeanInfo(null, null, null);
+		this(delegate, null, MbeanMetadata.forClass(targetClass(delegate)));
 	}
 
 	/**
@@ -64,88 +106,160 @@ public class ReflectionMbean implements DynamicMBean {
 	 */
 	public ReflectionMbean(Object delegate, JmxAttributeFieldInfo[] attributeFieldInfos,
 			JmxAttributeMethodInfo[] attributeMethodInfos, JmxOperationInfo[] operationInfos) {
+		this(delegate, null, new MbeanMetadata(targetClass(delegate), attributeFieldInfos, attributeMethodInfos,
+				operationInfos));
+	}
+
+	/**
+	 * Create a mbean which only holds its delegate weakly. The reference must not have been cleared yet.
+	 */
+	ReflectionMbean(WeakReference<?> weakDelegate) {
+		this(null, weakDelegate, MbeanMetadata.forClass(weakDelegate.get().getClass()));
+	}
+
+	private ReflectionMbean(Object delegate, WeakReference<?> weakDelegate, MbeanMetadata metadata) {
 		this.delegate = delegate;
-		this.mbeanInfo = buildMbeanInfo(attributeFieldInfos, attributeMethodInfos, operationInfos);
+		this.weakDelegate = weakDelegate;
+		if (delegate == null) {
+			this.delegateClass = weakDelegate.get().getClass();
+		} else {
+			this.delegateClass = delegate.getClass();
+		}
+		if (delegate instanceof JmxConfig) {
+			this.config = (JmxConfig<?>) delegate;
+		} else if (metadata.isConfigSnapshot()) {
+			throw new IllegalArgumentException("Config snapshot " + delegateClass
+					+ " must be registered inside of a " + JmxConfig.class.getSimpleName());
+		} else {
+			this.config = null;
+		}
+		this.metadata = metadata;
+		this.cachedResults = createCachedResults(metadata);
+		this.getterBudgets = createGetterBudgets(metadata);
+		this.operationLimiters = createOperationLimiters(metadata);
+		this.jobTable = (metadata.hasAsyncOperations() ? new JobTable(ServerExecutors.jobExecutor()) : null);
+		this.cursorTable = (metadata.hasPagedMembers() ? new CursorTable() : null);
+		this.snapshotReads =
+				JmxAttributeSnapshot.class.isAssignableFrom(config == null ? delegateClass : config.getSnapshotClass());
 	}
 
 	/**
 	 * @see DynamicMBean#getMBeanInfo()
 	 */
 	public MBeanInfo getMBeanInfo() {
-		return mbeanInfo;
+		return metadata.getMbeanInfo();
 	}
 
 	/**
 	 * @see DynamicMBean#getAttribute(String)
 	 */
 	public Object getAttribute(String attributeName) throws AttributeNotFoundException, ReflectionException {
-		AttributeMethodInfo methodInfo = attributeMethodMap.get(attributeName);
-		if (methodInfo == null) {
-			AttributeFieldInfo fieldInfo = attributeFieldMap.get(attributeName);
-			if (fieldInfo == null || !fieldInfo.isGetter) {
-				throwUnknownAttributeException(attributeName);
-			}
-			try {
-				// get the value by using reflection on the Field
-				return fieldInfo.field.get(delegate);
-			} catch (Exception e) {
-				throw new ReflectionException(e, "Invoking getter attribute on field " + fieldInfo.field.getName()
-						+ " on " + delegate.getClass() + " threw exception");
-			}
-		} else {
-			if (methodInfo.getterMethod == null) {
+		AttributeAccessor accessor = metadata.findAttribute(attributeName);
+		if (accessor == null || accessor.getterHandle == null) {
+			StatusAccessor statusAccessor = metadata.findStatus(attributeName);
+			if (statusAccessor == null) {
 				throwUnknownAttributeException(attributeName);
 			}
 			try {
-				// get the value by calling the method
-				return methodInfo.getterMethod.invoke(delegate);
-			} catch (Exception e) {
-				throw new ReflectionException(e, "Invoking getter attribute method "
-						+ methodInfo.getterMethod.getName() + " on " + delegate.getClass() + " threw exception");
+				return getStatus(statusAccessor);
+			} catch (Throwable t) {
+				throw createReflectionException(t, "Getting status attribute " + attributeName + " on "
+						+ delegateClass + " threw exception");
 			}
 		}
+		try {
+			return getValue(accessor);
+		} catch (Throwable t) {
+			throw createReflectionException(t, "Invoking " + accessor.getterLabel + " on " + delegateClass
+					+ " threw exception");
+		}
 	}
 
 	/**
 	 * @see DynamicMBean#getAttributes(String[])
 	 */
 	public AttributeList getAttributes(String[] attributeNames) {
-		AttributeList returnList = new AttributeList();
+		AttributeList returnList = new AttributeList(attributeNames.length);
+		Map<String, Object> snapshot = null;
+		if (snapshotReads) {
+			snapshot = snapshotAttributes(attributeNames);
+		}
 		for (String name : attributeNames) {
-			try {
-				returnList.add(new Attribute(name, getAttribute(name)));
-			} catch (Exception e) {
-				returnList.add(new Attribute(name, "Getting attribute threw: " + e.getMessage()));
+			AttributeAccessor accessor = metadata.findAttribute(name);
+			Object value;
+			if (snapshot != null && accessor != null && accessor.getterHandle != null && snapshot.containsKey(name)) {
+				value = snapshot.get(name);
+				if (accessor.openConverter != null) {
+					try {
+						value = accessor.openConverter.toOpenValue(value);
+					} catch (OpenDataException e) {
+						value = "Getting attribute threw: Converting snapshot value of " + name + " threw exception";
+					}
+				}
+			} else if (accessor == null || accessor.getterHandle == null) {
+				StatusAccessor statusAccessor = metadata.findStatus(name);
+				if (statusAccessor == null) {
+					value = "Getting attribute threw: Unknown attribute " + name;
+				} else {
+					try {
+						value = getStatus(statusAccessor);
+					} catch (Throwable t) {
+						value = "Getting attribute threw: Getting status attribute " + name + " threw exception";
+					}
+				}
+			} else {
+				try {
+					value = getValue(accessor);
+				} catch (Throwable t) {
+					value = "Getting attribute threw: Invoking " + accessor.getterLabel + " on " + delegateClass
+							+ " threw exception";
+				}
 			}
+			returnList.add(new Attribute(name, value));
 		}
 		return returnList;
 	}
 
+	/**
+	 * Ask the delegate for the values of all of the attributes at once. Returns null if it fails so the attributes are
+	 * read one at a time instead.
+	 */
+	private Map<String, Object> snapshotAttributes(String[] attributeNames) {
+		List<String> names = new ArrayList<String>(attributeNames.length);
+		for (String name : attributeNames) {
+			AttributeAccessor accessor = metadata.findAttribute(name);
+			if (accessor != null && accessor.getterHandle != null) {
+				names.add(name);
+			}
+		}
+		if (names.isEmpty()) {
+			return null;
+		}
+		try {
+			return ((JmxAttributeSnapshot) target()).snapshotJmxAttributes(names.toArray(new String[names.size()]));
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * @see DynamicMBean#setAttribute(Attribute)
 	 */
 	public void setAttribute(Attribute attribute) throws AttributeNotFoundException, ReflectionException {
-		AttributeMethodInfo methodInfo = attributeMethodMap.get(attribute.getName());
-		if (methodInfo == null) {
-			AttributeFieldInfo fieldInfo = attributeFieldMap.get(attribute.getName());
-			if (fieldInfo == null || !fieldInfo.isSetter) {
-				throwUnknownAttributeException(attribute.getName());
-			}
-			try {
-				fieldInfo.field.set(delegate, attribute.getValue());
-			} catch (Exception e) {
-				throw new ReflectionException(e, "Invoking setter attribute on field " + fieldInfo.field.getName()
-						+ " on " + delegate.getClass() + " threw exception");
-			}
-		} else {
-			if (methodInfo.setterMethod == null) {
-				throwUnknownAttributeException(attribute.getName());
-			}
-			try {
-				methodInfo.setterMethod.invoke(delegate, attribute.getValue());
-			} catch (Exception e) {
-				throw new ReflectionException(e, "Invoking setter attribute method "
-						+ methodInfo.setterMethod.getName() + " on " + delegate.getClass() + " threw exception");
+		AttributeAccessor accessor = findSetter(attribute.getName());
+		if (config != null) {
+			publishSnapshot(new AttributeAccessor[] { accessor }, Arrays.asList(attribute));
+			return;
+		}
+		try {
+			setValue(accessor, target(), attribute.getValue());
+		} catch (Throwable t) {
+			throw createReflectionException(t, "Invoking " + accessor.setterLabel + " on " + delegateClass
+					+ " threw exception");
+		} finally {
+			if (accessor.cacheIndex >= 0) {
+				// the next get should see the new value
+				cachedResults[accessor.cacheIndex].clear();
 			}
 		}
 	}
@@ -154,6 +268,9 @@ public class ReflectionMbean implements DynamicMBean {
 	 * @see DynamicMBean#setAttributes(AttributeList)
 	 */
 	public AttributeList setAttributes(AttributeList attributes) {
+		if (config != null) {
+			return setSnapshotAttributes(attributes.asList());
+		}
 		AttributeList returnList = new AttributeList(attributes.size());
 		for (Attribute attribute : attributes.asList()) {
 			String name = attribute.getName();
@@ -172,373 +289,462 @@ public class ReflectionMbean implements DynamicMBean {
 	 */
 	public Object invoke(String actionName, Object[] params, String[] signatureTypes) throws MBeanException,
 			ReflectionException {
-		Method method = operationMethodMap.get(new NameParams(actionName, signatureTypes));
-		if (method == null) {
+		if (signatureTypes == null) {
+			signatureTypes = NO_SIGNATURE;
+		}
+		OperationAccessor accessor = metadata.findOperation(actionName, signatureTypes);
+		if (accessor == null) {
+			if (JmxStringInvocation.OPERATION_NAME.equals(actionName)
+					&& Arrays.equals(STRING_INVOCATION_SIGNATURE, signatureTypes)) {
+				return invokeWithStrings(params);
+			}
+			if (jobTable != null && JobTable.isJobOperation(actionName, signatureTypes)) {
+				return jobTable.invokeJobOperation(actionName, (params == null ? NO_PARAMS : params));
+			}
+			if (cursorTable != null) {
+				if (CursorTable.isOpenCursorOperation(actionName, signatureTypes)) {
+					return openAttributeCursor(params);
+				} else if (CursorTable.isCursorOperation(actionName, signatureTypes)) {
+					return cursorTable.invokeCursorOperation(actionName, (params == null ? NO_PARAMS : params));
+				}
+			}
 			throw new MBeanException(new IllegalArgumentException("Unknown action '" + actionName
 					+ "' with parameter types " + Arrays.toString(signatureTypes)));
 		}
+		if (params == null) {
+			params = NO_PARAMS;
+		}
+		if (accessor.async) {
+			return startJob(accessor, params.clone());
+		}
 		try {
-			return method.invoke(delegate, params);
-		} catch (Exception e) {
-			throw new ReflectionException(e, "Invoking operation method " + method.getName() + " on "
-					+ delegate.getClass() + " threw exception");
+			if (accessor.paged) {
+				return cursorTable.open(invokeOperation(accessor, params));
+			} else {
+				return invokeOperation(accessor, params);
+			}
+		} catch (Throwable t) {
+			if (accessor.limitIndex >= 0) {
+				if (t instanceof MBeanException) {
+					// the operation limits were exceeded
+					throw (MBeanException) t;
+				} else if (t instanceof InvocationTargetException) {
+					t = t.getCause();
+				}
+			}
+			throw createReflectionException(t, "Invoking operation method " + accessor.methodName + " on "
+					+ delegateClass + " threw exception");
 		}
 	}
 
 	/**
-	 * Build our JMX information object by using reflection.
+	 * Invoke an operation with string arguments. An overload with the same number of parameters that takes all strings
+	 * is preferred, otherwise the first overload whose parameter types all of the strings convert to is called. See
+	 * {@link JmxStringInvocation}.
 	 */
-	private MBeanInfo buildMbeanInfo(JmxAttributeFieldInfo[] attributeFieldInfos,
-			JmxAttributeMethodInfo[] attributeMethodInfos, JmxOperationInfo[] operationInfos) {
-		Class<?> clazz = delegate.getClass();
-		JmxResource jmxResource = clazz.getAnnotation(JmxResource.class);
-		String mbeanDescription;
-		if (jmxResource == null || jmxResource.description() == null || jmxResource.description().length() == 0) {
-			mbeanDescription = "Information about " + clazz;
-		} else {
-			mbeanDescription = jmxResource.description();
+	private Object invokeWithStrings(Object[] params) throws MBeanException, ReflectionException {
+		if (params == null || params.length != 2 || !(params[0] instanceof String)) {
+			throw new MBeanException(new IllegalArgumentException(JmxStringInvocation.OPERATION_NAME
+					+ " takes the operation name and the string arguments"));
 		}
-
-		Map<String, JmxAttributeFieldInfo> attributeFieldInfoMap = null;
-		if (attributeFieldInfos != null) {
-			attributeFieldInfoMap = new HashMap<String, JmxAttributeFieldInfo>();
-			for (JmxAttributeFieldInfo info : attributeFieldInfos) {
-				attributeFieldInfoMap.put(info.getName(), info);
-			}
+		String actionName = (String) params[0];
+		String[] strings = (params[1] == null ? NO_SIGNATURE : (String[]) params[1]);
+		OperationAccessor[] accessors = metadata.findOperations(actionName);
+		if (accessors == null) {
+			// the job and cursor operations are only in the MBeanInfo
+			return invokeInfoWithStrings(actionName, strings);
 		}
-		Map<String, JmxAttributeMethodInfo> attributeMethodInfoMap = null;
-		if (attributeMethodInfos != null) {
-			attributeMethodInfoMap = new HashMap<String, JmxAttributeMethodInfo>();
-			for (JmxAttributeMethodInfo info : attributeMethodInfos) {
-				attributeMethodInfoMap.put(info.getMethodName(), info);
+		for (OperationAccessor accessor : accessors) {
+			if (accessor.parameterTypes.length == strings.length && isAllStrings(accessor.parameterTypes)) {
+				return invoke(actionName, strings.clone(), accessor.signatureTypes);
 			}
 		}
-		Map<String, JmxOperationInfo> attributeOperationInfoMap = null;
-		if (operationInfos != null) {
-			attributeOperationInfoMap = new HashMap<String, JmxOperationInfo>();
-			for (JmxOperationInfo info : operationInfos) {
-				attributeOperationInfoMap.put(info.getMethodName(), info);
+		IllegalArgumentException conversionException = null;
+		for (OperationAccessor accessor : accessors) {
+			if (accessor.parameterTypes.length != strings.length) {
+				continue;
+			}
+			Object[] args = new Object[strings.length];
+			try {
+				for (int i = 0; i < strings.length; i++) {
+					args[i] = StringArgumentConverter.forType(accessor.parameterTypes[i]).convert(strings[i]);
+				}
+			} catch (IllegalArgumentException e) {
+				if (conversionException == null) {
+					conversionException = e;
+				}
+				continue;
 			}
+			return invoke(actionName, args, accessor.signatureTypes);
+		}
+		if (conversionException == null) {
+			throw new MBeanException(new IllegalArgumentException("Action '" + actionName + "' has no overload with "
+					+ strings.length + " parameters"));
+		} else {
+			throw new MBeanException(conversionException);
 		}
-
-		Method[] methods = clazz.getMethods();
-		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
-		discoverAttributeMethods(methods, attributes, attributeMethodInfoMap);
-		// NOTE: fields override attribute methods
-		discoverAttributeFields(attributes, attributeFieldInfoMap);
-		List<MBeanOperationInfo> operations = discoverOperations(methods, attributeOperationInfoMap);
-
-		return new MBeanInfo(clazz.getName(), mbeanDescription,
-				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
-				operations.toArray(new MBeanOperationInfo[operations.size()]), null);
 	}
 
 	/**
-	 * Find attribute methods from our object that will be exposed via JMX.
+	 * Set all of the attributes of a config bean in one snapshot. If one of them cannot be set then none of them are.
 	 */
-	private void discoverAttributeMethods(Method[] methods, List<MBeanAttributeInfo> attributes,
-			Map<String, JmxAttributeMethodInfo> attributeMethodInfoMap) {
-		for (Method method : methods) {
-			JmxAttributeMethod jmxAttribute = method.getAnnotation(JmxAttributeMethod.class);
-			JmxAttributeMethodInfo attributeMethodInfo = null;
-			if (jmxAttribute == null) {
-				// skip it if no annotation
-				if (attributeMethodInfoMap != null) {
-					attributeMethodInfo = attributeMethodInfoMap.get(method.getName());
-				}
-				if (attributeMethodInfo == null) {
-					continue;
-				}
-			} else {
-				attributeMethodInfo = new JmxAttributeMethodInfo(method.getName(), jmxAttribute);
-				jmxAttribute = null;
-			}
-
-			String methodName = method.getName();
-			boolean isIs;
-			if (methodName.startsWith("is")) {
-				if (method.getReturnType() != boolean.class && method.getReturnType() != Boolean.class) {
-					throw new IllegalArgumentException("Method '" + method
-							+ "' starts with 'is' but does not return a boolean or Boolean class");
-				}
-				isIs = true;
-			} else {
-				isIs = false;
+	private AttributeList setSnapshotAttributes(List<Attribute> attributes) {
+		AttributeList returnList = new AttributeList(attributes.size());
+		try {
+			AttributeAccessor[] accessors = new AttributeAccessor[attributes.size()];
+			for (int i = 0; i < accessors.length; i++) {
+				accessors[i] = findSetter(attributes.get(i).getName());
 			}
-			String varName = buildMethodSuffix(method, methodName, isIs);
-			AttributeMethodInfo methodInfo = attributeMethodMap.get(varName);
-			if (isIs || methodName.startsWith("get")) {
-				if (method.getParameterTypes().length != 0) {
-					throw new IllegalArgumentException("Method '" + method + "' starts with 'get' but has arguments");
-				}
-				if (method.getReturnType() == void.class) {
-					throw new IllegalArgumentException("Method '" + method
-							+ "' starts with 'get' but does not return anything");
-				}
-				if (methodInfo == null) {
-					attributeMethodMap.put(varName,
-							new AttributeMethodInfo(varName, attributeMethodInfo.getDescription(), method, null));
-				} else {
-					// setter must have already started our method-info, add the getter to it
-					methodInfo.getterMethod = method;
-				}
-			} else if (methodName.startsWith("set")) {
-				if (method.getParameterTypes().length != 1) {
-					throw new IllegalArgumentException("Method '" + method
-							+ "' starts with 'set' but does not have 1 argument");
-				}
-				if (method.getReturnType() != void.class) {
-					throw new IllegalArgumentException("Method '" + method
-							+ "' starts with 'set' but does not return void");
-				}
-				if (methodInfo == null) {
-					attributeMethodMap.put(varName,
-							new AttributeMethodInfo(varName, attributeMethodInfo.getDescription(), null, method));
-				} else {
-					// getter must have already started our method-info, add the setter to it
-					methodInfo.setterMethod = method;
-				}
-			} else {
-				throw new IllegalArgumentException("Method '" + method
-						+ "' is marked as an attribute but does not start with 'get' or 'set'");
+			publishSnapshot(accessors, attributes);
+		} catch (Exception e) {
+			// nothing was published
+			for (Attribute attribute : attributes) {
+				returnList.add(new Attribute(attribute.getName(), e.getMessage()));
 			}
+			return returnList;
 		}
-
-		/*
-		 * we have to go back and post process the attribute-method-map because the getter and setter methods change the
-		 * method-info multiple times.
-		 */
-		for (AttributeMethodInfo methodInfo : attributeMethodMap.values()) {
-			attributes.add(new MBeanAttributeInfo(methodInfo.varName, methodInfo.type.getName(),
-					methodInfo.description, (methodInfo.getterMethod != null), (methodInfo.setterMethod != null),
-					methodInfo.isIs()));
+		for (Attribute attribute : attributes) {
+			String name = attribute.getName();
+			try {
+				returnList.add(new Attribute(name, getAttribute(name)));
+			} catch (Exception e) {
+				returnList.add(new Attribute(name, e.getMessage()));
+			}
 		}
+		return returnList;
 	}
 
 	/**
-	 * Find attribute methods from our object that will be exposed via JMX.
+	 * Set the attributes on a copy of the current config snapshot and publish it. If another snapshot was published in
+	 * the meantime then we start over with a copy of that one so no changes are lost.
 	 */
-	private void discoverAttributeFields(List<MBeanAttributeInfo> attributes,
-			Map<String, JmxAttributeFieldInfo> attributeFieldInfoMap) {
-		Class<?> clazz = delegate.getClass();
-		Field[] fields = clazz.getDeclaredFields();
-		for (Field field : fields) {
-			JmxAttributeField attributeField = field.getAnnotation(JmxAttributeField.class);
-			JmxAttributeFieldInfo attributeFieldInfo = null;
-			if (attributeField == null) {
-				if (attributeFieldInfoMap != null) {
-					attributeFieldInfo = attributeFieldInfoMap.get(field.getName());
-				}
-				if (attributeFieldInfo == null) {
-					continue;
+	private void publishSnapshot(AttributeAccessor[] accessors, List<Attribute> attributes) throws ReflectionException {
+		while (true) {
+			Object current = config.get();
+			Object copy;
+			try {
+				copy = metadata.copySnapshot(current);
+			} catch (Throwable t) {
+				throw createReflectionException(t, "Copying config snapshot " + current.getClass()
+						+ " threw exception");
+			}
+			for (int i = 0; i < accessors.length; i++) {
+				try {
+					setValue(accessors[i], copy, attributes.get(i).getValue());
+				} catch (Throwable t) {
+					throw createReflectionException(t, "Invoking " + accessors[i].setterLabel + " on "
+							+ copy.getClass() + " threw exception");
 				}
-			} else {
-				attributeFieldInfo = new JmxAttributeFieldInfo(field.getName(), attributeField);
-				attributeField = null;
 			}
-
-			if (!field.isAccessible()) {
-				field.setAccessible(true);
+			if (config.publish(current, copy)) {
+				break;
 			}
-			attributeFieldMap.put(field.getName(), new AttributeFieldInfo(field, attributeFieldInfo.isReadible(),
-					attributeFieldInfo.isWritable()));
-
-			String description = attributeFieldInfo.getDescription();
-			if (isEmpty(description)) {
-				description = field.getName() + " attribute";
+		}
+		for (AttributeAccessor accessor : accessors) {
+			if (accessor.cacheIndex >= 0) {
+				cachedResults[accessor.cacheIndex].clear();
 			}
+		}
+	}
 
-			boolean isIs;
-			if (field.getName().startsWith("is")
-					&& (field.getType() == boolean.class || field.getType() == Boolean.class)) {
-				isIs = true;
-			} else {
-				isIs = false;
-			}
-			attributes.add(new MBeanAttributeInfo(field.getName(), field.getType().getName(), description,
-					attributeFieldInfo.isReadible(), attributeFieldInfo.isWritable(), isIs));
+	private AttributeAccessor findSetter(String attributeName) throws AttributeNotFoundException {
+		AttributeAccessor accessor = metadata.findAttribute(attributeName);
+		if (accessor == null || accessor.setterHandle == null) {
+			throwUnknownAttributeException(attributeName);
+		}
+		return accessor;
+	}
+
+	private void setValue(AttributeAccessor accessor, Object target, Object value) throws Throwable {
+		if (accessor.openConverter != null) {
+			value = accessor.openConverter.fromOpenValue(value);
 		}
+		accessor.setterHandle.invokeExact(target, value);
 	}
 
 	/**
-	 * Find operation methods from our object that will be exposed via JMX.
+	 * Return the object that the getters and operations are called on which is the current snapshot of config beans.
 	 */
-	private List<MBeanOperationInfo> discoverOperations(Method[] methods,
-			Map<String, JmxOperationInfo> attributeOperationInfoMap) {
-		List<MBeanOperationInfo> operations = new ArrayList<MBeanOperationInfo>(operationMethodMap.size());
-		for (Method method : methods) {
-			JmxOperation jmxOperation = method.getAnnotation(JmxOperation.class);
-			JmxOperationInfo operationInfo = null;
-			if (jmxOperation == null) {
-				if (attributeOperationInfoMap != null) {
-					operationInfo = attributeOperationInfoMap.get(method.getName());
-				}
-				if (operationInfo == null) {
-					continue;
-				}
-			} else {
-				operationInfo = new JmxOperationInfo(method.getName(), jmxOperation);
-				jmxOperation = null;
-			}
-			String methodName = method.getName();
-			if (methodName.startsWith("get") || methodName.startsWith("is") || methodName.startsWith("set")) {
-				throw new IllegalArgumentException("Operation method " + method
-						+ " cannot start with 'get', 'is', or 'set'.  Did you use the wrong annotation?");
-			}
-			Class<?>[] types = method.getParameterTypes();
-			String[] stringTypes = new String[types.length];
-			for (int i = 0; i < types.length; i++) {
-				stringTypes[i] = types[i].getName();
-			}
-			NameParams nameParams = new NameParams(methodName, stringTypes);
-			MBeanParameterInfo[] parameterInfos = buildOperationParameterInfo(method, operationInfo);
-			operationMethodMap.put(nameParams, method);
-
-			String description = operationInfo.getDescription();
-			if (isEmpty(description)) {
-				description = methodName + " attribute";
-			}
+	private Object target() {
+		if (config != null) {
+			return config.get();
+		} else if (weakDelegate == null) {
+			return delegate;
+		}
+		Object target = weakDelegate.get();
+		if (target == null) {
+			throw new IllegalStateException("The " + delegateClass + " object of this bean was garbage collected");
+		}
+		return target;
+	}
 
-			operations.add(new MBeanOperationInfo(methodName, description, parameterInfos, method.getReturnType()
-					.getName(), operationInfo.getAction().getActionValue()));
+	private Object getValue(AttributeAccessor accessor) throws Throwable {
+		if (accessor.cacheIndex < 0) {
+			return callGetter(accessor);
+		}
+		CachedResult cachedResult = cachedResults[accessor.cacheIndex];
+		Object value = cachedResult.lookup(null);
+		if (value != CachedResult.MISS) {
+			return value;
+		}
+		synchronized (cachedResult) {
+			// another thread may have refreshed it while we waited
+			value = cachedResult.lookup(null);
+			if (value == CachedResult.MISS) {
+				value = callGetter(accessor);
+				cachedResult.store(null, value, accessor.cacheNanos);
+			}
+			return value;
 		}
-		return operations;
 	}
 
 	/**
-	 * Build our parameter information for an operation.
+	 * Call the getter. The value is converted to an open type here so the cached and stale values are already
+	 * converted.
 	 */
-	private MBeanParameterInfo[] buildOperationParameterInfo(Method method, JmxOperationInfo operationInfo) {
-		Class<?>[] types = method.getParameterTypes();
-		MBeanParameterInfo[] parameterInfos = new MBeanParameterInfo[types.length];
-		String[] parameterNames = operationInfo.getParameterNames();
-		String[] parameterDescriptions = operationInfo.getParameterDescriptions();
-		for (int i = 0; i < types.length; i++) {
-			String parameterName;
-			if (parameterNames == null || i >= parameterNames.length) {
-				parameterName = "p" + (i + 1);
+	private Object callGetter(final AttributeAccessor accessor) throws Throwable {
+		if (accessor.budgetIndex < 0) {
+			Object value = (Object) accessor.getterHandle.invokeExact(target());
+			if (accessor.openConverter == null) {
+				return value;
 			} else {
-				parameterName = parameterNames[i];
+				return accessor.openConverter.toOpenValue(value);
 			}
-			String typeName = types[i].getName();
-			String description;
-			if (parameterDescriptions == null || i >= parameterDescriptions.length) {
-				description = "parameter #" + (i + 1) + " of type: " + typeName;
-			} else {
-				description = parameterDescriptions[i];
+		}
+		return getterBudgets[accessor.budgetIndex].get(new Callable<Object>() {
+			public Object call() throws Exception {
+				Object value;
+				try {
+					value = (Object) accessor.getterHandle.invokeExact(target());
+				} catch (Throwable t) {
+					throw rethrowAsException(t);
+				}
+				if (accessor.openConverter == null) {
+					return value;
+				} else {
+					return accessor.openConverter.toOpenValue(value);
+				}
 			}
-			parameterInfos[i] = new MBeanParameterInfo(parameterName, typeName, description);
+		});
+	}
+
+	private Object getStatus(StatusAccessor statusAccessor) throws Throwable {
+		switch (statusAccessor.kind) {
+			case STALE :
+				return getterBudgets[statusAccessor.index].isStale();
+			case AGE_MILLIS :
+				return getterBudgets[statusAccessor.index].getAgeMillis();
+			case QUEUED :
+				return operationLimiters[statusAccessor.index].getQueuedCount();
+			case REJECTED :
+				return operationLimiters[statusAccessor.index].getRejectedCount();
+			case TIMED_OUT :
+				return operationLimiters[statusAccessor.index].getTimedOutCount();
+			case SIZE :
+				return CursorTable.sizeOf(getValue(metadata.getPagedAttribute(statusAccessor.index)));
+			case FINGERPRINT :
+				return metadata.getFingerprint();
+			default :
+				throw new IllegalStateException("Unknown status kind " + statusAccessor.kind);
 		}
-		return parameterInfos;
 	}
 
-	private String buildMethodSuffix(Method method, String methodName, boolean isIs) {
-		if (isIs) {
-			if (methodName.length() < 3) {
-				throw new IllegalArgumentException("Method '" + methodName + "' has a name that is too short");
-			}
-			return Character.toLowerCase(methodName.charAt(2)) + methodName.substring(3);
-		} else {
-			if (methodName.length() < 4) {
-				throw new IllegalArgumentException("Method '" + methodName + "' has a name that is too short");
+	private Object invokeOperation(OperationAccessor accessor, Object[] params) throws Throwable {
+		if (accessor.cacheIndex < 0) {
+			return callOperation(accessor, params);
+		}
+		CachedResult cachedResult = cachedResults[accessor.cacheIndex];
+		Object value = cachedResult.lookup(params);
+		if (value != CachedResult.MISS) {
+			return value;
+		}
+		synchronized (cachedResult) {
+			value = cachedResult.lookup(params);
+			if (value == CachedResult.MISS) {
+				value = callOperation(accessor, params);
+				cachedResult.store(params.clone(), value, accessor.cacheNanos);
 			}
-			return Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4);
+			return value;
 		}
 	}
 
 	/**
-	 * We do this to standardize our exceptions around unknown attributes.
+	 * Call the operation method. Errors from the limits are thrown as MBeanException and errors from the method of
+	 * limited operations are wrapped in InvocationTargetException. The result is converted to an open type here so the
+	 * cached results and job results are already converted.
 	 */
-	private void throwUnknownAttributeException(String attributeName) throws AttributeNotFoundException {
-		throw new AttributeNotFoundException("Unknown attribute " + attributeName);
+	private Object callOperation(final OperationAccessor accessor, final Object[] params) throws Throwable {
+		Object result;
+		if (accessor.limitIndex < 0) {
+			result = (Object) accessor.handle.invokeExact(target(), params);
+		} else {
+			result = operationLimiters[accessor.limitIndex].invoke(new Callable<Object>() {
+				public Object call() throws Exception {
+					try {
+						return (Object) accessor.handle.invokeExact(target(), params);
+					} catch (Throwable t) {
+						throw rethrowAsException(t);
+					}
+				}
+			});
+		}
+		if (accessor.openConverter == null) {
+			return result;
+		} else {
+			return accessor.openConverter.toOpenValue(result);
+		}
+	}
+
+	private long openAttributeCursor(Object[] params) throws MBeanException, ReflectionException {
+		String attributeName = (params == null || params.length != 1 ? null : (String) params[0]);
+		AttributeAccessor accessor = metadata.findPagedAttribute(attributeName);
+		if (accessor == null) {
+			throw new MBeanException(new IllegalArgumentException("Unknown paged attribute " + attributeName));
+		}
+		try {
+			return cursorTable.open(getValue(accessor));
+		} catch (Throwable t) {
+			throw createReflectionException(t, "Invoking " + accessor.getterLabel + " on " + delegateClass
+					+ " threw exception");
+		}
 	}
 
-	private static boolean isEmpty(String string) {
-		return string == null || string.trim().length() == 0;
+	private long startJob(final OperationAccessor accessor, final Object[] params) throws MBeanException {
+		return jobTable.start(accessor.methodName, new Callable<Object>() {
+			public Object call() throws Exception {
+				try {
+					return callOperation(accessor, params);
+				} catch (InvocationTargetException e) {
+					// the limited operations wrap the exceptions from the method
+					throw rethrowAsException(e.getCause());
+				} catch (Throwable t) {
+					throw rethrowAsException(t);
+				}
+			}
+		});
 	}
 
 	/**
-	 * Key class for our hashmap to find matching methods based on name and parameter list.
+	 * Invoke an operation that is not one of the methods of the delegate with the parameter types from its info.
 	 */
-	private static class NameParams {
-		String name;
-		String[] paramTypes;
-		public NameParams(String name, String[] paramTypes) {
-			this.name = name;
-			this.paramTypes = paramTypes;
-		}
-
-		@Override
-		public int hashCode() {
-			int hashCode = 31 * (31 + name.hashCode());
-			if (paramTypes != null) {
-				hashCode += Arrays.hashCode(paramTypes);
+	private Object invokeInfoWithStrings(String actionName, String[] strings) throws MBeanException,
+			ReflectionException {
+		for (MBeanOperationInfo info : getMBeanInfo().getOperations()) {
+			MBeanParameterInfo[] parameterInfos = info.getSignature();
+			if (!info.getName().equals(actionName) || parameterInfos.length != strings.length) {
+				continue;
+			}
+			String[] signature = new String[parameterInfos.length];
+			Object[] args = new Object[parameterInfos.length];
+			for (int i = 0; i < parameterInfos.length; i++) {
+				signature[i] = parameterInfos[i].getType();
+				StringArgumentConverter converter = StringArgumentConverter.forTypeName(signature[i]);
+				if (converter == null) {
+					throw new MBeanException(new IllegalArgumentException("Cannot convert a string to "
+							+ signature[i]));
+				}
+				try {
+					args[i] = converter.convert(strings[i]);
+				} catch (IllegalArgumentException e) {
+					throw new MBeanException(e);
+				}
 			}
-			return hashCode;
+			return invoke(actionName, args, signature);
 		}
+		throw new MBeanException(new IllegalArgumentException("Unknown action '" + actionName + "' with "
+				+ strings.length + " parameters"));
+	}
 
-		@Override
-		public boolean equals(Object obj) {
-			if (obj == null || getClass() != obj.getClass()) {
-				return false;
-			}
-			NameParams other = (NameParams) obj;
-			if (!this.name.equals(other.name)) {
+	private static boolean isAllStrings(Class<?>[] types) {
+		for (Class<?> type : types) {
+			if (type != String.class) {
 				return false;
 			}
-			return Arrays.equals(this.paramTypes, other.paramTypes);
 		}
+		return true;
 	}
 
 	/**
-	 * Information about attribute methods.
+	 * Config beans are described by the class of their snapshots.
 	 */
-	private static class AttributeMethodInfo {
-		final String varName;
-		final String description;
-		Method getterMethod;
-		Method setterMethod;
-		final Class<?> type;
-
-		public AttributeMethodInfo(String varName, String description, Method getterMethod, Method setterMethod) {
-			this.varName = varName;
-			if (description == null || description.length() == 0) {
-				this.description = varName + " attribute";
-			} else {
-				this.description = description;
-			}
-			this.getterMethod = getterMethod;
-			this.setterMethod = setterMethod;
-			if (getterMethod == null) {
-				type = setterMethod.getParameterTypes()[0];
-			} else {
-				type = getterMethod.getReturnType();
-			}
+	private static Class<?> targetClass(Object delegate) {
+		if (delegate instanceof JmxConfig) {
+			return ((JmxConfig<?>) delegate).getSnapshotClass();
+		} else {
+			return delegate.getClass();
 		}
+	}
 
-		public boolean isIs() {
-			if (getterMethod != null && getterMethod.getName().startsWith("is")
-					&& (type == boolean.class || type == Boolean.class)) {
-				return true;
-			} else {
-				return false;
-			}
+	private static CachedResult[] createCachedResults(MbeanMetadata metadata) {
+		int cacheCount = metadata.getCacheCount();
+		if (cacheCount == 0) {
+			return null;
+		}
+		CachedResult[] cachedResults = new CachedResult[cacheCount];
+		for (int i = 0; i < cacheCount; i++) {
+			cachedResults[i] = new CachedResult();
+		}
+		return cachedResults;
+	}
+
+	private static GetterBudget[] createGetterBudgets(MbeanMetadata metadata) {
+		int budgetCount = metadata.getBudgetCount();
+		if (budgetCount == 0) {
+			return null;
+		}
+		GetterBudget[] getterBudgets = new GetterBudget[budgetCount];
+		for (int i = 0; i < budgetCount; i++) {
+			getterBudgets[i] =
+					new GetterBudget(metadata.getBudgetTimeoutMillis(i), "simplejmx-getter-"
+							+ metadata.getBudgetLabel(i));
 		}
+		return getterBudgets;
+	}
+
+	private static OperationLimiter[] createOperationLimiters(MbeanMetadata metadata) {
+		int limitCount = metadata.getLimitCount();
+		if (limitCount == 0) {
+			return null;
+		}
+		OperationLimiter[] operationLimiters = new OperationLimiter[limitCount];
+		for (int i = 0; i < limitCount; i++) {
+			JmxOperationInfo operationInfo = metadata.getLimitedOperation(i);
+			operationLimiters[i] =
+					new OperationLimiter(operationInfo, "simplejmx-operation-" + operationInfo.getMethodName());
+		}
+		return operationLimiters;
 	}
 
 	/**
-	 * Information about attribute fields
+	 * Return the throwable as an exception so it can be thrown out of a Callable. Errors are re-thrown.
 	 */
-	private static class AttributeFieldInfo {
-
-		final Field field;
-		final boolean isGetter;
-		final boolean isSetter;
+	private static Exception rethrowAsException(Throwable t) {
+		if (t instanceof Error) {
+			throw (Error) t;
+		} else if (t instanceof Exception) {
+			return (Exception) t;
+		} else {
+			return new Exception(t);
+		}
+	}
 
-		public AttributeFieldInfo(Field field, boolean isGetter, boolean isSetter) {
-			this.field = field;
-			this.isGetter = isGetter;
-			this.isSetter = isSetter;
+	/**
+	 * Method handles throw Throwable so we need to turn them into something that JMX can handle. Errors are re-thrown.
+	 */
+	private ReflectionException createReflectionException(Throwable t, String message) {
+		if (t instanceof Error) {
+			throw (Error) t;
+		} else if (t instanceof Exception) {
+			return new ReflectionException((Exception) t, message);
+		} else {
+			return new ReflectionException(new Exception(t), message);
 		}
 	}
+
+	/**
+	 * We do this to standardize our exceptions around unknown attributes.
+	 */
+	private void throwUnknownAttributeException(String attributeName) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Unknown attribute " + attributeName);
+	}
 }
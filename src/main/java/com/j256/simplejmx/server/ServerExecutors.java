@@ -0,0 +1,62 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-pools of the server. The job pool is shared by all of the registered beans while the getter budgets and the
+ * operation limits create their own so one bean cannot starve another. They use daemon threads which time out when idle
+ * so they don't keep the JVM from exiting and they cost nothing if the features that use them are not used.
+ *
+ * @author graywatson
+ */
+class ServerExecutors {
+
+	private static final int JOB_THREADS = 4;
+	private static final int JOB_QUEUE_SIZE = 256;
+
+	/**
+	 * Return the bounded pool that runs the jobs of the async operations. If it is full then the job is rejected.
+	 */
+	public static ThreadPoolExecutor jobExecutor() {
+		return JobExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * Create a bounded pool of daemon threads.
+	 */
+	static ThreadPoolExecutor createExecutor(String name, int threadCount, int queueSize) {
+		ThreadPoolExecutor executor =
+				new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+						new ArrayBlockingQueue<Runnable>(queueSize), new DaemonThreadFactory(name),
+						new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Lazy holder so the pool is only created if a job uses it.
+	 */
+	private static class JobExecutorHolder {
+		static final ThreadPoolExecutor EXECUTOR = createExecutor("simplejmx-job", JOB_THREADS, JOB_QUEUE_SIZE);
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		public DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
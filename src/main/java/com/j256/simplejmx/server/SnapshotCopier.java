@@ -0,0 +1,71 @@
+package com.j256.simplejmx.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes copies of the snapshots of a {@link JmxConfig} so the attributes can be set on a copy before it is published.
+ * The copy is made with the no-argument constructor of the class and then all of the instance fields of the class and
+ * its super-classes, including the final ones, are copied over.
+ *
+ * @author graywatson
+ */
+class SnapshotCopier {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final MethodHandle constructorHandle;
+	private final MethodHandle[] getterHandles;
+	private final MethodHandle[] setterHandles;
+
+	public SnapshotCopier(Class<?> clazz) {
+		try {
+			Constructor<?> constructor = clazz.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			this.constructorHandle = LOOKUP.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Config snapshot " + clazz
+					+ " needs a no-argument constructor so it can be copied", e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Could not access the no-argument constructor of " + clazz, e);
+		}
+		List<MethodHandle> getters = new ArrayList<MethodHandle>();
+		List<MethodHandle> setters = new ArrayList<MethodHandle>();
+		for (Class<?> current = clazz; current != Object.class; current = current.getSuperclass()) {
+			for (Field field : current.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				field.setAccessible(true);
+				try {
+					getters.add(LOOKUP.unreflectGetter(field).asType(GETTER_TYPE));
+					setters.add(LOOKUP.unreflectSetter(field).asType(SETTER_TYPE));
+				} catch (IllegalAccessException e) {
+					throw new IllegalArgumentException("Could not access field '" + field + "' to copy it", e);
+				}
+			}
+		}
+		this.getterHandles = getters.toArray(new MethodHandle[getters.size()]);
+		this.setterHandles = setters.toArray(new MethodHandle[setters.size()]);
+	}
+
+	/**
+	 * Return a shallow copy of the snapshot.
+	 */
+	public Object copy(Object snapshot) throws Throwable {
+		Object copy = (Object) constructorHandle.invokeExact();
+		for (int i = 0; i < getterHandles.length; i++) {
+			setterHandles[i].invokeExact(copy, (Object) getterHandles[i].invokeExact(snapshot));
+		}
+		return copy;
+	}
+}
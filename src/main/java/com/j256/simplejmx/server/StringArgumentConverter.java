@@ -0,0 +1,196 @@
+package com.j256.simplejmx.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.j256.simplejmx.common.JmxStringInvocation;
+
+/**
+ * Converts the string arguments of {@link JmxStringInvocation} calls to the parameter types of the operations. The
+ * conversions match the ones that the {@link com.j256.simplejmx.client.JmxClient} does. The converter for a type is
+ * built once and cached.
+ *
+ * @author graywatson
+ */
+abstract class StringArgumentConverter {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+	private static final MethodType CONVERT_TYPE = MethodType.methodType(Object.class, String.class);
+
+	private static final ClassValue<StringArgumentConverter> converterCache =
+			new ClassValue<StringArgumentConverter>() {
+				@Override
+				protected StringArgumentConverter computeValue(Class<?> type) {
+					return createConverter(type);
+				}
+			};
+	private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<String, Class<?>>();
+
+	static {
+		for (Class<?> type : new Class<?>[] { boolean.class, char.class, byte.class, short.class, int.class,
+				long.class, float.class, double.class }) {
+			PRIMITIVE_TYPES.put(type.getName(), type);
+		}
+	}
+
+	/**
+	 * Return the converter for the type.
+	 */
+	public static StringArgumentConverter forType(Class<?> type) {
+		return converterCache.get(type);
+	}
+
+	/**
+	 * Return the converter for the type with the name from an MBeanInfo or null if the class is not known to us.
+	 */
+	public static StringArgumentConverter forTypeName(String typeName) {
+		Class<?> type = PRIMITIVE_TYPES.get(typeName);
+		if (type == null) {
+			try {
+				type = Class.forName(typeName, false, StringArgumentConverter.class.getClassLoader());
+			} catch (ClassNotFoundException e) {
+				return null;
+			}
+		}
+		return forType(type);
+	}
+
+	/**
+	 * Convert the string to the type. Throws IllegalArgumentException if it cannot be converted.
+	 */
+	public abstract Object convert(String string);
+
+	private static StringArgumentConverter createConverter(final Class<?> type) {
+		if (type == String.class || type == Object.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return string;
+				}
+			};
+		} else if (type == boolean.class || type == Boolean.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return Boolean.parseBoolean(string);
+				}
+			};
+		} else if (type == char.class || type == Character.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					if (string.length() == 0) {
+						return '\0';
+					} else {
+						return string.charAt(0);
+					}
+				}
+			};
+		} else if (type == byte.class || type == Byte.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return Byte.parseByte(string);
+				}
+			};
+		} else if (type == short.class || type == Short.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return Short.parseShort(string);
+				}
+			};
+		} else if (type == int.class || type == Integer.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return Integer.parseInt(string);
+				}
+			};
+		} else if (type == long.class || type == Long.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return Long.parseLong(string);
+				}
+			};
+		} else if (type == float.class || type == Float.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return Float.parseFloat(string);
+				}
+			};
+		} else if (type == double.class || type == Double.class) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return Double.parseDouble(string);
+				}
+			};
+		} else if (type.isEnum()) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					return enumValueOf(type, string);
+				}
+			};
+		}
+		final MethodHandle handle = findFactory(type);
+		if (handle == null) {
+			return new StringArgumentConverter() {
+				@Override
+				public Object convert(String string) {
+					throw new IllegalArgumentException("Cannot convert a string to " + type);
+				}
+			};
+		}
+		return new StringArgumentConverter() {
+			@Override
+			public Object convert(String string) {
+				try {
+					return (Object) handle.invokeExact(string);
+				} catch (RuntimeException e) {
+					throw new IllegalArgumentException("Could not convert '" + string + "' to " + type, e);
+				} catch (Error e) {
+					throw e;
+				} catch (Throwable t) {
+					throw new IllegalArgumentException("Could not convert '" + string + "' to " + type, t);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Find a public static valueOf(String) method or a public String constructor or return null if none.
+	 */
+	private static MethodHandle findFactory(Class<?> type) {
+		try {
+			Method method = type.getMethod("valueOf", String.class);
+			if (Modifier.isStatic(method.getModifiers()) && type.isAssignableFrom(method.getReturnType())) {
+				return LOOKUP.unreflect(method).asType(CONVERT_TYPE);
+			}
+		} catch (NoSuchMethodException e) {
+			// try the constructor
+		} catch (IllegalAccessException e) {
+			// try the constructor
+		}
+		try {
+			return LOOKUP.unreflectConstructor(type.getConstructor(String.class)).asType(CONVERT_TYPE);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object enumValueOf(Class<?> type, String string) {
+		return Enum.valueOf((Class) type, string);
+	}
+}
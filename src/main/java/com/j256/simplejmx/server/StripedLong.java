@@ -0,0 +1,103 @@
+package com.j256.simplejmx.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Sum that is spread over a number of cells so threads that add to it at the same time mostly hit different cache
+ * lines. This is what LongAdder does in Java 8 but we have to run on Java 7. Like LongAdder, it starts out as a single
+ * base value and only allocates the cells once two threads collide on the base, so the many counters that are never
+ * contended stay small. The cells are picked by hashing the thread id so adding does not allocate. Reading the sum
+ * walks all of the cells so it is not an atomic snapshot.
+ *
+ * @author graywatson
+ */
+class StripedLong {
+
+	/** longs from one cell to the next, 128 bytes so the adjacent line prefetch does not drag in a neighbor */
+	private static final int CELL_SPACING = 16;
+	private static final int MAX_CELLS = 32;
+	private static final int CELL_COUNT = cellCount(Runtime.getRuntime().availableProcessors());
+	private static final AtomicLongFieldUpdater<StripedLong> BASE_UPDATER =
+			AtomicLongFieldUpdater.newUpdater(StripedLong.class, "base");
+	private static final AtomicReferenceFieldUpdater<StripedLong, AtomicLongArray> CELLS_UPDATER =
+			AtomicReferenceFieldUpdater.newUpdater(StripedLong.class, AtomicLongArray.class, "cells");
+
+	/** added to until there is contention and is still part of the sum after that */
+	private volatile long base;
+	/** null until a compare-and-set of the base fails, the first cell is spaced away from the array header */
+	private volatile AtomicLongArray cells;
+
+	/**
+	 * Add the delta to the base or, once there has been contention, to the cell of the current thread.
+	 */
+	public void add(long delta) {
+		AtomicLongArray cells = this.cells;
+		if (cells == null) {
+			long current = base;
+			if (BASE_UPDATER.compareAndSet(this, current, current + delta)) {
+				return;
+			}
+			// another thread got there first so spread the adds from now on
+			CELLS_UPDATER.compareAndSet(this, null, new AtomicLongArray((CELL_COUNT + 1) * CELL_SPACING));
+			cells = this.cells;
+		}
+		cells.getAndAdd(cellIndex(), delta);
+	}
+
+	/**
+	 * Return the sum of the base and the cells.
+	 */
+	public long sum() {
+		long sum = base;
+		AtomicLongArray cells = this.cells;
+		if (cells != null) {
+			for (int i = CELL_SPACING; i < cells.length(); i += CELL_SPACING) {
+				sum += cells.get(i);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Return the sum of the base and the cells and set them to 0. Adds that happen at the same time are either in the
+	 * sum or left behind but are never lost.
+	 */
+	public long sumThenReset() {
+		long sum = BASE_UPDATER.getAndSet(this, 0);
+		AtomicLongArray cells = this.cells;
+		if (cells != null) {
+			for (int i = CELL_SPACING; i < cells.length(); i += CELL_SPACING) {
+				sum += cells.getAndSet(i, 0);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns true if there has been contention so the adds are spread over the cells. For testing.
+	 */
+	boolean isStriped() {
+		return (cells != null);
+	}
+
+	private static int cellIndex() {
+		long id = Thread.currentThread().getId();
+		// thread ids are sequential so spread them over the cells
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		return ((hash & (CELL_COUNT - 1)) + 1) * CELL_SPACING;
+	}
+
+	/**
+	 * One cell per processor rounded up to a power of 2 so the hash can be masked.
+	 */
+	private static int cellCount(int processors) {
+		int count = 1;
+		while (count < processors && count < MAX_CELLS) {
+			count <<= 1;
+		}
+		return count;
+	}
+}
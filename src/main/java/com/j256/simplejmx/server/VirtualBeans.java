@@ -0,0 +1,192 @@
+package com.j256.simplejmx.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.DynamicMBean;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.j256.simplejmx.common.JmxAttributeMethod;
+import com.j256.simplejmx.common.JmxFolderName;
+import com.j256.simplejmx.common.JmxResource;
+import com.j256.simplejmx.common.JmxSelfNaming;
+import com.j256.simplejmx.common.ObjectNameUtil;
+
+/**
+ * The beans of a naming pattern that was registered with
+ * {@link JmxServer#registerVirtual(String, JmxVirtualResolver, int, JmxFolderName...)}. The beans that clients have
+ * used are kept in a cache of the least recently used ones. This object is itself registered as the directory of the
+ * pattern which pages through the names of the beans.
+ *
+ * @author graywatson
+ */
+@JmxResource(description = "Beans that are resolved when they are used")
+class VirtualBeans implements JmxSelfNaming {
+
+	static final String DIRECTORY_BEAN_NAME = "virtualBeans";
+	private static final String NAME_KEY = "name";
+
+	private final String domainName;
+	private final JmxFolderName[] folderNames;
+	private final ObjectName pattern;
+	private final JmxVirtualResolver resolver;
+	private volatile int maxCached;
+	/** in access order so the eldest is the least recently used, guarded by this */
+	private final Map<String, ResolvedBean> cache = new LinkedHashMap<String, ResolvedBean>(16, 0.75F, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ResolvedBean> eldest) {
+			if (size() > maxCached) {
+				evictedCount.incrementAndGet();
+				return true;
+			} else {
+				return false;
+			}
+		}
+	};
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong resolvedCount = new AtomicLong();
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	public VirtualBeans(String domainName, JmxFolderName[] folderNames, JmxVirtualResolver resolver, int maxCached) {
+		if (maxCached <= 0) {
+			throw new IllegalArgumentException("Maximum number of cached beans must be positive: " + maxCached);
+		}
+		this.domainName = domainName;
+		this.folderNames = folderNames;
+		this.pattern = ObjectNameUtil.makeObjectName(domainName, "*", folderNames);
+		this.resolver = resolver;
+		this.maxCached = maxCached;
+	}
+
+	/**
+	 * Return the pattern which matches the names of the beans.
+	 */
+	public ObjectName getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Return the bean with the name or null if the name is not one of ours. A name that is registered with the
+	 * MBeanServer is not ours even if it matches the pattern. Throws IllegalStateException if the resolver fails.
+	 */
+	public ResolvedBean find(ObjectName name, MBeanServer mbeanServer) {
+		if (!pattern.apply(name)) {
+			return null;
+		}
+		String beanName = name.getKeyProperty(NAME_KEY);
+		if (beanName.startsWith("\"")) {
+			beanName = ObjectName.unquote(beanName);
+		}
+		ResolvedBean entry;
+		synchronized (this) {
+			entry = cache.get(beanName);
+		}
+		if (entry != null) {
+			hitCount.incrementAndGet();
+			return entry;
+		}
+		if (mbeanServer.isRegistered(name)) {
+			return null;
+		}
+		// we don't hold the lock while resolving so 2 threads may build the same bean which is harmless
+		Object obj;
+		DynamicMBean mbean;
+		try {
+			obj = resolver.resolve(beanName);
+			if (obj == null) {
+				return null;
+			}
+			if (obj instanceof DynamicMBean) {
+				mbean = (DynamicMBean) obj;
+			} else {
+				mbean = JmxServer.buildMbean(obj);
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException("Resolving virtual bean " + name + " failed", e);
+		}
+		ClassLoader classLoader = obj.getClass().getClassLoader();
+		if (classLoader == null) {
+			classLoader = VirtualBeans.class.getClassLoader();
+		}
+		entry = new ResolvedBean(mbean, classLoader);
+		resolvedCount.incrementAndGet();
+		synchronized (this) {
+			cache.put(beanName, entry);
+		}
+		return entry;
+	}
+
+	@JmxAttributeMethod(description = "Names of the beans", paged = true)
+	public Iterable<String> getNames() {
+		return resolver.getBeanNames();
+	}
+
+	@JmxAttributeMethod(description = "Pattern of the names of the beans")
+	public String getNamePattern() {
+		return pattern.getCanonicalName();
+	}
+
+	@JmxAttributeMethod(description = "Number of beans that are cached")
+	public synchronized int getCachedCount() {
+		return cache.size();
+	}
+
+	@JmxAttributeMethod(description = "Maximum number of beans that are cached")
+	public int getMaxCached() {
+		return maxCached;
+	}
+
+	@JmxAttributeMethod(description = "Maximum number of beans that are cached")
+	public void setMaxCached(int maxCached) {
+		if (maxCached <= 0) {
+			throw new IllegalArgumentException("Maximum number of cached beans must be positive: " + maxCached);
+		}
+		this.maxCached = maxCached;
+	}
+
+	@JmxAttributeMethod(description = "Number of calls that found their bean in the cache")
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	@JmxAttributeMethod(description = "Number of beans that were resolved")
+	public long getResolvedCount() {
+		return resolvedCount.get();
+	}
+
+	@JmxAttributeMethod(description = "Number of beans that were evicted from the cache")
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	public String getJmxDomainName() {
+		return domainName;
+	}
+
+	public String getJmxNameOfObject() {
+		return DIRECTORY_BEAN_NAME;
+	}
+
+	public JmxFolderName[] getJmxFolderNames() {
+		return folderNames;
+	}
+
+	/**
+	 * A bean that has been resolved.
+	 */
+	static class ResolvedBean {
+
+		final DynamicMBean mbean;
+		/** used to unmarshal the arguments of calls to the bean */
+		final ClassLoader classLoader;
+
+		public ResolvedBean(DynamicMBean mbean, ClassLoader classLoader) {
+			this.mbean = mbean;
+			this.classLoader = classLoader;
+		}
+	}
+}
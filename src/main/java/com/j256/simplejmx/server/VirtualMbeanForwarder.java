@@ -0,0 +1,163 @@
+package com.j256.simplejmx.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.RuntimeErrorException;
+import javax.management.RuntimeMBeanException;
+import javax.management.remote.MBeanServerForwarder;
+
+/**
+ * Sits between the JMX connector and the MBeanServer and answers the calls to the names of the virtual beans that
+ * were registered with {@link JmxServer#registerVirtual}. All other calls are passed through. The virtual beans are
+ * only seen by remote clients and are not returned by queries with patterns.
+ *
+ * @author graywatson
+ */
+class VirtualMbeanForwarder implements InvocationHandler {
+
+	private static final VirtualBeans[] NO_VIRTUAL_BEANS = new VirtualBeans[0];
+
+	private volatile MBeanServer mbeanServer;
+	/** copied on write */
+	private volatile VirtualBeans[] virtualBeans = NO_VIRTUAL_BEANS;
+
+	/**
+	 * Return the forwarder to give to the connector.
+	 */
+	public MBeanServerForwarder createForwarder() {
+		return (MBeanServerForwarder) Proxy.newProxyInstance(MBeanServerForwarder.class.getClassLoader(),
+				new Class<?>[] { MBeanServerForwarder.class }, this);
+	}
+
+	/**
+	 * Add the beans of a pattern. Throws IllegalArgumentException if the pattern was already added.
+	 */
+	public synchronized void add(VirtualBeans beans) {
+		for (VirtualBeans existing : virtualBeans) {
+			if (existing.getPattern().equals(beans.getPattern())) {
+				throw new IllegalArgumentException("Virtual beans " + beans.getPattern() + " were already registered");
+			}
+		}
+		VirtualBeans[] newBeans = new VirtualBeans[virtualBeans.length + 1];
+		System.arraycopy(virtualBeans, 0, newBeans, 0, virtualBeans.length);
+		newBeans[virtualBeans.length] = beans;
+		virtualBeans = newBeans;
+	}
+
+	/**
+	 * Remove the beans with the pattern and return them or null if none.
+	 */
+	public synchronized VirtualBeans remove(ObjectName pattern) {
+		for (int i = 0; i < virtualBeans.length; i++) {
+			VirtualBeans beans = virtualBeans[i];
+			if (beans.getPattern().equals(pattern)) {
+				VirtualBeans[] newBeans = new VirtualBeans[virtualBeans.length - 1];
+				System.arraycopy(virtualBeans, 0, newBeans, 0, i);
+				System.arraycopy(virtualBeans, i + 1, newBeans, i, newBeans.length - i);
+				virtualBeans = newBeans;
+				return beans;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if there are any virtual beans.
+	 */
+	public boolean hasVirtualBeans() {
+		return virtualBeans.length > 0;
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String methodName = method.getName();
+		if (method.getDeclaringClass() == Object.class) {
+			return method.invoke(this, args);
+		} else if (methodName.equals("getMBeanServer")) {
+			return mbeanServer;
+		} else if (methodName.equals("setMBeanServer")) {
+			mbeanServer = (MBeanServer) args[0];
+			return null;
+		}
+		ObjectName name = null;
+		if (args != null && args.length > 0 && args[0] instanceof ObjectName) {
+			name = (ObjectName) args[0];
+		}
+		VirtualBeans[] currentBeans = virtualBeans;
+		if (name != null && currentBeans.length > 0 && !name.isPattern()) {
+			try {
+				for (VirtualBeans beans : currentBeans) {
+					VirtualBeans.ResolvedBean entry = beans.find(name, mbeanServer);
+					if (entry != null) {
+						return invokeVirtual(entry, name, methodName, args);
+					}
+				}
+			} catch (RuntimeException e) {
+				// like the MBeanServer does
+				throw new RuntimeMBeanException(e, "Virtual bean " + name + " threw exception");
+			} catch (Error e) {
+				throw new RuntimeErrorException(e, "Virtual bean " + name + " threw error");
+			}
+		}
+		try {
+			return method.invoke(mbeanServer, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Object invokeVirtual(VirtualBeans.ResolvedBean entry, ObjectName name, String methodName, Object[] args)
+			throws Exception {
+		DynamicMBean mbean = entry.mbean;
+		if (methodName.equals("getAttribute")) {
+			return mbean.getAttribute((String) args[1]);
+		} else if (methodName.equals("getAttributes")) {
+			return mbean.getAttributes((String[]) args[1]);
+		} else if (methodName.equals("setAttribute")) {
+			mbean.setAttribute((Attribute) args[1]);
+			return null;
+		} else if (methodName.equals("setAttributes")) {
+			return mbean.setAttributes((AttributeList) args[1]);
+		} else if (methodName.equals("invoke")) {
+			return mbean.invoke((String) args[1], (Object[]) args[2], (String[]) args[3]);
+		} else if (methodName.equals("getMBeanInfo")) {
+			return mbean.getMBeanInfo();
+		} else if (methodName.equals("isRegistered")) {
+			return true;
+		} else if (methodName.equals("getObjectInstance")) {
+			return new ObjectInstance(name, mbean.getMBeanInfo().getClassName());
+		} else if (methodName.equals("isInstanceOf")) {
+			MBeanInfo info = mbean.getMBeanInfo();
+			return info.getClassName().equals(args[1]) || DynamicMBean.class.getName().equals(args[1]);
+		} else if (methodName.equals("getClassLoaderFor")) {
+			return entry.classLoader;
+		} else if (methodName.equals("queryNames")) {
+			// the query is not run against virtual beans so they are left out
+			if (args[1] == null) {
+				return Collections.singleton(name);
+			} else {
+				return Collections.emptySet();
+			}
+		} else if (methodName.equals("queryMBeans")) {
+			if (args[1] == null) {
+				return Collections.singleton(new ObjectInstance(name, mbean.getMBeanInfo().getClassName()));
+			} else {
+				return Collections.emptySet();
+			}
+		} else {
+			// notifications, un-registering, and the like
+			throw new InstanceNotFoundException("Virtual bean " + name + " does not support " + methodName);
+		}
+	}
+}
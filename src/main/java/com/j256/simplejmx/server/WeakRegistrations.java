@@ -0,0 +1,149 @@
+package com.j256.simplejmx.server;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+/**
+ * The beans of a {@link JmxServer} that were registered with {@link JmxServer#registerWeak(Object)}. Their mbeans only
+ * hold the delegates weakly and when a delegate is garbage collected its reference is put on our queue. The reaper
+ * thread takes the dead references off of the queue and un-registers their beans in batches.
+ *
+ * @author graywatson
+ */
+class WeakRegistrations {
+
+	private final JmxServer server;
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+	/** this also keeps the references from being collected before their delegates */
+	private final ConcurrentMap<ObjectName, Registration> registrations =
+			new ConcurrentHashMap<ObjectName, Registration>();
+	private final AtomicLong reapedCount = new AtomicLong();
+	private Thread reaperThread;
+
+	public WeakRegistrations(JmxServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * Create the weak reference to the delegate for its mbean. It is not tracked until it is added.
+	 */
+	public Registration create(Object delegate, ObjectName objectName) {
+		return new Registration(delegate, queue, objectName);
+	}
+
+	/**
+	 * Start tracking a bean once it has been registered. This must be called while holding the lock of the server. The
+	 * reaper is started if needed.
+	 */
+	public void add(Registration registration) {
+		registrations.put(registration.objectName, registration);
+		startReaper();
+	}
+
+	/**
+	 * Stop tracking the bean with the name because it was un-registered.
+	 */
+	public void remove(ObjectName objectName) {
+		Registration registration = registrations.remove(objectName);
+		if (registration != null) {
+			// clearing it keeps it from being put on the queue
+			registration.clear();
+		}
+	}
+
+	/**
+	 * Return the number of weakly registered beans that have not been reaped or un-registered.
+	 */
+	public int getLiveCount() {
+		return registrations.size();
+	}
+
+	/**
+	 * Return the number of beans that were un-registered because their delegate was garbage collected.
+	 */
+	public long getReapedCount() {
+		return reapedCount.get();
+	}
+
+	/**
+	 * Start the reaper thread if it is not already running.
+	 */
+	public synchronized void startReaper() {
+		if (reaperThread != null) {
+			return;
+		}
+		reaperThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						reap();
+					}
+				} catch (InterruptedException e) {
+					// we are being stopped
+				}
+			}
+		}, "simplejmx-reaper");
+		reaperThread.setDaemon(true);
+		reaperThread.start();
+	}
+
+	/**
+	 * Stop the reaper. The dead references stay on the queue until it is started again.
+	 */
+	public synchronized void stopReaper() {
+		if (reaperThread != null) {
+			reaperThread.interrupt();
+			reaperThread = null;
+		}
+	}
+
+	/**
+	 * Wait for a dead reference and then un-register it along with any others that are on the queue.
+	 */
+	private void reap() throws InterruptedException {
+		Reference<?> reference = queue.remove();
+		List<Registration> dead = new ArrayList<Registration>();
+		do {
+			dead.add((Registration) reference);
+			reference = queue.poll();
+		} while (reference != null);
+		List<ObjectName> objectNames = new ArrayList<ObjectName>(dead.size());
+		/*
+		 * We hold the lock of the server, like its register and unregister methods do, so a delegate that was collected
+		 * while it was being registered is added before we look for it.
+		 */
+		synchronized (server) {
+			for (Registration registration : dead) {
+				// it may have been un-registered and the name used by another bean
+				if (registrations.remove(registration.objectName, registration)) {
+					objectNames.add(registration.objectName);
+				}
+			}
+			if (!objectNames.isEmpty()) {
+				server.unregisterReaped(objectNames);
+			}
+		}
+		reapedCount.addAndGet(objectNames.size());
+	}
+
+	/**
+	 * Weak reference to a delegate that knows the name of its bean.
+	 */
+	static class Registration extends WeakReference<Object> {
+
+		final ObjectName objectName;
+
+		public Registration(Object delegate, ReferenceQueue<Object> queue, ObjectName objectName) {
+			super(delegate, queue);
+			this.objectName = objectName;
+		}
+	}
+}
@@ -8,6 +8,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -187,6 +189,25 @@ public class CommandLineJmxClientTest {
 		assertTrue(output, output.matches("(?s).*get 'x' in \\d+ms = " + val + ".*"));
 	}
 
+	@Test
+	public void testPagedSecondBean() throws Exception {
+		PagedTestObject paged = new PagedTestObject();
+		server.register(paged);
+		CommandLineJmxClient client = new CommandLineJmxClient("localhost", JMX_PORT);
+		try {
+			String pagedNameString = JMX_DOMAIN + ":name=" + PagedTestObject.class.getSimpleName();
+			// the first bean is looked up before the paged one
+			String output =
+					getClientOutput(client, "get " + objectNameString + " x", "get " + pagedNameString + " keys",
+							"do " + pagedNameString + " range 3");
+			assertTrue(output, output.matches("(?s).*get 'keys' is paged with 2 elements:.*\\[1\\] = key1.*"));
+			assertTrue(output, output.matches("(?s).*do 'range' is paged with 3 elements:.*\\[2\\] = 2.*"));
+		} finally {
+			client.close();
+			server.unregister(paged);
+		}
+	}
+
 	@Test
 	public void testSetAttributeBadObjectName() throws Exception {
 		String output = getClientOutput(client, "set bad-object-name");
@@ -470,6 +491,25 @@ public class CommandLineJmxClientTest {
 		return new String(array.toByteArray());
 	}
 
+	@JmxResource(domainName = JMX_DOMAIN)
+	protected static class PagedTestObject {
+		@JmxAttributeMethod(paged = true)
+		public List<String> getKeys() {
+			List<String> keys = new ArrayList<String>();
+			keys.add("key0");
+			keys.add("key1");
+			return keys;
+		}
+		@JmxOperation(paged = true)
+		public long[] range(int count) {
+			long[] values = new long[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = i;
+			}
+			return values;
+		}
+	}
+
 	@JmxResource(domainName = JMX_DOMAIN)
 	protected static class CommandLineJmxClientTestObject {
 		int x;
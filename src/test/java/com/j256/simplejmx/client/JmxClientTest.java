@@ -1,27 +1,42 @@
 package com.j256.simplejmx.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.JMException;
 import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
 import javax.management.MBeanOperationInfo;
 import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ReflectionException;
 import javax.management.ObjectName;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.j256.simplejmx.common.JmxAttributeField;
 import com.j256.simplejmx.common.JmxAttributeMethod;
 import com.j256.simplejmx.common.JmxOperation;
+import com.j256.simplejmx.common.JmxPaging;
+import com.j256.simplejmx.common.JmxQuantileSummary;
 import com.j256.simplejmx.common.JmxResource;
+import com.j256.simplejmx.common.JmxStringInvocation;
 import com.j256.simplejmx.common.ObjectNameUtil;
+import com.j256.simplejmx.server.JmxOperationHandler;
+import com.j256.simplejmx.server.JmxQuantileSketch;
 import com.j256.simplejmx.server.JmxServer;
 
 public class JmxClientTest {
@@ -34,6 +49,7 @@ public class JmxClientTest {
 	private static ObjectName objectName;
 	private static JmxClient client;
 	private static JmxClient closedClient;
+	private static ObjectName pagedObjectName;
 
 	@BeforeClass
 	public static void beforeClass() throws Exception {
@@ -43,6 +59,8 @@ public class JmxClientTest {
 		server.register(obj);
 		beanName = JmxClientTestObject.class.getSimpleName();
 		objectName = ObjectNameUtil.makeObjectName(JMX_DOMAIN, beanName);
+		server.register(new PagedTestObject());
+		pagedObjectName = ObjectNameUtil.makeObjectName(JMX_DOMAIN, PagedTestObject.class.getSimpleName());
 		client = new JmxClient(JMX_PORT);
 		closedClient = new JmxClient(JMX_PORT);
 		closedClient.closeThrow();
@@ -117,7 +135,8 @@ public class JmxClientTest {
 	@Test
 	public void testGetAttributesInfoStringString() throws Exception {
 		MBeanAttributeInfo[] infos = client.getAttributesInfo(JMX_DOMAIN, beanName);
-		assertEquals(2, infos.length);
+		// plus the fingerprint
+		assertEquals(3, infos.length);
 		assertEquals("null", infos[0].getName());
 		assertEquals(String.class.getName(), infos[0].getType());
 		assertEquals("x", infos[1].getName());
@@ -127,7 +146,8 @@ public class JmxClientTest {
 	@Test
 	public void testGetAttributesInfo() throws Exception {
 		MBeanAttributeInfo[] infos = client.getAttributesInfo(objectName);
-		assertEquals(2, infos.length);
+		// plus the fingerprint
+		assertEquals(3, infos.length);
 		assertEquals("null", infos[0].getName());
 		assertEquals(String.class.getName(), infos[0].getType());
 		assertEquals("x", infos[1].getName());
@@ -312,6 +332,87 @@ public class JmxClientTest {
 		assertEquals(times, result);
 	}
 
+	@Test
+	public void testInvokeOperationStringsSimpleJmxBean() throws Exception {
+		// our beans say in their MBeanInfo that they convert the strings themselves
+		MBeanInfo info = ManagementFactory.getPlatformMBeanServer().getMBeanInfo(objectName);
+		assertEquals("true", info.getDescriptor().getFieldValue(JmxStringInvocation.DESCRIPTOR_FIELD));
+		JmxClient stringClient = new JmxClient(JMX_PORT);
+		try {
+			assertEquals(6L, stringClient.invokeOperation(objectName, "times", "2", "3"));
+			assertEquals(12L, stringClient.invokeOperation(objectName, "times", "3", "4"));
+			try {
+				stringClient.invokeOperation(objectName, "unknownOperation", "1");
+				fail("Should have thrown");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			stringClient.close();
+		}
+	}
+
+	@Test
+	public void testInvokeOperationStringsStandardMbean() throws Exception {
+		ObjectName standardName = ObjectNameUtil.makeObjectName(JMX_DOMAIN, "StandardCounter");
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		mbeanServer.registerMBean(new StandardCounter(), standardName);
+		JmxClient stringClient = new JmxClient(JMX_PORT);
+		try {
+			// a standard bean does not know the string invocation so the client converts the strings
+			assertNull(mbeanServer.getMBeanInfo(standardName).getDescriptor().getFieldValue(
+					JmxStringInvocation.DESCRIPTOR_FIELD));
+			assertEquals(5, stringClient.invokeOperation(standardName, "add", "2", "3"));
+			assertEquals(9, stringClient.invokeOperation(standardName, "add", "4", "5"));
+		} finally {
+			stringClient.close();
+			mbeanServer.unregisterMBean(standardName);
+		}
+	}
+
+	@Test
+	public void testInvokeOperationStringsBuiltBean() throws Exception {
+		// built beans are ours but do not take the string invocation
+		ObjectName builtName =
+				server.register(JMX_DOMAIN, "BuiltCounter")
+						.operation("add", int.class, new Class<?>[] { int.class, int.class }, new JmxOperationHandler() {
+							public Object invoke(Object[] params) {
+								return (Integer) params[0] + (Integer) params[1];
+							}
+						})
+						.register();
+		JmxClient stringClient = new JmxClient(JMX_PORT);
+		try {
+			assertEquals(5, stringClient.invokeOperation(builtName, "add", "2", "3"));
+			assertEquals(9, stringClient.invokeOperation(builtName, "add", "4", "5"));
+		} finally {
+			stringClient.close();
+			server.unregister(builtName);
+		}
+	}
+
+	@Test
+	public void testInvokeOperationStringsThrowsOnce() throws Exception {
+		ThrowingTestObject obj = new ThrowingTestObject();
+		server.register(obj);
+		JmxClient stringClient = new JmxClient(JMX_PORT);
+		try {
+			ObjectName throwingName =
+					ObjectNameUtil.makeObjectName(JMX_DOMAIN, ThrowingTestObject.class.getSimpleName());
+			try {
+				stringClient.invokeOperation(throwingName, "fail", "1");
+				fail("Should have thrown");
+			} catch (ReflectionException e) {
+				// expected
+			}
+			// the operation failed so it must not be called again with the strings converted by the client
+			assertEquals(1, obj.callCount.get());
+		} finally {
+			stringClient.close();
+			server.unregister(obj);
+		}
+	}
+
 	@Test
 	public void testInvokeOperationStringsNoArgs() throws Exception {
 		assertNull(client.invokeOperation(objectName, "returnNull", new String[0]));
@@ -418,6 +519,90 @@ public class JmxClientTest {
 		assertTrue("Found bean " + beanName, found);
 	}
 
+	@Test
+	public void testPageAttribute() throws Exception {
+		JmxClient pagedClient = new JmxClient(JMX_PORT);
+		try {
+			assertEquals((long) PagedTestObject.KEY_COUNT,
+					pagedClient.getAttribute(pagedObjectName, "keys" + JmxPaging.SIZE_SUFFIX));
+			JmxPageIterator iterator = pagedClient.pageAttribute(pagedObjectName, "keys", 1000);
+			assertEquals(PagedTestObject.KEY_COUNT, iterator.getSize());
+			int count = 0;
+			while (iterator.hasNext()) {
+				assertEquals("key" + count, iterator.next());
+				count++;
+			}
+			assertEquals(PagedTestObject.KEY_COUNT, count);
+		} finally {
+			pagedClient.close();
+		}
+	}
+
+	@Test
+	public void testPageOperation() throws Exception {
+		JmxClient pagedClient = new JmxClient(JMX_PORT);
+		try {
+			JmxPageIterator iterator = pagedClient.pageOperation(pagedObjectName, "range", 100, 250);
+			assertEquals(250, iterator.getSize());
+			long expected = 0;
+			while (iterator.hasNext()) {
+				assertEquals(expected++, iterator.next());
+			}
+			assertEquals(250, expected);
+		} finally {
+			pagedClient.close();
+		}
+	}
+
+	@Test(expected = JMException.class)
+	public void testPageClose() throws Exception {
+		JmxClient pagedClient = new JmxClient(JMX_PORT);
+		try {
+			long cursorId =
+					(Long) pagedClient.invokeOperation(pagedObjectName, JmxPaging.OPEN_CURSOR_OPERATION, "keys");
+			JmxPageIterator iterator = pagedClient.pageCursor(pagedObjectName, cursorId, 10);
+			assertEquals("key0", iterator.next());
+			iterator.close();
+			assertFalse(iterator.hasNext());
+			// the cursor is gone
+			pagedClient.pageCursor(pagedObjectName, cursorId, 10);
+		} finally {
+			pagedClient.close();
+		}
+	}
+
+	@Test
+	public void testMergeQuantileSketches() throws Exception {
+		SketchTestObject obj = new SketchTestObject();
+		for (int i = 1; i <= 1000; i++) {
+			obj.latency.record(i);
+		}
+		server.register(obj);
+		ObjectName sketchName = ObjectNameUtil.makeObjectName(JMX_DOMAIN, SketchTestObject.class.getSimpleName());
+		JmxClient otherClient = new JmxClient(JMX_PORT);
+		try {
+			JmxQuantileSummary summary = client.getQuantileSketch(sketchName, "latency.sketch");
+			assertEquals(1000L, summary.getCount());
+			assertEquals(client.getAttribute(sketchName, "latency.p99"), summary.getValueAtQuantile(0.99));
+			// the same server twice stands in for a fleet that saw the same values
+			List<JmxClient> clients = new ArrayList<JmxClient>();
+			clients.add(client);
+			clients.add(otherClient);
+			JmxQuantileSummary merged = JmxClient.mergeQuantileSketches(clients, sketchName, "latency.sketch");
+			assertEquals(2000L, merged.getCount());
+			assertEquals(1000.0, merged.getMax(), 0.0);
+			assertEquals(990.0, merged.getValueAtQuantile(0.99), 990 * 0.01);
+		} finally {
+			otherClient.close();
+			server.unregister(sketchName);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testQuantileSketchNotSketch() throws Exception {
+		client.getQuantileSketch(objectName, "x");
+	}
+
 	/* ======================================================================= */
 
 	private void testThingtoString(String methodName, Object arg) throws Exception {
@@ -429,6 +614,53 @@ public class JmxClientTest {
 		assertEquals(expected, client.invokeOperationToString(objectName, methodName, argString));
 	}
 
+	@JmxResource(domainName = JMX_DOMAIN)
+	protected static class SketchTestObject {
+		@JmxAttributeField(unit = "ms")
+		final JmxQuantileSketch latency = new JmxQuantileSketch();
+	}
+
+	public interface StandardCounterMBean {
+		public int add(int x1, int x2);
+	}
+
+	public static class StandardCounter implements StandardCounterMBean {
+		public int add(int x1, int x2) {
+			return x1 + x2;
+		}
+	}
+
+	@JmxResource(domainName = JMX_DOMAIN)
+	protected static class ThrowingTestObject {
+		final AtomicInteger callCount = new AtomicInteger();
+		@JmxOperation
+		public void fail(int value) {
+			callCount.incrementAndGet();
+			throw new IllegalStateException("failed with " + value);
+		}
+	}
+
+	@JmxResource(domainName = JMX_DOMAIN)
+	protected static class PagedTestObject {
+		static final int KEY_COUNT = 2500;
+		@JmxAttributeMethod(paged = true)
+		public List<String> getKeys() {
+			List<String> keys = new ArrayList<String>();
+			for (int i = 0; i < KEY_COUNT; i++) {
+				keys.add("key" + i);
+			}
+			return keys;
+		}
+		@JmxOperation(paged = true)
+		public long[] range(int count) {
+			long[] values = new long[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = i;
+			}
+			return values;
+		}
+	}
+
 	@JmxResource(domainName = JMX_DOMAIN)
 	protected static class JmxClientTestObject {
 		int x;
@@ -29,6 +29,15 @@ public class ObjectNameUtilTest {
 		assertEquals(DOMAIN_NAME + ":name=" + OBJECT_NAME, name.toString());
 	}
 
+	@Test
+	public void testFolderNames() {
+		ObjectName name =
+				ObjectNameUtil.makeObjectName(DOMAIN_NAME, OBJECT_NAME, new JmxFolderName[] {
+						new JmxFolderName(FOLDER_NAME1), new JmxFolderName(FIELD_NAME2, FOLDER_NAME2) });
+		assertEquals(DOMAIN_NAME + ":00=" + FOLDER_NAME1 + "," + FIELD_NAME2 + "=" + FOLDER_NAME2 + ",name="
+				+ OBJECT_NAME, name.toString());
+	}
+
 	@Test
 	public void testUseObjectClassForName() {
 		UseObjectClassForName obj = new UseObjectClassForName();
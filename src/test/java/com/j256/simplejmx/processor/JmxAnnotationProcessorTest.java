@@ -0,0 +1,290 @@
+package com.j256.simplejmx.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.j256.simplejmx.common.JmxDescriptors;
+import com.j256.simplejmx.common.JmxResource;
+import com.j256.simplejmx.server.JmxServer;
+
+public class JmxAnnotationProcessorTest {
+
+	private static final String PACKAGE_DIR = "com/j256/processortest";
+	private static final String CLASS_NAME = "com.j256.processortest.Counters";
+	private static final int JMX_PORT = 5256;
+
+	private File outputDir;
+
+	@Before
+	public void before() {
+		outputDir = new File("target/processor-test/" + System.nanoTime());
+		new File(outputDir, PACKAGE_DIR).mkdirs();
+	}
+
+	@Test
+	public void testAdapter() throws Exception {
+		String source = "package com.j256.processortest;\n" //
+				+ "import com.j256.simplejmx.common.*;\n" //
+				+ "@JmxResource(domainName = \"j256\", description = \"Some \\\"counters\\\"\")\n" //
+				+ "public class Counters {\n" //
+				+ "  @JmxAttributeField(isWritable = true)\n" //
+				+ "  private int max = 10;\n" //
+				+ "  @JmxAttributeField(description = \"the name\")\n" //
+				+ "  String name = \"foo\";\n" //
+				+ "  private long hits = 3;\n" //
+				+ "  private boolean enabled;\n" //
+				+ "  @JmxAttributeMethod(unit = \"requests\", metricKind = JmxMetricKind.COUNTER)\n" //
+				+ "  public long getHits() { return hits; }\n" //
+				+ "  @JmxAttributeMethod\n" //
+				+ "  public void setHits(long hits) { this.hits = hits; }\n" //
+				+ "  @JmxAttributeMethod\n" //
+				+ "  public boolean isEnabled() { return enabled; }\n" //
+				+ "  @JmxAttributeMethod\n" //
+				+ "  public int[] getBuckets() { return new int[] { 1, 2 }; }\n" //
+				+ "  @JmxOperation(parameterNames = { \"amount\" })\n" //
+				+ "  public long add(int amount) { return hits += amount; }\n" //
+				+ "  @JmxOperation\n" //
+				+ "  public long add(long amount, String why) { return hits += amount; }\n" //
+				+ "  @JmxOperation\n" //
+				+ "  public void reset() { hits = 0; }\n" //
+				+ "  @JmxOperation\n" //
+				+ "  public void fail() { throw new IllegalStateException(\"boom\"); }\n" //
+				+ "}\n";
+		String errors = compile(source);
+		assertEquals("", errors);
+
+		ClassLoader classLoader = new URLClassLoader(new URL[] { outputDir.toURI().toURL() }, getClass().getClassLoader());
+		Class<?> clazz = classLoader.loadClass(CLASS_NAME);
+		Class<?> adapterClass = classLoader.loadClass(CLASS_NAME + JmxServer.ADAPTER_CLASS_SUFFIX);
+		Object obj = clazz.newInstance();
+		DynamicMBean mbean = (DynamicMBean) adapterClass.getConstructor(clazz).newInstance(obj);
+
+		MBeanInfo info = mbean.getMBeanInfo();
+		assertEquals(CLASS_NAME, info.getClassName());
+		assertEquals("Some \"counters\"", info.getDescription());
+		MBeanAttributeInfo[] attributes = info.getAttributes();
+		// plus the fingerprint
+		assertEquals(6, attributes.length);
+		MBeanAttributeInfo hitsInfo = findAttribute(attributes, "hits");
+		assertEquals("long", hitsInfo.getType());
+		assertTrue(hitsInfo.isReadable());
+		assertTrue(hitsInfo.isWritable());
+		assertEquals("requests", hitsInfo.getDescriptor().getFieldValue(JmxDescriptors.UNITS_FIELD));
+		assertEquals("counter", hitsInfo.getDescriptor().getFieldValue(JmxDescriptors.METRIC_TYPE_FIELD));
+		assertEquals(JmxDescriptors.fingerprint(info), mbean.getAttribute(JmxDescriptors.FINGERPRINT_ATTRIBUTE));
+		assertTrue(findAttribute(attributes, "enabled").isIs());
+		assertEquals("[I", findAttribute(attributes, "buckets").getType());
+		assertEquals("the name", findAttribute(attributes, "name").getDescription());
+		assertEquals(String.class.getName(), findAttribute(attributes, "name").getType());
+		MBeanOperationInfo[] operations = info.getOperations();
+		assertEquals(4, operations.length);
+		assertEquals("amount", operations[0].getSignature()[0].getName());
+
+		assertEquals(3L, mbean.getAttribute("hits"));
+		assertEquals(10, mbean.getAttribute("max"));
+		assertEquals("foo", mbean.getAttribute("name"));
+		assertEquals(false, mbean.getAttribute("enabled"));
+		mbean.setAttribute(new Attribute("hits", 5L));
+		mbean.setAttribute(new Attribute("max", 20));
+		assertEquals(5L, mbean.getAttribute("hits"));
+		assertEquals(20, mbean.getAttribute("max"));
+		try {
+			mbean.setAttribute(new Attribute("name", "bar"));
+			fail("Should have thrown");
+		} catch (AttributeNotFoundException e) {
+			// expected
+		}
+		try {
+			mbean.getAttribute("unknown");
+			fail("Should have thrown");
+		} catch (AttributeNotFoundException e) {
+			// expected
+		}
+		List<Attribute> list = mbean.getAttributes(new String[] { "hits", "max" }).asList();
+		assertEquals(2, list.size());
+		assertEquals(5L, list.get(0).getValue());
+
+		assertEquals(7L, mbean.invoke("add", new Object[] { 2 }, new String[] { "int" }));
+		assertEquals(10L, mbean.invoke("add", new Object[] { 3L, "why" },
+				new String[] { "long", String.class.getName() }));
+		assertNull(mbean.invoke("reset", null, null));
+		assertEquals(0L, mbean.getAttribute("hits"));
+		try {
+			mbean.invoke("add", new Object[] { 2 }, new String[] { "long" });
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			// expected
+		}
+		try {
+			mbean.invoke("fail", null, null);
+			fail("Should have thrown");
+		} catch (javax.management.ReflectionException e) {
+			assertEquals("boom", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testRegisterAdapter() throws Exception {
+		String source = "package com.j256.processortest;\n" //
+				+ "import com.j256.simplejmx.common.*;\n" //
+				+ "@JmxResource(domainName = \"j256\", beanName = \"counters\")\n" //
+				+ "public class Counters {\n" //
+				+ "  @JmxAttributeField\n" //
+				+ "  private int hits = 10;\n" //
+				+ "}\n";
+		assertEquals("", compile(source));
+		ClassLoader classLoader = new URLClassLoader(new URL[] { outputDir.toURI().toURL() }, getClass().getClassLoader());
+		Object obj = classLoader.loadClass(CLASS_NAME).newInstance();
+
+		MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		ObjectName objectName = new ObjectName("j256:name=counters");
+		mbeanServer.registerMBean(
+				classLoader.loadClass(CLASS_NAME + JmxServer.ADAPTER_CLASS_SUFFIX).getConstructors()[0].newInstance(obj),
+				objectName);
+		assertEquals(10, mbeanServer.getAttribute(objectName, "hits"));
+		assertEquals(CLASS_NAME, mbeanServer.getObjectInstance(objectName).getClassName());
+	}
+
+	@Test
+	public void testServerUsesAdapter() throws Exception {
+		String source = "package com.j256.processortest;\n" //
+				+ "import com.j256.simplejmx.common.*;\n" //
+				+ "@JmxResource(domainName = \"j256\", beanName = \"counters\")\n" //
+				+ "public class Counters {\n" //
+				+ "  @JmxAttributeField\n" //
+				+ "  private int hits = 10;\n" //
+				+ "}\n";
+		assertEquals("", compile(source));
+		ClassLoader classLoader =
+				new URLClassLoader(new URL[] { outputDir.toURI().toURL() }, getClass().getClassLoader());
+		Object obj = classLoader.loadClass(CLASS_NAME).newInstance();
+
+		JmxServer server = new JmxServer(JMX_PORT);
+		ObjectName objectName = new ObjectName("j256:name=counters");
+		try {
+			server.start();
+			server.register(obj);
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(10, mbeanServer.getAttribute(objectName, "hits"));
+			// the registered mbean is the generated adapter which was loaded with the object and not a ReflectionMbean
+			assertSame(classLoader, mbeanServer.getClassLoaderFor(objectName));
+			assertFalse(getClass().getClassLoader() == mbeanServer.getClassLoaderFor(objectName));
+		} finally {
+			server.unregister(objectName);
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testBadAttributeMethod() throws Exception {
+		String source = "package com.j256.processortest;\n" //
+				+ "import com.j256.simplejmx.common.*;\n" //
+				+ "@JmxResource(domainName = \"j256\")\n" //
+				+ "public class Counters {\n" //
+				+ "  @JmxAttributeMethod\n" //
+				+ "  public int hits() { return 1; }\n" //
+				+ "  @JmxAttributeMethod\n" //
+				+ "  public int isFoo() { return 1; }\n" //
+				+ "  @JmxAttributeMethod\n" //
+				+ "  public void getBar() { }\n" //
+				+ "  @JmxAttributeMethod\n" //
+				+ "  public int setBaz(int baz) { return baz; }\n" //
+				+ "  @JmxOperation\n" //
+				+ "  public void getThing() { }\n" //
+				+ "  @JmxAttributeField(isWritable = true)\n" //
+				+ "  private final int max = 1;\n" //
+				+ "  @JmxOperation(cacheMillis = 10)\n" //
+				+ "  public void reset() { }\n" //
+				+ "}\n";
+		String errors = compile(source);
+		assertTrue(errors, errors.contains("does not start with 'get' or 'set'"));
+		assertTrue(errors, errors.contains("does not return a boolean"));
+		assertTrue(errors, errors.contains("does not return anything"));
+		assertTrue(errors, errors.contains("does not return void"));
+		assertTrue(errors, errors.contains("Operation method cannot start with"));
+		assertTrue(errors, errors.contains("writable but it is final"));
+		assertTrue(errors, errors.contains("operationAction is not INFO"));
+		assertFalse(new File(outputDir, PACKAGE_DIR + "/Counters" + JmxServer.ADAPTER_CLASS_SUFFIX + ".class").exists());
+	}
+
+	@Test
+	public void testPrivateClass() throws Exception {
+		String source = "package com.j256.processortest;\n" //
+				+ "import com.j256.simplejmx.common.*;\n" //
+				+ "public class Counters {\n" //
+				+ "  @JmxResource(domainName = \"j256\")\n" //
+				+ "  private static class Inner {\n" //
+				+ "    @JmxAttributeField\n" //
+				+ "    private int hits;\n" //
+				+ "  }\n" //
+				+ "}\n";
+		assertEquals("", compile(source));
+		assertTrue(new File(outputDir, PACKAGE_DIR + "/Counters$Inner.class").exists());
+		assertFalse(new File(outputDir, PACKAGE_DIR + "/Counters$Inner" + JmxServer.ADAPTER_CLASS_SUFFIX + ".class")
+				.exists());
+	}
+
+	private String compile(String source) throws IOException {
+		File sourceFile = new File(outputDir, PACKAGE_DIR + "/Counters.java");
+		FileWriter writer = new FileWriter(sourceFile);
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		// the surefire class-path may be a manifest jar so we use the location of our classes
+		String classPath = new File(JmxResource.class.getProtectionDomain().getCodeSource().getLocation().getPath())
+				.getPath();
+		StringWriter errors = new StringWriter();
+		Boolean result = compiler.getTask(errors, null, null,
+				Arrays.asList("-classpath", classPath, "-d", outputDir.getPath(), "-s", outputDir.getPath(),
+						"-processor", JmxAnnotationProcessor.class.getName(), "-Xlint:none"),
+				null, compiler.getStandardFileManager(null, null, null).getJavaFileObjects(sourceFile)).call();
+		if (result) {
+			return "";
+		} else {
+			return errors.toString();
+		}
+	}
+
+	private MBeanAttributeInfo findAttribute(MBeanAttributeInfo[] attributes, String name) {
+		for (MBeanAttributeInfo attribute : attributes) {
+			if (attribute.getName().equals(name)) {
+				return attribute;
+			}
+		}
+		fail("Could not find attribute " + name);
+		return null;
+	}
+}
@@ -0,0 +1,541 @@
+package com.j256.simplejmx.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.DynamicMBean;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import com.j256.simplejmx.common.BaseJmxSelfNaming;
+import com.j256.simplejmx.common.JmxAttributeField;
+import com.j256.simplejmx.common.JmxAttributeMethod;
+import com.j256.simplejmx.common.JmxOperation;
+import com.j256.simplejmx.common.JmxResource;
+import com.j256.simplejmx.common.ObjectNameUtil;
+
+/**
+ * Little benchmark program that measures the calls per second and the bytes allocated per call of the mbean dispatch
+ * paths. It calls the {@link DynamicMBean} methods directly so the numbers are not swamped by the RMI transport.
+ *
+ * <p>
+ * Usage:
+ * <tt>java ... BenchmarkTestProgram [dispatch | opentype | tunable | register [number-of-beans] |
+ * register-infos [number-of-beans] | record [number-of-threads]]</tt>
+ * </p>
+ *
+ * <p>
+ * The opentype benchmark compares reading attributes as raw Java objects and converted to open types.
+ * </p>
+ *
+ * <p>
+ * The tunable benchmark compares the cost of reading a setting from a plain field, a volatile field, and a
+ * {@link JmxTunable} with get() and through its invoker. Then the tunable is changed through the mbean and the invoker
+ * is measured again after the code that folded the old value was thrown away and recompiled.
+ * </p>
+ *
+ * <p>
+ * The register benchmark measures the time to register a large number of beans of the same class into an MBeanServer
+ * and the heap used per registered bean. It needs a big heap: something like -Xmx2g for the default 1 million beans.
+ * The register-infos benchmark does the same but with the user-info constructor so the reflection information is
+ * built for each bean.
+ * </p>
+ *
+ * <p>
+ * The record benchmark measures the cost of recording a value from a lot of threads at the same time, 32 by default,
+ * into a synchronized histogram like the ones we used to write by hand, an AtomicLong, a {@link JmxCounter}, a
+ * {@link JmxMeter}, a {@link JmxHistogram}, a {@link JmxTopK}, a windowed {@link JmxHyperLogLog}, and a
+ * {@link JmxQuantileSketch}. It reports the nanoseconds per record of each thread and the bytes allocated per record.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class BenchmarkTestProgram {
+
+	private static final int WARMUP_ITERATIONS = 2000000;
+	private static final int ITERATIONS = 10000000;
+	private static final String[] ATTRIBUTE_NAMES = new String[] { "hits", "misses", "enabled" };
+	private static final String[] ADD_SIGNATURE = new String[] { int.class.getName(), int.class.getName() };
+	private static final Object[] ADD_PARAMS = new Object[] { 1, 2 };
+	private static final int RECORD_ITERATIONS = 2000000;
+
+	private static final MethodHandle LIMIT_INVOKER = TunableSettings.limit.invoker();
+	private static int plainLimit = 100;
+	private static volatile int volatileLimit = 100;
+
+	private final com.sun.management.ThreadMXBean threadMxBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Throwable {
+		new BenchmarkTestProgram().doMain(args);
+	}
+
+	private void doMain(String[] args) throws Throwable {
+		String which = (args.length == 0 ? "dispatch" : args[0]);
+		if (which.equals("dispatch")) {
+			benchmarkDispatch();
+		} else if (which.equals("opentype")) {
+			benchmarkOpenType();
+		} else if (which.equals("tunable")) {
+			benchmarkTunable();
+		} else if (which.equals("register")) {
+			benchmarkRegister(args.length > 1 ? Integer.parseInt(args[1]) : 1000000, false);
+		} else if (which.equals("register-infos")) {
+			benchmarkRegister(args.length > 1 ? Integer.parseInt(args[1]) : 1000000, true);
+		} else if (which.equals("record")) {
+			benchmarkRecord(args.length > 1 ? Integer.parseInt(args[1]) : 32);
+		} else {
+			System.err.println("Unknown benchmark: " + which);
+		}
+	}
+
+	private void benchmarkDispatch() throws Exception {
+		final DynamicMBean mbean = new ReflectionMbean(new CacheCounters());
+		run("getAttribute(method)", new Call() {
+			public Object call() throws Exception {
+				return mbean.getAttribute("hits");
+			}
+		});
+		run("getAttribute(field)", new Call() {
+			public Object call() throws Exception {
+				return mbean.getAttribute("enabled");
+			}
+		});
+		run("getAttributes(3)", new Call() {
+			public Object call() {
+				return mbean.getAttributes(ATTRIBUTE_NAMES);
+			}
+		});
+		run("invoke(int,int)", new Call() {
+			public Object call() throws Exception {
+				return mbean.invoke("add", ADD_PARAMS, ADD_SIGNATURE);
+			}
+		});
+	}
+
+	private void benchmarkOpenType() throws Exception {
+		final DynamicMBean rawMbean = new ReflectionMbean(new RawPoolStats());
+		final DynamicMBean openMbean = new ReflectionMbean(new OpenPoolStats());
+		run("raw getAttribute(long)", new Call() {
+			public Object call() throws Exception {
+				return rawMbean.getAttribute("active");
+			}
+		});
+		run("open getAttribute(long)", new Call() {
+			public Object call() throws Exception {
+				return openMbean.getAttribute("active");
+			}
+		});
+		run("raw getAttribute(pojo)", new Call() {
+			public Object call() throws Exception {
+				return rawMbean.getAttribute("pool");
+			}
+		});
+		run("open getAttribute(pojo)", new Call() {
+			public Object call() throws Exception {
+				return openMbean.getAttribute("pool");
+			}
+		});
+		run("raw getAttribute(list)", new Call() {
+			public Object call() throws Exception {
+				return rawMbean.getAttribute("names");
+			}
+		});
+		run("open getAttribute(list)", new Call() {
+			public Object call() throws Exception {
+				return openMbean.getAttribute("names");
+			}
+		});
+	}
+
+	private void benchmarkTunable() throws Throwable {
+		final DynamicMBean mbean = new ReflectionMbean(new TunableSettings());
+		runReads("plain field", new ReadLoop() {
+			public long read(int iterations) {
+				long sum = 0;
+				for (int i = 0; i < iterations; i++) {
+					sum += plainLimit;
+				}
+				return sum;
+			}
+		});
+		runReads("volatile field", new ReadLoop() {
+			public long read(int iterations) {
+				long sum = 0;
+				for (int i = 0; i < iterations; i++) {
+					sum += volatileLimit;
+				}
+				return sum;
+			}
+		});
+		runReads("JmxTunable.get()", new ReadLoop() {
+			public long read(int iterations) {
+				long sum = 0;
+				for (int i = 0; i < iterations; i++) {
+					sum += TunableSettings.limit.get();
+				}
+				return sum;
+			}
+		});
+		ReadLoop invokerLoop = new ReadLoop() {
+			public long read(int iterations) throws Throwable {
+				long sum = 0;
+				for (int i = 0; i < iterations; i++) {
+					sum += (int) LIMIT_INVOKER.invokeExact();
+				}
+				return sum;
+			}
+		};
+		runReads("JmxTunable.invoker()", invokerLoop);
+		mbean.setAttribute(new Attribute("limit", 200));
+		runReads("invoker() after set", invokerLoop);
+	}
+
+	private void benchmarkRegister(int beanCount, boolean userInfos) throws Exception {
+		MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		long startUsed = usedHeap();
+		long startNanos = System.nanoTime();
+		for (int i = 0; i < beanCount; i++) {
+			// this is what JmxServer.register(...) does
+			ConnectionCounters counters = new ConnectionCounters(i);
+			ReflectionMbean mbean;
+			if (userInfos) {
+				mbean = new ReflectionMbean(counters, null, null, null);
+			} else {
+				mbean = new ReflectionMbean(counters);
+			}
+			mbeanServer.registerMBean(mbean, ObjectNameUtil.makeObjectName(counters));
+		}
+		long elapsedNanos = System.nanoTime() - startNanos;
+		long usedBytes = usedHeap() - startUsed;
+		System.out.printf("registered %,d beans: %,.0f ns/register, %,d bytes/bean (including the MBeanServer entry)%n",
+				beanCount, (double) elapsedNanos / beanCount, usedBytes / beanCount);
+		if (mbeanServer.getMBeanCount() < beanCount) {
+			System.err.println("Not all beans were registered");
+		}
+	}
+
+	private void benchmarkRecord(int threadCount) throws Exception {
+		final long[] buckets = new long[1024];
+		runContended("synchronized histogram", threadCount, new Recorder() {
+			public void record(long value) {
+				synchronized (buckets) {
+					buckets[(int) (value & 1023)]++;
+				}
+			}
+		});
+		final AtomicLong atomicLong = new AtomicLong();
+		runContended("AtomicLong", threadCount, new Recorder() {
+			public void record(long value) {
+				atomicLong.incrementAndGet();
+			}
+		});
+		final JmxCounter counter = new JmxCounter();
+		runContended("JmxCounter", threadCount, new Recorder() {
+			public void record(long value) {
+				counter.increment();
+			}
+		});
+		final JmxMeter meter = new JmxMeter();
+		runContended("JmxMeter", threadCount, new Recorder() {
+			public void record(long value) {
+				meter.mark();
+			}
+		});
+		final JmxHistogram histogram = new JmxHistogram(TimeUnit.MINUTES.toMicros(1));
+		runContended("JmxHistogram", threadCount, new Recorder() {
+			public void record(long value) {
+				histogram.record(value);
+			}
+		});
+		final JmxTopK topK = new JmxTopK(20);
+		final String[] keys = new String[1024];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "tenant" + i;
+		}
+		runContended("JmxTopK", threadCount, new Recorder() {
+			public void record(long value) {
+				// skewed so a few of the keys are hot
+				topK.record(keys[(int) ((value * value) >>> 14)]);
+			}
+		});
+		final JmxHyperLogLog hyperLogLog = new JmxHyperLogLog(14, TimeUnit.MINUTES.toMillis(1));
+		runContended("JmxHyperLogLog", threadCount, new Recorder() {
+			public void record(long value) {
+				hyperLogLog.record(value);
+			}
+		});
+		final JmxQuantileSketch quantileSketch = new JmxQuantileSketch();
+		runContended("JmxQuantileSketch", threadCount, new Recorder() {
+			public void record(long value) {
+				quantileSketch.record(value);
+			}
+		});
+		final JmxHistogram intervalHistogram = new JmxHistogram(TimeUnit.MINUTES.toMicros(1), 2, true);
+		final DynamicMBean mbean = new ReflectionMbean(new LatencyStats(intervalHistogram));
+		// a scraper reads the percentiles while the threads record
+		Thread scraper = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						mbean.getAttribute("latency.p99");
+						Thread.sleep(10);
+					}
+				} catch (InterruptedException e) {
+					// done
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		scraper.start();
+		runContended("JmxHistogram scraped", threadCount, new Recorder() {
+			public void record(long value) {
+				intervalHistogram.record(value);
+			}
+		});
+		scraper.interrupt();
+		scraper.join();
+	}
+
+	private void runContended(String label, int threadCount, final Recorder recorder) throws Exception {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final long[] nanos = new long[threadCount];
+		final long[] allocatedBytes = new long[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			final int threadIndex = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					// latencies in micros from a few to a few thousand
+					long value = threadIndex * 7919;
+					for (int j = 0; j < WARMUP_ITERATIONS; j++) {
+						recorder.record((value += 7919) & 4095);
+					}
+					try {
+						startLatch.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long threadId = Thread.currentThread().getId();
+					long startBytes = threadMxBean.getThreadAllocatedBytes(threadId);
+					long startNanos = System.nanoTime();
+					for (int j = 0; j < RECORD_ITERATIONS; j++) {
+						recorder.record((value += 7919) & 4095);
+					}
+					nanos[threadIndex] = System.nanoTime() - startNanos;
+					allocatedBytes[threadIndex] = threadMxBean.getThreadAllocatedBytes(threadId) - startBytes;
+				}
+			});
+			threads[i].start();
+		}
+		startLatch.countDown();
+		long totalNanos = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < threadCount; i++) {
+			threads[i].join();
+			totalNanos += nanos[i];
+			totalBytes += allocatedBytes[i];
+		}
+		long records = (long) threadCount * RECORD_ITERATIONS;
+		System.out.printf("%-24s %2d threads %10.1f ns/record %8.3f bytes/record%n", label, threadCount,
+				(double) totalNanos / records, (double) totalBytes / records);
+	}
+
+	private long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private void run(String label, Call call) throws Exception {
+		Object result = null;
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			result = call.call();
+		}
+		long threadId = Thread.currentThread().getId();
+		long startBytes = threadMxBean.getThreadAllocatedBytes(threadId);
+		long startNanos = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			result = call.call();
+		}
+		long elapsedNanos = System.nanoTime() - startNanos;
+		long allocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId) - startBytes;
+		System.out.printf("%-24s %,14.0f calls/sec %8.1f bytes/call (last result %s)%n", label, ITERATIONS
+				/ (elapsedNanos / 1000000000.0), (double) allocatedBytes / ITERATIONS, result);
+	}
+
+	/**
+	 * The reads are done in a loop inside of the call so the JIT can hoist or fold the ones that it can.
+	 */
+	private void runReads(String label, ReadLoop loop) throws Throwable {
+		long result = 0;
+		for (int i = 0; i < 20; i++) {
+			result += loop.read(WARMUP_ITERATIONS);
+		}
+		long startNanos = System.nanoTime();
+		result = loop.read(ITERATIONS);
+		long elapsedNanos = System.nanoTime() - startNanos;
+		System.out.printf("%-24s %10.3f ns/read (last result %d)%n", label, (double) elapsedNanos / ITERATIONS,
+				result);
+	}
+
+	private interface Call {
+		Object call() throws Exception;
+	}
+
+	private interface ReadLoop {
+		long read(int iterations) throws Throwable;
+	}
+
+	private interface Recorder {
+		void record(long value);
+	}
+
+	/**
+	 * Bean with a mix of attribute methods, attribute fields, and operations.
+	 */
+	@JmxResource(domainName = "j256.simplejmx", beanName = "CacheCounters")
+	public static class CacheCounters {
+
+		@JmxAttributeField
+		private boolean enabled = true;
+		private long hits = 10;
+		private long misses = 2;
+
+		@JmxAttributeMethod
+		public long getHits() {
+			return hits;
+		}
+
+		@JmxAttributeMethod
+		public long getMisses() {
+			return misses;
+		}
+
+		@JmxOperation
+		public int add(int first, int second) {
+			return first + second;
+		}
+	}
+
+	/**
+	 * Bean with a tunable setting.
+	 */
+	@JmxResource(domainName = "j256.simplejmx", beanName = "TunableSettings")
+	public static class TunableSettings {
+
+		@JmxAttributeField(isWritable = true)
+		static final JmxTunable<Integer> limit = new JmxTunable<Integer>(int.class, 100);
+	}
+
+	/**
+	 * Bean with a histogram of latencies.
+	 */
+	@JmxResource(domainName = "j256.simplejmx", beanName = "LatencyStats")
+	public static class LatencyStats {
+
+		@JmxAttributeField(unit = "us")
+		private final JmxHistogram latency;
+
+		public LatencyStats(JmxHistogram latency) {
+			this.latency = latency;
+		}
+	}
+
+	/**
+	 * Bean with a simple, a POJO, and a List attribute which returns them as is.
+	 */
+	@JmxResource(domainName = "j256.simplejmx", beanName = "RawPoolStats")
+	public static class RawPoolStats {
+
+		private final PoolInfo pool = new PoolInfo();
+		private final List<String> names = Arrays.asList("primary", "replica1", "replica2");
+
+		@JmxAttributeMethod
+		public long getActive() {
+			return pool.active;
+		}
+
+		@JmxAttributeMethod
+		public PoolInfo getPool() {
+			return pool;
+		}
+
+		@JmxAttributeMethod
+		public List<String> getNames() {
+			return names;
+		}
+	}
+
+	/**
+	 * The same bean but with the values converted to open types.
+	 */
+	@JmxResource(domainName = "j256.simplejmx", beanName = "OpenPoolStats", openTypes = true)
+	public static class OpenPoolStats extends RawPoolStats {
+	}
+
+	/**
+	 * Value which is converted to composite-data.
+	 */
+	public static class PoolInfo {
+
+		long active = 12;
+		long idle = 4;
+		String name = "main";
+
+		public long getActive() {
+			return active;
+		}
+
+		public long getIdle() {
+			return idle;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Small per-connection bean of which we register a lot.
+	 */
+	@JmxResource(domainName = "j256.simplejmx")
+	public static class ConnectionCounters extends BaseJmxSelfNaming {
+
+		private final int id;
+		@JmxAttributeField
+		private long bytesRead;
+		@JmxAttributeField
+		private long bytesWritten;
+
+		public ConnectionCounters(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public String getJmxNameOfObject() {
+			return "connection" + id;
+		}
+
+		@JmxAttributeMethod
+		public long getTotalBytes() {
+			return bytesRead + bytesWritten;
+		}
+
+		@JmxOperation
+		public void resetCounts() {
+			bytesRead = 0;
+			bytesWritten = 0;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.j256.simplejmx.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.junit.Test;
+
+import com.j256.simplejmx.common.JmxFolderName;
+
+public class JmxBeanBuilderTest {
+
+	private static final String DOMAIN_NAME = "j256";
+	private static final String BEAN_NAME = "cache";
+
+	@Test
+	public void testAttributesAndOperations() throws Exception {
+		final AtomicLong hits = new AtomicLong(10);
+		final AtomicInteger limit = new AtomicInteger(100);
+		DynamicMBean mbean = new JmxBeanBuilder(null, DOMAIN_NAME, BEAN_NAME) //
+				.description("Our cache")
+				.attribute("hits", Long.class, new Callable<Long>() {
+					public Long call() {
+						return hits.get();
+					}
+				})
+				.writableAttribute("limit", Integer.class, new Callable<Integer>() {
+					public Integer call() {
+						return limit.get();
+					}
+				}, new JmxAttributeSetter<Integer>() {
+					public void setValue(Integer value) {
+						limit.set(value);
+					}
+				})
+				.operation("reset", new Runnable() {
+					public void run() {
+						hits.set(0);
+					}
+				})
+				.operation("add", long.class, new Class<?>[] { long.class }, new JmxOperationHandler() {
+					public Object invoke(Object[] params) {
+						return hits.addAndGet((Long) params[0]);
+					}
+				})
+				.build();
+
+		assertEquals(10L, mbean.getAttribute("hits"));
+		assertEquals(100, mbean.getAttribute("limit"));
+		mbean.setAttribute(new Attribute("limit", 200));
+		assertEquals(200, limit.get());
+		try {
+			mbean.setAttribute(new Attribute("hits", 1L));
+			fail("Should have thrown");
+		} catch (AttributeNotFoundException e) {
+			// expected
+		}
+		try {
+			mbean.getAttribute("unknown");
+			fail("Should have thrown");
+		} catch (AttributeNotFoundException e) {
+			// expected
+		}
+		try {
+			mbean.setAttribute(new Attribute("limit", "wrong type"));
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			// expected
+		}
+		assertEquals(15L, mbean.invoke("add", new Object[] { 5L }, new String[] { "long" }));
+		assertNull(mbean.invoke("reset", null, null));
+		assertEquals(0L, hits.get());
+		try {
+			mbean.invoke("add", new Object[] { 5 }, new String[] { "int" });
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			// expected
+		}
+
+		MBeanInfo info = mbean.getMBeanInfo();
+		assertEquals("Our cache", info.getDescription());
+		MBeanAttributeInfo[] attributes = info.getAttributes();
+		// plus the fingerprint
+		assertEquals(3, attributes.length);
+		assertEquals("hits", attributes[0].getName());
+		assertEquals(Long.class.getName(), attributes[0].getType());
+		assertTrue(attributes[0].isReadable());
+		assertFalse(attributes[0].isWritable());
+		assertTrue(attributes[1].isWritable());
+		MBeanOperationInfo[] operations = info.getOperations();
+		assertEquals(2, operations.length);
+		assertEquals("void", operations[0].getReturnType());
+		assertEquals("long", operations[1].getSignature()[0].getType());
+	}
+
+	@Test
+	public void testGetterThrows() throws Exception {
+		DynamicMBean mbean = new JmxBeanBuilder(null, DOMAIN_NAME, BEAN_NAME) //
+				.attribute("broken", new Callable<Object>() {
+					public Object call() {
+						throw new IllegalStateException("broken");
+					}
+				})
+				.build();
+		try {
+			mbean.getAttribute("broken");
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			assertEquals("broken", e.getCause().getMessage());
+		}
+		assertEquals("Getting attribute threw: Invoking getter for attribute broken threw exception", mbean
+				.getAttributes(new String[] { "broken" }).asList().get(0).getValue());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateAttribute() {
+		Callable<Object> getter = new Callable<Object>() {
+			public Object call() {
+				return null;
+			}
+		};
+		new JmxBeanBuilder(null, DOMAIN_NAME, BEAN_NAME).attribute("foo", getter).attribute("foo", getter);
+	}
+
+	@Test
+	public void testFolders() throws Exception {
+		JmxBeanBuilder builder =
+				new JmxBeanBuilder(null, DOMAIN_NAME, BEAN_NAME, new JmxFolderName("caches"), new JmxFolderName("type",
+						"lru"));
+		assertEquals(new ObjectName(DOMAIN_NAME + ":00=caches,type=lru,name=" + BEAN_NAME), builder.getObjectName());
+
+		MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		mbeanServer.registerMBean(builder.attribute("size", Integer.class, new Callable<Integer>() {
+			public Integer call() {
+				return 12;
+			}
+		}).build(), builder.getObjectName());
+		assertEquals(12, mbeanServer.getAttribute(builder.getObjectName(), "size"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegisterWithoutServer() throws Exception {
+		new JmxBeanBuilder(null, DOMAIN_NAME, BEAN_NAME).register();
+	}
+}
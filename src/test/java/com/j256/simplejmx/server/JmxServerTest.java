@@ -1,23 +1,48 @@
 package com.j256.simplejmx.server;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.InstanceNotFoundException;
 import javax.management.JMException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
+import javax.management.Query;
 import javax.management.ReflectionException;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
 
 import org.junit.Test;
 
 import com.j256.simplejmx.client.JmxClient;
+import com.j256.simplejmx.client.JmxPageIterator;
 import com.j256.simplejmx.common.JmxAttributeFieldInfo;
 import com.j256.simplejmx.common.JmxAttributeMethod;
 import com.j256.simplejmx.common.JmxAttributeMethodInfo;
 import com.j256.simplejmx.common.JmxFolderName;
+import com.j256.simplejmx.common.JmxKeyedEntities;
+import com.j256.simplejmx.common.JmxKeyedResource;
 import com.j256.simplejmx.common.JmxOperation;
 import com.j256.simplejmx.common.JmxOperationInfo;
 import com.j256.simplejmx.common.JmxOperationInfo.OperationAction;
@@ -166,6 +191,48 @@ public class JmxServerTest {
 		}
 	}
 
+	@Test
+	public void testRegisterBuilder() throws Exception {
+		JmxServer server = new JmxServer(DEFAULT_PORT);
+		final AtomicInteger value = new AtomicInteger(FOO_VALUE);
+		ObjectName objectName = null;
+		try {
+			server.start();
+			JmxClient client = new JmxClient(DEFAULT_PORT);
+
+			objectName =
+					server.register(DOMAIN_NAME, OBJECT_NAME)
+							.writableAttribute("foo", Integer.class, new Callable<Integer>() {
+								public Integer call() {
+									return value.get();
+								}
+							}, new JmxAttributeSetter<Integer>() {
+								public void setValue(Integer newValue) {
+									value.set(newValue);
+								}
+							})
+							.operation("resetFoo", new Runnable() {
+								public void run() {
+									value.set(0);
+								}
+							})
+							.register();
+			assertEquals(FOO_VALUE, client.getAttribute(DOMAIN_NAME, OBJECT_NAME, "foo"));
+
+			// the string is converted using the attribute type
+			client.setAttribute(DOMAIN_NAME, OBJECT_NAME, "foo", Integer.toString(FOO_VALUE + 1));
+			assertEquals(FOO_VALUE + 1, value.get());
+
+			client.invokeOperation(DOMAIN_NAME, OBJECT_NAME, "resetFoo");
+			assertEquals(0, client.getAttribute(DOMAIN_NAME, OBJECT_NAME, "foo"));
+		} finally {
+			if (objectName != null) {
+				server.unregister(objectName);
+			}
+			server.stop();
+		}
+	}
+
 	@Test(expected = JMException.class)
 	public void testDoubleRegister() throws Exception {
 		JmxServer server = new JmxServer(DEFAULT_PORT);
@@ -429,8 +496,232 @@ public class JmxServerTest {
 		}
 	}
 
+	@Test
+	public void testRegisterWeakReaped() throws Exception {
+		JmxServer server = new JmxServer(DEFAULT_PORT);
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = ObjectNameUtil.makeObjectName(DOMAIN_NAME, OBJECT_NAME);
+		try {
+			server.start();
+			server.registerWeak(new TestObject());
+			assertTrue(mbeanServer.isRegistered(objectName));
+			assertEquals(1, server.getWeakLiveCount());
+			// nothing refers to the object anymore so it will be collected and reaped
+			for (int i = 0; i < 100 && server.getWeakReapedCount() == 0; i++) {
+				System.gc();
+				Thread.sleep(50);
+			}
+			assertEquals(1, server.getWeakReapedCount());
+			assertEquals(0, server.getWeakLiveCount());
+			assertFalse(mbeanServer.isRegistered(objectName));
+		} finally {
+			server.unregister(objectName);
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testRegisterWeakReapedAfterRestart() throws Exception {
+		JmxServer server = new JmxServer(DEFAULT_PORT);
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = ObjectNameUtil.makeObjectName(DOMAIN_NAME, OBJECT_NAME);
+		try {
+			server.start();
+			server.registerWeak(new TestObject());
+			server.stop();
+			// the reaper is started again along with the server, on other ports so the old ones need not be freed
+			server.setRegistryPort(DEFAULT_PORT + 2);
+			server.setServerPort(DEFAULT_PORT + 3);
+			server.start();
+			for (int i = 0; i < 100 && server.getWeakReapedCount() == 0; i++) {
+				System.gc();
+				Thread.sleep(50);
+			}
+			assertEquals(1, server.getWeakReapedCount());
+			assertFalse(mbeanServer.isRegistered(objectName));
+		} finally {
+			server.unregister(objectName);
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testRegisterWeakUnregister() throws Exception {
+		JmxServer server = new JmxServer(DEFAULT_PORT);
+		TestObject obj = new TestObject();
+		try {
+			server.start();
+			server.registerWeak(obj);
+			JmxClient client = new JmxClient(DEFAULT_PORT);
+			assertEquals(FOO_VALUE, client.getAttribute(DOMAIN_NAME, OBJECT_NAME, "foo"));
+			server.unregister(obj);
+			assertEquals(0, server.getWeakLiveCount());
+			// the same name can be registered again
+			server.registerWeak(obj);
+			assertEquals(1, server.getWeakLiveCount());
+		} finally {
+			server.unregister(obj);
+			server.stop();
+		}
+		assertEquals(0, server.getWeakReapedCount());
+	}
+
+	@Test
+	public void testRegisterVirtual() throws Exception {
+		JmxServer server = new JmxServer(DEFAULT_PORT);
+		final List<String> resolved = new ArrayList<String>();
+		JmxVirtualResolver resolver = new JmxVirtualResolver() {
+			public Object resolve(String beanName) {
+				if (!beanName.startsWith("tenant")) {
+					return null;
+				}
+				resolved.add(beanName);
+				return new TestObject();
+			}
+			public Iterable<String> getBeanNames() {
+				List<String> names = new ArrayList<String>();
+				for (int i = 0; i < 25; i++) {
+					names.add("tenant" + i);
+				}
+				return names;
+			}
+		};
+		JmxFolderName[] folderNames = new JmxFolderName[] { new JmxFolderName("tenants") };
+		ObjectName tenant1 = ObjectNameUtil.makeObjectName(DOMAIN_NAME, "tenant1", folderNames);
+		ObjectName tenant2 = ObjectNameUtil.makeObjectName(DOMAIN_NAME, "tenant2", folderNames);
+		ObjectName tenant3 = ObjectNameUtil.makeObjectName(DOMAIN_NAME, "tenant3", folderNames);
+		ObjectName directory =
+				ObjectNameUtil.makeObjectName(DOMAIN_NAME, VirtualBeans.DIRECTORY_BEAN_NAME, folderNames);
+		try {
+			server.start();
+			// remote calls don't go through the forwarder until there are virtual beans
+			assertFalse(server.isVirtualForwarderInstalled());
+			ObjectName pattern = server.registerVirtual(DOMAIN_NAME, resolver, 2, folderNames);
+			assertTrue(server.isVirtualForwarderInstalled());
+			JmxClient client = new JmxClient(DEFAULT_PORT);
+			// nothing is resolved until it is used
+			assertTrue(resolved.isEmpty());
+			assertFalse(client.getBeanNames(DOMAIN_NAME).contains(tenant1));
+			assertEquals(FOO_VALUE, client.getAttribute(tenant1, "foo"));
+			client.setAttribute(tenant1, "foo", 10);
+			assertEquals(10, client.getAttribute(tenant1, "foo"));
+			client.invokeOperation(tenant1, "resetFoo");
+			assertEquals(0, client.getAttribute(tenant1, "foo"));
+			assertEquals(Arrays.asList("tenant1"), resolved);
+			assertEquals(FOO_VALUE, client.getAttribute(tenant2, "foo"));
+			// evicts tenant1 which is then resolved again
+			assertEquals(FOO_VALUE, client.getAttribute(tenant3, "foo"));
+			assertEquals(FOO_VALUE, client.getAttribute(tenant1, "foo"));
+			assertEquals(Arrays.asList("tenant1", "tenant2", "tenant3", "tenant1"), resolved);
+			assertEquals(2, client.getAttribute(directory, "cachedCount"));
+			assertEquals(2L, client.getAttribute(directory, "evictedCount"));
+			JMXConnector jmxConnector =
+					JMXConnectorFactory.connect(new JMXServiceURL(JmxClient.generalJmxUrlForHostNamePort("localhost",
+							DEFAULT_PORT)));
+			try {
+				MBeanServerConnection connection = jmxConnector.getMBeanServerConnection();
+				assertEquals(Collections.singleton(tenant1), connection.queryNames(tenant1, null));
+				// queries are not run against the virtual beans so they are left out
+				assertTrue(connection.queryNames(tenant1, Query.eq(Query.attr("foo"), Query.value(FOO_VALUE)))
+						.isEmpty());
+				assertTrue(connection.queryMBeans(tenant1, Query.eq(Query.attr("foo"), Query.value(FOO_VALUE)))
+						.isEmpty());
+			} finally {
+				jmxConnector.close();
+			}
+			try {
+				client.getAttribute(ObjectNameUtil.makeObjectName(DOMAIN_NAME, "unknown", folderNames), "foo");
+				fail("Should have thrown");
+			} catch (InstanceNotFoundException e) {
+				// expected
+			}
+			JmxPageIterator iterator = client.pageAttribute(directory, "names", 10);
+			List<Object> names = new ArrayList<Object>();
+			while (iterator.hasNext()) {
+				names.add(iterator.next());
+			}
+			assertEquals(25, names.size());
+			assertEquals("tenant24", names.get(24));
+			server.unregister(pattern);
+			try {
+				client.getAttribute(tenant2, "foo");
+				fail("Should have thrown");
+			} catch (InstanceNotFoundException e) {
+				// expected
+			}
+			assertFalse(client.getBeanNames(DOMAIN_NAME).contains(directory));
+			client.close();
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testRegisterAnnotatedDynamicMbean() throws Exception {
+		JmxServer server = new JmxServer(DEFAULT_PORT);
+		AnnotatedDynamicMbean obj = new AnnotatedDynamicMbean();
+		try {
+			server.start();
+			server.register(obj);
+			JmxClient client = new JmxClient(DEFAULT_PORT);
+			// it is wrapped like any other annotated object and not registered as is
+			assertEquals(FOO_VALUE, client.getAttribute(ObjectNameUtil.makeObjectName(obj), "foo"));
+			client.close();
+		} finally {
+			server.unregister(obj);
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testRegisterKeyed() throws Exception {
+		JmxServer server = new JmxServer(DEFAULT_PORT);
+		KeyedObject keyed = new KeyedObject();
+		keyed.entities.put(1, new TestObject());
+		keyed.entities.put(2, new TestObject());
+		try {
+			server.start();
+			server.register(keyed);
+			JmxClient client = new JmxClient(DEFAULT_PORT);
+			ObjectName objectName = ObjectNameUtil.makeObjectName(keyed);
+			assertEquals(2, client.getAttribute(objectName, "entityCount"));
+			client.invokeOperation(objectName, "writeEntityAttribute", "2", "foo", "5");
+			assertEquals(5, keyed.entities.get(2).getFoo());
+			assertEquals(5, client.invokeOperation(objectName, "readEntityAttribute", "2", "foo"));
+			client.close();
+		} finally {
+			server.unregister(keyed);
+			server.stop();
+		}
+	}
+
 	/* ============================================================= */
 
+	@JmxResource(domainName = DOMAIN_NAME, beanName = "AnnotatedDynamicMbean")
+	protected static class AnnotatedDynamicMbean implements DynamicMBean {
+		@JmxAttributeMethod
+		public int getFoo() {
+			return FOO_VALUE;
+		}
+		public Object getAttribute(String attribute) {
+			return "raw";
+		}
+		public void setAttribute(Attribute attribute) {
+		}
+		public AttributeList getAttributes(String[] attributes) {
+			return new AttributeList();
+		}
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			return null;
+		}
+		public MBeanInfo getMBeanInfo() {
+			return new MBeanInfo(getClass().getName(), "raw", null, null, null, null);
+		}
+	}
+
 	@JmxResource(domainName = DOMAIN_NAME, beanName = OBJECT_NAME)
 	protected static class TestObject {
 
@@ -570,4 +861,14 @@ public class JmxServerTest {
 			this.foo = newValue;
 		}
 	}
+
+	@JmxKeyedResource(domainName = DOMAIN_NAME, beanName = "keyed")
+	protected static class KeyedObject {
+		private final Map<Integer, TestObject> entities = new ConcurrentHashMap<Integer, TestObject>();
+
+		@JmxKeyedEntities
+		public Map<Integer, TestObject> getEntities() {
+			return entities;
+		}
+	}
 }
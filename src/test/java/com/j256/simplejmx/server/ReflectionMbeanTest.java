@@ -2,16 +2,49 @@ package com.j256.simplejmx.server;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
+import javax.management.Descriptor;
 import javax.management.JMException;
 import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
 import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.TabularData;
 
 import org.junit.After;
 import org.junit.Before;
@@ -20,8 +53,19 @@ import org.junit.Test;
 import com.j256.simplejmx.client.JmxClient;
 import com.j256.simplejmx.common.JmxAttributeField;
 import com.j256.simplejmx.common.JmxAttributeMethod;
+import com.j256.simplejmx.common.JmxAttributeMethodInfo;
+import com.j256.simplejmx.common.JmxAttributeSnapshot;
+import com.j256.simplejmx.common.JmxDescriptors;
+import com.j256.simplejmx.common.JmxKeyedEntities;
+import com.j256.simplejmx.common.JmxKeyedResource;
+import com.j256.simplejmx.common.JmxMetricKind;
 import com.j256.simplejmx.common.JmxOperation;
+import com.j256.simplejmx.common.JmxOperationInfo.OperationAction;
+import com.j256.simplejmx.common.JmxPaging;
+import com.j256.simplejmx.common.JmxQuantileSummary;
 import com.j256.simplejmx.common.JmxResource;
+import com.j256.simplejmx.common.JmxStringInvocation;
+import com.j256.simplejmx.common.ObjectNameUtil;
 
 public class ReflectionMbeanTest {
 
@@ -101,7 +145,8 @@ public class ReflectionMbeanTest {
 			server.register(obj);
 
 			MBeanAttributeInfo[] attributes = client.getAttributesInfo(DOMAIN_NAME, OBJECT_NAME);
-			assertEquals(1, attributes.length);
+			// plus the fingerprint
+			assertEquals(2, attributes.length);
 			assertEquals("foo", attributes[0].getName());
 			assertEquals(int.class.toString(), attributes[0].getType());
 
@@ -351,6 +396,1398 @@ public class ReflectionMbeanTest {
 		server.register(isNotBoolean);
 	}
 
+	@Test
+	public void testMetadataSharedPerClass() throws Exception {
+		TestObject obj1 = new TestObject();
+		TestObject obj2 = new TestObject();
+		ReflectionMbean mbean1 = new ReflectionMbean(obj1);
+		ReflectionMbean mbean2 = new ReflectionMbean(obj2);
+		assertSame(mbean1.getMBeanInfo(), mbean2.getMBeanInfo());
+		// they still talk to their own delegates
+		obj2.setFoo(FOO_VALUE + 1);
+		assertEquals(FOO_VALUE, mbean1.getAttribute("foo"));
+		assertEquals(FOO_VALUE + 1, mbean2.getAttribute("foo"));
+		// user provided information is not shared
+		ReflectionMbean mbean3 = new ReflectionMbean(obj1, null, null, null);
+		assertNotSame(mbean1.getMBeanInfo(), mbean3.getMBeanInfo());
+	}
+
+	@Test
+	public void testLazyMbeanInfo() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new TestObject(), null, null, null);
+		MBeanInfo info = mbean.getMBeanInfo();
+		assertEquals(TestObject.class.getName(), info.getClassName());
+		assertEquals("Test object", info.getDescription());
+		// plus the fingerprint
+		assertEquals(2, info.getAttributes().length);
+		assertEquals(2, info.getOperations().length);
+
+		// remote clients get a plain info object
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(info);
+		oos.close();
+		Object result = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject();
+		assertEquals(MBeanInfo.class, result.getClass());
+		assertEquals(info, result);
+		assertEquals(result, info);
+	}
+
+	@Test
+	public void testCachedGetter() throws Exception {
+		CachedCounters counters = new CachedCounters();
+		ReflectionMbean mbean = new ReflectionMbean(counters);
+		assertEquals(1, mbean.getAttribute("count"));
+		assertEquals(1, mbean.getAttribute("count"));
+		assertEquals(1, mbean.getAttributes(new String[] { "count" }).asList().get(0).getValue());
+		assertEquals(1, counters.getCount.get());
+		// setting clears the cache
+		mbean.setAttribute(new Attribute("count", 10));
+		assertEquals(12, mbean.getAttribute("count"));
+		assertEquals(2, counters.getCount.get());
+		// not shared with other objects of the same class
+		assertEquals(1, new ReflectionMbean(new CachedCounters()).getAttribute("count"));
+	}
+
+	@Test
+	public void testCachedGetterExpires() throws Exception {
+		ReflectionMbean mbean =
+				new ReflectionMbean(new UncachedCounter(), null, new JmxAttributeMethodInfo[] { new JmxAttributeMethodInfo(
+						"getCount", null, 1) }, null);
+		assertEquals(1, mbean.getAttribute("count"));
+		Thread.sleep(20);
+		assertEquals(2, mbean.getAttribute("count"));
+	}
+
+	@Test
+	public void testCachedOperation() throws Exception {
+		CachedCounters counters = new CachedCounters();
+		ReflectionMbean mbean = new ReflectionMbean(counters);
+		String[] signature = new String[] { String.class.getName() };
+		assertEquals("foo1", mbean.invoke("describe", new Object[] { "foo" }, signature));
+		assertEquals("foo1", mbean.invoke("describe", new Object[] { "foo" }, signature));
+		// different parameters are a miss
+		assertEquals("bar2", mbean.invoke("describe", new Object[] { "bar" }, signature));
+		assertEquals(2, counters.describeCount.get());
+	}
+
+	@Test
+	public void testCacheSingleRefresh() throws Exception {
+		final CachedCounters counters = new CachedCounters();
+		counters.sleepMillis = 100;
+		final ReflectionMbean mbean = new ReflectionMbean(counters);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						mbean.getAttribute("count");
+					} catch (Exception e) {
+						// the count check will fail
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, counters.getCount.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCachedOperationNotInfo() {
+		new ReflectionMbean(new CachedActionOperation());
+	}
+
+	@Test
+	public void testSlowGetterServesStale() throws Exception {
+		SlowGetter slowGetter = new SlowGetter();
+		ReflectionMbean mbean = new ReflectionMbean(slowGetter);
+		assertEquals(1, mbean.getAttribute("count"));
+		assertEquals(false, mbean.getAttribute("count.stale"));
+		assertTrue((Long) mbean.getAttribute("count.ageMillis") >= 0);
+
+		slowGetter.sleepMillis = 1000;
+		long start = System.currentTimeMillis();
+		assertEquals(1, mbean.getAttribute("count"));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(true, mbean.getAttribute("count.stale"));
+		// the late call is still running so we don't wait on it again
+		start = System.currentTimeMillis();
+		assertEquals(1, mbean.getAttributes(new String[] { "count" }).asList().get(0).getValue());
+		assertTrue(System.currentTimeMillis() - start < SlowGetter.TIMEOUT_MILLIS);
+
+		List<MBeanAttributeInfo> attributeInfos = Arrays.asList(mbean.getMBeanInfo().getAttributes());
+		// plus the fingerprint
+		assertEquals(4, attributeInfos.size());
+		assertEquals("count.stale", attributeInfos.get(1).getName());
+		assertEquals("count.ageMillis", attributeInfos.get(2).getName());
+	}
+
+	@Test
+	public void testSlowGetterNoValue() throws Exception {
+		SlowGetter slowGetter = new SlowGetter();
+		slowGetter.sleepMillis = 1000;
+		ReflectionMbean mbean = new ReflectionMbean(slowGetter);
+		try {
+			mbean.getAttribute("count");
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals(-1L, mbean.getAttribute("count.ageMillis"));
+	}
+
+	@Test
+	public void testHungGettersDoNotStarveOtherBeans() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			// more hung getters than there used to be shared getter threads
+			for (int i = 0; i < 6; i++) {
+				ReflectionMbean hungMbean = new ReflectionMbean(new HungGetter(release));
+				try {
+					hungMbean.getAttribute("count");
+					fail("Should have thrown");
+				} catch (ReflectionException e) {
+					assertTrue(e.getCause() instanceof TimeoutException);
+				}
+			}
+			SlowGetter slowGetter = new SlowGetter();
+			ReflectionMbean mbean = new ReflectionMbean(slowGetter);
+			assertEquals(1, mbean.getAttribute("count"));
+			assertEquals(false, mbean.getAttribute("count.stale"));
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testGetterStaleRecovers() throws Exception {
+		SlowGetter slowGetter = new SlowGetter();
+		ReflectionMbean mbean = new ReflectionMbean(slowGetter);
+		assertEquals(1, mbean.getAttribute("count"));
+		slowGetter.sleepMillis = SlowGetter.TIMEOUT_MILLIS * 3;
+		assertEquals(1, mbean.getAttribute("count"));
+		assertEquals(true, mbean.getAttribute("count.stale"));
+		slowGetter.sleepMillis = 0;
+		// once the late call finishes its value is fresh no matter who read the stale one
+		for (int i = 0; i < 50 && (Boolean) mbean.getAttribute("count.stale"); i++) {
+			Thread.sleep(SlowGetter.TIMEOUT_MILLIS / 2);
+		}
+		assertEquals(false, mbean.getAttribute("count.stale"));
+		// the late call counted 2 and this is a new call
+		assertEquals(3, mbean.getAttribute("count"));
+	}
+
+	@Test
+	public void testGetterThreadReused() throws Exception {
+		SlowGetter slowGetter = new SlowGetter();
+		ReflectionMbean mbean = new ReflectionMbean(slowGetter);
+		assertEquals(1, mbean.getAttribute("count"));
+		Thread thread = slowGetter.lastThread;
+		assertNotSame(Thread.currentThread(), thread);
+		assertEquals(2, mbean.getAttribute("count"));
+		// reads within the budget do not each start a thread
+		assertSame(thread, slowGetter.lastThread);
+	}
+
+	@Test
+	public void testGetterCircuitBreaker() throws Exception {
+		SlowGetter slowGetter = new SlowGetter();
+		slowGetter.fail = true;
+		ReflectionMbean mbean = new ReflectionMbean(slowGetter);
+		for (int i = 0; i < GetterBudget.FAILURE_THRESHOLD + 2; i++) {
+			try {
+				mbean.getAttribute("count");
+				fail("Should have thrown");
+			} catch (ReflectionException e) {
+				// expected
+			}
+		}
+		// the circuit opened so the getter was not called again
+		assertEquals(GetterBudget.FAILURE_THRESHOLD, slowGetter.callCount.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTimeoutOnSetter() {
+		new ReflectionMbean(new TimeoutSetter());
+	}
+
+	@Test
+	public void testOperationConcurrencyLimit() throws Exception {
+		LimitedOperations operations = new LimitedOperations();
+		ReflectionMbean mbean = new ReflectionMbean(operations);
+		Thread thread = startInvoke(mbean, "compact");
+		operations.started.await();
+		try {
+			mbean.invoke("compact", null, null);
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		assertEquals(1L, mbean.getAttribute("compact.rejected"));
+		assertEquals(0L, mbean.getAttribute("compact.queued"));
+		operations.release.countDown();
+		thread.join();
+		assertEquals(1, operations.compactCount.get());
+		// the slot was given back
+		assertEquals(2, mbean.invoke("compact", null, null));
+	}
+
+	@Test
+	public void testOperationQueued() throws Exception {
+		LimitedOperations operations = new LimitedOperations();
+		ReflectionMbean mbean = new ReflectionMbean(operations);
+		Thread thread1 = startInvoke(mbean, "dumpCache");
+		operations.started.await();
+		Thread thread2 = startInvoke(mbean, "dumpCache");
+		while ((Long) mbean.getAttribute("dumpCache.queued") == 0) {
+			Thread.sleep(10);
+		}
+		operations.release.countDown();
+		thread1.join();
+		thread2.join();
+		assertEquals(2, operations.dumpCount.get());
+		assertEquals(0L, mbean.getAttribute("dumpCache.rejected"));
+	}
+
+	@Test
+	public void testOperationTimeout() throws Exception {
+		LimitedOperations operations = new LimitedOperations();
+		ReflectionMbean mbean = new ReflectionMbean(operations);
+		try {
+			mbean.invoke("rebuild", null, null);
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals(1L, mbean.getAttribute("rebuild.timedOut"));
+		assertTrue(operations.interrupted.await(10, TimeUnit.SECONDS));
+
+		List<String> attributeNames = new ArrayList<String>();
+		for (MBeanAttributeInfo info : mbean.getMBeanInfo().getAttributes()) {
+			attributeNames.add(info.getName());
+		}
+		assertTrue(attributeNames.contains("rebuild.queued"));
+		assertTrue(attributeNames.contains("rebuild.rejected"));
+		assertTrue(attributeNames.contains("rebuild.timedOut"));
+	}
+
+	@Test
+	public void testHungOperationsDoNotStarveOtherBeans() throws Exception {
+		HungOperations hung = new HungOperations();
+		ReflectionMbean hungMbean = new ReflectionMbean(hung);
+		try {
+			for (int i = 0; i < OperationLimiter.UNLIMITED_THREADS; i++) {
+				try {
+					hungMbean.invoke("hang", null, null);
+					fail("Should have thrown");
+				} catch (MBeanException e) {
+					assertTrue(e.getCause() instanceof TimeoutException);
+				}
+			}
+			// every thread of the hang operation is stuck but other beans have their own
+			ReflectionMbean otherMbean = new ReflectionMbean(new HungOperations());
+			assertEquals("pong", otherMbean.invoke("ping", null, null));
+		} finally {
+			hung.release.countDown();
+		}
+	}
+
+	@Test
+	public void testLimitedOperationThrows() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new LimitedOperations());
+		try {
+			mbean.invoke("fail", null, null);
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			assertEquals("failed", e.getCause().getMessage());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxWaitWithoutLimit() {
+		new ReflectionMbean(new MaxWaitWithoutLimit());
+	}
+
+	@Test
+	public void testAsyncOperation() throws Exception {
+		AsyncOperations operations = new AsyncOperations();
+		ReflectionMbean mbean = new ReflectionMbean(operations);
+		long jobId = (Long) mbean.invoke("rebuild", new Object[] { "index" }, new String[] { String.class.getName() });
+		operations.reported.await();
+		assertEquals("RUNNING", invokeJob(mbean, "jobStatus", jobId));
+		assertEquals(50, invokeJob(mbean, "jobProgress", jobId));
+		try {
+			invokeJob(mbean, "jobResult", jobId);
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		operations.release.countDown();
+		waitForJob(mbean, jobId);
+		assertEquals("DONE", invokeJob(mbean, "jobStatus", jobId));
+		assertEquals(100, invokeJob(mbean, "jobProgress", jobId));
+		assertEquals("rebuilt index", invokeJob(mbean, "jobResult", jobId));
+	}
+
+	@Test
+	public void testAsyncCancel() throws Exception {
+		AsyncOperations operations = new AsyncOperations();
+		ReflectionMbean mbean = new ReflectionMbean(operations);
+		long jobId = (Long) mbean.invoke("flush", null, null);
+		operations.started.await();
+		assertEquals(true, invokeJob(mbean, "cancelJob", jobId));
+		assertTrue(operations.interrupted.await(10, TimeUnit.SECONDS));
+		assertEquals("CANCELLED", invokeJob(mbean, "jobStatus", jobId));
+		try {
+			invokeJob(mbean, "jobResult", jobId);
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testAsyncFailure() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new AsyncOperations());
+		long jobId = (Long) mbean.invoke("fail", null, null);
+		waitForJob(mbean, jobId);
+		assertEquals("FAILED", invokeJob(mbean, "jobStatus", jobId));
+		try {
+			invokeJob(mbean, "jobResult", jobId);
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			assertEquals("failed", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testFinishedJobsEvicted() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new AsyncOperations());
+		long firstJobId = 0;
+		long lastJobId = 0;
+		for (int i = 0; i <= JobTable.MAX_FINISHED_JOBS; i++) {
+			lastJobId = (Long) mbean.invoke("fail", null, null);
+			if (i == 0) {
+				firstJobId = lastJobId;
+			}
+			waitForJob(mbean, lastJobId);
+		}
+		assertEquals("FAILED", invokeJob(mbean, "jobStatus", lastJobId));
+		try {
+			invokeJob(mbean, "jobStatus", firstJobId);
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	@Test
+	public void testAsyncMbeanInfo() {
+		ReflectionMbean mbean = new ReflectionMbean(new AsyncOperations());
+		List<String> operationNames = new ArrayList<String>();
+		for (MBeanOperationInfo info : mbean.getMBeanInfo().getOperations()) {
+			operationNames.add(info.getName());
+			if (info.getName().equals("rebuild")) {
+				assertEquals("long", info.getReturnType());
+			}
+		}
+		assertTrue(operationNames.containsAll(Arrays.asList("rebuild", "jobStatus", "jobProgress", "jobResult",
+				"cancelJob")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAsyncWithTimeout() {
+		new ReflectionMbean(new AsyncWithTimeout());
+	}
+
+	@Test
+	public void testPagedAttribute() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new PagedMembers());
+		assertEquals(3L, mbean.getAttribute("names.size"));
+		try {
+			mbean.getAttribute("names");
+			fail("Should have thrown");
+		} catch (AttributeNotFoundException e) {
+			// expected
+		}
+		long cursorId =
+				(Long) mbean.invoke("openCursor", new Object[] { "names" }, new String[] { String.class.getName() });
+		assertTrue(Arrays.equals(new Object[] { "a", "b" }, (Object[]) nextPage(mbean, cursorId, 2)));
+		assertTrue(Arrays.equals(new Object[] { "c" }, (Object[]) nextPage(mbean, cursorId, 2)));
+		// closed after the short page
+		try {
+			nextPage(mbean, cursorId, 2);
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	@Test
+	public void testPagedMapEntries() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new PagedMembers());
+		long cursorId =
+				(Long) mbean.invoke("openCursor", new Object[] { "counts" }, new String[] { String.class.getName() });
+		Object[] page = (Object[]) nextPage(mbean, cursorId, 10);
+		assertEquals(1, page.length);
+		assertTrue(Arrays.equals(new Object[] { "x", 1 }, (Object[]) page[0]));
+	}
+
+	@Test
+	public void testPagedOperationPrimitive() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new PagedMembers());
+		long cursorId = (Long) mbean.invoke("range", new Object[] { 5 }, new String[] { int.class.getName() });
+		assertEquals(5L, mbean.invoke("cursorSize", new Object[] { cursorId }, new String[] { long.class.getName() }));
+		long[] page = (long[]) nextPage(mbean, cursorId, 3);
+		assertTrue(Arrays.equals(new long[] { 0, 1, 2 }, page));
+		assertEquals(true,
+				mbean.invoke("closeCursor", new Object[] { cursorId }, new String[] { long.class.getName() }));
+		for (MBeanOperationInfo info : mbean.getMBeanInfo().getOperations()) {
+			if (info.getName().equals("range")) {
+				assertEquals("long", info.getReturnType());
+				assertEquals("true", info.getDescriptor().getFieldValue("paged"));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPagedNotPageable() {
+		new ReflectionMbean(new PagedNotPageable());
+	}
+
+	private Object nextPage(ReflectionMbean mbean, long cursorId, int limit) throws Exception {
+		return mbean.invoke("nextPage", new Object[] { cursorId, limit }, new String[] { long.class.getName(),
+				int.class.getName() });
+	}
+
+	@Test
+	public void testOpenTypeComposite() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new OpenTypes());
+		CompositeData data = (CompositeData) mbean.getAttribute("server");
+		assertEquals("db1", data.get("host"));
+		assertEquals(5432, data.get("port"));
+		assertEquals("UP", data.get("state"));
+		assertTrue(Arrays.equals(new String[] { "a", "b" }, (String[]) data.get("tags")));
+		TabularData limits = (TabularData) data.get("limits");
+		assertEquals(1, limits.size());
+		CompositeData row = limits.get(new Object[] { "connections" });
+		assertEquals(10, row.get("value"));
+		for (MBeanAttributeInfo info : mbean.getMBeanInfo().getAttributes()) {
+			if (info.getName().equals("server")) {
+				assertEquals(CompositeData.class.getName(), info.getType());
+				assertEquals(ServerInfo.class.getName(), info.getDescriptor().getFieldValue("originalType"));
+				assertTrue(info.getDescriptor().getFieldValue("openType") instanceof CompositeType);
+			}
+		}
+	}
+
+	@Test
+	public void testOpenTypeSetter() throws Exception {
+		OpenTypes openTypes = new OpenTypes();
+		ReflectionMbean mbean = new ReflectionMbean(openTypes);
+		mbean.setAttribute(new Attribute("names", new String[] { "x", "y" }));
+		assertEquals(Arrays.asList("x", "y"), openTypes.names);
+		assertTrue(Arrays.equals(new String[] { "x", "y" }, (String[]) mbean.getAttribute("names")));
+		// simple types are not converted
+		assertEquals(3, mbean.getAttribute("count"));
+	}
+
+	@Test
+	public void testOpenTypeOperation() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new OpenTypes());
+		TabularData table = (TabularData) mbean.invoke("counts", null, null);
+		assertEquals(2, table.size());
+		assertEquals(2L, table.get(new Object[] { "b" }).get("value"));
+		for (MBeanOperationInfo info : mbean.getMBeanInfo().getOperations()) {
+			if (info.getName().equals("counts")) {
+				assertEquals(TabularData.class.getName(), info.getReturnType());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOpenTypeWritableComposite() {
+		new ReflectionMbean(new OpenTypeWritableComposite());
+	}
+
+	@Test
+	public void testOpenTypeConverterCache() {
+		assertSame(OpenTypeConverter.forType(ServerInfo.class), OpenTypeConverter.forType(ServerInfo.class));
+		try {
+			OpenTypeConverter.forType(ParentNode.class);
+			fail("Should have thrown");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("refers to itself"));
+		}
+		// nothing was cached for the classes that failed
+		try {
+			OpenTypeConverter.forType(ChildNode.class);
+			fail("Should have thrown");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("refers to itself"));
+		}
+	}
+
+	@Test
+	public void testOpenTypeNotConverted() throws Exception {
+		// without the openTypes setting the value is returned as is
+		ReflectionMbean mbean = new ReflectionMbean(new RawTypes());
+		assertTrue(mbean.getAttribute("server") instanceof ServerInfo);
+	}
+
+	@Test
+	public void testMetricDescriptors() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new MetricAttributes());
+		MBeanAttributeInfo[] infos = mbean.getMBeanInfo().getAttributes();
+		Descriptor descriptor = findAttributeInfo(infos, "requests").getDescriptor();
+		assertEquals("counter", descriptor.getFieldValue(JmxDescriptors.METRIC_TYPE_FIELD));
+		assertNull(descriptor.getFieldValue(JmxDescriptors.UNITS_FIELD));
+		descriptor = findAttributeInfo(infos, "queueSize").getDescriptor();
+		assertEquals("gauge", descriptor.getFieldValue(JmxDescriptors.METRIC_TYPE_FIELD));
+		assertEquals("entries", descriptor.getFieldValue(JmxDescriptors.UNITS_FIELD));
+		// from the setter
+		descriptor = findAttributeInfo(infos, "timeout").getDescriptor();
+		assertEquals("ms", descriptor.getFieldValue(JmxDescriptors.UNITS_FIELD));
+		descriptor = findAttributeInfo(infos, "report").getDescriptor();
+		assertEquals("true", descriptor.getFieldValue(JmxDescriptors.EXPENSIVE_FIELD));
+		assertNull(descriptor.getFieldValue(JmxDescriptors.METRIC_TYPE_FIELD));
+		assertEquals(0, findAttributeInfo(infos, "plain").getDescriptor().getFieldNames().length);
+	}
+
+	@Test
+	public void testFingerprint() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new MetricAttributes());
+		String fingerprint = (String) mbean.getAttribute(JmxDescriptors.FINGERPRINT_ATTRIBUTE);
+		assertEquals(16, fingerprint.length());
+		assertEquals(JmxDescriptors.fingerprint(mbean.getMBeanInfo()), fingerprint);
+		// the same for every bean of the class and across serialization
+		assertEquals(fingerprint, new ReflectionMbean(new MetricAttributes()).getAttribute(
+				JmxDescriptors.FINGERPRINT_ATTRIBUTE));
+		assertEquals(fingerprint, JmxDescriptors.fingerprint(serializeInfo(mbean.getMBeanInfo())));
+		assertFalse(fingerprint.equals(new ReflectionMbean(new TestObject()).getAttribute(
+				JmxDescriptors.FINGERPRINT_ATTRIBUTE)));
+		List<Attribute> attributes =
+				mbean.getAttributes(new String[] { JmxDescriptors.FINGERPRINT_ATTRIBUTE }).asList();
+		assertEquals(fingerprint, attributes.get(0).getValue());
+		assertNotNull(findAttributeInfo(mbean.getMBeanInfo().getAttributes(), JmxDescriptors.FINGERPRINT_ATTRIBUTE));
+	}
+
+	@Test
+	public void testConfigSnapshot() throws Exception {
+		PoolSettings first = new PoolSettings();
+		JmxConfig<PoolSettings> config = new JmxConfig<PoolSettings>(first);
+		ReflectionMbean mbean = new ReflectionMbean(config);
+		AttributeList attributes = new AttributeList();
+		attributes.add(new Attribute("minSize", 5));
+		attributes.add(new Attribute("maxSize", 50));
+		List<Attribute> results = mbean.setAttributes(attributes).asList();
+		assertEquals(5, results.get(0).getValue());
+		assertEquals(50, results.get(1).getValue());
+		// both were published in one new snapshot and the old one is unchanged
+		PoolSettings second = config.get();
+		assertNotSame(first, second);
+		assertEquals(1, first.getMinSize());
+		assertEquals(10, first.getMaxSize());
+		assertEquals(5, second.getMinSize());
+		assertEquals(50, second.getMaxSize());
+		assertEquals("pool", second.getName());
+		// setter methods are called on the copy
+		mbean.setAttribute(new Attribute("name", "other"));
+		assertEquals("pool", second.getName());
+		assertEquals("other", config.get().getName());
+		assertEquals(50, config.get().getMaxSize());
+		assertEquals(50, mbean.getAttribute("maxSize"));
+	}
+
+	@Test
+	public void testConfigSnapshotBatchFails() throws Exception {
+		PoolSettings first = new PoolSettings();
+		JmxConfig<PoolSettings> config = new JmxConfig<PoolSettings>(first);
+		ReflectionMbean mbean = new ReflectionMbean(config);
+		AttributeList attributes = new AttributeList();
+		attributes.add(new Attribute("maxSize", 50));
+		attributes.add(new Attribute("name", ""));
+		List<Attribute> results = mbean.setAttributes(attributes).asList();
+		assertEquals(2, results.size());
+		assertTrue(results.get(0).getValue() instanceof String);
+		// nothing was published
+		assertSame(first, config.get());
+		try {
+			mbean.setAttribute(new Attribute("unknown", 1));
+			fail("Should have thrown");
+		} catch (AttributeNotFoundException e) {
+			// expected
+		}
+		assertSame(first, config.get());
+	}
+
+	@Test
+	public void testConfigSnapshotRegister() throws Exception {
+		JmxConfig<PoolSettings> config = new JmxConfig<PoolSettings>(new PoolSettings());
+		server.register(config);
+		try {
+			// registered with the name of the snapshot class
+			assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+					ObjectNameUtil.makeObjectName(DOMAIN_NAME, "PoolSettings")));
+		} finally {
+			server.unregisterThrow(config);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConfigSnapshotNotInConfig() {
+		new ReflectionMbean(new PoolSettings());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConfigNotSnapshot() {
+		new JmxConfig<TestObject>(new TestObject());
+	}
+
+	@Test
+	public void testTunable() throws Throwable {
+		Tunables tunables = new Tunables();
+		MethodHandle invoker = tunables.maxRetries.invoker();
+		assertEquals(3, (int) invoker.invokeExact());
+		ReflectionMbean mbean = new ReflectionMbean(tunables);
+		assertEquals(3, mbean.getAttribute("maxRetries"));
+		mbean.setAttribute(new Attribute("maxRetries", 5));
+		assertEquals(5, (int) tunables.maxRetries.get());
+		assertEquals(5, (int) invoker.invokeExact());
+		assertEquals(5, mbean.getAttribute("maxRetries"));
+		// the attribute has the type of the value
+		assertEquals(Integer.class.getName(),
+				findAttributeInfo(mbean.getMBeanInfo().getAttributes(), "maxRetries").getType());
+		try {
+			mbean.setAttribute(new Attribute("maxRetries", "wrong"));
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			// expected
+		}
+		assertEquals(5, (int) invoker.invokeExact());
+	}
+
+	@Test
+	public void testStaticMembers() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new Tunables());
+		mbean.setAttribute(new Attribute("enabled", false));
+		assertFalse(Tunables.enabled.get());
+		assertEquals(false, mbean.getAttribute("enabled"));
+		mbean.setAttribute(new Attribute("limit", 20L));
+		assertEquals(20L, Tunables.limit);
+		assertEquals(20L, mbean.getAttribute("limit"));
+		assertEquals("static", mbean.invoke("describe", null, null));
+	}
+
+	@Test
+	public void testStaticAccessors() throws Exception {
+		ReflectionMbean mbean = new ReflectionMbean(new StaticAccessors());
+		mbean.setAttribute(new Attribute("count", 5));
+		assertEquals(5, StaticAccessors.count);
+		assertEquals(5, mbean.getAttribute("count"));
+		mbean.setAttribute(new Attribute("name", "bar"));
+		assertEquals("bar", mbean.getAttribute("name"));
+		assertEquals(6, mbean.invoke("incrementCount", null, null));
+		assertEquals(6, StaticAccessors.count);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFinalFieldWritable() {
+		new ReflectionMbean(new FinalWritableField());
+	}
+
+	@Test
+	public void testWeakDelegateCollected() throws Exception {
+		WeakReference<Object> reference = new WeakReference<Object>(new TestObject());
+		ReflectionMbean mbean = new ReflectionMbean(reference);
+		for (int i = 0; i < 100 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+		try {
+			mbean.getAttribute("foo");
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		try {
+			mbean.invoke("resetFoo", null, null);
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			// expected
+		}
+		// the metadata is still there
+		assertNotNull(mbean.getMBeanInfo());
+	}
+
+	@Test
+	public void testAttributeSnapshot() throws Exception {
+		final HitStats stats = new HitStats();
+		ReflectionMbean mbean = new ReflectionMbean(stats);
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				while (!Thread.currentThread().isInterrupted()) {
+					stats.record(stats.total % 3 == 0);
+				}
+			}
+		});
+		writer.start();
+		try {
+			String[] names = new String[] { "hits", "misses", "total", "description" };
+			for (int i = 0; i < 1000; i++) {
+				AttributeList list = mbean.getAttributes(names);
+				long hits = (Long) ((Attribute) list.get(0)).getValue();
+				long misses = (Long) ((Attribute) list.get(1)).getValue();
+				long total = (Long) ((Attribute) list.get(2)).getValue();
+				assertEquals(total, hits + misses);
+				// not in the snapshot so it is read by itself
+				assertEquals("stats", ((Attribute) list.get(3)).getValue());
+			}
+		} finally {
+			writer.interrupt();
+			writer.join();
+		}
+		assertEquals(1000, stats.snapshotCount);
+		// status and unknown attributes are not asked for
+		mbean.getAttributes(new String[] { "unknown" });
+		assertEquals(1000, stats.snapshotCount);
+	}
+
+	@Test
+	public void testKeyedEntities() throws Exception {
+		RegionManager manager = new RegionManager();
+		for (int i = 0; i < 10; i++) {
+			manager.regions.put("region" + i, new Region(i * 10, "owner" + i));
+		}
+		assertEquals(ObjectNameUtil.makeObjectName(DOMAIN_NAME, "regions"), ObjectNameUtil.makeObjectName(manager));
+		ReflectionMbean mbean = new ReflectionMbean(new KeyedEntities(manager));
+		assertEquals(10, mbean.getAttribute("entityCount"));
+		TabularData table = (TabularData) mbean.getAttribute("entities");
+		assertEquals(10, table.size());
+		CompositeData row = table.get(new Object[] { "region3" });
+		assertEquals(30L, row.get("hits"));
+		assertEquals("owner3", row.get("owner"));
+
+		String[] keySignature = new String[] { String.class.getName() };
+		row = (CompositeData) mbean.invoke("lookupEntity", new Object[] { "region4" }, keySignature);
+		assertEquals("region4", row.get("region"));
+		assertEquals(40L, row.get("hits"));
+		assertEquals(50L, mbean.invoke("readEntityAttribute", new Object[] { "region5", "hits" }, new String[] {
+				String.class.getName(), String.class.getName() }));
+		mbean.invoke("writeEntityAttribute", new Object[] { "region5", "hits", "500" }, new String[] {
+				String.class.getName(), String.class.getName(), String.class.getName() });
+		assertEquals(500L, manager.regions.get("region5").hits);
+		try {
+			mbean.invoke("lookupEntity", new Object[] { "unknown" }, keySignature);
+			fail("Should have thrown");
+		} catch (ReflectionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+
+		CompositeData[] top =
+				(CompositeData[]) mbean.invoke("topEntities", new Object[] { "hits", 3 }, new String[] {
+						String.class.getName(), int.class.getName() });
+		assertEquals(3, top.length);
+		assertEquals("region5", top[0].get("region"));
+		assertEquals("region9", top[1].get("region"));
+		assertEquals("region8", top[2].get("region"));
+
+		long cursorId = (Long) mbean.invoke(JmxPaging.OPEN_CURSOR_OPERATION, new Object[] { "rows" }, keySignature);
+		Object[] page =
+				(Object[]) mbean.invoke(JmxPaging.NEXT_PAGE_OPERATION, new Object[] { cursorId, 4 }, new String[] {
+						long.class.getName(), int.class.getName() });
+		assertEquals(4, page.length);
+		assertTrue(page[0] instanceof CompositeData);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKeyedEntitiesNoMap() {
+		new KeyedEntities(new NoEntities());
+	}
+
+	@Test
+	public void testInvokeWithStrings() throws Exception {
+		TestObject obj = new TestObject();
+		ReflectionMbean mbean = new ReflectionMbean(obj);
+		String[] signature = new String[] { String.class.getName(), String[].class.getName() };
+		assertNull(mbean.invoke(JmxStringInvocation.OPERATION_NAME, new Object[] { "resetFoo", new String[] { "5" } },
+				signature));
+		assertEquals(5, obj.getFoo());
+		mbean.invoke(JmxStringInvocation.OPERATION_NAME, new Object[] { "resetFoo", null }, signature);
+		assertEquals(0, obj.getFoo());
+		try {
+			mbean.invoke(JmxStringInvocation.OPERATION_NAME, new Object[] { "resetFoo", new String[] { "x" } },
+					signature);
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		try {
+			mbean.invoke(JmxStringInvocation.OPERATION_NAME, new Object[] { "unknown", new String[0] }, signature);
+			fail("Should have thrown");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		// it is not one of the operations of the bean
+		for (MBeanOperationInfo info : mbean.getMBeanInfo().getOperations()) {
+			assertFalse(JmxStringInvocation.OPERATION_NAME.equals(info.getName()));
+		}
+	}
+
+	@Test
+	public void testMetricFields() throws Exception {
+		final RequestMetrics metrics = new RequestMetrics();
+		ReflectionMbean mbean = new ReflectionMbean(metrics);
+		MBeanAttributeInfo[] infos = mbean.getMBeanInfo().getAttributes();
+		assertNull(findAttributeInfo(infos, "requests"));
+		MBeanAttributeInfo info = findAttributeInfo(infos, "requests.oneMinuteRate");
+		assertEquals(double.class.getName(), info.getType());
+		assertFalse(info.isWritable());
+		assertEquals("Requests handled, 1 minute moving average of the rate", info.getDescription());
+		assertEquals("gauge", info.getDescriptor().getFieldValue(JmxDescriptors.METRIC_TYPE_FIELD));
+		assertEquals("requests/s", info.getDescriptor().getFieldValue(JmxDescriptors.UNITS_FIELD));
+		info = findAttributeInfo(infos, "requests.count");
+		assertEquals("counter", info.getDescriptor().getFieldValue(JmxDescriptors.METRIC_TYPE_FIELD));
+		assertEquals("requests", info.getDescriptor().getFieldValue(JmxDescriptors.UNITS_FIELD));
+		info = findAttributeInfo(infos, "active.value");
+		assertEquals("gauge", info.getDescriptor().getFieldValue(JmxDescriptors.METRIC_TYPE_FIELD));
+		assertEquals("errors, count", findAttributeInfo(infos, "errors.count").getDescription());
+
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						metrics.requests.mark();
+						metrics.errors.increment();
+						metrics.active.add(1);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(80000L, mbean.getAttribute("requests.count"));
+		assertEquals(80000L, mbean.getAttribute("errors.count"));
+		assertEquals(80000L, mbean.getAttribute("active.value"));
+		metrics.active.set(3);
+		assertEquals(3L, mbean.getAttribute("active.value"));
+		assertTrue((Double) mbean.getAttribute("requests.meanRate") > 0.0);
+		AttributeList list = mbean.getAttributes(new String[] { "errors.count", "requests.fifteenMinuteRate" });
+		assertEquals(2, list.size());
+		try {
+			mbean.setAttribute(new Attribute("errors.count", 1L));
+			fail("Should have thrown");
+		} catch (AttributeNotFoundException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testStripedLongInflates() throws Exception {
+		final StripedLong sum = new StripedLong();
+		sum.add(2);
+		sum.add(3);
+		assertFalse(sum.isStriped());
+		assertEquals(5, sum.sum());
+		assertEquals(5, sum.sumThenReset());
+		assertEquals(0, sum.sum());
+
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 100000; j++) {
+						sum.add(1);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(800000, sum.sum());
+		assertEquals(800000, sum.sumThenReset());
+		assertEquals(0, sum.sum());
+	}
+
+	@Test
+	public void testMeterRates() {
+		long tick = JmxMeter.TICK_NANOS;
+		JmxMeter meter = new JmxMeter(0);
+		meter.mark(100);
+		// not a whole tick yet
+		assertEquals(0.0, meter.rate(JmxMeter.ONE_MINUTE_INDEX, tick - 1), 0.0);
+		// the first tick starts the averages at the rate
+		assertEquals(20.0, meter.rate(JmxMeter.ONE_MINUTE_INDEX, tick), 0.0);
+		assertEquals(20.0, meter.rate(JmxMeter.FIFTEEN_MINUTE_INDEX, tick), 0.0);
+		assertEquals(20.0, meter.meanRate(tick), 0.0001);
+
+		// reading after a number of ticks is the same as reading at each of them
+		JmxMeter stepped = new JmxMeter(0);
+		JmxMeter skipped = new JmxMeter(0);
+		stepped.mark(50);
+		skipped.mark(50);
+		stepped.rate(JmxMeter.ONE_MINUTE_INDEX, tick);
+		skipped.rate(JmxMeter.ONE_MINUTE_INDEX, tick);
+		for (int i = 2; i <= 12; i++) {
+			stepped.mark(10);
+			stepped.rate(JmxMeter.ONE_MINUTE_INDEX, i * tick);
+		}
+		skipped.mark(110);
+		for (int index : new int[] { JmxMeter.ONE_MINUTE_INDEX, JmxMeter.FIVE_MINUTE_INDEX,
+				JmxMeter.FIFTEEN_MINUTE_INDEX }) {
+			assertEquals(stepped.rate(index, 12 * tick), skipped.rate(index, 12 * tick), 0.0000001);
+		}
+		// it moves from 10 towards 2 per second
+		double oneMinuteRate = stepped.rate(JmxMeter.ONE_MINUTE_INDEX, 12 * tick);
+		assertTrue(oneMinuteRate < 10.0);
+		assertTrue(oneMinuteRate > 2.0);
+		assertTrue(stepped.rate(JmxMeter.FIFTEEN_MINUTE_INDEX, 12 * tick) > oneMinuteRate);
+	}
+
+	@Test
+	public void testHistogramField() throws Exception {
+		LatencyMetrics metrics = new LatencyMetrics();
+		ReflectionMbean mbean = new ReflectionMbean(metrics);
+		for (int i = 1; i <= 10000; i++) {
+			metrics.latency.record(i);
+		}
+		MBeanAttributeInfo[] infos = mbean.getMBeanInfo().getAttributes();
+		Descriptor descriptor = findAttributeInfo(infos, "latency.p99").getDescriptor();
+		assertEquals("histogram", descriptor.getFieldValue(JmxDescriptors.METRIC_TYPE_FIELD));
+		assertEquals("us", descriptor.getFieldValue(JmxDescriptors.UNITS_FIELD));
+		assertNull(findAttributeInfo(infos, "latency.count").getDescriptor().getFieldValue(
+				JmxDescriptors.UNITS_FIELD));
+		assertEquals(10000L, mbean.getAttribute("latency.count"));
+		assertEquals(1L, mbean.getAttribute("latency.min"));
+		assertEquals(10000L, mbean.getAttribute("latency.max"));
+		assertEquals(5000.5, (Double) mbean.getAttribute("latency.mean"), 0.0001);
+		assertEquals(5000, (Long) mbean.getAttribute("latency.p50"), 50);
+		assertEquals(9000, (Long) mbean.getAttribute("latency.p90"), 90);
+		assertEquals(9900, (Long) mbean.getAttribute("latency.p99"), 99);
+		assertEquals(9990, (Long) mbean.getAttribute("latency.p999"), 100);
+		// cumulative so the next snapshot has them all
+		metrics.latency.record(20000);
+		JmxHistogram.Snapshot snapshot = metrics.latency.takeSnapshot();
+		assertEquals(10001, snapshot.getCount());
+		assertEquals(20000, snapshot.getMax());
+		assertEquals(1, snapshot.getValueAtPercentile(0.0));
+		assertEquals(20000, snapshot.getValueAtPercentile(100.0));
+	}
+
+	@Test
+	public void testHistogramBuckets() {
+		for (int digits = 1; digits <= 3; digits++) {
+			JmxHistogram histogram = new JmxHistogram(TimeUnit.HOURS.toNanos(1), digits, false);
+			double maxError = Math.pow(10, -digits);
+			for (long value = 0; value < TimeUnit.HOURS.toNanos(1); value = value * 3 / 2 + 1) {
+				int index = histogram.bucketIndex(value);
+				long lowest = histogram.lowestValueInBucket(index);
+				long highest = histogram.highestValueInBucket(index);
+				assertTrue(lowest <= value && value <= highest);
+				assertTrue((double) (highest - lowest) / Math.max(1, lowest) < maxError);
+			}
+		}
+		// small histograms only have the linear buckets
+		JmxHistogram histogram = new JmxHistogram(10);
+		assertEquals(10, histogram.bucketIndex(10));
+		assertEquals(10, histogram.bucketIndex(1000));
+		histogram.record(-5);
+		histogram.record(1000);
+		JmxHistogram.Snapshot snapshot = histogram.takeSnapshot();
+		assertEquals(0, snapshot.getMin());
+		assertEquals(1000, snapshot.getMax());
+		assertEquals(1000, snapshot.getValueAtPercentile(100.0));
+	}
+
+	@Test
+	public void testHistogramResetOnRead() throws Exception {
+		final JmxHistogram histogram = new JmxHistogram(1000000, 2, true);
+		histogram.record(10);
+		histogram.record(30);
+		JmxHistogram.Snapshot snapshot = histogram.snapshot(0);
+		assertEquals(2, snapshot.getCount());
+		assertEquals(20.0, snapshot.getMean(), 0.0);
+		histogram.record(50);
+		// attributes read together see the same snapshot
+		assertSame(snapshot, histogram.snapshot(JmxHistogram.SNAPSHOT_REUSE_NANOS - 1));
+		snapshot = histogram.snapshot(JmxHistogram.SNAPSHOT_REUSE_NANOS);
+		assertEquals(1, snapshot.getCount());
+		assertEquals(50, snapshot.getMin());
+		assertEquals(50, snapshot.getValueAtPercentile(50.0));
+		snapshot = histogram.snapshot(2 * JmxHistogram.SNAPSHOT_REUSE_NANOS);
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getMax());
+		assertEquals(0, snapshot.getValueAtPercentile(99.0));
+
+		// values recorded while the buckets are swapped are not lost or counted twice
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 100000; j++) {
+						histogram.record(j);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		long count = 0;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				count += histogram.takeSnapshot().getCount();
+			}
+		}
+		// the last values can be left in either set of buckets
+		count += histogram.takeSnapshot().getCount();
+		count += histogram.takeSnapshot().getCount();
+		assertEquals(threads.length * 100000L, count);
+	}
+
+	@Test
+	public void testTopKField() throws Exception {
+		final HotKeys hotKeys = new HotKeys();
+		ReflectionMbean mbean = new ReflectionMbean(hotKeys);
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int threadNum = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						hotKeys.tenants.record("hot");
+						if (j % 2 == 0) {
+							hotKeys.tenants.record("warm");
+						}
+						if (j % 4 == 0) {
+							hotKeys.tenants.record("mild");
+						}
+						// long tail of keys that are seen once
+						hotKeys.tenants.record("cold" + threadNum + "-" + j);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(4L * (1000 + 500 + 250 + 1000), mbean.getAttribute("tenants.total"));
+		TabularData table = (TabularData) mbean.getAttribute("tenants.top");
+		assertEquals(3, table.size());
+		String[] expectedKeys = new String[] { "hot", "warm", "mild" };
+		long[] expectedCounts = new long[] { 4000, 2000, 1000 };
+		for (int rank = 1; rank <= 3; rank++) {
+			CompositeData row = table.get(new Object[] { rank });
+			assertEquals(expectedKeys[rank - 1], row.get("key"));
+			long count = (Long) row.get("count");
+			// never too low and only a little too high with this many keys
+			assertTrue(count >= expectedCounts[rank - 1]);
+			assertTrue(count < expectedCounts[rank - 1] + 100);
+		}
+
+		MBeanOperationInfo resetInfo = null;
+		for (MBeanOperationInfo info : mbean.getMBeanInfo().getOperations()) {
+			if (info.getName().equals("tenants.reset")) {
+				resetInfo = info;
+			}
+		}
+		assertNotNull(resetInfo);
+		assertEquals(MBeanOperationInfo.ACTION, resetInfo.getImpact());
+		assertEquals(0, resetInfo.getSignature().length);
+		assertNull(mbean.invoke("tenants.reset", null, null));
+		assertEquals(0L, mbean.getAttribute("tenants.total"));
+		assertEquals(0, ((TabularData) mbean.getAttribute("tenants.top")).size());
+		hotKeys.tenants.record("new", 5);
+		assertEquals(5, hotKeys.tenants.estimate("new"));
+		assertEquals("new", hotKeys.tenants.getTop().get(0).getKey());
+	}
+
+	@Test
+	public void testHyperLogLogField() throws Exception {
+		DistinctUsers users = new DistinctUsers();
+		ReflectionMbean mbean = new ReflectionMbean(users);
+		assertEquals(0L, mbean.getAttribute("users.cardinality"));
+		for (int i = 0; i < 10; i++) {
+			users.users.record("user" + i);
+			users.users.record("user" + i);
+		}
+		assertEquals(10L, mbean.getAttribute("users.cardinality"));
+		for (long i = 0; i < 100000; i++) {
+			users.users.record(i);
+		}
+		assertEquals(100010, (Long) mbean.getAttribute("users.cardinality"), 100010 * 0.03);
+
+		MBeanOperationInfo registersInfo = null;
+		for (MBeanOperationInfo info : mbean.getMBeanInfo().getOperations()) {
+			if (info.getName().equals("users.registers")) {
+				registersInfo = info;
+			}
+		}
+		assertNotNull(registersInfo);
+		assertEquals(byte[].class.getName(), registersInfo.getReturnType());
+		byte[] registers = (byte[]) mbean.invoke("users.registers", null, null);
+		assertEquals(1 << 14, registers.length);
+		assertEquals(mbean.getAttribute("users.cardinality"), JmxHyperLogLog.estimateRegisters(registers));
+
+		// the sketches of 2 JVMs that saw overlapping users
+		JmxHyperLogLog first = new JmxHyperLogLog(12, 0);
+		JmxHyperLogLog second = new JmxHyperLogLog(12, 0);
+		for (long i = 0; i < 60000; i++) {
+			first.record(i);
+			second.record(i + 40000);
+		}
+		long merged =
+				JmxHyperLogLog.estimateRegisters(JmxHyperLogLog.mergeRegisters(first.getRegisters(),
+						second.getRegisters()));
+		assertEquals(100000, merged, 100000 * 0.05);
+		try {
+			JmxHyperLogLog.mergeRegisters(first.getRegisters(), users.users.getRegisters());
+			fail("Should have thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testHyperLogLogWindow() {
+		long second = TimeUnit.SECONDS.toNanos(1);
+		// 4 slots of a second each
+		JmxHyperLogLog sketch = new JmxHyperLogLog(10, 4000, 0);
+		for (long i = 0; i < 1000; i++) {
+			sketch.recordHash(hash(i), 0);
+		}
+		assertEquals(1000, JmxHyperLogLog.estimateRegisters(sketch.registers(0)), 100);
+		for (long i = 1000; i < 1500; i++) {
+			sketch.recordHash(hash(i), second + second / 2);
+		}
+		assertEquals(1500, JmxHyperLogLog.estimateRegisters(sketch.registers(second + second / 2)), 150);
+		// the first slot is out of the window
+		assertEquals(500, JmxHyperLogLog.estimateRegisters(sketch.registers(4 * second + second / 2)), 50);
+		// the same slot is cleared when it is used again
+		sketch.recordHash(hash(2000), 4 * second);
+		assertEquals(501, JmxHyperLogLog.estimateRegisters(sketch.registers(4 * second)), 50);
+		assertEquals(1, JmxHyperLogLog.estimateRegisters(sketch.registers(6 * second)));
+		assertEquals(0, JmxHyperLogLog.estimateRegisters(sketch.registers(8 * second)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHyperLogLogPrecision() {
+		new JmxHyperLogLog(JmxHyperLogLog.MAX_PRECISION + 1, 0);
+	}
+
+	@Test
+	public void testQuantileSketchField() throws Exception {
+		QuantileLatency latency = new QuantileLatency();
+		ReflectionMbean mbean = new ReflectionMbean(latency);
+		assertEquals(0L, mbean.getAttribute("latency.count"));
+		assertEquals(0.0, mbean.getAttribute("latency.p99"));
+		for (int i = 1; i <= 100000; i++) {
+			latency.latency.record(i);
+		}
+		assertEquals(100000L, mbean.getAttribute("latency.count"));
+		assertEquals(1.0, mbean.getAttribute("latency.min"));
+		assertEquals(100000.0, mbean.getAttribute("latency.max"));
+		assertEquals(50000.0, (Double) mbean.getAttribute("latency.p50"), 50000 * 0.01);
+		assertEquals(90000.0, (Double) mbean.getAttribute("latency.p90"), 90000 * 0.01);
+		assertEquals(99000.0, (Double) mbean.getAttribute("latency.p99"), 99000 * 0.01);
+		assertEquals(99900.0, (Double) mbean.getAttribute("latency.p999"), 99900 * 0.01);
+		for (MBeanAttributeInfo info : mbean.getMBeanInfo().getAttributes()) {
+			if (info.getName().equals("latency.sketch")) {
+				assertEquals(byte[].class.getName(), info.getType());
+			} else if (info.getName().equals("latency.p99")) {
+				assertEquals("ms", info.getDescriptor().getFieldValue(JmxDescriptors.UNITS_FIELD));
+			}
+		}
+
+		byte[] bytes = (byte[]) mbean.getAttribute("latency.sketch");
+		// a few bytes for each of the ~600 buckets
+		assertTrue(bytes.length < 2000);
+		JmxQuantileSummary summary = JmxQuantileSummary.fromBytes(bytes);
+		assertEquals(100000L, summary.getCount());
+		assertEquals(mbean.getAttribute("latency.p99"), summary.getValueAtQuantile(0.99));
+		assertTrue(Arrays.equals(bytes, summary.toBytes()));
+
+		// another JVM that saw the slow half
+		JmxQuantileSketch other = new JmxQuantileSketch(0.01, 0.001, 1000000);
+		for (int i = 100001; i <= 200000; i++) {
+			other.record(i);
+		}
+		other.record(0);
+		JmxQuantileSummary merged = summary.merge(JmxQuantileSummary.fromBytes(other.getSummary().toBytes()));
+		assertEquals(200001L, merged.getCount());
+		assertEquals(1L, merged.getZeroCount());
+		assertEquals(0.0, merged.getMin(), 0.0);
+		assertEquals(200000.0, merged.getMax(), 0.0);
+		assertEquals(100000.0, merged.getValueAtQuantile(0.5), 100000 * 0.01);
+		assertEquals(198000.0, merged.getValueAtQuantile(0.99), 198000 * 0.01);
+		assertEquals(0.0, merged.getValueAtQuantile(0.0), 0.0);
+
+		try {
+			summary.merge(new JmxQuantileSketch(0.02, 1, 1000).getSummary());
+			fail("Should have thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			JmxQuantileSummary.fromBytes(Arrays.copyOf(bytes, bytes.length - 1));
+			fail("Should have thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testQuantileSummaryCorrupt() throws Exception {
+		// merging buckets this far apart would need a huge array
+		JmxQuantileSummary low = new JmxQuantileSummary(0.01, 0, new int[] { -2000000000 }, new long[] { 1 }, 1, 1);
+		JmxQuantileSummary high = new JmxQuantileSummary(0.01, 0, new int[] { 2000000000 }, new long[] { 1 }, 1, 1);
+		try {
+			low.merge(high);
+			fail("Should have thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(2L, JmxQuantileSummary.fromBytes(quantileSummaryBytes(10, 1, 5, 1)).getCount());
+		long[][] corruptBuckets = new long[][] { //
+				// too far apart
+				{ 0, 1, 2000000000, 1 },
+				// negative count
+				{ 10, -1 },
+				// index overflows an int
+				{ Integer.MAX_VALUE, 1, 1, 1 }, //
+				};
+		for (long[] buckets : corruptBuckets) {
+			try {
+				JmxQuantileSummary.fromBytes(quantileSummaryBytes(buckets));
+				fail("Should have thrown");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Write the bytes of a summary by hand from pairs of index deltas and counts.
+	 */
+	private static byte[] quantileSummaryBytes(long... deltasAndCounts) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		// version
+		out.write(1);
+		out.writeDouble(0.01);
+		// zero count
+		out.write(0);
+		out.writeDouble(1.0);
+		out.writeDouble(1.0);
+		writeVarLong(out, deltasAndCounts.length / 2);
+		for (int i = 0; i < deltasAndCounts.length; i += 2) {
+			long delta = deltasAndCounts[i];
+			writeVarLong(out, (delta << 1) ^ (delta >> 63));
+			writeVarLong(out, deltasAndCounts[i + 1]);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws Exception {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	@Test
+	public void testQuantileSketchRange() {
+		JmxQuantileSketch sketch = new JmxQuantileSketch(0.01, 10, 1000);
+		sketch.record(1);
+		sketch.record(100);
+		sketch.record(1000000);
+		JmxQuantileSummary summary = sketch.getSummary();
+		// out of range values go in the end buckets
+		assertEquals(10.0, summary.getValueAtQuantile(0.0), 10 * 0.01);
+		assertEquals(100.0, summary.getValueAtQuantile(0.5), 100 * 0.01);
+		assertEquals(1000.0, summary.getValueAtQuantile(1.0), 1000 * 0.01);
+		assertEquals(1.0, summary.getMin(), 0.0);
+		assertEquals(1000000.0, summary.getMax(), 0.0);
+		try {
+			new JmxQuantileSketch(0.0001, 1, 1.0e12);
+			fail("Should have thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static long hash(long value) {
+		// what the sketch does to the values
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB9FE1A85EC53L;
+		return value ^ (value >>> 33);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMetricFieldWritable() {
+		new ReflectionMbean(new WritableMetric());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMetricFieldBaseClass() {
+		new ReflectionMbean(new BaseClassMetric());
+	}
+
+	private MBeanAttributeInfo findAttributeInfo(MBeanAttributeInfo[] infos, String name) {
+		for (MBeanAttributeInfo info : infos) {
+			if (info.getName().equals(name)) {
+				return info;
+			}
+		}
+		return null;
+	}
+
+	private MBeanInfo serializeInfo(MBeanInfo info) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(info);
+		oos.close();
+		return (MBeanInfo) new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject();
+	}
+
+	private Object invokeJob(ReflectionMbean mbean, String operationName, long jobId) throws Exception {
+		return mbean.invoke(operationName, new Object[] { jobId }, new String[] { long.class.getName() });
+	}
+
+	private void waitForJob(ReflectionMbean mbean, long jobId) throws Exception {
+		while (invokeJob(mbean, "jobStatus", jobId).equals("RUNNING")
+				|| invokeJob(mbean, "jobStatus", jobId).equals("QUEUED")) {
+			Thread.sleep(10);
+		}
+	}
+
+	private Thread startInvoke(final ReflectionMbean mbean, final String operationName) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					mbean.invoke(operationName, null, null);
+				} catch (Exception e) {
+					// ignored, the test checks the counts
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
 	/* ======================================================================= */
 
 	@JmxResource(description = "Test object", domainName = DOMAIN_NAME, beanName = OBJECT_NAME)
@@ -496,6 +1933,529 @@ public class ReflectionMbeanTest {
 		int y;
 	}
 
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class CachedCounters {
+		final AtomicInteger getCount = new AtomicInteger();
+		final AtomicInteger describeCount = new AtomicInteger();
+		int value;
+		long sleepMillis;
+
+		@JmxAttributeMethod(cacheMillis = 100000)
+		public int getCount() throws InterruptedException {
+			if (sleepMillis > 0) {
+				Thread.sleep(sleepMillis);
+			}
+			return value + getCount.incrementAndGet();
+		}
+
+		@JmxAttributeMethod
+		public void setCount(int value) {
+			this.value = value;
+		}
+
+		@JmxOperation(operationAction = OperationAction.INFO, cacheMillis = 100000)
+		public String describe(String prefix) {
+			return prefix + describeCount.incrementAndGet();
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class CachedActionOperation {
+		@JmxOperation(operationAction = OperationAction.ACTION, cacheMillis = 1000)
+		public void doSomething() {
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class SlowGetter {
+		static final long TIMEOUT_MILLIS = 100;
+		final AtomicInteger callCount = new AtomicInteger();
+		volatile long sleepMillis;
+		volatile boolean fail;
+		volatile Thread lastThread;
+
+		@JmxAttributeMethod(timeoutMillis = TIMEOUT_MILLIS)
+		public int getCount() throws InterruptedException {
+			lastThread = Thread.currentThread();
+			int count = callCount.incrementAndGet();
+			if (fail) {
+				throw new IllegalStateException("failed");
+			}
+			if (sleepMillis > 0) {
+				Thread.sleep(sleepMillis);
+			}
+			return count;
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class HungGetter {
+		private final CountDownLatch release;
+
+		public HungGetter(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@JmxAttributeMethod(timeoutMillis = SlowGetter.TIMEOUT_MILLIS)
+		public int getCount() throws InterruptedException {
+			release.await();
+			return 1;
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class TimeoutSetter {
+		@JmxAttributeMethod(timeoutMillis = 100)
+		public void setCount(int count) {
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class LimitedOperations {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final AtomicInteger compactCount = new AtomicInteger();
+		final AtomicInteger dumpCount = new AtomicInteger();
+
+		@JmxOperation(maxConcurrent = 1)
+		public int compact() throws InterruptedException {
+			started.countDown();
+			release.await();
+			return compactCount.incrementAndGet();
+		}
+
+		@JmxOperation(maxConcurrent = 1, maxWaitMillis = 10000)
+		public void dumpCache() throws InterruptedException {
+			started.countDown();
+			release.await();
+			dumpCount.incrementAndGet();
+		}
+
+		@JmxOperation(timeoutMillis = 100)
+		public void rebuild() {
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		}
+
+		@JmxOperation(maxConcurrent = 1, timeoutMillis = 10000)
+		public void fail() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class HungOperations {
+		final CountDownLatch release = new CountDownLatch(1);
+
+		@JmxOperation(timeoutMillis = 50)
+		public void hang() {
+			while (true) {
+				try {
+					release.await();
+					return;
+				} catch (InterruptedException e) {
+					// ignored so the thread stays stuck
+				}
+			}
+		}
+
+		@JmxOperation(timeoutMillis = 1000)
+		public String ping() {
+			return "pong";
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class MaxWaitWithoutLimit {
+		@JmxOperation(maxWaitMillis = 100)
+		public void doSomething() {
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class AsyncOperations {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch reported = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+
+		@JmxOperation(async = true)
+		public String rebuild(String name) throws InterruptedException {
+			JmxJobProgress.report(50);
+			reported.countDown();
+			release.await();
+			return "rebuilt " + name;
+		}
+
+		@JmxOperation(async = true)
+		public void flush() {
+			started.countDown();
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		}
+
+		@JmxOperation(async = true)
+		public void fail() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class AsyncWithTimeout {
+		@JmxOperation(async = true, timeoutMillis = 100)
+		public void doSomething() {
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class PagedMembers {
+		@JmxAttributeMethod(paged = true)
+		public List<String> getNames() {
+			return Arrays.asList("a", "b", "c");
+		}
+
+		@JmxAttributeMethod(paged = true)
+		public Map<String, Integer> getCounts() {
+			return Collections.singletonMap("x", 1);
+		}
+
+		@JmxOperation(paged = true)
+		public long[] range(int max) {
+			long[] values = new long[max];
+			for (int i = 0; i < max; i++) {
+				values[i] = i;
+			}
+			return values;
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class PagedNotPageable {
+		@JmxAttributeMethod(paged = true)
+		public String getName() {
+			return "name";
+		}
+	}
+
+	public static class ParentNode {
+		public ChildNode getChild() {
+			return null;
+		}
+	}
+
+	public static class ChildNode {
+		public ParentNode getParent() {
+			return null;
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME, openTypes = true)
+	protected static class OpenTypes {
+		List<String> names = new ArrayList<String>();
+
+		@JmxAttributeMethod
+		public ServerInfo getServer() {
+			return new ServerInfo();
+		}
+
+		@JmxAttributeMethod
+		public List<String> getNames() {
+			return names;
+		}
+
+		@JmxAttributeMethod
+		public void setNames(List<String> names) {
+			this.names = names;
+		}
+
+		@JmxAttributeMethod
+		public int getCount() {
+			return 3;
+		}
+
+		@JmxOperation
+		public Map<String, Long> counts() {
+			Map<String, Long> counts = new HashMap<String, Long>();
+			counts.put("a", 1L);
+			counts.put("b", 2L);
+			return counts;
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class RawTypes {
+		@JmxAttributeMethod
+		public ServerInfo getServer() {
+			return new ServerInfo();
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME, openTypes = true)
+	protected static class OpenTypeWritableComposite {
+		private ServerInfo server;
+
+		@JmxAttributeMethod
+		public ServerInfo getServer() {
+			return server;
+		}
+
+		@JmxAttributeMethod
+		public void setServer(ServerInfo server) {
+			this.server = server;
+		}
+	}
+
+	protected enum ServerState {
+		UP,
+		DOWN,
+	}
+
+	protected static class ServerInfo {
+		public String getHost() {
+			return "db1";
+		}
+
+		public int getPort() {
+			return 5432;
+		}
+
+		public ServerState getState() {
+			return ServerState.UP;
+		}
+
+		public Set<String> getTags() {
+			return new TreeSet<String>(Arrays.asList("b", "a"));
+		}
+
+		public Map<String, Integer> getLimits() {
+			return Collections.singletonMap("connections", 10);
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class HitStats implements JmxAttributeSnapshot {
+		@JmxAttributeField
+		long hits;
+		@JmxAttributeField
+		long misses;
+		@JmxAttributeField
+		long total;
+		@JmxAttributeField
+		String description = "stats";
+		int snapshotCount;
+
+		public synchronized void record(boolean hit) {
+			if (hit) {
+				hits++;
+			} else {
+				misses++;
+			}
+			total++;
+		}
+
+		public synchronized Map<String, Object> snapshotJmxAttributes(String[] attributeNames) {
+			snapshotCount++;
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("hits", hits);
+			values.put("misses", misses);
+			values.put("total", total);
+			return values;
+		}
+	}
+
+	@JmxKeyedResource(domainName = DOMAIN_NAME, beanName = "regions", keyName = "region")
+	protected static class RegionManager {
+		@JmxKeyedEntities
+		final Map<String, Region> regions = new ConcurrentHashMap<String, Region>();
+	}
+
+	protected static class Region {
+		@JmxAttributeField(isWritable = true)
+		long hits;
+		@JmxAttributeField
+		final String owner;
+		@JmxAttributeField
+		final Object notOpen = new Object();
+
+		public Region(long hits, String owner) {
+			this.hits = hits;
+			this.owner = owner;
+		}
+	}
+
+	@JmxKeyedResource(domainName = DOMAIN_NAME)
+	protected static class NoEntities {
+		final Map<String, Region> regions = new HashMap<String, Region>();
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class RequestMetrics {
+		@JmxAttributeField(description = "Requests handled", unit = "requests")
+		final JmxMeter requests = new JmxMeter();
+		@JmxAttributeField
+		final JmxCounter errors = new JmxCounter();
+		@JmxAttributeField
+		final JmxGauge active = new JmxGauge();
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class LatencyMetrics {
+		@JmxAttributeField(unit = "us")
+		final JmxHistogram latency = new JmxHistogram(TimeUnit.MINUTES.toMicros(1));
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class HotKeys {
+		@JmxAttributeField(unit = "requests")
+		final JmxTopK tenants = new JmxTopK(3);
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class DistinctUsers {
+		@JmxAttributeField
+		final JmxHyperLogLog users = new JmxHyperLogLog();
+	}
+
+	protected static class QuantileLatency {
+		@JmxAttributeField(unit = "ms")
+		final JmxQuantileSketch latency = new JmxQuantileSketch(0.01, 0.001, 1000000);
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class WritableMetric {
+		@JmxAttributeField(isWritable = true)
+		final JmxCounter errors = new JmxCounter();
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class BaseClassMetric {
+		@JmxAttributeField
+		final JmxMetric errors = new JmxCounter();
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class Tunables {
+		@JmxAttributeField(isWritable = true)
+		private final JmxTunable<Integer> maxRetries = new JmxTunable<Integer>(int.class, 3);
+		@JmxAttributeField(isWritable = true)
+		private static final JmxTunable<Boolean> enabled = new JmxTunable<Boolean>(Boolean.class, true);
+		@JmxAttributeField(isWritable = true)
+		private static long limit = 10;
+
+		@JmxOperation
+		public static String describe() {
+			return "static";
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class StaticAccessors {
+		private static int count;
+		@JmxAttributeField(isWritable = true)
+		private static String name = "foo";
+
+		@JmxAttributeMethod
+		public static int getCount() {
+			return count;
+		}
+
+		@JmxAttributeMethod
+		public static void setCount(int count) {
+			StaticAccessors.count = count;
+		}
+
+		@JmxOperation
+		public static int incrementCount() {
+			return ++count;
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class FinalWritableField {
+		@JmxAttributeField(isWritable = true)
+		private final int count = 1;
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME, beanName = "PoolSettings", configSnapshot = true)
+	protected static class PoolSettings {
+		@JmxAttributeField(isWritable = true)
+		private final int minSize;
+		@JmxAttributeField(isWritable = true)
+		private final int maxSize;
+		private String name;
+
+		public PoolSettings() {
+			this.minSize = 1;
+			this.maxSize = 10;
+			this.name = "pool";
+		}
+
+		public int getMinSize() {
+			return minSize;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		@JmxAttributeMethod
+		public String getName() {
+			return name;
+		}
+
+		@JmxAttributeMethod
+		public void setName(String name) {
+			if (name.length() == 0) {
+				throw new IllegalArgumentException("Name cannot be empty");
+			}
+			this.name = name;
+		}
+	}
+
+	@JmxResource(domainName = DOMAIN_NAME)
+	protected static class MetricAttributes {
+		@JmxAttributeField(metricKind = JmxMetricKind.COUNTER)
+		private long requests;
+		@JmxAttributeField
+		private long plain;
+		private long timeout;
+
+		@JmxAttributeMethod(unit = "entries", metricKind = JmxMetricKind.GAUGE)
+		public int getQueueSize() {
+			return 0;
+		}
+
+		@JmxAttributeMethod
+		public long getTimeout() {
+			return timeout;
+		}
+
+		@JmxAttributeMethod(unit = "ms")
+		public void setTimeout(long timeout) {
+			this.timeout = timeout;
+		}
+
+		@JmxAttributeMethod(expensive = true)
+		public String getReport() {
+			return "report";
+		}
+	}
+
+	protected static class UncachedCounter {
+		int count;
+
+		public int getCount() {
+			return ++count;
+		}
+	}
+
 	@JmxResource(domainName = DOMAIN_NAME, beanName = OBJECT_NAME)
 	protected static class IsNotBoolean {
 		@JmxAttributeMethod